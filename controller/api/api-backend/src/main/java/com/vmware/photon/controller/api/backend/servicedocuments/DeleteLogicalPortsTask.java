@@ -21,6 +21,9 @@ import com.vmware.photon.controller.common.xenon.validation.WriteOnce;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceDocumentDescription;
 
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Defines the document state associated with a single
  * {@link com.vmware.photon.controller.api.backend.tasks.DeleteLogicalPortsTaskService}.
@@ -38,14 +41,7 @@ public class DeleteLogicalPortsTask extends ServiceDocument {
      */
     public enum SubStage {
       GET_LINK_PORTS,
-      DELETE_TIER1_ROUTER_LINK_PORT,
-      WAIT_DELETE_TIER1_ROUTER_LINK_PORT,
-      DELETE_TIER0_ROUTER_LINK_PORT,
-      WAIT_DELETE_TIER0_ROUTER_LINK_PORT,
-      DELETE_TIER1_ROUTER_DOWN_LINK_PORT,
-      WAIT_DELETE_TIER1_ROUTER_DOWN_LINK_PORT,
-      DELETE_SWITCH_PORT,
-      WAIT_DELETE_SWITCH_PORT,
+      DELETE_PORTS,
     }
   }
 
@@ -141,4 +137,14 @@ public class DeleteLogicalPortsTask extends ServiceDocument {
    */
   @WriteOnce
   public String logicalDownLinkPortOnTier1Router;
+
+  /**
+   * Ids of the ports which are deleted. A restarted task does not delete them again.
+   */
+  public Set<String> deletedPorts;
+
+  /**
+   * Duration in milliseconds of each completed phase of the task, keyed by phase name.
+   */
+  public Map<String, Long> phaseDurationsMillis;
 }
@@ -40,8 +40,16 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
 * Implements an Xenon service that represents a task to delete the logical ports on a logical network.
@@ -50,8 +58,18 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
 
   public static final String FACTORY_LINK = ServiceUriPaths.APIBACKEND_ROOT + "/delete-logical-ports-tasks";
   public static final String LOGICAL_PORT = "LogicalPort";
+  public static final String PHASE_GET_LINK_PORTS = "getLinkPorts";
+  public static final String PHASE_DELETE_TIER1_ROUTER_LINK_PORT = "deleteTier1RouterLinkPort";
+  public static final String PHASE_DELETE_TIER0_ROUTER_LINK_PORT = "deleteTier0RouterLinkPort";
+  public static final String PHASE_DELETE_TIER1_ROUTER_DOWN_LINK_PORT = "deleteTier1RouterDownLinkPort";
+  public static final String PHASE_DELETE_SWITCH_PORT = "deleteSwitchPort";
   private static final int NUM_RETRIES = 5;
 
+  /**
+   * Whether the task was started in the STARTED stage, i.e. restarted on this host after its owner changed.
+   */
+  private volatile boolean restarted;
+
   public static FactoryService createFactory() {
     return FactoryService.create(DeleteLogicalPortsTaskService.class, DeleteLogicalPortsTask.class);
   }
@@ -75,6 +93,7 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
 
       validateStartState(startState);
 
+      restarted = startState.taskState.stage == TaskState.TaskStage.STARTED;
       if (startState.taskState.stage == TaskState.TaskStage.CREATED) {
         startState.taskState.stage = TaskState.TaskStage.STARTED;
         startState.taskState.subStage = TaskState.SubStage.GET_LINK_PORTS;
@@ -108,12 +127,35 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
       DeleteLogicalPortsTask currentState = getState(patchOperation);
       DeleteLogicalPortsTask patchState = patchOperation.getBody(DeleteLogicalPortsTask.class);
 
-      validatePatchState(currentState, patchState);
+      // A patch without task state only records a deleted port, see recordPortDeleted
+      boolean isProgressReport = patchState.taskState == null;
+      if (isProgressReport) {
+        ValidationUtils.validatePatch(currentState, patchState);
+      } else {
+        validatePatchState(currentState, patchState);
+      }
+
+      if (patchState.phaseDurationsMillis != null && currentState.phaseDurationsMillis != null) {
+        Map<String, Long> phaseDurationsMillis = new HashMap<>(currentState.phaseDurationsMillis);
+        phaseDurationsMillis.putAll(patchState.phaseDurationsMillis);
+        patchState.phaseDurationsMillis = phaseDurationsMillis;
+      }
+
+      if (patchState.deletedPorts != null && currentState.deletedPorts != null) {
+        Set<String> deletedPorts = new HashSet<>(currentState.deletedPorts);
+        deletedPorts.addAll(patchState.deletedPorts);
+        patchState.deletedPorts = deletedPorts;
+      }
+
       PatchUtils.patchState(currentState, patchState);
       validateState(currentState);
 
       patchOperation.complete();
 
+      if (isProgressReport) {
+        return;
+      }
+
       if (ControlFlags.isOperationProcessingDisabled(currentState.controlFlags)) {
         ServiceUtils.logInfo(this, "Skipping start operation processing (disabled)");
         return;
@@ -137,37 +179,8 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
           getTier1RouterPorts(currentState);
           break;
 
-        case DELETE_TIER1_ROUTER_LINK_PORT:
-          deleteTier1RouterLinkPort(currentState);
-          break;
-
-        case WAIT_DELETE_TIER1_ROUTER_LINK_PORT:
-          waitDeleteTier1RouterLinkPort(currentState);
-          break;
-
-        case DELETE_TIER0_ROUTER_LINK_PORT:
-          deleteTier0RouterLinkPort(currentState);
-          break;
-
-        case WAIT_DELETE_TIER0_ROUTER_LINK_PORT:
-          waitDeleteTier0RouterLinkPort(currentState);
-          break;
-
-        case DELETE_TIER1_ROUTER_DOWN_LINK_PORT:
-          deleteTier1RouterDownLinkPort(currentState);
-          break;
-
-        case WAIT_DELETE_TIER1_ROUTER_DOWN_LINK_PORT:
-          waitDeleteTier1RouterDownLinkPort(currentState);
-          break;
-
-        case DELETE_SWITCH_PORT:
-          List<Integer> retryCount = Arrays.asList(0);
-          deleteSwitchPort(currentState, retryCount);
-          break;
-
-        case WAIT_DELETE_SWITCH_PORT:
-          waitDeleteSwitchPort(currentState);
+        case DELETE_PORTS:
+          deletePorts(currentState);
           break;
 
         default:
@@ -184,6 +197,7 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
     LogicalRouterApi logicalRouterApi = ServiceHostUtils.getNsxClient(getHost(), currentState.nsxAddress,
         currentState.nsxUsername, currentState.nsxPassword).getLogicalRouterApi();
 
+    long startTime = System.currentTimeMillis();
     logicalRouterApi.listLogicalRouterPorts(currentState.logicalTier1RouterId,
         new FutureCallback<LogicalRouterPortListResult>() {
           @Override
@@ -196,11 +210,13 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
             getLinkedLogicalPorts(logicalRouterPortListResult, currentState);
 
             DeleteLogicalPortsTask patchState = buildPatch(com.vmware.xenon.common.TaskState.TaskStage.STARTED,
-                TaskState.SubStage.DELETE_TIER1_ROUTER_LINK_PORT);
+                TaskState.SubStage.DELETE_PORTS);
             patchState.logicalLinkPortOnTier1Router = currentState.logicalLinkPortOnTier1Router;
             patchState.logicalLinkPortOnTier0Router = currentState.logicalLinkPortOnTier0Router;
             patchState.logicalDownLinkPortOnTier1Router = currentState.logicalDownLinkPortOnTier1Router;
             patchState.logicalPortOnSwitch = currentState.logicalPortOnSwitch;
+            patchState.phaseDurationsMillis = new HashMap<>();
+            patchState.phaseDurationsMillis.put(PHASE_GET_LINK_PORTS, System.currentTimeMillis() - startTime);
             TaskUtils.sendSelfPatch(DeleteLogicalPortsTaskService.this, patchState);
           }
 
@@ -239,291 +255,235 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
     }
   }
 
-  private void deleteTier1RouterLinkPort(DeleteLogicalPortsTask currentState) throws Throwable {
-    if (currentState.logicalLinkPortOnTier1Router == null) {
-      ServiceUtils.logInfo(this, "No link port found on tier-1 router %s", currentState.logicalTier1RouterId);
-      progressTask(TaskState.SubStage.DELETE_TIER0_ROUTER_LINK_PORT);
-      return;
-    }
-
-    ServiceUtils.logInfo(this, "Deleting link port %s on tier-1 router %s",
-        currentState.logicalLinkPortOnTier1Router, currentState.logicalTier1RouterId);
-
-    LogicalRouterApi logicalRouterApi = ServiceHostUtils.getNsxClient(getHost(), currentState.nsxAddress,
-        currentState.nsxUsername, currentState.nsxPassword).getLogicalRouterApi();
-
-    logicalRouterApi.deleteLogicalRouterPort(currentState.logicalLinkPortOnTier1Router,
-        new FutureCallback<Void>() {
-          @Override
-          public void onSuccess(Void v) {
-            progressTask(TaskState.SubStage.WAIT_DELETE_TIER1_ROUTER_LINK_PORT);
-          }
-
-          @Override
-          public void onFailure(Throwable t) {
-            failTask(t);
-          }
-        }
-    );
-  }
-
-  private void waitDeleteTier1RouterLinkPort(DeleteLogicalPortsTask currentState) {
+  /**
+   * Deletes the ports. A port can only be deleted once the port it is linked to on the tier-1 router is gone, so the
+   * ports form two chains: the link ports between the tier-1 and tier-0 routers, and the down-link port of the tier-1
+   * router and the port of the switch it is linked to. The two chains are deleted concurrently. The ports which were
+   * deleted before the task was restarted are skipped.
+   */
+  private void deletePorts(DeleteLogicalPortsTask currentState) {
     NsxClient nsxClient = ServiceHostUtils.getNsxClient(
         getHost(),
         currentState.nsxAddress,
         currentState.nsxUsername,
         currentState.nsxPassword);
 
-    getHost().schedule(() -> {
-      try {
-        ServiceUtils.logInfo(this, "Wait for deleting link port %s on tier-1 router %s",
-            currentState.logicalLinkPortOnTier1Router, currentState.logicalTier1RouterId);
-
-        nsxClient.getLogicalRouterApi().checkLogicalRouterPortExistence(
-            currentState.logicalLinkPortOnTier1Router,
-            new FutureCallback<Boolean>() {
-              @Override
-              public void onSuccess(Boolean successful) {
-                if (!successful) {
-                  progressTask(TaskState.SubStage.DELETE_TIER0_ROUTER_LINK_PORT);
-                } else {
-                  waitDeleteTier1RouterLinkPort(currentState);
-                }
-              }
-
-              @Override
-              public void onFailure(Throwable t) {
-                failTask(t);
-              }
-            }
-        );
-      } catch (Throwable t) {
-        failTask(t);
+    List<List<PortDeletion>> chains = Arrays.asList(
+        Arrays.asList(
+            new PortDeletion(PHASE_DELETE_TIER1_ROUTER_LINK_PORT, currentState.logicalLinkPortOnTier1Router,
+                "link port on tier-1 router " + currentState.logicalTier1RouterId, false),
+            new PortDeletion(PHASE_DELETE_TIER0_ROUTER_LINK_PORT, currentState.logicalLinkPortOnTier0Router,
+                "link port on tier-0 router " + currentState.logicalTier0RouterId, false)),
+        Arrays.asList(
+            new PortDeletion(PHASE_DELETE_TIER1_ROUTER_DOWN_LINK_PORT, currentState.logicalDownLinkPortOnTier1Router,
+                "down-link port on tier-1 router " + currentState.logicalTier1RouterId, false),
+            new PortDeletion(PHASE_DELETE_SWITCH_PORT, currentState.logicalPortOnSwitch,
+                "port on switch " + currentState.logicalSwitchId, true)));
+
+    long startTime = System.currentTimeMillis();
+    AtomicInteger remainingChains = new AtomicInteger(chains.size());
+    AtomicBoolean failed = new AtomicBoolean();
+    FutureCallback<Void> chainCallback = new FutureCallback<Void>() {
+      @Override
+      public void onSuccess(Void v) {
+        if (remainingChains.decrementAndGet() == 0) {
+          ServiceUtils.logInfo(DeleteLogicalPortsTaskService.this,
+              "Deleted the ports of tier-1 router %s in %d ms", currentState.logicalTier1RouterId,
+              System.currentTimeMillis() - startTime);
+          finishTask();
+        }
       }
-    }, nsxClient.getDeleteLogicalPortPollDelay(), TimeUnit.MILLISECONDS);
+
+      @Override
+      public void onFailure(Throwable t) {
+        if (failed.compareAndSet(false, true)) {
+          failTask(t);
+        }
+      }
+    };
+
+    for (List<PortDeletion> chain : chains) {
+      deleteChain(currentState, nsxClient, chain.iterator(), failed, chainCallback);
+    }
   }
 
-  private void deleteTier0RouterLinkPort(DeleteLogicalPortsTask currentState) throws Throwable {
-    if (currentState.logicalLinkPortOnTier0Router == null) {
-      ServiceUtils.logInfo(this, "No link port found on tier-0 router %s", currentState.logicalTier0RouterId);
-      progressTask(TaskState.SubStage.DELETE_TIER1_ROUTER_DOWN_LINK_PORT);
+  private void deleteChain(DeleteLogicalPortsTask currentState,
+                           NsxClient nsxClient,
+                           Iterator<PortDeletion> chain,
+                           AtomicBoolean failed,
+                           FutureCallback<Void> chainCallback) {
+    if (failed.get()) {
       return;
     }
 
-    ServiceUtils.logInfo(this, "Deleting link port %s on tier-0 router %s", currentState.logicalLinkPortOnTier0Router,
-        currentState.logicalTier0RouterId);
-
-    LogicalRouterApi logicalRouterApi = ServiceHostUtils.getNsxClient(getHost(), currentState.nsxAddress,
-        currentState.nsxUsername, currentState.nsxPassword).getLogicalRouterApi();
+    if (!chain.hasNext()) {
+      chainCallback.onSuccess(null);
+      return;
+    }
 
-    logicalRouterApi.deleteLogicalRouterPort(currentState.logicalLinkPortOnTier0Router,
-        new FutureCallback<Void>() {
-          @Override
-          public void onSuccess(Void v) {
-            progressTask(TaskState.SubStage.WAIT_DELETE_TIER0_ROUTER_LINK_PORT);
-          }
+    PortDeletion portDeletion = chain.next();
+    if (portDeletion.portId == null) {
+      ServiceUtils.logInfo(this, "No %s found", portDeletion.description);
+      deleteChain(currentState, nsxClient, chain, failed, chainCallback);
+      return;
+    }
 
-          @Override
-          public void onFailure(Throwable t) {
-            failTask(t);
-          }
-        }
-    );
-  }
+    if (currentState.deletedPorts != null && currentState.deletedPorts.contains(portDeletion.portId)) {
+      ServiceUtils.logInfo(this, "The %s %s is already deleted", portDeletion.description, portDeletion.portId);
+      deleteChain(currentState, nsxClient, chain, failed, chainCallback);
+      return;
+    }
 
-  private void waitDeleteTier0RouterLinkPort(DeleteLogicalPortsTask currentState) {
-    NsxClient nsxClient = ServiceHostUtils.getNsxClient(
-        getHost(),
-        currentState.nsxAddress,
-        currentState.nsxUsername,
-        currentState.nsxPassword);
+    long startTime = System.currentTimeMillis();
+    FutureCallback<Void> portCallback = new FutureCallback<Void>() {
+      @Override
+      public void onSuccess(Void v) {
+        recordPortDeleted(portDeletion, System.currentTimeMillis() - startTime,
+            () -> deleteChain(currentState, nsxClient, chain, failed, chainCallback), chainCallback);
+      }
 
-    getHost().schedule(() -> {
-      try {
-        ServiceUtils.logInfo(this, "Wait for deleting link port %s on tier-0 router %s",
-            currentState.logicalLinkPortOnTier0Router, currentState.logicalTier0RouterId);
-
-        nsxClient.getLogicalRouterApi().checkLogicalRouterPortExistence(
-            currentState.logicalLinkPortOnTier0Router,
-            new FutureCallback<Boolean>() {
-              @Override
-              public void onSuccess(Boolean successful) {
-                if (!successful) {
-                  progressTask(TaskState.SubStage.DELETE_TIER1_ROUTER_DOWN_LINK_PORT);
-                } else {
-                  waitDeleteTier0RouterLinkPort(currentState);
-                }
-              }
-
-              @Override
-              public void onFailure(Throwable t) {
-                failTask(t);
-              }
-            }
-        );
-      } catch (Throwable t) {
-        failTask(t);
+      @Override
+      public void onFailure(Throwable t) {
+        chainCallback.onFailure(t);
       }
-    }, nsxClient.getDeleteLogicalPortPollDelay(), TimeUnit.MILLISECONDS);
-  }
+    };
 
-  private void deleteTier1RouterDownLinkPort(DeleteLogicalPortsTask currentState) throws Throwable {
-    if (currentState.logicalDownLinkPortOnTier1Router == null) {
-      ServiceUtils.logInfo(this, "No down-link port found on tier-1 router %s", currentState.logicalTier1RouterId);
-      progressTask(TaskState.SubStage.DELETE_SWITCH_PORT);
+    if (!restarted) {
+      ServiceUtils.logInfo(this, "Deleting %s %s", portDeletion.description, portDeletion.portId);
+      deletePort(nsxClient, portDeletion, 0, portCallback);
       return;
     }
 
-    ServiceUtils.logInfo(this, "Deleting down-link port %s on tier-1 router %s",
-        currentState.logicalDownLinkPortOnTier1Router,
-        currentState.logicalTier1RouterId);
+    // The previous owner may have deleted the port without recording it
+    checkPortExistence(nsxClient, portDeletion, new FutureCallback<Boolean>() {
+      @Override
+      public void onSuccess(Boolean exists) {
+        if (exists) {
+          ServiceUtils.logInfo(DeleteLogicalPortsTaskService.this, "Deleting %s %s", portDeletion.description,
+              portDeletion.portId);
+          deletePort(nsxClient, portDeletion, 0, portCallback);
+        } else {
+          ServiceUtils.logInfo(DeleteLogicalPortsTaskService.this, "The %s %s is already deleted",
+              portDeletion.description, portDeletion.portId);
+          portCallback.onSuccess(null);
+        }
+      }
 
-    LogicalRouterApi logicalRouterApi = ServiceHostUtils.getNsxClient(getHost(), currentState.nsxAddress,
-        currentState.nsxUsername, currentState.nsxPassword).getLogicalRouterApi();
+      @Override
+      public void onFailure(Throwable t) {
+        portCallback.onFailure(t);
+      }
+    });
+  }
 
-    logicalRouterApi.deleteLogicalRouterPort(currentState.logicalDownLinkPortOnTier1Router,
-        new FutureCallback<Void>() {
-          @Override
-          public void onSuccess(Void v) {
-            progressTask(TaskState.SubStage.WAIT_DELETE_TIER1_ROUTER_DOWN_LINK_PORT);
-          }
+  /**
+   * Deletes a port, retrying with exponential backoff, and waits for it to be gone.
+   */
+  private void deletePort(NsxClient nsxClient,
+                          PortDeletion portDeletion,
+                          int retryCount,
+                          FutureCallback<Void> callback) {
+    FutureCallback<Void> deleteCallback = new FutureCallback<Void>() {
+      @Override
+      public void onSuccess(Void v) {
+        waitPortDeleted(nsxClient, portDeletion, callback);
+      }
 
-          @Override
-          public void onFailure(Throwable t) {
-            failTask(t);
-          }
+      @Override
+      public void onFailure(Throwable t) {
+        if (retryCount >= NUM_RETRIES) {
+          callback.onFailure(t);
+          return;
         }
-    );
-  }
 
-  private void waitDeleteTier1RouterDownLinkPort(DeleteLogicalPortsTask currentState) {
-    NsxClient nsxClient = ServiceHostUtils.getNsxClient(
-        getHost(),
-        currentState.nsxAddress,
-        currentState.nsxUsername,
-        currentState.nsxPassword);
+        ServiceUtils.logSevere(DeleteLogicalPortsTaskService.this,
+            "Deleting %s %s failed with error %s, retrying ...",
+            portDeletion.description, portDeletion.portId, t.getMessage());
+        getHost().schedule(() -> deletePort(nsxClient, portDeletion, retryCount + 1, callback),
+            (long) nsxClient.getDeleteLogicalPortPollDelay() << retryCount, TimeUnit.MILLISECONDS);
+      }
+    };
 
-    getHost().schedule(() -> {
-      try {
-        ServiceUtils.logInfo(this, "Wait for deleting down-link port %s on tier-1 router %s",
-            currentState.logicalDownLinkPortOnTier1Router, currentState.logicalTier1RouterId);
-
-        nsxClient.getLogicalRouterApi().checkLogicalRouterPortExistence(
-            currentState.logicalDownLinkPortOnTier1Router,
-            new FutureCallback<Boolean>() {
-              @Override
-              public void onSuccess(Boolean successful) {
-                if (!successful) {
-                  progressTask(TaskState.SubStage.DELETE_SWITCH_PORT);
-                } else {
-                  waitDeleteTier1RouterDownLinkPort(currentState);
-                }
-              }
-
-              @Override
-              public void onFailure(Throwable t) {
-                failTask(t);
-              }
-            }
-        );
-      } catch (Throwable t) {
-        failTask(t);
+    try {
+      if (portDeletion.isSwitchPort) {
+        nsxClient.getLogicalSwitchApi().deleteLogicalPort(portDeletion.portId, deleteCallback);
+      } else {
+        nsxClient.getLogicalRouterApi().deleteLogicalRouterPort(portDeletion.portId, deleteCallback);
       }
-    }, nsxClient.getDeleteLogicalPortPollDelay(), TimeUnit.MILLISECONDS);
+    } catch (Throwable t) {
+      callback.onFailure(t);
+    }
   }
 
-  private void deleteSwitchPort(DeleteLogicalPortsTask currentState, final List<Integer> retryCount) {
-    NsxClient nsxClient = ServiceHostUtils.getNsxClient(
-        getHost(),
-        currentState.nsxAddress,
-        currentState.nsxUsername,
-        currentState.nsxPassword);
-
+  private void waitPortDeleted(NsxClient nsxClient,
+                               PortDeletion portDeletion,
+                               FutureCallback<Void> callback) {
     getHost().schedule(() -> {
-      try {
-        if (currentState.logicalPortOnSwitch == null) {
-          ServiceUtils.logInfo(this, "No link port found on switch %s", currentState.logicalSwitchId);
-          finishTask();
-          return;
+      ServiceUtils.logInfo(this, "Wait for deleting %s %s", portDeletion.description, portDeletion.portId);
+
+      checkPortExistence(nsxClient, portDeletion, new FutureCallback<Boolean>() {
+        @Override
+        public void onSuccess(Boolean exists) {
+          if (!exists) {
+            callback.onSuccess(null);
+          } else {
+            waitPortDeleted(nsxClient, portDeletion, callback);
+          }
         }
 
-        ServiceUtils.logInfo(this, "Deleting port %s on switch %s",
-            currentState.logicalPortOnSwitch,
-            currentState.logicalSwitchId);
-
-        nsxClient.getLogicalSwitchApi().deleteLogicalPort(
-            currentState.logicalPortOnSwitch,
-            new FutureCallback<Void>() {
-              @Override
-              public void onSuccess(Void v) {
-                progressTask(TaskState.SubStage.WAIT_DELETE_SWITCH_PORT);
-              }
-
-              @Override
-              public void onFailure(Throwable t) {
-                int currNumTries = retryCount.get(0);
-                if (currNumTries++ < NUM_RETRIES) {
-                  ServiceUtils.logSevere(DeleteLogicalPortsTaskService.this,
-                      "Deleting port %s on switch %s failed with error %s, retrying ...",
-                      currentState.logicalPortOnSwitch, currentState.logicalSwitchId, t.getMessage());
-
-                  retryCount.set(0, currNumTries);
-                  deleteSwitchPort(currentState, retryCount);
-                } else {
-                  failTask(t);
-                }
-              }
-            }
-        );
-      } catch (Throwable t) {
-        failTask(t);
-      }
+        @Override
+        public void onFailure(Throwable t) {
+          callback.onFailure(t);
+        }
+      });
     }, nsxClient.getDeleteLogicalPortPollDelay(), TimeUnit.MILLISECONDS);
   }
 
-  private void waitDeleteSwitchPort(DeleteLogicalPortsTask currentState) {
-    NsxClient nsxClient = ServiceHostUtils.getNsxClient(
-        getHost(),
-        currentState.nsxAddress,
-        currentState.nsxUsername,
-        currentState.nsxPassword);
-
-    getHost().schedule(() -> {
-      try {
-        ServiceUtils.logInfo(this, "Wait for delete port %s on switch %s",
-            currentState.logicalPortOnSwitch,
-            currentState.logicalSwitchId);
-
-        nsxClient.getLogicalSwitchApi().checkLogicalSwitchPortExistence(
-            currentState.logicalPortOnSwitch,
-            new FutureCallback<Boolean>() {
-              @Override
-              public void onSuccess(Boolean successful) {
-                if (!successful) {
-                  finishTask();
-                } else {
-                  waitDeleteSwitchPort(currentState);
-                }
-              }
-
-              @Override
-              public void onFailure(Throwable t) {
-                failTask(t);
-              }
-            }
-        );
-      } catch (Throwable t) {
-        failTask(t);
+  private void checkPortExistence(NsxClient nsxClient,
+                                  PortDeletion portDeletion,
+                                  FutureCallback<Boolean> callback) {
+    try {
+      if (portDeletion.isSwitchPort) {
+        nsxClient.getLogicalSwitchApi().checkLogicalSwitchPortExistence(portDeletion.portId, callback);
+      } else {
+        nsxClient.getLogicalRouterApi().checkLogicalRouterPortExistence(portDeletion.portId, callback);
       }
-    }, nsxClient.getDeleteLogicalPortPollDelay(), TimeUnit.MILLISECONDS);
+    } catch (Throwable t) {
+      callback.onFailure(t);
+    }
+  }
+
+  /**
+   * Records a deleted port and the duration of its deletion in the task document, then continues. A restarted task
+   * relies on the record to skip the port, so the chain fails if the record cannot be written.
+   */
+  private void recordPortDeleted(PortDeletion portDeletion,
+                                 long durationMillis,
+                                 Runnable next,
+                                 FutureCallback<Void> chainCallback) {
+    DeleteLogicalPortsTask patchState = new DeleteLogicalPortsTask();
+    patchState.deletedPorts = new HashSet<>(Collections.singleton(portDeletion.portId));
+    patchState.phaseDurationsMillis = new HashMap<>();
+    patchState.phaseDurationsMillis.put(portDeletion.phase, durationMillis);
+
+    sendRequest(Operation
+        .createPatch(this, getSelfLink())
+        .setBody(patchState)
+        .setCompletion((op, ex) -> {
+          if (ex != null) {
+            chainCallback.onFailure(ex);
+            return;
+          }
+          next.run();
+        }));
   }
 
   private void validateStartState(DeleteLogicalPortsTask state) {
     validateState(state);
 
-    // Disallow restarting the service.
-    checkState(state.taskState.stage != TaskState.TaskStage.STARTED,
-        "Service state is invalid (START). Restart is disabled.");
+    // A restarted task continues from its sub-stage.
+    checkState(state.taskState.stage != TaskState.TaskStage.STARTED || state.taskState.subStage != null,
+        "Service state is invalid (START). Sub-stage is required.");
   }
 
   private void validateState(DeleteLogicalPortsTask state) {
@@ -537,7 +497,6 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
     ValidationUtils.validatePatch(currentState, patchState);
     ValidationUtils.validateTaskStage(patchState.taskState);
     ValidationUtils.validateTaskStageProgression(currentState.taskState, patchState.taskState);
-    validateTaskSubStage(currentState.taskState.subStage, patchState.taskState.subStage);
   }
 
   private DeleteLogicalPortsTask buildPatch(TaskState.TaskStage stage) {
@@ -562,11 +521,6 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
     return state;
   }
 
-  private void progressTask(TaskState.SubStage subStage) {
-    DeleteLogicalPortsTask patch = buildPatch(TaskState.TaskStage.STARTED, subStage);
-    TaskUtils.sendSelfPatch(DeleteLogicalPortsTaskService.this, patch);
-  }
-
   private void finishTask() {
     DeleteLogicalPortsTask patch = buildPatch(TaskState.TaskStage.FINISHED);
     TaskUtils.sendSelfPatch(DeleteLogicalPortsTaskService.this, patch);
@@ -578,24 +532,20 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
     TaskUtils.sendSelfPatch(this, patchState);
   }
 
-  private void validateTaskSubStage(TaskState.SubStage startSubStage, TaskState.SubStage patchSubStage) {
-    if (patchSubStage != null) {
-      switch (patchSubStage) {
-        case WAIT_DELETE_TIER1_ROUTER_LINK_PORT:
-          checkState(startSubStage != null && startSubStage == TaskState.SubStage.DELETE_TIER1_ROUTER_LINK_PORT);
-          break;
-
-        case WAIT_DELETE_TIER0_ROUTER_LINK_PORT:
-          checkState(startSubStage != null && startSubStage == TaskState.SubStage.DELETE_TIER0_ROUTER_LINK_PORT);
-          break;
-
-        case WAIT_DELETE_TIER1_ROUTER_DOWN_LINK_PORT:
-          checkState(startSubStage != null && startSubStage == TaskState.SubStage.DELETE_TIER1_ROUTER_DOWN_LINK_PORT);
-          break;
-
-        case WAIT_DELETE_SWITCH_PORT:
-          checkState(startSubStage != null && startSubStage == TaskState.SubStage.DELETE_SWITCH_PORT);
-      }
+  /**
+   * A port to delete.
+   */
+  private static class PortDeletion {
+    final String phase;
+    final String portId;
+    final String description;
+    final boolean isSwitchPort;
+
+    PortDeletion(String phase, String portId, String description, boolean isSwitchPort) {
+      this.phase = phase;
+      this.portId = portId;
+      this.description = description;
+      this.isSwitchPort = isSwitchPort;
     }
   }
 }
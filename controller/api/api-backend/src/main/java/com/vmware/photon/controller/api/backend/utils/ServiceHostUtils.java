@@ -24,6 +24,10 @@ import com.vmware.xenon.common.ServiceHost;
  */
 public class ServiceHostUtils {
 
+  /**
+   * Returns the NSX client of an endpoint. The client is shared by all the services of the host, and must not be
+   * closed by its users.
+   */
   public static NsxClient getNsxClient(ServiceHost host,
                                        String endpoint,
                                        String username,
@@ -27,6 +27,7 @@ import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.UriUtils;
 
+import com.google.common.util.concurrent.FutureCallback;
 import org.apache.http.HttpStatus;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.AfterMethod;
@@ -37,14 +38,23 @@ import org.testng.annotations.Test;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.testng.Assert.fail;
 
 import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.UUID;
 
 /**
@@ -128,6 +138,10 @@ public class DeleteLogicalPortsTaskServiceTest {
       return new Object[][] {
           {TaskState.TaskStage.CREATED, null,
               TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS},
+          {TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS,
+              TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS},
+          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS,
+              TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS},
           {TaskState.TaskStage.FINISHED, null, TaskState.TaskStage.FINISHED, null},
           {TaskState.TaskStage.CANCELLED, null, TaskState.TaskStage.CANCELLED, null},
           {TaskState.TaskStage.FAILED, null, TaskState.TaskStage.FAILED, null}
@@ -135,17 +149,17 @@ public class DeleteLogicalPortsTaskServiceTest {
     }
 
     @Test
-    public void testRestartDisabled() throws Throwable {
+    public void testRestartWithoutSubStage() throws Throwable {
       try {
         createDeleteLogicalPortsTaskService(
             host,
             deleteLogicalPortsTaskService,
             TaskState.TaskStage.STARTED,
-            TaskState.SubStage.GET_LINK_PORTS,
+            null,
             ControlFlags.CONTROL_FLAG_OPERATION_PROCESSING_DISABLED);
         fail("should have failed due to invalid START state");
       } catch (XenonRuntimeException ex) {
-        assertThat(ex.getMessage(), is("Service state is invalid (START). Restart is disabled."));
+        assertThat(ex.getMessage(), is("Service state is invalid (START). Sub-stage is required."));
       }
     }
 
@@ -241,46 +255,19 @@ public class DeleteLogicalPortsTaskServiceTest {
     public Object[][] getValidStageTransition() {
       return new Object[][] {
           {TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_LINK_PORT,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER0_ROUTER_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER0_ROUTER_LINK_PORT,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_DOWN_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_DOWN_LINK_PORT,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_SWITCH_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_SWITCH_PORT,
+              TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS},
+          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS,
               TaskState.TaskStage.FINISHED, null},
 
           {TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS,
               TaskState.TaskStage.FAILED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_LINK_PORT,
-              TaskState.TaskStage.FAILED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER0_ROUTER_LINK_PORT,
-              TaskState.TaskStage.FAILED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_DOWN_LINK_PORT,
-              TaskState.TaskStage.FAILED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_SWITCH_PORT,
+          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS,
               TaskState.TaskStage.FAILED, null},
 
           {TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS,
               TaskState.TaskStage.CANCELLED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_LINK_PORT,
+          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS,
               TaskState.TaskStage.CANCELLED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER0_ROUTER_LINK_PORT,
-              TaskState.TaskStage.CANCELLED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_DOWN_LINK_PORT,
-              TaskState.TaskStage.CANCELLED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_SWITCH_PORT,
-              TaskState.TaskStage.CANCELLED, null},
-
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_LINK_PORT,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.WAIT_DELETE_TIER1_ROUTER_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER0_ROUTER_LINK_PORT,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.WAIT_DELETE_TIER0_ROUTER_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_DOWN_LINK_PORT,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.WAIT_DELETE_TIER1_ROUTER_DOWN_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_SWITCH_PORT,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.WAIT_DELETE_SWITCH_PORT}
       };
     }
 
@@ -320,14 +307,8 @@ public class DeleteLogicalPortsTaskServiceTest {
               TaskState.TaskStage.CREATED, null},
           {TaskState.TaskStage.CANCELLED, null,
               TaskState.TaskStage.CREATED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.WAIT_DELETE_TIER1_ROUTER_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.WAIT_DELETE_TIER0_ROUTER_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.WAIT_DELETE_TIER1_ROUTER_DOWN_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.WAIT_DELETE_SWITCH_PORT}
+          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS,
+              TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS},
       };
     }
 
@@ -412,6 +393,57 @@ public class DeleteLogicalPortsTaskServiceTest {
       };
     }
 
+    @Test
+    public void testRecordProgress() throws Throwable {
+      DeleteLogicalPortsTask createdState = createDeleteLogicalPortsTaskService(
+          host,
+          deleteLogicalPortsTaskService,
+          TaskState.TaskStage.CREATED,
+          null,
+          ControlFlags.CONTROL_FLAG_OPERATION_PROCESSING_DISABLED);
+
+      DeleteLogicalPortsTask patchState = buildPatchState(TaskState.TaskStage.STARTED,
+          TaskState.SubStage.DELETE_PORTS);
+      patchState.phaseDurationsMillis = new HashMap<>();
+      patchState.phaseDurationsMillis.put(DeleteLogicalPortsTaskService.PHASE_GET_LINK_PORTS, 10L);
+      host.sendRequestAndWait(Operation
+          .createPatch(UriUtils.buildUri(host, createdState.documentSelfLink))
+          .setBody(patchState));
+
+      // A patch without task state only adds a deleted port and the duration of its deletion
+      patchState = new DeleteLogicalPortsTask();
+      patchState.deletedPorts = Collections.singleton(NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID);
+      patchState.phaseDurationsMillis = new HashMap<>();
+      patchState.phaseDurationsMillis.put(DeleteLogicalPortsTaskService.PHASE_DELETE_TIER1_ROUTER_LINK_PORT, 20L);
+      Operation result = host.sendRequestAndWait(Operation
+          .createPatch(UriUtils.buildUri(host, createdState.documentSelfLink))
+          .setBody(patchState));
+      assertThat(result.getStatusCode(), is(HttpStatus.SC_OK));
+
+      patchState = new DeleteLogicalPortsTask();
+      patchState.deletedPorts = Collections.singleton(NsxClientMock.PORT_ON_SWITCH_ID);
+      patchState.phaseDurationsMillis = new HashMap<>();
+      patchState.phaseDurationsMillis.put(DeleteLogicalPortsTaskService.PHASE_DELETE_SWITCH_PORT, 30L);
+      result = host.sendRequestAndWait(Operation
+          .createPatch(UriUtils.buildUri(host, createdState.documentSelfLink))
+          .setBody(patchState));
+      assertThat(result.getStatusCode(), is(HttpStatus.SC_OK));
+
+      DeleteLogicalPortsTask savedState = host.getServiceState(DeleteLogicalPortsTask.class,
+          createdState.documentSelfLink);
+      assertThat(savedState.taskState.stage, is(TaskState.TaskStage.STARTED));
+      assertThat(savedState.taskState.subStage, is(TaskState.SubStage.DELETE_PORTS));
+      assertThat(savedState.deletedPorts, containsInAnyOrder(
+          NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID,
+          NsxClientMock.PORT_ON_SWITCH_ID));
+      assertThat(savedState.phaseDurationsMillis.size(), is(3));
+      assertThat(savedState.phaseDurationsMillis.get(DeleteLogicalPortsTaskService.PHASE_GET_LINK_PORTS), is(10L));
+      assertThat(savedState.phaseDurationsMillis.get(DeleteLogicalPortsTaskService.PHASE_DELETE_TIER1_ROUTER_LINK_PORT),
+          is(20L));
+      assertThat(savedState.phaseDurationsMillis.get(DeleteLogicalPortsTaskService.PHASE_DELETE_SWITCH_PORT),
+          is(30L));
+    }
+
     private void patchTaskToState(String documentSelfLink,
                                   TaskState.TaskStage targetStage,
                                   TaskState.SubStage targetSubStage) throws Throwable {
@@ -467,6 +499,86 @@ public class DeleteLogicalPortsTaskServiceTest {
 
       DeleteLogicalPortsTask savedState = startService();
       assertThat(savedState.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      assertThat(savedState.deletedPorts, containsInAnyOrder(
+          NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID,
+          NsxClientMock.LINK_PORT_ON_TIER0_ROUTER_ID,
+          NsxClientMock.DOWN_LINK_PORT_ON_TIER1_ROUTER_ID,
+          NsxClientMock.PORT_ON_SWITCH_ID));
+      assertThat(savedState.phaseDurationsMillis.keySet(), containsInAnyOrder(
+          DeleteLogicalPortsTaskService.PHASE_GET_LINK_PORTS,
+          DeleteLogicalPortsTaskService.PHASE_DELETE_TIER1_ROUTER_LINK_PORT,
+          DeleteLogicalPortsTaskService.PHASE_DELETE_TIER0_ROUTER_LINK_PORT,
+          DeleteLogicalPortsTaskService.PHASE_DELETE_TIER1_ROUTER_DOWN_LINK_PORT,
+          DeleteLogicalPortsTaskService.PHASE_DELETE_SWITCH_PORT));
+    }
+
+    @Test
+    public void testDeleteLogicalPortsAfterRetry() throws Throwable {
+      NsxClientMock nsxClientMock = new NsxClientMock.Builder()
+          .listLogicalRouterPorts(true)
+          .deleteLogicalRouterPort(NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID, true)
+          .deleteLogicalRouterPort(NsxClientMock.LINK_PORT_ON_TIER0_ROUTER_ID, false, false, true)
+          .deleteLogicalRouterPort(NsxClientMock.DOWN_LINK_PORT_ON_TIER1_ROUTER_ID, true)
+          .deleteLogicalPort(true)
+          .checkLogicalRouterPortExistence(NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID, true)
+          .checkLogicalRouterPortExistence(NsxClientMock.LINK_PORT_ON_TIER0_ROUTER_ID, true)
+          .checkLogicalRouterPortExistence(NsxClientMock.DOWN_LINK_PORT_ON_TIER1_ROUTER_ID, true)
+          .checkLogicalSwitchPortExistence(true)
+          .build();
+      doReturn(nsxClientMock).when(nsxClientFactory).create(any(String.class), any(String.class), any(String.class));
+
+      DeleteLogicalPortsTask savedState = startService();
+      assertThat(savedState.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      assertThat(savedState.deletedPorts.size(), is(4));
+      verify(nsxClientMock.getLogicalRouterApi(), times(3))
+          .deleteLogicalRouterPort(eq(NsxClientMock.LINK_PORT_ON_TIER0_ROUTER_ID), any(FutureCallback.class));
+      verify(nsxClientMock.getLogicalRouterApi(), times(1))
+          .deleteLogicalRouterPort(eq(NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID), any(FutureCallback.class));
+    }
+
+    @Test
+    public void testResumeDeletePorts() throws Throwable {
+      NsxClientMock nsxClientMock = new NsxClientMock.Builder()
+          .deleteLogicalRouterPort(NsxClientMock.LINK_PORT_ON_TIER0_ROUTER_ID, true)
+          .deleteLogicalPort(true)
+          .checkLogicalRouterPortExistence(NsxClientMock.LINK_PORT_ON_TIER0_ROUTER_ID, true)
+          .checkLogicalSwitchPortExistence(true)
+          .build();
+      doReturn(nsxClientMock).when(nsxClientFactory).create(any(String.class), any(String.class), any(String.class));
+
+      // The previous owner deleted the first port of each chain
+      DeleteLogicalPortsTask startState = buildStartState(TaskState.TaskStage.STARTED,
+          TaskState.SubStage.DELETE_PORTS, 0);
+      startState.logicalLinkPortOnTier1Router = NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID;
+      startState.logicalLinkPortOnTier0Router = NsxClientMock.LINK_PORT_ON_TIER0_ROUTER_ID;
+      startState.logicalDownLinkPortOnTier1Router = NsxClientMock.DOWN_LINK_PORT_ON_TIER1_ROUTER_ID;
+      startState.logicalPortOnSwitch = NsxClientMock.PORT_ON_SWITCH_ID;
+      startState.deletedPorts = new HashSet<>(Arrays.asList(
+          NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID,
+          NsxClientMock.DOWN_LINK_PORT_ON_TIER1_ROUTER_ID));
+
+      DeleteLogicalPortsTask savedState = testEnvironment.callServiceAndWaitForState(
+          DeleteLogicalPortsTaskService.FACTORY_LINK,
+          startState,
+          DeleteLogicalPortsTask.class,
+          (state) -> TaskUtils.finalTaskStages.contains(state.taskState.stage));
+      assertThat(savedState.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      assertThat(savedState.deletedPorts, containsInAnyOrder(
+          NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID,
+          NsxClientMock.LINK_PORT_ON_TIER0_ROUTER_ID,
+          NsxClientMock.DOWN_LINK_PORT_ON_TIER1_ROUTER_ID,
+          NsxClientMock.PORT_ON_SWITCH_ID));
+
+      verify(nsxClientMock.getLogicalRouterApi(), never())
+          .listLogicalRouterPorts(anyString(), any(FutureCallback.class));
+      verify(nsxClientMock.getLogicalRouterApi(), never())
+          .deleteLogicalRouterPort(eq(NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID), any(FutureCallback.class));
+      verify(nsxClientMock.getLogicalRouterApi(), never())
+          .deleteLogicalRouterPort(eq(NsxClientMock.DOWN_LINK_PORT_ON_TIER1_ROUTER_ID), any(FutureCallback.class));
+      verify(nsxClientMock.getLogicalRouterApi())
+          .deleteLogicalRouterPort(eq(NsxClientMock.LINK_PORT_ON_TIER0_ROUTER_ID), any(FutureCallback.class));
+      verify(nsxClientMock.getLogicalSwitchApi())
+          .deleteLogicalPort(eq(NsxClientMock.PORT_ON_SWITCH_ID), any(FutureCallback.class));
     }
 
     @Test
@@ -483,9 +595,9 @@ public class DeleteLogicalPortsTaskServiceTest {
 
     @Test
     public void testFailedToDeleteTier1LogicalRouterPort() throws Throwable {
-      NsxClientMock nsxClientMock = new NsxClientMock.Builder()
+      NsxClientMock nsxClientMock = switchChain(new NsxClientMock.Builder()
           .listLogicalRouterPorts(true)
-          .deleteLogicalRouterPort(false)
+          .deleteLogicalRouterPort(NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID, false))
           .build();
       doReturn(nsxClientMock).when(nsxClientFactory).create(any(String.class), any(String.class), any(String.class));
 
@@ -496,10 +608,10 @@ public class DeleteLogicalPortsTaskServiceTest {
 
     @Test
     public void testFailedToCheckTier1RouterPortExistence() throws Throwable {
-      NsxClientMock nsxClientMock = new NsxClientMock.Builder()
+      NsxClientMock nsxClientMock = switchChain(new NsxClientMock.Builder()
           .listLogicalRouterPorts(true)
-          .deleteLogicalRouterPort(true)
-          .checkLogicalRouterPortExistence(false)
+          .deleteLogicalRouterPort(NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID, true)
+          .checkLogicalRouterPortExistence(NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID, false))
           .build();
       doReturn(nsxClientMock).when(nsxClientFactory).create(anyString(), anyString(), anyString());
 
@@ -510,10 +622,11 @@ public class DeleteLogicalPortsTaskServiceTest {
 
     @Test
     public void testFailedToDeleteTier0LogicalRouterPort() throws Throwable {
-      NsxClientMock nsxClientMock = new NsxClientMock.Builder()
+      NsxClientMock nsxClientMock = switchChain(new NsxClientMock.Builder()
           .listLogicalRouterPorts(true)
-          .deleteLogicalRouterPort(true, false)
-          .checkLogicalRouterPortExistence(true)
+          .deleteLogicalRouterPort(NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID, true)
+          .deleteLogicalRouterPort(NsxClientMock.LINK_PORT_ON_TIER0_ROUTER_ID, false)
+          .checkLogicalRouterPortExistence(NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID, true))
           .build();
       doReturn(nsxClientMock).when(nsxClientFactory).create(any(String.class), any(String.class), any(String.class));
 
@@ -524,10 +637,12 @@ public class DeleteLogicalPortsTaskServiceTest {
 
     @Test
     public void testFailedToCheckTier0RouterPortExistence() throws Throwable {
-      NsxClientMock nsxClientMock = new NsxClientMock.Builder()
+      NsxClientMock nsxClientMock = switchChain(new NsxClientMock.Builder()
           .listLogicalRouterPorts(true)
-          .deleteLogicalRouterPort(true, true)
-          .checkLogicalRouterPortExistence(true, false)
+          .deleteLogicalRouterPort(NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID, true)
+          .deleteLogicalRouterPort(NsxClientMock.LINK_PORT_ON_TIER0_ROUTER_ID, true)
+          .checkLogicalRouterPortExistence(NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID, true)
+          .checkLogicalRouterPortExistence(NsxClientMock.LINK_PORT_ON_TIER0_ROUTER_ID, false))
           .build();
       doReturn(nsxClientMock).when(nsxClientFactory).create(anyString(), anyString(), anyString());
 
@@ -538,10 +653,9 @@ public class DeleteLogicalPortsTaskServiceTest {
 
     @Test
     public void testFailedToDeleteTier1RouterDownLinkPort() throws Throwable {
-      NsxClientMock nsxClientMock = new NsxClientMock.Builder()
+      NsxClientMock nsxClientMock = linkPortChain(new NsxClientMock.Builder()
           .listLogicalRouterPorts(true)
-          .deleteLogicalRouterPort(true, true, false)
-          .checkLogicalRouterPortExistence(true, true)
+          .deleteLogicalRouterPort(NsxClientMock.DOWN_LINK_PORT_ON_TIER1_ROUTER_ID, false))
           .build();
       doReturn(nsxClientMock).when(nsxClientFactory).create(any(String.class), any(String.class), any(String.class));
 
@@ -552,10 +666,10 @@ public class DeleteLogicalPortsTaskServiceTest {
 
     @Test
     public void testFailedToCheckTier1RouterDownLinkPortExistence() throws Throwable {
-      NsxClientMock nsxClientMock = new NsxClientMock.Builder()
+      NsxClientMock nsxClientMock = linkPortChain(new NsxClientMock.Builder()
           .listLogicalRouterPorts(true)
-          .deleteLogicalRouterPort(true, true, true)
-          .checkLogicalRouterPortExistence(true, true, false)
+          .deleteLogicalRouterPort(NsxClientMock.DOWN_LINK_PORT_ON_TIER1_ROUTER_ID, true)
+          .checkLogicalRouterPortExistence(NsxClientMock.DOWN_LINK_PORT_ON_TIER1_ROUTER_ID, false))
           .build();
       doReturn(nsxClientMock).when(nsxClientFactory).create(anyString(), anyString(), anyString());
 
@@ -566,11 +680,11 @@ public class DeleteLogicalPortsTaskServiceTest {
 
     @Test
     public void testFailedToDeleteLogicalSwitchPort() throws Throwable {
-      NsxClientMock nsxClientMock = new NsxClientMock.Builder()
+      NsxClientMock nsxClientMock = linkPortChain(new NsxClientMock.Builder()
           .listLogicalRouterPorts(true)
-          .deleteLogicalRouterPort(true, true, true)
+          .deleteLogicalRouterPort(NsxClientMock.DOWN_LINK_PORT_ON_TIER1_ROUTER_ID, true)
           .deleteLogicalPort(false)
-          .checkLogicalRouterPortExistence(true, true, true)
+          .checkLogicalRouterPortExistence(NsxClientMock.DOWN_LINK_PORT_ON_TIER1_ROUTER_ID, true))
           .build();
       doReturn(nsxClientMock).when(nsxClientFactory).create(any(String.class), any(String.class), any(String.class));
 
@@ -581,12 +695,12 @@ public class DeleteLogicalPortsTaskServiceTest {
 
     @Test
     public void testFailedToCheckLogicalSwitchPortExistence() throws Throwable {
-      NsxClientMock nsxClientMock = new NsxClientMock.Builder()
+      NsxClientMock nsxClientMock = linkPortChain(new NsxClientMock.Builder()
           .listLogicalRouterPorts(true)
-          .deleteLogicalRouterPort(true, true, true)
+          .deleteLogicalRouterPort(NsxClientMock.DOWN_LINK_PORT_ON_TIER1_ROUTER_ID, true)
           .deleteLogicalPort(true)
-          .checkLogicalRouterPortExistence(true, true, true)
-          .checkLogicalSwitchPortExistence(false)
+          .checkLogicalRouterPortExistence(NsxClientMock.DOWN_LINK_PORT_ON_TIER1_ROUTER_ID, true)
+          .checkLogicalSwitchPortExistence(false))
           .build();
       doReturn(nsxClientMock).when(nsxClientFactory).create(any(String.class), any(String.class), any(String.class));
 
@@ -595,6 +709,30 @@ public class DeleteLogicalPortsTaskServiceTest {
       assertThat(savedState.taskState.failure.message, containsString("checkLogicalSwitchPortExistence failed"));
     }
 
+    /**
+     * Answers the deletion of the link ports between the tier-1 and tier-0 routers, which is done concurrently with
+     * the deletion of the ports a failing test is about.
+     */
+    private NsxClientMock.Builder linkPortChain(NsxClientMock.Builder builder) throws Throwable {
+      return builder
+          .deleteLogicalRouterPort(NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID, true)
+          .deleteLogicalRouterPort(NsxClientMock.LINK_PORT_ON_TIER0_ROUTER_ID, true)
+          .checkLogicalRouterPortExistence(NsxClientMock.LINK_PORT_ON_TIER1_ROUTER_ID, true)
+          .checkLogicalRouterPortExistence(NsxClientMock.LINK_PORT_ON_TIER0_ROUTER_ID, true);
+    }
+
+    /**
+     * Answers the deletion of the down-link port of the tier-1 router and the switch port, which is done concurrently
+     * with the deletion of the ports a failing test is about.
+     */
+    private NsxClientMock.Builder switchChain(NsxClientMock.Builder builder) throws Throwable {
+      return builder
+          .deleteLogicalRouterPort(NsxClientMock.DOWN_LINK_PORT_ON_TIER1_ROUTER_ID, true)
+          .deleteLogicalPort(true)
+          .checkLogicalRouterPortExistence(NsxClientMock.DOWN_LINK_PORT_ON_TIER1_ROUTER_ID, true)
+          .checkLogicalSwitchPortExistence(true);
+    }
+
     private DeleteLogicalPortsTask startService() throws Throwable {
       return testEnvironment.callServiceAndWaitForState(
           DeleteLogicalPortsTaskService.FACTORY_LINK,
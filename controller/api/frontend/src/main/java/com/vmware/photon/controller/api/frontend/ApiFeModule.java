@@ -122,6 +122,9 @@ import java.util.concurrent.TimeUnit;
  */
 public class ApiFeModule extends AbstractModule {
   private static final Logger logger = LoggerFactory.getLogger(ApiFeModule.class);
+
+  private static final int TASK_JOURNAL_THREADS = 4;
+
   private ApiFeConfiguration configuration;
 
   // APIFE will use the Xenon service host to communicate with the other Xenon services like deployer, scheduler,
@@ -192,7 +195,7 @@ public class ApiFeModule extends AbstractModule {
           (Gauge<Integer>) () -> workQueue.size());
     }
 
-    return new TaskCommandExecutorService(
+    TaskCommandExecutorService executor = new TaskCommandExecutorService(
         configuration.getBackgroundWorkers(),
         configuration.getBackgroundWorkers(),
         0L,
@@ -200,6 +203,17 @@ public class ApiFeModule extends AbstractModule {
         workQueue,
         threadFactory
     );
+    registerGauge("active-workers", () -> executor.getActiveCount());
+    registerGauge("suspended-tasks", () -> executor.getSuspendedTaskCount());
+    registerGauge("pending-continuations", () -> executor.getPendingContinuationCount());
+    return executor;
+  }
+
+  private static void registerGauge(String name, Gauge<Integer> gauge) {
+    String metricName = MetricRegistry.name(ApiFeService.class, name);
+    if (!DefaultMetricRegistry.REGISTRY.getGauges().containsKey(metricName)) {
+      DefaultMetricRegistry.REGISTRY.register(metricName, gauge);
+    }
   }
 
   @Provides
@@ -209,6 +223,21 @@ public class ApiFeModule extends AbstractModule {
     return Executors.newScheduledThreadPool(Constants.DEFAULT_SCHEDULED_THREAD_POOL_SIZE);
   }
 
+  /**
+   * Task changes are written behind on their own threads, so that they are not delayed by the other scheduled
+   * tasks.
+   */
+  @Provides
+  @Singleton
+  @TaskJournalExecutor
+  public ScheduledExecutorService getTaskJournalExecutor() {
+    ThreadFactory threadFactory = new ThreadFactoryBuilder()
+        .setNameFormat("TaskJournal" + "-%d")
+        .setDaemon(true)
+        .build();
+    return Executors.newScheduledThreadPool(TASK_JOURNAL_THREADS, threadFactory);
+  }
+
   @Provides
   @Singleton
   public PaginationConfig getPaginationConfig() {
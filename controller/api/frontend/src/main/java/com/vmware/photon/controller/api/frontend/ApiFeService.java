@@ -23,6 +23,7 @@ import com.vmware.photon.controller.api.frontend.filter.NetworkToSubnetRedirecti
 import com.vmware.photon.controller.api.frontend.filter.PauseFilter;
 import com.vmware.photon.controller.api.frontend.filter.UrlTrailingSlashFilter;
 import com.vmware.photon.controller.api.frontend.jackson.GuiceModule;
+import com.vmware.photon.controller.api.frontend.lib.image.ImageUploadManager;
 import com.vmware.photon.controller.api.frontend.providers.ConstraintViolationExceptionMapper;
 import com.vmware.photon.controller.api.frontend.providers.ExternalExceptionMapper;
 import com.vmware.photon.controller.api.frontend.providers.JsonProcessingExceptionMapper;
@@ -46,6 +47,8 @@ import com.vmware.photon.controller.api.frontend.resources.flavor.FlavorsResourc
 import com.vmware.photon.controller.api.frontend.resources.host.DeploymentHostsResource;
 import com.vmware.photon.controller.api.frontend.resources.host.HostResource;
 import com.vmware.photon.controller.api.frontend.resources.image.ImageResource;
+import com.vmware.photon.controller.api.frontend.resources.image.ImageUploadResource;
+import com.vmware.photon.controller.api.frontend.resources.image.ImageUploadsResource;
 import com.vmware.photon.controller.api.frontend.resources.image.ImagesResource;
 import com.vmware.photon.controller.api.frontend.resources.info.InfoResource;
 import com.vmware.photon.controller.api.frontend.resources.physicalnetwork.SubnetPortGroupsSetResource;
@@ -215,6 +218,8 @@ public class ApiFeService extends Application<ApiFeStaticConfiguration> {
     environment.servlets().addFilter("UrlTrailingSlashFilter", injector.getInstance(UrlTrailingSlashFilter.class))
         .addMappingForUrlPatterns(EnumSet.allOf(DispatcherType.class), true, "/api");
 
+    environment.lifecycle().manage(injector.getInstance(ImageUploadManager.class));
+
     GraphiteConfig graphite = configuration.getGraphite();
     if (graphite != null) {
       graphite.enable();
@@ -250,6 +255,8 @@ public class ApiFeService extends Application<ApiFeStaticConfiguration> {
     resources.add(ImageResource.class);
     resources.add(ImagesResource.class);
     resources.add(ImageTasksResource.class);
+    resources.add(ImageUploadResource.class);
+    resources.add(ImageUploadsResource.class);
     resources.add(InfoResource.class);
     resources.add(ProjectClustersResource.class);
     resources.add(ProjectDisksResource.class);
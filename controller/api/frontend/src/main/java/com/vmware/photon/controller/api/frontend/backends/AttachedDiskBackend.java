@@ -20,7 +20,9 @@ import com.vmware.photon.controller.api.frontend.entities.VmEntity;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
 import com.vmware.photon.controller.api.model.AttachedDiskCreateSpec;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * AttachedDiskBackend is interface for attached disk backend.
@@ -40,5 +42,10 @@ public interface AttachedDiskBackend {
 
   List<AttachedDiskEntity> findByVmId(String vmId);
 
+  /**
+   * @return the attached disks of each of the VMs, by VM id
+   */
+  Map<String, List<AttachedDiskEntity>> findByVmIds(Collection<String> vmIds);
+
   void deleteAttachedDiskById(String attachedDiskId);
 }
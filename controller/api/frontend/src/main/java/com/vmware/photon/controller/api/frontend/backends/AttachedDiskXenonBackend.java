@@ -19,14 +19,18 @@ import com.vmware.photon.controller.api.frontend.entities.BaseDiskEntity;
 import com.vmware.photon.controller.api.frontend.entities.PersistentDiskEntity;
 import com.vmware.photon.controller.api.frontend.entities.VmEntity;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
+import com.vmware.photon.controller.api.frontend.utils.PaginationUtils;
 import com.vmware.photon.controller.api.model.AttachedDiskCreateSpec;
 import com.vmware.photon.controller.api.model.EphemeralDisk;
 import com.vmware.photon.controller.api.model.PersistentDisk;
 import com.vmware.photon.controller.cloudstore.xenon.entity.AttachedDiskService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.AttachedDiskServiceFactory;
 import com.vmware.photon.controller.common.xenon.ServiceUtils;
+import com.vmware.xenon.common.ServiceDocumentQueryResult;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,7 +38,10 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * AttachedDiskXenonBackend is performing attach disk and detach disk operations.
@@ -42,6 +49,11 @@ import java.util.List;
 public class AttachedDiskXenonBackend implements AttachedDiskBackend {
   private static final Logger logger = LoggerFactory.getLogger(AttachedDiskXenonBackend.class);
 
+  /**
+   * Number of VM ids matched by one query, each of them adds a clause to the query.
+   */
+  private static final int QUERY_BATCH_SIZE = 100;
+
   private final ApiFeXenonRestClient xenonClient;
   private final DiskBackend diskBackend;
 
@@ -126,6 +138,24 @@ public class AttachedDiskXenonBackend implements AttachedDiskBackend {
     return attachedDiskEntities;
   }
 
+  @Override
+  public Map<String, List<AttachedDiskEntity>> findByVmIds(Collection<String> vmIds) {
+    Map<String, List<AttachedDiskEntity>> attachedDiskEntities = new HashMap<>();
+    for (String vmId : vmIds) {
+      attachedDiskEntities.put(vmId, new ArrayList<>());
+    }
+
+    for (List<String> batch : Iterables.partition(attachedDiskEntities.keySet(), QUERY_BATCH_SIZE)) {
+      ServiceDocumentQueryResult queryResult = xenonClient.queryDocuments(AttachedDiskService.State.class, null,
+          ImmutableMap.of("vmId", batch), Optional.<Integer>absent(), true, true);
+      for (AttachedDiskService.State state :
+          PaginationUtils.xenonQueryResultToResourceList(AttachedDiskService.State.class, queryResult).getItems()) {
+        attachedDiskEntities.get(state.vmId).add(toAttachedDiskEntity(state, null));
+      }
+    }
+    return attachedDiskEntities;
+  }
+
   @Override
   public void deleteAttachedDiskById(String attachedDiskId) {
     xenonClient.delete(AttachedDiskServiceFactory.SELF_LINK + "/" + attachedDiskId,
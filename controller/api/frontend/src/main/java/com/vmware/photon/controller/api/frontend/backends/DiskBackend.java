@@ -25,6 +25,9 @@ import com.vmware.photon.controller.api.model.ResourceList;
 
 import com.google.common.base.Optional;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * The Disk Backend Interface.
  */
@@ -51,6 +54,11 @@ public interface DiskBackend {
 
   BaseDiskEntity find(String kind, String id) throws DiskNotFoundException;
 
+  /**
+   * @return the disks of the given kind which exist, by id
+   */
+  Map<String, BaseDiskEntity> findByIds(String kind, Collection<String> ids);
+
   ResourceList<PersistentDisk> getDisksPage(String pageLink) throws ExternalException;
 
 }
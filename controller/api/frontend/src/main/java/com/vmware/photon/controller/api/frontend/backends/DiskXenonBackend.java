@@ -50,11 +50,13 @@ import com.vmware.photon.controller.cloudstore.xenon.entity.DiskService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.DiskServiceFactory;
 import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
+import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceDocumentQueryResult;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -62,8 +64,11 @@ import org.slf4j.LoggerFactory;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -73,6 +78,11 @@ public class DiskXenonBackend implements DiskBackend {
 
   private static final Logger logger = LoggerFactory.getLogger(DiskXenonBackend.class);
 
+  /**
+   * Number of disks matched by one query, each of them adds a clause to the query.
+   */
+  private static final int QUERY_BATCH_SIZE = 100;
+
   private final ApiFeXenonRestClient xenonClient;
   private final ProjectBackend projectBackend;
   private final ResourceTicketBackend resourceTicketBackend;
@@ -201,6 +211,23 @@ public class DiskXenonBackend implements DiskBackend {
     return toDiskEntity(state, kind);
   }
 
+  @Override
+  public Map<String, BaseDiskEntity> findByIds(String kind, Collection<String> ids) {
+    Map<String, BaseDiskEntity> diskEntities = new HashMap<>();
+    for (List<String> batch : Iterables.partition(ids, QUERY_BATCH_SIZE)) {
+      List<String> links = batch.stream()
+          .map(id -> DiskServiceFactory.SELF_LINK + "/" + id)
+          .collect(Collectors.toList());
+      ServiceDocumentQueryResult queryResult = xenonClient.queryDocuments(DiskService.State.class, null,
+          ImmutableMap.of(ServiceDocument.FIELD_NAME_SELF_LINK, links), Optional.<Integer>absent(), true, true);
+      for (DiskService.State state :
+          PaginationUtils.xenonQueryResultToResourceList(DiskService.State.class, queryResult).getItems()) {
+        diskEntities.put(ServiceUtils.getIDFromDocumentSelfLink(state.documentSelfLink), toDiskEntity(state, kind));
+      }
+    }
+    return diskEntities;
+  }
+
   @Override
   public ResourceList<PersistentDisk> getDisksPage(String pageLink) throws ExternalException {
     ServiceDocumentQueryResult queryResult = null;
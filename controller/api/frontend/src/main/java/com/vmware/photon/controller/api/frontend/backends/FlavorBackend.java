@@ -23,6 +23,9 @@ import com.vmware.photon.controller.api.model.ResourceList;
 
 import com.google.common.base.Optional;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Backend interface for flavor related operations.
  */
@@ -44,5 +47,10 @@ public interface FlavorBackend {
 
   FlavorEntity getEntityById(String id) throws ExternalException;
 
+  /**
+   * @return the names of the flavors, by flavor id
+   */
+  Map<String, String> getNamesByIds(Collection<String> ids) throws ExternalException;
+
   void tombstone(FlavorEntity flavor) throws ExternalException;
 }
@@ -38,10 +38,14 @@ import com.vmware.photon.controller.cloudstore.xenon.entity.FlavorService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.FlavorServiceFactory;
 import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
+import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceDocumentQueryResult;
 
 import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.slf4j.Logger;
@@ -49,9 +53,14 @@ import org.slf4j.LoggerFactory;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Implementation of the flavor operations with Xenon as the document store.
@@ -69,6 +78,22 @@ public class FlavorXenonBackend implements FlavorBackend {
 
   private static final String STORAGE_PREFIX = "storage.";
 
+  private static final int QUERY_BATCH_SIZE = 100;
+
+  private static final int FLAVOR_NAME_CACHE_SIZE = 1000;
+
+  private static final long FLAVOR_NAME_CACHE_EXPIRY_MINUTES = 10;
+
+  /**
+   * Flavor names by id, used to build the representations of VMs and disks. Flavors cannot be renamed, so an entry
+   * only goes stale when its flavor is deleted: deleting it through this frontend invalidates the entry, and the
+   * expiry bounds how long a flavor deleted through another frontend is remembered.
+   */
+  private final Cache<String, String> flavorNames = CacheBuilder.newBuilder()
+      .maximumSize(FLAVOR_NAME_CACHE_SIZE)
+      .expireAfterWrite(FLAVOR_NAME_CACHE_EXPIRY_MINUTES, TimeUnit.MINUTES)
+      .build();
+
   @Inject
   public FlavorXenonBackend(ApiFeXenonRestClient xenonClient, TaskBackend taskBackend, VmBackend vmBackend,
                           DiskBackend diskBackend, TombstoneBackend tombstoneBackend) {
@@ -261,7 +286,44 @@ public class FlavorXenonBackend implements FlavorBackend {
   @Override
   public FlavorEntity getEntityById(String id) throws ExternalException {
     checkNotNull(id);
-    return convertToEntity(findById(id));
+    FlavorEntity flavorEntity = convertToEntity(findById(id));
+    flavorNames.put(id, flavorEntity.getName());
+    return flavorEntity;
+  }
+
+  @Override
+  public Map<String, String> getNamesByIds(Collection<String> ids) throws ExternalException {
+    Map<String, String> names = new HashMap<>();
+    Set<String> missing = new HashSet<>();
+    for (String id : ids) {
+      String name = flavorNames.getIfPresent(checkNotNull(id));
+      if (name != null) {
+        names.put(id, name);
+      } else {
+        missing.add(id);
+      }
+    }
+
+    for (List<String> batch : Iterables.partition(missing, QUERY_BATCH_SIZE)) {
+      List<String> links = batch.stream()
+          .map(id -> FlavorServiceFactory.SELF_LINK + "/" + id)
+          .collect(Collectors.toList());
+      ServiceDocumentQueryResult queryResult = xenonClient.queryDocuments(FlavorService.State.class, null,
+          ImmutableMap.of(ServiceDocument.FIELD_NAME_SELF_LINK, links), Optional.<Integer>absent(), true, true);
+      for (FlavorService.State flavor :
+          PaginationUtils.xenonQueryResultToResourceList(FlavorService.State.class, queryResult).getItems()) {
+        String id = ServiceUtils.getIDFromDocumentSelfLink(flavor.documentSelfLink);
+        names.put(id, flavor.name);
+        flavorNames.put(id, flavor.name);
+      }
+    }
+
+    for (String id : missing) {
+      if (!names.containsKey(id)) {
+        throw new FlavorNotFoundException(id);
+      }
+    }
+    return names;
   }
 
   @Override
@@ -286,6 +348,7 @@ public class FlavorXenonBackend implements FlavorBackend {
           new FlavorService.State());
 
       tombstoneBackend.create(Flavor.KIND, flavor.getId());
+      flavorNames.invalidate(flavor.getId());
       logger.info("flavor {} is cleared", flavor.getId());
     }
   }
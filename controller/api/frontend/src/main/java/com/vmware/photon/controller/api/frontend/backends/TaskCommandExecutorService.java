@@ -17,6 +17,8 @@ import com.vmware.photon.controller.api.frontend.commands.tasks.TaskCommand;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.OutOfThreadPoolWorkerException;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,15 +26,22 @@ import org.slf4j.LoggerFactory;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Wraps ThreadPoolExecutor to throttle submission size and log uncaught exceptions.
  * <p/>
+ * Task commands waiting on an asynchronous step are suspended and do not hold a worker. Only new task commands are
+ * throttled: the continuation of a suspended task is never rejected, when the work queue is full it runs on the next
+ * worker which becomes available.
+ * <p/>
  * See {@link ThreadPoolExecutor#submit(java.util.concurrent.Callable)}.
  * See {@link ThreadPoolExecutor#afterExecute(Runnable, Throwable)}.
  */
@@ -41,6 +50,10 @@ public class TaskCommandExecutorService extends ThreadPoolExecutor {
 
   private static final Logger logger = LoggerFactory.getLogger(TaskCommandExecutorService.class);
 
+  private final AtomicInteger suspendedTasks = new AtomicInteger();
+
+  private final ConcurrentLinkedQueue<Runnable> pendingContinuations = new ConcurrentLinkedQueue<>();
+
   public TaskCommandExecutorService(int corePoolSize,
                                     int maximumPoolSize,
                                     long keepAliveTime,
@@ -62,6 +75,69 @@ public class TaskCommandExecutorService extends ThreadPoolExecutor {
     }
   }
 
+  /**
+   * Suspends a task command until a step completes, the continuation then runs on a worker.
+   *
+   * @param step         the asynchronous step the task waits on
+   * @param continuation runs the rest of the task
+   */
+  public void suspend(ListenableFuture<?> step, Runnable continuation) {
+    suspendedTasks.incrementAndGet();
+    step.addListener(suspendedTasks::decrementAndGet, MoreExecutors.sameThreadExecutor());
+    step.addListener(continuation, this::resume);
+  }
+
+  /**
+   * @return executor for the work which completes asynchronous steps, it queues like continuations do
+   */
+  public Executor getContinuationExecutor() {
+    return this::resume;
+  }
+
+  /**
+   * @return number of task commands waiting on an asynchronous step
+   */
+  public int getSuspendedTaskCount() {
+    return suspendedTasks.get();
+  }
+
+  /**
+   * @return number of continuations waiting for a worker because the work queue was full
+   */
+  public int getPendingContinuationCount() {
+    return pendingContinuations.size();
+  }
+
+  private void resume(Runnable continuation) {
+    try {
+      super.execute(continuation);
+    } catch (RejectedExecutionException e) {
+      if (isShutdown()) {
+        logger.warn("Dropping task continuation, executor is shut down");
+        return;
+      }
+
+      pendingContinuations.add(continuation);
+      try {
+        // Covers the workers having drained the pending continuations before it was added
+        super.execute(this::runPendingContinuations);
+      } catch (RejectedExecutionException ex) {
+        // The queue is still full, a worker runs it after its next command
+      }
+    }
+  }
+
+  private void runPendingContinuations() {
+    Runnable continuation;
+    while ((continuation = pendingContinuations.poll()) != null) {
+      try {
+        continuation.run();
+      } catch (Throwable t) {
+        logger.error("Uncaught exception", t);
+      }
+    }
+  }
+
   @Override
   protected void afterExecute(Runnable runnable, Throwable throwable) {
     super.afterExecute(runnable, throwable);
@@ -84,5 +160,7 @@ public class TaskCommandExecutorService extends ThreadPoolExecutor {
     if (throwable != null) {
       logger.error("Uncaught exception", throwable);
     }
+
+    runPendingContinuations();
   }
 }
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.backends;
+
+import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
+import com.vmware.photon.controller.api.frontend.backends.utils.StepUtils;
+import com.vmware.photon.controller.api.frontend.entities.StepEntity;
+import com.vmware.photon.controller.api.frontend.exceptions.external.TaskNotFoundException;
+import com.vmware.photon.controller.cloudstore.xenon.entity.TaskService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.TaskServiceFactory;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
+import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind journal of the changes made to tasks while they run. The changes made to a task within
+ * {@link #COALESCE_WINDOW_MILLIS} are merged and written to its task document in one PATCH. Terminal task states
+ * are written right away, and so are the changes pending for a task before its document is read or written in any
+ * other way.
+ * <p/>
+ * When a write fails, its changes stay pending: later changes are merged into them, and the write is retried after
+ * {@link #RETRY_DELAY_MILLIS} or with the next change written right away, such as the terminal task state.
+ * <p/>
+ * Without a scheduler, every change is written right away.
+ */
+class TaskStateJournal {
+
+  private static final Logger logger = LoggerFactory.getLogger(TaskStateJournal.class);
+
+  static final long COALESCE_WINDOW_MILLIS = 100;
+
+  static final long RETRY_DELAY_MILLIS = 1000;
+
+  private final ApiFeXenonRestClient xenonClient;
+
+  private final ConcurrentMap<String, PendingChanges> pendingChanges = new ConcurrentHashMap<>();
+
+  private final Counter savedWrites = DefaultMetricRegistry.REGISTRY.counter(
+      MetricRegistry.name(TaskXenonBackend.class, "saved-writes"));
+
+  private volatile ScheduledExecutorService scheduler;
+
+  TaskStateJournal(ApiFeXenonRestClient xenonClient) {
+    this.xenonClient = xenonClient;
+  }
+
+  void setScheduler(ScheduledExecutorService scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * @return number of task document writes saved by merging changes, since the frontend started
+   */
+  long getSavedWrites() {
+    return savedWrites.getCount();
+  }
+
+  /**
+   * Record a change of the task level fields of a task document: state, start and end times, and resource
+   * properties.
+   *
+   * @param writeNow whether to write the change, and the changes pending for the task, right away
+   */
+  void patchTask(String taskId, TaskService.State patch, boolean writeNow) throws TaskNotFoundException {
+    checkArgument(patch.steps == null, "steps are written with updateStep");
+    record(taskId, changes -> changes.merge(patch), writeNow);
+  }
+
+  /**
+   * Record a change of a step. Only the changed steps are written, and the task document merges them into its steps
+   * by operation.
+   */
+  void updateStep(StepEntity stepEntity) throws TaskNotFoundException {
+    record(stepEntity.getTask().getId(), changes -> changes.merge(stepEntity), false);
+  }
+
+  /**
+   * Write the changes pending for a task.
+   */
+  void flush(String taskId) throws TaskNotFoundException {
+    PendingChanges changes = pendingChanges.get(taskId);
+    if (changes == null) {
+      return;
+    }
+
+    synchronized (changes) {
+      if (!changes.written) {
+        write(changes);
+      }
+    }
+  }
+
+  /**
+   * Write the changes pending for all tasks, before the task documents are queried.
+   */
+  void flushAll() {
+    for (String taskId : pendingChanges.keySet()) {
+      flushQuietly(taskId);
+    }
+  }
+
+  /**
+   * Drop the changes pending for a task which is deleted.
+   */
+  void discard(String taskId) {
+    PendingChanges changes = pendingChanges.get(taskId);
+    if (changes == null) {
+      return;
+    }
+
+    synchronized (changes) {
+      changes.cancelScheduledWrite();
+      changes.written = true;
+      pendingChanges.remove(taskId, changes);
+    }
+  }
+
+  private void record(String taskId, Consumer<PendingChanges> change, boolean writeNow) throws TaskNotFoundException {
+    ScheduledExecutorService scheduler = this.scheduler;
+    while (true) {
+      PendingChanges changes = pendingChanges.computeIfAbsent(taskId, PendingChanges::new);
+      synchronized (changes) {
+        if (changes.written) {
+          // Written by another thread since it was looked up, start a new batch
+          continue;
+        }
+
+        change.accept(changes);
+        if (writeNow || scheduler == null) {
+          write(changes);
+        } else if (changes.scheduledWrite == null) {
+          changes.scheduledWrite = scheduler.schedule(() -> flushQuietly(taskId), COALESCE_WINDOW_MILLIS,
+              TimeUnit.MILLISECONDS);
+        }
+        return;
+      }
+    }
+  }
+
+  private void flushQuietly(String taskId) {
+    try {
+      flush(taskId);
+    } catch (TaskNotFoundException e) {
+      logger.warn("Task {} was deleted before its pending changes were written", taskId);
+    } catch (Throwable t) {
+      logger.error("Failed to write the pending changes of task {}, retrying in {} ms", taskId, RETRY_DELAY_MILLIS,
+          t);
+    }
+  }
+
+  /**
+   * Write a batch of changes in one PATCH. Called with the lock of the batch held, and the batch is only removed
+   * once written, so that the batches of a task are written in order. If the PATCH fails, the batch is kept so
+   * that it is written again with the changes recorded in the meantime.
+   */
+  private void write(PendingChanges changes) throws TaskNotFoundException {
+    changes.cancelScheduledWrite();
+    changes.written = true;
+    boolean retry = false;
+    try {
+      String taskLink = TaskServiceFactory.SELF_LINK + "/" + changes.taskId;
+      if (changes.steps.isEmpty()) {
+        xenonClient.patch(taskLink, changes.fields);
+      } else if (changes.fields == null && changes.steps.size() == 1) {
+        StepEntity stepEntity = changes.steps.values().iterator().next();
+        xenonClient.patch(taskLink, new TaskService.StepUpdate(StepUtils.convertMiddleEndToBackEnd(stepEntity)));
+      } else {
+        List<TaskService.State.Step> steps = new ArrayList<>();
+        for (StepEntity stepEntity : changes.steps.values()) {
+          steps.add(StepUtils.convertMiddleEndToBackEnd(stepEntity));
+        }
+        xenonClient.patch(taskLink, new TaskService.StepUpdate(steps, changes.fields));
+      }
+
+      if (changes.count > 1) {
+        savedWrites.inc(changes.count - 1);
+      }
+    } catch (DocumentNotFoundException e) {
+      throw new TaskNotFoundException(changes.taskId);
+    } catch (RuntimeException e) {
+      retry = true;
+      changes.written = false;
+      ScheduledExecutorService scheduler = this.scheduler;
+      if (scheduler != null) {
+        changes.scheduledWrite = scheduler.schedule(() -> flushQuietly(changes.taskId), RETRY_DELAY_MILLIS,
+            TimeUnit.MILLISECONDS);
+      }
+      throw e;
+    } finally {
+      if (!retry) {
+        pendingChanges.remove(changes.taskId, changes);
+      }
+    }
+  }
+
+  /**
+   * Changes of a task which are not written yet.
+   */
+  private static class PendingChanges {
+    final String taskId;
+    final Map<String, StepEntity> steps = new LinkedHashMap<>();
+    TaskService.State fields;
+    int count;
+    ScheduledFuture<?> scheduledWrite;
+    boolean written;
+
+    PendingChanges(String taskId) {
+      this.taskId = taskId;
+    }
+
+    void merge(TaskService.State patch) {
+      if (fields == null) {
+        fields = new TaskService.State();
+      }
+      if (patch.state != null) {
+        fields.state = patch.state;
+      }
+      if (patch.startedTime != null) {
+        fields.startedTime = patch.startedTime;
+      }
+      if (patch.endTime != null) {
+        fields.endTime = patch.endTime;
+      }
+      if (patch.resourceProperties != null) {
+        fields.resourceProperties = patch.resourceProperties;
+      }
+      count++;
+    }
+
+    void merge(StepEntity stepEntity) {
+      steps.put(stepEntity.getOperation().toString(), stepEntity);
+      count++;
+    }
+
+    void cancelScheduledWrite() {
+      if (scheduledWrite != null) {
+        scheduledWrite.cancel(false);
+        scheduledWrite = null;
+      }
+    }
+  }
+}
@@ -13,6 +13,7 @@
 
 package com.vmware.photon.controller.api.frontend.backends;
 
+import com.vmware.photon.controller.api.frontend.TaskJournalExecutor;
 import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
 import com.vmware.photon.controller.api.frontend.backends.utils.StepUtils;
 import com.vmware.photon.controller.api.frontend.backends.utils.TaskUtils;
@@ -35,6 +36,7 @@ import com.vmware.xenon.common.ServiceDocumentQueryResult;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
@@ -47,6 +49,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Common task operations using Xenon cloud store.
@@ -62,16 +65,36 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
 
   private final EntityLockBackend entityLockBackend;
 
+  private final TaskStateJournal journal;
+
   @Inject
   public TaskXenonBackend(
       ApiFeXenonRestClient xenonClient,
       EntityLockBackend entityLockBackend) {
     this.xenonClient = xenonClient;
     this.entityLockBackend = entityLockBackend;
+    this.journal = new TaskStateJournal(xenonClient);
 
     xenonClient.start();
   }
 
+  /**
+   * Step changes and the non-terminal task changes are written behind on this executor. When it is not bound, they
+   * are written right away.
+   */
+  @Inject(optional = true)
+  public void setScheduledExecutor(@TaskJournalExecutor ScheduledExecutorService scheduledExecutorService) {
+    journal.setScheduler(scheduledExecutorService);
+  }
+
+  /**
+   * @return number of task document writes saved by merging task changes
+   */
+  @VisibleForTesting
+  long getSavedWrites() {
+    return journal.getSavedWrites();
+  }
+
   @Override
   public StepBackend getStepBackend() {
     return this;
@@ -238,7 +261,7 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
     taskServiceState.state = TaskService.State.TaskState.STARTED;
     taskServiceState.startedTime = DateTime.now().toDate();
 
-    patchTaskService(task.getId(), taskServiceState);
+    journal.patchTask(task.getId(), taskServiceState, false);
   }
 
   @Override
@@ -246,7 +269,7 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
     TaskService.State taskServiceState = new TaskService.State();
     taskServiceState.state = TaskService.State.TaskState.COMPLETED;
     taskServiceState.endTime = DateTime.now().toDate();
-    patchTaskService(task.getId(), taskServiceState);
+    journal.patchTask(task.getId(), taskServiceState, true);
     logger.info("Task {} has been marked as COMPLETED", task.getId());
   }
 
@@ -255,7 +278,7 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
     TaskService.State taskServiceState = new TaskService.State();
     taskServiceState.state = TaskService.State.TaskState.ERROR;
     taskServiceState.endTime = DateTime.now().toDate();
-    patchTaskService(task.getId(), taskServiceState);
+    journal.patchTask(task.getId(), taskServiceState, true);
     logger.info("Task {} has been marked as ERROR", task);
   }
 
@@ -307,6 +330,7 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
   }
 
   private void patchTaskService(String taskId, TaskService.State taskServiceState) throws TaskNotFoundException {
+    journal.flush(taskId);
     try {
       xenonClient.patch(TaskServiceFactory.SELF_LINK + "/" + taskId, taskServiceState);
     } catch (DocumentNotFoundException e) {
@@ -314,18 +338,10 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
     }
   }
 
-  private void patchTaskServiceWithStepUpdate(String taskId, TaskService.StepUpdate stepUpdate) throws
-      TaskNotFoundException {
-    try {
-      xenonClient.patch(TaskServiceFactory.SELF_LINK + "/" + taskId, stepUpdate);
-    } catch (DocumentNotFoundException e) {
-      throw new TaskNotFoundException(taskId);
-    }
-  }
-
   private ResourceList<TaskService.State> getEntityDocuments(Optional<String> entityId, Optional<String> entityKind,
                                                              Optional<String> state, Optional<Integer> pageSize)
       throws InvalidQueryParamsException {
+    journal.flushAll();
 
     final ImmutableMap.Builder<String, String> termsBuilder = new ImmutableMap.Builder<>();
 
@@ -375,6 +391,7 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
 
   @Override
   public void delete(TaskEntity task) {
+    journal.discard(task.getId());
     xenonClient.delete(TaskServiceFactory.SELF_LINK + "/" + task.getId(), new TaskService.State());
   }
 
@@ -385,9 +402,7 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
 
   @Override
   public void update(StepEntity stepEntity) throws TaskNotFoundException {
-    TaskService.State.Step step = StepUtils.convertMiddleEndToBackEnd(stepEntity);
-    TaskService.StepUpdate stepUpdate = new TaskService.StepUpdate(step);
-    patchTaskServiceWithStepUpdate(stepEntity.getTask().getId(), stepUpdate);
+    journal.updateStep(stepEntity);
   }
 
   @Override
@@ -495,10 +510,12 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
     TaskService.State taskServiceState = new TaskService.State();
     taskServiceState.resourceProperties = properties;
 
-    patchTaskService(task.getId(), taskServiceState);
+    journal.patchTask(task.getId(), taskServiceState, false);
   }
 
   private TaskService.State getTaskStateById(String taskId) throws TaskNotFoundException {
+    journal.flush(taskId);
+
     com.vmware.xenon.common.Operation result;
     try {
       result = xenonClient.get(TaskServiceFactory.SELF_LINK + "/" + taskId);
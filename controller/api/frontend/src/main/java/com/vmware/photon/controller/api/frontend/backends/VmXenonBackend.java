@@ -82,6 +82,7 @@ import com.google.common.base.Optional;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
 import com.google.inject.Inject;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -90,13 +91,17 @@ import org.slf4j.LoggerFactory;
 import java.io.InputStream;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * VmXenonBackend is performing VM operations such as create, delete, add tag etc.
@@ -106,6 +111,7 @@ public class VmXenonBackend implements VmBackend {
   private static final Logger logger = LoggerFactory.getLogger(VmXenonBackend.class);
   private static final int GB_TO_BYTE_CONVERSION_RATIO = 1024 * 1024 * 1024;
   private static final Long GET_NETWORK_ON_START_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(2);
+  private static final int QUERY_STREAM_PAGE_SIZE = 100;
 
   private final ApiFeXenonRestClient xenonClient;
 
@@ -204,65 +210,18 @@ public class VmXenonBackend implements VmBackend {
 
   @Override
   public List<Vm> filterByFlavor(String flavorId) throws ExternalException {
-    ResourceList<VmEntity> vms = filterVmEntities(
-        Optional.<String>absent(),
-        Optional.<String>absent(),
-        Optional.<String>absent(),
-        Optional.<String>absent(),
-        Optional.of(flavorId),
-        Optional.<String>absent(),
-        Optional.<String>absent(),
-        Optional.<Integer>absent());
-
-    List<Vm> result = new ArrayList<>();
-
-    if (vms != null) {
-      for (VmEntity vm : vms.getItems()) {
-        result.add(toApiRepresentation(vm));
-      }
-    }
-
-    return result;
+    return filterAllVms("flavorId", flavorId);
   }
 
   @Override
   public List<Vm> filterByImage(String imageId) throws ExternalException {
-    ResourceList<VmEntity> vms = filterVmEntities(
-        Optional.<String>absent(),
-        Optional.<String>absent(),
-        Optional.<String>absent(),
-        Optional.<String>absent(),
-        Optional.<String>absent(),
-        Optional.of(imageId),
-        Optional.<String>absent(),
-        Optional.<Integer>absent());
-
-    List<Vm> result = new ArrayList<>();
-    for (VmEntity vm : vms.getItems()) {
-      result.add(toApiRepresentation(vm));
-    }
-
-    return result;
+    return filterAllVms("imageId", imageId);
   }
 
   @Override
   public List<Vm> filterByNetwork(String networkId) throws ExternalException {
-    ResourceList<VmEntity> vms = filterVmEntities(
-        Optional.<String>absent(),
-        Optional.<String>absent(),
-        Optional.<String>absent(),
-        Optional.<String>absent(),
-        Optional.<String>absent(),
-        Optional.<String>absent(),
-        Optional.of(networkId),
-        Optional.<Integer>absent());
-
-    List<Vm> result = new ArrayList<>();
-    for (VmEntity vmEntity : vms.getItems()) {
-      result.add(toApiRepresentation(vmEntity));
-    }
-
-    return result;
+    return filterAllVms(
+        QueryTask.QuerySpecification.buildCollectionItemName(VmService.State.FIELD_NAME_NETWORKS), networkId);
   }
 
   @Override
@@ -277,13 +236,12 @@ public class VmXenonBackend implements VmBackend {
     ResourceList<VmService.State> vmStates = PaginationUtils.xenonQueryResultToResourceList(VmService.State.class,
         queryResult);
 
-    List<Vm> vms = new ArrayList<>();
-    for (VmService.State vmState : vmStates.getItems()) {
-      vms.add(toApiRepresentation(toVmEntity(vmState)));
-    }
+    List<VmEntity> vmEntities = vmStates.getItems().stream()
+        .map(vmState -> toVmEntity(vmState))
+        .collect(Collectors.toList());
 
     ResourceList<Vm> result = new ResourceList<>();
-    result.setItems(vms);
+    result.setItems(toApiRepresentations(vmEntities));
     result.setNextPageLink(vmStates.getNextPageLink());
     result.setPreviousPageLink(vmStates.getPreviousPageLink());
 
@@ -906,12 +864,60 @@ public class VmXenonBackend implements VmBackend {
   }
 
   private Vm toApiRepresentation(VmEntity vmEntity) throws ExternalException {
+    return toApiRepresentations(Collections.singletonList(vmEntity)).get(0);
+  }
+
+  private ResourceList<Vm> toApiRepresentation(ResourceList<VmEntity> vmEntities) throws ExternalException {
+    ResourceList<Vm> result = new ResourceList<>();
+
+    result.setItems(toApiRepresentations(vmEntities.getItems()));
+    result.setNextPageLink(vmEntities.getNextPageLink());
+    result.setPreviousPageLink(vmEntities.getPreviousPageLink());
+
+    return result;
+  }
+
+  /**
+   * Builds the API representations of a page of VMs. The attached disks, the disks and the flavors referenced by the
+   * whole page are loaded together, with one query per kind of document, instead of a few requests per VM.
+   */
+  private List<Vm> toApiRepresentations(List<VmEntity> vmEntities) throws ExternalException {
+    if (vmEntities.isEmpty()) {
+      return new ArrayList<>();
+    }
+
+    Map<String, List<AttachedDiskEntity>> attachedDisks = attachedDiskBackend.findByVmIds(
+        vmEntities.stream().map(VmEntity::getId).collect(Collectors.toList()));
+    Map<String, String> flavorNames = flavorBackend.getNamesByIds(
+        vmEntities.stream().map(VmEntity::getFlavorId).collect(Collectors.toSet()));
+
+    Map<String, Set<String>> diskIdsByKind = new HashMap<>();
+    for (List<AttachedDiskEntity> vmAttachedDisks : attachedDisks.values()) {
+      for (AttachedDiskEntity attachedDisk : vmAttachedDisks) {
+        diskIdsByKind.computeIfAbsent(attachedDisk.getKind(), kind -> new HashSet<>())
+            .add(attachedDisk.getUnderlyingDiskId());
+      }
+    }
+    Map<String, Map<String, BaseDiskEntity>> disksByKind = new HashMap<>();
+    for (Map.Entry<String, Set<String>> entry : diskIdsByKind.entrySet()) {
+      disksByKind.put(entry.getKey(), diskBackend.findByIds(entry.getKey(), entry.getValue()));
+    }
+
+    List<Vm> vms = new ArrayList<>();
+    for (VmEntity vmEntity : vmEntities) {
+      vms.add(toApiRepresentation(vmEntity, flavorNames.get(vmEntity.getFlavorId()),
+          attachedDisks.get(vmEntity.getId()), disksByKind));
+    }
+    return vms;
+  }
+
+  private Vm toApiRepresentation(VmEntity vmEntity, String flavorName, List<AttachedDiskEntity> attachedDisks,
+                                 Map<String, Map<String, BaseDiskEntity>> disksByKind) throws ExternalException {
     Vm vm = new Vm();
 
     vm.setId(vmEntity.getId());
     vm.setName(vmEntity.getName());
-    FlavorEntity flavorEntity = flavorBackend.getEntityById(vmEntity.getFlavorId());
-    vm.setFlavor(flavorEntity.getName());
+    vm.setFlavor(flavorName);
 
     if (StringUtils.isNotBlank(vmEntity.getImageId())) {
       vm.setSourceImageId(vmEntity.getImageId());
@@ -925,12 +931,15 @@ public class VmXenonBackend implements VmBackend {
     List<AttachedDisk> disks = new ArrayList<>();
     Set<String> tags = new HashSet<>();
 
-    for (AttachedDiskEntity attachedDisk : attachedDiskBackend.findByVmId(vmEntity.getId())) {
+    for (AttachedDiskEntity attachedDisk : attachedDisks) {
       AttachedDisk disk = new AttachedDisk();
 
       disk.setId(attachedDisk.getUnderlyingDiskId());
       disk.setKind(attachedDisk.getKind());
-      BaseDiskEntity underlyingDisk = diskBackend.find(attachedDisk.getKind(), attachedDisk.getUnderlyingDiskId());
+      BaseDiskEntity underlyingDisk = disksByKind.get(attachedDisk.getKind()).get(attachedDisk.getUnderlyingDiskId());
+      if (underlyingDisk == null) {
+        throw new DiskNotFoundException(attachedDisk.getKind(), attachedDisk.getUnderlyingDiskId());
+      }
       disk.setName(underlyingDisk.getName());
       disk.setFlavor(underlyingDisk.getFlavorId());
       disk.setCapacityGb(underlyingDisk.getCapacityGb());
@@ -958,18 +967,22 @@ public class VmXenonBackend implements VmBackend {
     return vm;
   }
 
-  private ResourceList<Vm> toApiRepresentation(ResourceList<VmEntity> vmEntities) throws ExternalException {
-    ResourceList<Vm> result = new ResourceList<>();
-
-    List<Vm> vms = new ArrayList<>();
-    for (VmEntity vmEntity : vmEntities.getItems()) {
-      vms.add(toApiRepresentation(vmEntity));
+  /**
+   * Converts all the VMs matching a single term, streaming the VM documents page by page so that only the API
+   * representations are accumulated.
+   */
+  private List<Vm> filterAllVms(String termName, String termValue) throws ExternalException {
+    List<Vm> result = new ArrayList<>();
+    try (Stream<VmService.State> vms = xenonClient.queryDocumentsStream(
+        VmService.State.class, ImmutableMap.of(termName, termValue), QUERY_STREAM_PAGE_SIZE, true)) {
+      Iterator<List<VmService.State>> pages = Iterators.partition(vms.iterator(), QUERY_STREAM_PAGE_SIZE);
+      while (pages.hasNext()) {
+        result.addAll(toApiRepresentations(pages.next().stream()
+            .map(vm -> toVmEntity(vm))
+            .collect(Collectors.toList())));
+      }
     }
 
-    result.setItems(vms);
-    result.setNextPageLink(vmEntities.getNextPageLink());
-    result.setPreviousPageLink(vmEntities.getPreviousPageLink());
-
     return result;
   }
 
@@ -22,7 +22,10 @@ import com.vmware.photon.controller.api.frontend.entities.TaskEntity;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.PageExpiredException;
 import com.vmware.photon.controller.api.frontend.exceptions.internal.InternalException;
+import com.vmware.photon.controller.api.frontend.lib.image.ImageUploadManager;
 import com.vmware.photon.controller.api.model.Image;
+import com.vmware.photon.controller.api.model.ImageCreateSpec;
+import com.vmware.photon.controller.api.model.ImageUpload;
 import com.vmware.photon.controller.api.model.Operation;
 import com.vmware.photon.controller.api.model.ResourceList;
 import com.vmware.photon.controller.api.model.Task;
@@ -34,6 +37,7 @@ import com.google.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.concurrent.ExecutorService;
 
@@ -49,14 +53,17 @@ public class ImageFeClient {
   private final ExecutorService executor;
   private final ImageBackend imageBackend;
   private final TaskBackend taskBackend;
+  private final ImageUploadManager imageUploadManager;
 
   @Inject
   public ImageFeClient(TaskCommandFactory commandFactory, ImageBackend imageBackend,
-                       @BackendTaskExecutor ExecutorService executor, TaskBackend taskBackend) {
+                       @BackendTaskExecutor ExecutorService executor, TaskBackend taskBackend,
+                       ImageUploadManager imageUploadManager) {
     this.commandFactory = commandFactory;
     this.executor = executor;
     this.imageBackend = imageBackend;
     this.taskBackend = taskBackend;
+    this.imageUploadManager = imageUploadManager;
   }
 
   public Task create(InputStream inputStream, String name, ImageReplication replicationType) throws
@@ -79,6 +86,50 @@ public class ImageFeClient {
     return task;
   }
 
+  public ImageUpload createUpload(ImageCreateSpec spec) throws InternalException {
+    return imageUploadManager.create(spec.getName(), spec.getReplicationType());
+  }
+
+  public ImageUpload getUpload(String id) throws ExternalException {
+    return imageUploadManager.get(id);
+  }
+
+  public ImageUpload putUploadPart(String id, int partNumber, InputStream inputStream) throws ExternalException {
+    return imageUploadManager.putPart(id, partNumber, inputStream);
+  }
+
+  public ImageUpload deleteUpload(String id) throws ExternalException {
+    return imageUploadManager.delete(id);
+  }
+
+  /**
+   * Create the image from the parts of a multi-part upload. The parts are read in order from the local disk and
+   * streamed to the image datastore as for a single part upload. They are dropped once the image is uploaded, and
+   * kept otherwise, so that the upload can be completed again.
+   */
+  public Task completeUpload(String id) throws InternalException, ExternalException {
+    ImageUpload upload = imageUploadManager.get(id);
+    InputStream inputStream = imageUploadManager.open(id);
+    boolean uploaded = false;
+    try {
+      Task task = create(inputStream, upload.getName(), upload.getReplicationType());
+      uploaded = !TaskEntity.State.ERROR.toString().equals(task.getState());
+      return task;
+    } finally {
+      try {
+        inputStream.close();
+      } catch (IOException e) {
+        logger.warn("Failed to close image upload {}", id, e);
+      }
+
+      if (uploaded) {
+        imageUploadManager.delete(id);
+      } else {
+        imageUploadManager.reopen(id);
+      }
+    }
+  }
+
   public Task delete(String id) throws ExternalException {
     TaskEntity taskEntity = imageBackend.prepareImageDelete(id);
     Task task = taskBackend.getApiRepresentation(taskEntity);
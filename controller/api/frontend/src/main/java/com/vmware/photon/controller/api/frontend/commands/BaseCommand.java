@@ -46,10 +46,7 @@ public abstract class BaseCommand implements Runnable {
 
   @Override
   public void run() {
-    if (loggerContextMap != null) {
-      MDC.setContextMap(loggerContextMap);
-      MDC.put("activity", " [Activity: " + activityId + "]");
-    }
+    setLoggerContext();
 
     StopWatch stopwatch = new StopWatch();
     stopwatch.start();
@@ -58,24 +55,43 @@ public abstract class BaseCommand implements Runnable {
       execute();
       markAsDone();
     } catch (Throwable t) {
-      try {
-        logger.error("Command execution failed with exception", t);
-        markAsFailed(t);
-      } catch (TaskNotFoundException e) {
-        logger.warn("Could not find task to mark as failed, TaskId=" + e.getTaskId(), e);
-      }
+      fail(t);
     } finally {
-      try {
-        cleanup();
-      } catch (Throwable t) {
-        logger.warn("Error cleaning up Command", t);
-      }
-
-      stopwatch.stop();
-      logger.info("Processed in {}ms", stopwatch.getTime());
+      finish(stopwatch);
+    }
+  }
+
+  /**
+   * Sets the logging context of the thread which runs the command, commands which complete asynchronously set it
+   * again on the thread they resume on.
+   */
+  protected void setLoggerContext() {
+    if (loggerContextMap != null) {
+      MDC.setContextMap(loggerContextMap);
+      MDC.put("activity", " [Activity: " + activityId + "]");
     }
   }
 
+  protected void fail(Throwable t) {
+    try {
+      logger.error("Command execution failed with exception", t);
+      markAsFailed(t);
+    } catch (TaskNotFoundException e) {
+      logger.warn("Could not find task to mark as failed, TaskId=" + e.getTaskId(), e);
+    }
+  }
+
+  protected void finish(StopWatch stopwatch) {
+    try {
+      cleanup();
+    } catch (Throwable t) {
+      logger.warn("Error cleaning up Command", t);
+    }
+
+    stopwatch.stop();
+    logger.info("Processed in {}ms", stopwatch.getTime());
+  }
+
   protected abstract void execute() throws ApiFeException, InterruptedException, RpcException;
 
   protected abstract void cleanup();
@@ -23,6 +23,7 @@ import com.vmware.photon.controller.api.frontend.exceptions.ApiFeException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.InvalidVmdkFormatException;
 import com.vmware.photon.controller.api.frontend.exceptions.internal.InternalException;
+import com.vmware.photon.controller.api.frontend.lib.FanOutImageStore;
 import com.vmware.photon.controller.api.frontend.lib.ImageStore;
 import com.vmware.photon.controller.api.frontend.lib.image.ImageLoader;
 import com.vmware.photon.controller.api.model.ImageState;
@@ -75,6 +76,12 @@ public class ImageUploadStepCmd extends StepCommand {
       imageBackend.updateSettings(imageEntity, result.imageSettings);
       imageBackend.updateSize(imageEntity, result.imageSize);
       imageBackend.updateImageDatastore(imageEntity.getId(), imageStore.getDatastore());
+      if (imageStore instanceof FanOutImageStore) {
+        // The image is already on these datastores, so replication does not need to copy it there
+        for (String datastore : ((FanOutImageStore) imageStore).getSecondaryDatastores()) {
+          imageBackend.updateImageDatastore(imageEntity.getId(), datastore);
+        }
+      }
     } catch (VmdkFormatException e) {
       imageBackend.updateState(imageEntity, ImageState.ERROR);
       throw new InvalidVmdkFormatException(e.getMessage());
@@ -108,6 +108,15 @@ public class ResourceReserveStepCmd extends StepCommand {
 
   private static final long PLACE_REQUEST_TIMEOUT_IN_MICROS = TimeUnit.SECONDS.toMicros(120);
 
+  /**
+   * The scheduler picks the best of the first PLACE_MIN_OK_RESPONSES hosts which can place the resource instead of
+   * waiting for the slowest of the sampled hosts. PLACE_BACKUP_HOST_COUNT extra hosts are queried when a sampled host
+   * fails to score the resource or has not responded after PLACE_HEDGE_DELAY_MS.
+   */
+  private static final int PLACE_MIN_OK_RESPONSES = 2;
+  private static final int PLACE_BACKUP_HOST_COUNT = 2;
+  private static final long PLACE_HEDGE_DELAY_MS = TimeUnit.SECONDS.toMillis(5);
+
   private static final String DISK_KIND = "disk";
   private static final String VM_KIND = "vm";
   private static final String HOST_KIND = "host";
@@ -481,6 +490,9 @@ public class ResourceReserveStepCmd extends StepCommand {
     logger.info("place request resource: {}", resource);
     PlacementTask placementTask = new PlacementTask();
     placementTask.resource = resource;
+    placementTask.minOkResponses = PLACE_MIN_OK_RESPONSES;
+    placementTask.backupHostCount = PLACE_BACKUP_HOST_COUNT;
+    placementTask.hedgeDelayMs = PLACE_HEDGE_DELAY_MS;
     placementTask.taskState = new TaskState();
     placementTask.taskState.isDirect = true;
 
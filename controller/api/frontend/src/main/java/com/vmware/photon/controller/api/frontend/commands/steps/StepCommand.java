@@ -19,9 +19,16 @@ import com.vmware.photon.controller.api.frontend.commands.tasks.TaskCommand;
 import com.vmware.photon.controller.api.frontend.entities.StepEntity;
 import com.vmware.photon.controller.api.frontend.exceptions.external.TaskNotFoundException;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.StopWatch;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.concurrent.Executor;
+
 /**
  * This class extends BaseCommand and represents a single activity. Its corresponding DB/API
  * object is a Step.
@@ -59,6 +66,81 @@ public abstract class StepCommand extends BaseCommand {
     return activityId;
   }
 
+  /**
+   * @return true when the step implements {@link #executeAsync(Executor)}, and does not need to hold a thread while
+   * waiting on remote calls
+   */
+  public boolean isAsync() {
+    return false;
+  }
+
+  /**
+   * Runs the step without blocking on remote calls. The step is marked as done or failed, and cleaned up, when the
+   * returned future completes; the future itself never fails.
+   *
+   * @param executor runs the completion of the step
+   */
+  public ListenableFuture<Void> runAsync(Executor executor) {
+    if (!isAsync()) {
+      run();
+      return Futures.immediateFuture(null);
+    }
+
+    setLoggerContext();
+    StopWatch stopwatch = new StopWatch();
+    stopwatch.start();
+
+    SettableFuture<Void> done = SettableFuture.create();
+    try {
+      markAsStarted();
+      Futures.addCallback(executeAsync(executor), new FutureCallback<Object>() {
+        @Override
+        public void onSuccess(Object result) {
+          complete(null, stopwatch, done);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          complete(t, stopwatch, done);
+        }
+      }, executor);
+    } catch (Throwable t) {
+      complete(t, stopwatch, done);
+    }
+    return done;
+  }
+
+  /**
+   * Asynchronous counterpart of {@link #execute()}, for steps where {@link #isAsync()} is true. By default it
+   * runs {@link #execute()} on the calling thread.
+   *
+   * @param executor runs the work left once remote calls complete
+   * @return future completing when the step is executed
+   */
+  protected ListenableFuture<?> executeAsync(Executor executor) throws Exception {
+    execute();
+    return Futures.immediateFuture(null);
+  }
+
+  private void complete(Throwable failure, StopWatch stopwatch, SettableFuture<Void> done) {
+    setLoggerContext();
+    try {
+      if (failure != null) {
+        fail(failure);
+      } else {
+        markAsDone();
+      }
+    } catch (Throwable t) {
+      fail(t);
+    } finally {
+      try {
+        finish(stopwatch);
+      } finally {
+        done.set(null);
+      }
+    }
+  }
+
   @Override
   protected void markAsStarted() throws TaskNotFoundException {
     stepBackend.markStepAsStarted(step);
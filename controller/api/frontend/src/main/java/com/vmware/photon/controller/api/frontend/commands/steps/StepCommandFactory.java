@@ -149,7 +149,7 @@ public class StepCommandFactory {
         return new VmCreateImageStepCmd(taskCommand, stepBackend, stepEntity, imageBackend, imageStoreFactory.create());
       case UPLOAD_IMAGE:
         return new ImageUploadStepCmd(
-            taskCommand, stepBackend, stepEntity, imageBackend, imageStoreFactory.create(), imageConfig);
+            taskCommand, stepBackend, stepEntity, imageBackend, imageStoreFactory.createForUpload(), imageConfig);
       case REPLICATE_IMAGE:
         return new ImageReplicateStepCmd(
             taskCommand, stepBackend, stepEntity, imageBackend, imageStoreFactory.create());
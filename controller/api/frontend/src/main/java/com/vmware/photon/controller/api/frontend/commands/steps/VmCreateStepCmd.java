@@ -30,18 +30,24 @@ import com.vmware.photon.controller.api.model.PersistentDisk;
 import com.vmware.photon.controller.api.model.Vm;
 import com.vmware.photon.controller.api.model.VmState;
 import com.vmware.photon.controller.cloudstore.xenon.entity.VmService;
+import com.vmware.photon.controller.common.clients.HostClient;
 import com.vmware.photon.controller.common.clients.exceptions.RpcException;
 import com.vmware.photon.controller.host.gen.CreateVmResponse;
+import com.vmware.photon.controller.host.gen.Host;
 import com.vmware.photon.controller.host.gen.VmNetworkInfo;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.thrift.async.AsyncMethodCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * StepCommand for VM creation.
@@ -75,6 +81,59 @@ public class VmCreateStepCmd extends StepCommand {
     attachDisks(vm);
   }
 
+  /**
+   * The VM is created with the asynchronous create_vm call, which can take a long time, so that the task does not
+   * hold a thread while the agent creates it.
+   */
+  @Override
+  public boolean isAsync() {
+    return true;
+  }
+
+  @Override
+  protected ListenableFuture<?> executeAsync(Executor executor) {
+    vm = getVm();
+    SettableFuture<VmEntity> created = SettableFuture.create();
+    try {
+      taskCommand.getHostClient().createVm(taskCommand.getReservation(), vm.getEnvironment(),
+          new AsyncMethodCallback<Host.AsyncSSLClient.create_vm_call>() {
+            @Override
+            public void onComplete(Host.AsyncSSLClient.create_vm_call call) {
+              // Off the thrift selector thread, updating the VM and its disks calls Xenon
+              executor.execute(() -> {
+                setLoggerContext();
+                CreateVmResponse response;
+                try {
+                  response = HostClient.ResponseValidator.checkCreateVmResponse(call.getResult());
+                } catch (Throwable t) {
+                  onCreateVmFailed(t instanceof RpcException ? (RpcException) t : new RpcException(t.getMessage()),
+                      created);
+                  return;
+                }
+
+                try {
+                  attachDisks(onVmCreated(response));
+                  created.set(vm);
+                } catch (Throwable t) {
+                  created.setException(t);
+                }
+              });
+            }
+
+            @Override
+            public void onError(Exception e) {
+              executor.execute(() -> {
+                setLoggerContext();
+                onCreateVmFailed(new RpcException(e.getMessage()), created);
+              });
+            }
+          });
+    } catch (RpcException e) {
+      onCreateVmFailed(e, created);
+    }
+    return created;
+  }
+
   @Override
   protected void cleanup() {
   }
@@ -82,25 +141,12 @@ public class VmCreateStepCmd extends StepCommand {
   @VisibleForTesting
   protected VmEntity createVm() throws ApiFeException, InterruptedException, RpcException {
     try {
-      List<VmEntity> vmEntityList = step.getTransientResourceEntities(Vm.KIND);
-      Preconditions.checkArgument(vmEntityList.size() == 1,
-          "There should be only 1 VM referenced by step %s", step.getId());
-      vm = vmEntityList.get(0);
+      vm = getVm();
 
       CreateVmResponse response = taskCommand.getHostClient().createVm(
           taskCommand.getReservation(), vm.getEnvironment());
 
-      Map<String, VmService.NetworkInfo> networkInfoList = getNetworksFromCreateVMResponse(response.getNetwork_info());
-
-      vmBackend.updateState(vm, VmState.STOPPED,
-          taskCommand.lookupAgentId(taskCommand.getHostClient().getHostIp()),
-          taskCommand.getHostClient().getHostIp(),
-          response.getVm().getDatastore().getId(),
-          response.getVm().getDatastore().getName(),
-          networkInfoList);
-
-      logger.info("created VM: {}", vm);
-      return vm;
+      return onVmCreated(response);
     } catch (RpcException e) {
       logger.error("failed creating VM {}", vm.getId(), e);
       vmBackend.updateState(vm, VmState.ERROR);
@@ -108,6 +154,37 @@ public class VmCreateStepCmd extends StepCommand {
     }
   }
 
+  private VmEntity getVm() {
+    List<VmEntity> vmEntityList = step.getTransientResourceEntities(Vm.KIND);
+    Preconditions.checkArgument(vmEntityList.size() == 1,
+        "There should be only 1 VM referenced by step %s", step.getId());
+    return vmEntityList.get(0);
+  }
+
+  private VmEntity onVmCreated(CreateVmResponse response) throws ApiFeException {
+    Map<String, VmService.NetworkInfo> networkInfoList = getNetworksFromCreateVMResponse(response.getNetwork_info());
+
+    vmBackend.updateState(vm, VmState.STOPPED,
+        taskCommand.lookupAgentId(taskCommand.getHostClient().getHostIp()),
+        taskCommand.getHostClient().getHostIp(),
+        response.getVm().getDatastore().getId(),
+        response.getVm().getDatastore().getName(),
+        networkInfoList);
+
+    logger.info("created VM: {}", vm);
+    return vm;
+  }
+
+  private void onCreateVmFailed(RpcException e, SettableFuture<VmEntity> created) {
+    logger.error("failed creating VM {}", vm.getId(), e);
+    try {
+      vmBackend.updateState(vm, VmState.ERROR);
+    } catch (Throwable t) {
+      e.addSuppressed(t);
+    }
+    created.setException(e);
+  }
+
   @VisibleForTesting
   protected void attachDisks(VmEntity vm) throws ApiFeException {
     if (!step.getTransientResourceEntities(PersistentDisk.KIND).isEmpty()) {
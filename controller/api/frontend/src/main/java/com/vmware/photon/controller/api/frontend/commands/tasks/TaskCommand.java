@@ -13,8 +13,10 @@
 
 package com.vmware.photon.controller.api.frontend.commands.tasks;
 
+import com.vmware.photon.controller.api.frontend.BackendTaskExecutor;
 import com.vmware.photon.controller.api.frontend.backends.EntityLockBackend;
 import com.vmware.photon.controller.api.frontend.backends.TaskBackend;
+import com.vmware.photon.controller.api.frontend.backends.TaskCommandExecutorService;
 import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
 import com.vmware.photon.controller.api.frontend.backends.clients.DeployerClient;
 import com.vmware.photon.controller.api.frontend.backends.clients.HousekeeperClient;
@@ -43,19 +45,28 @@ import com.vmware.photon.controller.resource.gen.Resource;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 /**
  * This class extends BaseCommand and represents a long running activity. Its corresponding DB/API
  * object is a Task.
+ * <p/>
+ * When a step executes asynchronously, the task is suspended instead of blocking its thread: {@link #run()} returns
+ * without marking the task as done or cleaning it up, and the remaining steps run as a continuation once the step
+ * completes.
  */
 public class TaskCommand extends BaseCommand {
 
@@ -66,6 +77,12 @@ public class TaskCommand extends BaseCommand {
   protected List<StepEntity> steps;
   @Inject
   private StepCommandFactory stepCommandFactory;
+  @Inject(optional = true)
+  @BackendTaskExecutor
+  private ExecutorService executor;
+  private volatile ListenableFuture<Void> suspendedOn;
+  private volatile StepEntity suspendedStep;
+  private volatile int nextStepIndex;
   private TaskEntity task;
   private Resource resource;
   private String reservation;
@@ -105,21 +122,85 @@ public class TaskCommand extends BaseCommand {
   @Override
   protected void execute() throws ApiFeException, InterruptedException, RpcException {
     steps = getTask().getSteps();
-    for (StepEntity step : steps) {
+    executeSteps(0);
+  }
+
+  /**
+   * Runs the steps from the given index, until one of them executes asynchronously.
+   */
+  private void executeSteps(int first) throws ApiFeException {
+    for (int i = first; i < steps.size(); i++) {
+      StepEntity step = steps.get(i);
       if (!step.getState().equals(StepEntity.State.QUEUED) || step.isDisabled()) {
         logger.info("Skip running step {}", step);
         continue;
       }
 
       StepCommand cmd = stepCommandFactory.createCommand(this, step);
+      if (cmd.isAsync()) {
+        suspendedStep = step;
+        nextStepIndex = i + 1;
+        suspendedOn = cmd.runAsync(getContinuationExecutor());
+        logger.info("Task {} suspended on step {}", getActivityId(), step);
+        return;
+      }
+
       cmd.run();
+      checkCompleted(step);
+    }
+  }
 
-      if (step.getState() != StepEntity.State.COMPLETED) {
-        throw new TaskNotCompletedException(step);
-      }
+  /**
+   * Continues a suspended task once the step it was waiting on completes.
+   */
+  private void resume() {
+    setLoggerContext();
+    logger.info("Task {} resumed after step {}", getActivityId(), suspendedStep);
+
+    StopWatch stopwatch = new StopWatch();
+    stopwatch.start();
+    suspendedOn = null;
+    try {
+      checkCompleted(suspendedStep);
+      executeSteps(nextStepIndex);
+      markAsDone();
+    } catch (Throwable t) {
+      fail(t);
+    } finally {
+      finish(stopwatch);
+    }
+  }
+
+  private static void checkCompleted(StepEntity step) throws TaskNotCompletedException {
+    if (step.getState() != StepEntity.State.COMPLETED) {
+      throw new TaskNotCompletedException(step);
     }
   }
 
+  private Executor getContinuationExecutor() {
+    if (executor instanceof TaskCommandExecutorService) {
+      return ((TaskCommandExecutorService) executor).getContinuationExecutor();
+    }
+    return executor != null ? executor : MoreExecutors.sameThreadExecutor();
+  }
+
+  /**
+   * Schedules the continuation of a suspended task. This is done from {@link #cleanup()}, the last thing run on the
+   * thread which suspended the task, so that the continuation never overlaps with it.
+   */
+  private void scheduleResume(ListenableFuture<Void> step) {
+    if (executor instanceof TaskCommandExecutorService) {
+      ((TaskCommandExecutorService) executor).suspend(step, this::resume);
+    } else {
+      step.addListener(this::resume, getContinuationExecutor());
+    }
+  }
+
+  @VisibleForTesting
+  protected boolean isSuspended() {
+    return suspendedOn != null;
+  }
+
   @Override
   protected void markAsStarted() throws TaskNotFoundException, ConcurrentTaskException {
     taskBackend.markTaskAsStarted(task);
@@ -130,6 +211,10 @@ public class TaskCommand extends BaseCommand {
 
   @Override
   protected void markAsDone() throws TaskNotFoundException {
+    if (isSuspended()) {
+      return;
+    }
+
     // clear locks as first thing in this method so that some other failure does not preempt it
     // and leave dangling lock.
     entityLockBackend.clearTaskLocks(task);
@@ -156,6 +241,11 @@ public class TaskCommand extends BaseCommand {
 
   @Override
   protected void cleanup() {
+    if (isSuspended()) {
+      scheduleResume(suspendedOn);
+      return;
+    }
+
     entityLockBackend.clearTaskLocks(task);
     getHostClient().close();
   }
@@ -170,6 +260,11 @@ public class TaskCommand extends BaseCommand {
     this.stepCommandFactory = stepCommandFactory;
   }
 
+  @VisibleForTesting
+  protected void setExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
   public void markAllStepsAsFailed(Throwable t) throws TaskNotFoundException {
     //clear locks as first thing in this method so that some other failure does not preempt it leaving dangling lock.
     entityLockBackend.clearTaskLocks(task);
@@ -32,11 +32,33 @@ public class ImageConfig {
    */
   private static final Duration DEFAULT_IMAGE_REPLICATION_TIMEOUT = Duration.seconds(60 * 60);
 
+  /**
+   * Default time after which a multi-part image upload without activity is dropped.
+   */
+  private static final Duration DEFAULT_UPLOAD_EXPIRATION = Duration.hours(24);
+
   private Duration replicationTimeout = DEFAULT_IMAGE_REPLICATION_TIMEOUT;
 
   @JsonProperty("use_esx_store")
   private boolean useEsxStore = false;
 
+  /**
+   * Maximum number of image datastores an uploaded image is written to in one pass. 1 uploads to a single image
+   * datastore and leaves the others to replication.
+   */
+  @JsonProperty("upload_fan_out")
+  private int uploadFanOut = 1;
+
+  /**
+   * Number of threads inflating the grains of a stream-optimized disk while it is uploaded to a single image
+   * datastore. 1 inflates the grains on the uploading thread.
+   */
+  @JsonProperty("upload_inflater_threads")
+  private int uploadInflaterThreads = 1;
+
+  @JsonProperty("upload_expiration")
+  private Duration uploadExpiration = DEFAULT_UPLOAD_EXPIRATION;
+
   private String endpoint;
 
   private String datastore;
@@ -57,6 +79,30 @@ public class ImageConfig {
     this.useEsxStore = flag;
   }
 
+  public int getUploadFanOut() {
+    return uploadFanOut;
+  }
+
+  public void setUploadFanOut(int uploadFanOut) {
+    this.uploadFanOut = uploadFanOut;
+  }
+
+  public int getUploadInflaterThreads() {
+    return uploadInflaterThreads;
+  }
+
+  public void setUploadInflaterThreads(int uploadInflaterThreads) {
+    this.uploadInflaterThreads = uploadInflaterThreads;
+  }
+
+  public Duration getUploadExpiration() {
+    return uploadExpiration;
+  }
+
+  public void setUploadExpiration(Duration uploadExpiration) {
+    this.uploadExpiration = uploadExpiration;
+  }
+
   public String getLocalStore() {
     return DEFAULT_LOCAL_STORE;
   }
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.exceptions.external;
+
+/**
+ * Gets thrown when requested multi-part image upload is not found.
+ */
+public class ImageUploadNotFoundException extends ExternalException {
+  private static final long serialVersionUID = 1L;
+
+  private final String id;
+
+  public ImageUploadNotFoundException(String id) {
+    super(ErrorCode.IMAGE_UPLOAD_NOT_FOUND);
+    this.id = id;
+
+    addData("id", id);
+  }
+
+  @Override
+  public String getMessage() {
+    return String.format("Image upload '%s' not found", id);
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.lib;
+
+import com.vmware.photon.controller.api.frontend.exceptions.external.NameTakenException;
+import com.vmware.photon.controller.api.frontend.exceptions.internal.InternalException;
+import com.vmware.photon.controller.api.frontend.lib.ova.VmdkMetadata;
+import com.vmware.transfer.nfc.FanOutDiskUploader;
+import com.vmware.transfer.nfc.NfcClient;
+import com.vmware.transfer.nfc.NfcFileOutputStream;
+import com.vmware.transfer.streamVmdk.VmdkFormatException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Image folder on several datastores. Files and disks are read once and written to all of them.
+ */
+public class FanOutImage implements Image {
+  private static final Logger logger = LoggerFactory.getLogger(FanOutImage.class);
+
+  /**
+   * Number of 64KB grains buffered between the fastest and the slowest datastore.
+   */
+  private static final int BUFFERED_GRAINS = 64;
+
+  private static final int FILE_BUFFER_SIZE = NfcClient.MAX_XFER_SIZE;
+
+  private final List<VsphereImageStoreImage> images;
+
+  public FanOutImage(List<VsphereImageStoreImage> images) {
+    this.images = images;
+  }
+
+  @Override
+  public String getImageId() {
+    return images.get(0).getImageId();
+  }
+
+  @Override
+  public String getUploadFolder() {
+    return images.get(0).getUploadFolder();
+  }
+
+  List<VsphereImageStoreImage> getImages() {
+    return images;
+  }
+
+  /**
+   * Upload file to all the datastores, writing each chunk read from the stream to all of them. If the upload fails,
+   * the NFC sessions are aborted, so that no datastore is left with a complete file.
+   */
+  @Override
+  public long addFile(String fileName, InputStream inputStream, long fileSize) throws IOException, NameTakenException,
+      InternalException {
+    List<NfcFileOutputStream> outputStreams = new ArrayList<>();
+    boolean uploaded = false;
+    try {
+      for (VsphereImageStoreImage image : images) {
+        String imagePath = image.getImageFilePath(fileName);
+        logger.info("write to {}", imagePath);
+        outputStreams.add(image.getNfcClient().putFile(imagePath, fileSize));
+      }
+
+      byte[] buffer = new byte[FILE_BUFFER_SIZE];
+      long remaining = fileSize;
+      while (remaining > 0) {
+        int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+        if (read < 0) {
+          throw new EOFException("Unexpected end of file " + fileName);
+        }
+        for (NfcFileOutputStream outputStream : outputStreams) {
+          outputStream.write(buffer, 0, read);
+        }
+        remaining -= read;
+      }
+
+      for (NfcFileOutputStream outputStream : outputStreams) {
+        outputStream.close();
+      }
+      uploaded = true;
+      return fileSize;
+    } finally {
+      if (!uploaded) {
+        for (VsphereImageStoreImage image : images) {
+          image.getNfcClient().abort();
+        }
+      }
+      if (inputStream != null) {
+        inputStream.close();
+      }
+    }
+  }
+
+  /**
+   * Upload disk to all the datastores, reading and inflating the stream-optimized disk only once.
+   */
+  @Override
+  public long addDisk(String fileName, InputStream inputStream) throws IOException, VmdkFormatException,
+      NameTakenException, InternalException {
+    if (!inputStream.markSupported()) {
+      inputStream = new BufferedInputStream(inputStream);
+    }
+    int singleExtentSize = VmdkMetadata.getSingleExtentSize(inputStream);
+
+    Map<NfcClient, String> destinations = new LinkedHashMap<>();
+    for (VsphereImageStoreImage image : images) {
+      String imagePath = image.getImageFilePath(fileName);
+      logger.info("write to {}", imagePath);
+      destinations.put(image.getNfcClient(), imagePath);
+    }
+    new FanOutDiskUploader(BUFFERED_GRAINS).upload(inputStream, destinations);
+    return singleExtentSize * 512L; // a sector is 512 bytes
+  }
+
+  @Override
+  public void close() {
+    for (VsphereImageStoreImage image : images) {
+      image.close();
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.lib;
+
+import com.vmware.photon.controller.api.frontend.backends.HostBackend;
+import com.vmware.photon.controller.api.frontend.config.ImageConfig;
+import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
+import com.vmware.photon.controller.api.frontend.exceptions.internal.DeleteUploadFolderException;
+import com.vmware.photon.controller.api.frontend.exceptions.internal.InternalException;
+import com.vmware.photon.controller.api.model.AgentState;
+import com.vmware.photon.controller.api.model.Host;
+import com.vmware.photon.controller.api.model.HostDatastore;
+import com.vmware.photon.controller.api.model.HostState;
+import com.vmware.photon.controller.api.model.ResourceList;
+import com.vmware.photon.controller.common.clients.HostClientFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class uploads an image to several image datastores in one pass. The image is written through one
+ * {@link VsphereImageStore} per datastore, using the same host as {@link VsphereImageStore} for the first one and
+ * other READY hosts for the others, up to {@link ImageConfig#getUploadFanOut()} datastores.
+ */
+public class FanOutImageStore implements ImageStore {
+  private static final Logger logger = LoggerFactory.getLogger(FanOutImageStore.class);
+
+  private final HostBackend hostBackend;
+  private final HostClientFactory hostClientFactory;
+  private final ImageConfig config;
+
+  private String hostIp;
+  private List<VsphereImageStore> stores;
+  private List<String> datastores;
+
+  public FanOutImageStore(HostBackend hostBackend, HostClientFactory hostClientFactory, ImageConfig config) {
+    this.hostBackend = hostBackend;
+    this.hostClientFactory = hostClientFactory;
+    this.config = config;
+  }
+
+  /**
+   * Uploads through a given host, like images created from a VM on that host, only go to the image datastore of
+   * that host, as with {@link VsphereImageStore}.
+   */
+  @Override
+  public void setHostIp(String hostIp) {
+    this.hostIp = hostIp;
+    this.stores = null;
+    this.datastores = null;
+  }
+
+  /**
+   * Create an image folder on each image datastore. If one of them can not be created, the ones already created
+   * are deleted.
+   */
+  @Override
+  public Image createImage(String imageId) throws InternalException, ExternalException {
+    ensureStores();
+
+    List<VsphereImageStoreImage> images = new ArrayList<>();
+    try {
+      for (VsphereImageStore store : stores) {
+        images.add((VsphereImageStoreImage) store.createImage(imageId));
+      }
+    } catch (InternalException | ExternalException | RuntimeException e) {
+      for (int i = 0; i < images.size(); i++) {
+        images.get(i).close();
+        try {
+          stores.get(i).deleteUploadFolder(images.get(i));
+        } catch (DeleteUploadFolderException | ExternalException deleteException) {
+          logger.warn("Failed to delete upload folder {} on datastore {}", images.get(i).getUploadFolder(),
+              datastores.get(i), deleteException);
+        }
+      }
+      throw e;
+    }
+    return new FanOutImage(images);
+  }
+
+  @Override
+  public void finalizeImage(Image image) throws InternalException, ExternalException {
+    List<VsphereImageStoreImage> images = ((FanOutImage) image).getImages();
+    for (int i = 0; i < stores.size(); i++) {
+      stores.get(i).finalizeImage(images.get(i));
+    }
+  }
+
+  /**
+   * Create the image from the VM on the first image datastore. See {@link #setHostIp(String)} to create it on the
+   * image datastore of the VM host only.
+   */
+  @Override
+  public void createImageFromVm(Image image, String vmId) throws ExternalException, InternalException {
+    ensureStores();
+    stores.get(0).createImageFromVm(((FanOutImage) image).getImages().get(0), vmId);
+  }
+
+  /**
+   * Delete the upload folder on every image datastore, and throw the first failure once all were attempted.
+   */
+  @Override
+  public void deleteUploadFolder(Image image) throws DeleteUploadFolderException, ExternalException {
+    List<VsphereImageStoreImage> images = ((FanOutImage) image).getImages();
+    DeleteUploadFolderException failure = null;
+    for (int i = 0; i < stores.size(); i++) {
+      try {
+        stores.get(i).deleteUploadFolder(images.get(i));
+      } catch (DeleteUploadFolderException e) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Image datastores which were not part of the fan-out still need the image.
+   */
+  @Override
+  public boolean isReplicationNeeded() {
+    return true;
+  }
+
+  /**
+   * @return the first image datastore the image is uploaded to
+   */
+  @Override
+  public String getDatastore() throws ExternalException {
+    ensureStores();
+    return datastores.get(0);
+  }
+
+  /**
+   * @return the other image datastores the image is uploaded to
+   */
+  public List<String> getSecondaryDatastores() throws ExternalException {
+    ensureStores();
+    return datastores.subList(1, datastores.size());
+  }
+
+  @VisibleForTesting
+  protected VsphereImageStore createImageStore() {
+    return new VsphereImageStore(hostBackend, hostClientFactory, config);
+  }
+
+  /**
+   * Selects one host per image datastore. Hosts are only queried once per upload.
+   */
+  private void ensureStores() throws ExternalException {
+    if (stores != null) {
+      return;
+    }
+
+    List<VsphereImageStore> selectedStores = new ArrayList<>();
+    List<String> selectedDatastores = new ArrayList<>();
+    VsphereImageStore primary = createImageStore();
+    if (hostIp != null) {
+      primary.setHostIp(hostIp);
+    }
+    selectedStores.add(primary);
+    selectedDatastores.add(primary.getDatastore());
+
+    Set<String> seen = new HashSet<>(selectedDatastores);
+    int fanOut = hostIp == null ? config.getUploadFanOut() : 1;
+    ResourceList<Host> hostList = null;
+    if (fanOut > 1) {
+      hostList = hostBackend.filterByState(HostState.READY, Optional.of(AgentState.ACTIVE), Optional.absent());
+    }
+    while (hostList != null && selectedStores.size() < fanOut) {
+      for (Host host : hostList.getItems()) {
+        if (selectedStores.size() >= fanOut) {
+          break;
+        }
+
+        // VsphereImageStore uploads to the first image datastore of the host
+        String datastore = getImageDatastoreId(host);
+        if (datastore != null && seen.add(datastore)) {
+          VsphereImageStore store = createImageStore();
+          store.setHostIp(host.getAddress());
+          selectedStores.add(store);
+          selectedDatastores.add(datastore);
+        }
+      }
+
+      hostList = hostList.getNextPageLink() == null ? null : hostBackend.getHostsPage(hostList.getNextPageLink());
+    }
+
+    logger.info("Uploading images to image datastores {}", selectedDatastores);
+    stores = selectedStores;
+    datastores = selectedDatastores;
+  }
+
+  private static String getImageDatastoreId(Host host) {
+    if (host.getDatastores() == null) {
+      return null;
+    }
+    for (HostDatastore datastore : host.getDatastores()) {
+      if (datastore.isImageDatastore()) {
+        return datastore.getDatastoreId();
+      }
+    }
+    return null;
+  }
+}
@@ -50,4 +50,19 @@ public class ImageStoreFactory {
 
     return new LocalImageStore(config.getLocalStore(), config.getDatastore());
   }
+
+  /**
+   * Creates the ImageStore used to upload images. When fan-out is configured, images are uploaded to several image
+   * datastores at once.
+   */
+  public ImageStore createForUpload() {
+    if (config.useEsxStore() && config.getUploadFanOut() > 1) {
+      return new FanOutImageStore(
+          hostBackend,
+          hostClientFactory,
+          config);
+    }
+
+    return create();
+  }
 }
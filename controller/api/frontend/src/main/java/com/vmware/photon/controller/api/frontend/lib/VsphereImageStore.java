@@ -119,7 +119,7 @@ public class VsphereImageStore implements ImageStore {
       logger.error("Failed to call HostClient to create image '{}', due to {}", imageId, e);
       throw new InternalException(e);
     }
-    return new VsphereImageStoreImage(nfcClient, uploadFolder, imageId);
+    return new VsphereImageStoreImage(nfcClient, uploadFolder, imageId, config.getUploadInflaterThreads());
   }
 
   /**
@@ -35,11 +35,17 @@ public class VsphereImageStoreImage implements Image {
   private NfcClient nfcClient;
   private final String uploadFolder;
   private final String imageId;
+  private final int inflaterThreads;
 
   public VsphereImageStoreImage(NfcClient nfcClient, String uploadFolder, String imageId) {
+    this(nfcClient, uploadFolder, imageId, 1);
+  }
+
+  public VsphereImageStoreImage(NfcClient nfcClient, String uploadFolder, String imageId, int inflaterThreads) {
     this.nfcClient = nfcClient;
     this.uploadFolder = uploadFolder;
     this.imageId = imageId;
+    this.inflaterThreads = inflaterThreads;
   }
 
   @Override
@@ -88,7 +94,7 @@ public class VsphereImageStoreImage implements Image {
     int singleExtentSize = VmdkMetadata.getSingleExtentSize(inputStream);
     String imagePath = getImageFilePath(fileName);
     logger.info("write to {}", imagePath);
-    nfcClient.putStreamOptimizedDisk(imagePath, inputStream);
+    nfcClient.putStreamOptimizedDisk(imagePath, inputStream, inflaterThreads);
     return singleExtentSize * 512L; // a sector is 512 bytes
   }
 
@@ -107,13 +113,17 @@ public class VsphereImageStoreImage implements Image {
     nfcClient = null;
   }
 
+  NfcClient getNfcClient() {
+    return nfcClient;
+  }
+
   /**
    * Construct the file path from the folder name and file name.
    *
    * @param fileName
    * @return
    */
-  private String getImageFilePath(String fileName) {
+  String getImageFilePath(String fileName) {
     return String.format("%s/%s%s", uploadFolder, imageId, fileName);
   }
 }
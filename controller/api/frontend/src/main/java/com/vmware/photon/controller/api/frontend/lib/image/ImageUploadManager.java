@@ -0,0 +1,453 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.lib.image;
+
+import com.vmware.photon.controller.api.frontend.config.ImageConfig;
+import com.vmware.photon.controller.api.frontend.exceptions.external.ImageUploadException;
+import com.vmware.photon.controller.api.frontend.exceptions.external.ImageUploadNotFoundException;
+import com.vmware.photon.controller.api.frontend.exceptions.internal.InternalException;
+import com.vmware.photon.controller.api.model.ImageUpload;
+import com.vmware.photon.controller.resource.gen.ImageReplication;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps track of multi-part image uploads. Parts are numbered from 1, can be uploaded in any order and in parallel,
+ * and are staged on the local disk until the upload is completed. Uploading a part again replaces it, so an upload
+ * interrupted by a dropped connection resumes by uploading the parts which are missing.
+ * <p/>
+ * Uploads only live in memory and on the local disk of the frontend instance where they were created, so all the
+ * requests of an upload must be sent to that instance, and uploads do not survive a restart. Uploads without
+ * activity for {@link ImageConfig#getUploadExpiration()} are dropped while the manager is started.
+ */
+@Singleton
+public class ImageUploadManager implements Managed {
+
+  public static final int MAX_PARTS = 10000;
+
+  private static final Logger logger = LoggerFactory.getLogger(ImageUploadManager.class);
+
+  private static final String STAGING_FOLDER = "uploads";
+
+  private static final long EXPIRATION_CHECK_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  private final Path stagingRoot;
+
+  private final long expirationNanos;
+
+  private final long checkIntervalMillis;
+
+  private final ConcurrentMap<String, Upload> uploads = new ConcurrentHashMap<>();
+
+  private ScheduledExecutorService expirationExecutor;
+
+  @Inject
+  public ImageUploadManager(ImageConfig config) {
+    this(Paths.get(config.getLocalStore(), STAGING_FOLDER), config.getUploadExpiration().toMilliseconds());
+  }
+
+  @VisibleForTesting
+  ImageUploadManager(Path stagingRoot, long expirationMillis) {
+    this.stagingRoot = stagingRoot;
+    this.expirationNanos = TimeUnit.MILLISECONDS.toNanos(expirationMillis);
+    this.checkIntervalMillis = Math.max(Math.min(expirationMillis, EXPIRATION_CHECK_INTERVAL_MILLIS), 1);
+
+    // Uploads do not survive a restart, so parts left behind by a previous instance are never completed
+    if (Files.exists(stagingRoot)) {
+      try {
+        deleteRecursively(stagingRoot);
+      } catch (IOException e) {
+        logger.warn("Failed to delete staged image upload parts in {}", stagingRoot, e);
+      }
+    }
+  }
+
+  /**
+   * Start dropping the expired uploads periodically.
+   */
+  @Override
+  public synchronized void start() {
+    if (expirationExecutor != null) {
+      return;
+    }
+
+    expirationExecutor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("image-upload-expiration-%d").setDaemon(true).build());
+    expirationExecutor.scheduleWithFixedDelay(this::deleteExpired, checkIntervalMillis, checkIntervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stop dropping the expired uploads.
+   */
+  @Override
+  public synchronized void stop() {
+    if (expirationExecutor != null) {
+      expirationExecutor.shutdownNow();
+      expirationExecutor = null;
+    }
+  }
+
+  @VisibleForTesting
+  synchronized boolean isStarted() {
+    return expirationExecutor != null;
+  }
+
+  public ImageUpload create(String name, ImageReplication replicationType) throws InternalException {
+    String id = UUID.randomUUID().toString();
+    Path directory = stagingRoot.resolve(id);
+    try {
+      Files.createDirectories(directory);
+    } catch (IOException e) {
+      throw new InternalException(String.format("Failed to create staging folder %s", directory), e);
+    }
+
+    Upload upload = new Upload(id, name, replicationType, directory);
+    uploads.put(id, upload);
+    logger.info("Created image upload {} for image {}", id, name);
+    return upload.toApiRepresentation();
+  }
+
+  public ImageUpload get(String id) throws ImageUploadNotFoundException {
+    return find(id).toApiRepresentation();
+  }
+
+  /**
+   * Stage a part of the upload, replacing any part previously uploaded with the same number.
+   */
+  public ImageUpload putPart(String id, int partNumber, InputStream inputStream)
+      throws ImageUploadNotFoundException, ImageUploadException {
+    if (partNumber < 1 || partNumber > MAX_PARTS) {
+      throw new ImageUploadException(
+          String.format("Part number %d is not between 1 and %d", partNumber, MAX_PARTS));
+    }
+
+    Upload upload = find(id);
+    long start = upload.startPart();
+
+    Path staged = upload.directory.resolve(UUID.randomUUID() + ".tmp");
+    try {
+      long size = Files.copy(inputStream, staged);
+      upload.addPart(partNumber, staged, size, start, System.nanoTime());
+      logger.debug("Received part {} of image upload {}, {} bytes", partNumber, id, size);
+    } catch (IOException e) {
+      throw new ImageUploadException(String.format("Failed to receive part %d of image upload %s", partNumber, id),
+          e);
+    } finally {
+      try {
+        Files.deleteIfExists(staged);
+      } catch (IOException e) {
+        logger.warn("Failed to delete {}", staged, e);
+      }
+
+      // The staged parts of an upload deleted while this part was received are deleted by the last part
+      if (upload.endPart()) {
+        deleteStagedParts(upload);
+      }
+    }
+    return upload.toApiRepresentation();
+  }
+
+  /**
+   * Open the image as the concatenation of its parts, each part being read from the local disk only when the
+   * previous one is consumed. No more parts can be uploaded afterwards.
+   *
+   * @return the image stream, to be closed by the caller
+   */
+  public InputStream open(String id) throws ImageUploadNotFoundException, ImageUploadException {
+    Upload upload = find(id);
+    List<Path> parts = upload.complete();
+    logger.info("Completing image upload {} with {} parts", id, parts.size());
+    return new SequenceInputStream(new PartEnumeration(parts.iterator()));
+  }
+
+  /**
+   * Allow more parts to be uploaded and the upload to be completed again, after completing it failed.
+   */
+  public void reopen(String id) throws ImageUploadNotFoundException {
+    find(id).reopen();
+  }
+
+  /**
+   * Drop an upload and the parts staged for it. Parts being received fail, and the staged parts are deleted once
+   * the last of them is done.
+   *
+   * @return the upload as it was before being dropped
+   */
+  public ImageUpload delete(String id) throws ImageUploadNotFoundException {
+    Upload upload = uploads.remove(id);
+    if (upload == null) {
+      throw new ImageUploadNotFoundException(id);
+    }
+
+    if (upload.markDeleted()) {
+      deleteStagedParts(upload);
+    }
+    return upload.toApiRepresentation();
+  }
+
+  /**
+   * Drop the uploads without activity for longer than the expiration time. Uploads with parts being received or
+   * being completed are kept.
+   */
+  @VisibleForTesting
+  void deleteExpired() {
+    long now = System.nanoTime();
+    for (Upload upload : uploads.values()) {
+      if (upload.markExpired(now, expirationNanos)) {
+        logger.info("Image upload {} for image {} expired", upload.id, upload.name);
+        uploads.remove(upload.id, upload);
+        deleteStagedParts(upload);
+      }
+    }
+  }
+
+  private static void deleteStagedParts(Upload upload) {
+    try {
+      deleteRecursively(upload.directory);
+    } catch (IOException e) {
+      logger.warn("Failed to delete staged parts of image upload {} in {}", upload.id, upload.directory, e);
+    }
+  }
+
+  private Upload find(String id) throws ImageUploadNotFoundException {
+    Upload upload = uploads.get(id);
+    if (upload == null) {
+      throw new ImageUploadNotFoundException(id);
+    }
+    return upload;
+  }
+
+  private static void deleteRecursively(Path root) throws IOException {
+    List<Path> paths;
+    try (Stream<Path> walk = Files.walk(root)) {
+      // Children before their parent
+      paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+    }
+    for (Path path : paths) {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  /**
+   * State of an upload. Parts are received concurrently, and moved in place and recorded under the upload's lock.
+   * Deleting the upload takes the same lock, so no part is moved in place once the upload is deleted.
+   */
+  private static class Upload {
+    final String id;
+    final String name;
+    final ImageReplication replicationType;
+    final Path directory;
+    final Map<Integer, Long> partSizes = new ConcurrentSkipListMap<>();
+    long firstPartStart;
+    long lastPartEnd;
+    long lastActivity = System.nanoTime();
+    int partsInProgress;
+    boolean completing;
+    boolean deleted;
+
+    Upload(String id, String name, ImageReplication replicationType, Path directory) {
+      this.id = id;
+      this.name = name;
+      this.replicationType = replicationType;
+      this.directory = directory;
+    }
+
+    /**
+     * Mark the upload deleted if it has been without activity for longer than the expiration time.
+     *
+     * @return whether the upload expired
+     */
+    synchronized boolean markExpired(long now, long expirationNanos) {
+      if (deleted || completing || partsInProgress > 0 || now - lastActivity < expirationNanos) {
+        return false;
+      }
+
+      deleted = true;
+      return true;
+    }
+
+    /**
+     * @return whether the staged parts can be deleted now, rather than once the parts in progress are done
+     */
+    synchronized boolean markDeleted() {
+      deleted = true;
+      return partsInProgress == 0;
+    }
+
+    /**
+     * Record the start of a part, which counts as activity.
+     *
+     * @return the start time
+     */
+    synchronized long startPart() throws ImageUploadException, ImageUploadNotFoundException {
+      checkNotDeleted();
+      checkNotCompleting();
+      partsInProgress++;
+      lastActivity = System.nanoTime();
+      return lastActivity;
+    }
+
+    /**
+     * Record the end of a part, whether it was added or not.
+     *
+     * @return whether the upload was deleted and this was the last part in progress
+     */
+    synchronized boolean endPart() {
+      partsInProgress--;
+      lastActivity = Math.max(lastActivity, System.nanoTime());
+      return deleted && partsInProgress == 0;
+    }
+
+    synchronized void reopen() {
+      completing = false;
+      lastActivity = System.nanoTime();
+    }
+
+    Path getPartPath(int partNumber) {
+      return directory.resolve(String.format("part-%05d", partNumber));
+    }
+
+    synchronized void checkNotCompleting() throws ImageUploadException {
+      if (completing) {
+        throw new ImageUploadException(String.format("Image upload %s is already completed", id));
+      }
+    }
+
+    synchronized void checkNotDeleted() throws ImageUploadNotFoundException {
+      if (deleted) {
+        throw new ImageUploadNotFoundException(id);
+      }
+    }
+
+    /**
+     * Move a fully received part in place. Parts are only visible once they were fully received.
+     */
+    synchronized void addPart(int partNumber, Path staged, long size, long start, long end)
+        throws ImageUploadException, ImageUploadNotFoundException, IOException {
+      checkNotDeleted();
+      checkNotCompleting();
+      Files.move(staged, getPartPath(partNumber), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+
+      if (partSizes.isEmpty() || start < firstPartStart) {
+        firstPartStart = start;
+      }
+      lastPartEnd = Math.max(lastPartEnd, end);
+      lastActivity = end;
+      partSizes.put(partNumber, size);
+    }
+
+    /**
+     * @return the part files in order
+     */
+    synchronized List<Path> complete() throws ImageUploadException, ImageUploadNotFoundException {
+      checkNotDeleted();
+      checkNotCompleting();
+      if (partSizes.isEmpty()) {
+        throw new ImageUploadException(String.format("Image upload %s has no parts", id));
+      }
+
+      List<Path> parts = new ArrayList<>();
+      int expected = 1;
+      for (int partNumber : partSizes.keySet()) {
+        if (partNumber != expected) {
+          throw new ImageUploadException(String.format("Part %d of image upload %s is missing", expected, id));
+        }
+        parts.add(getPartPath(partNumber));
+        expected++;
+      }
+      completing = true;
+      return parts;
+    }
+
+    synchronized ImageUpload toApiRepresentation() {
+      long size = 0;
+      for (long partSize : partSizes.values()) {
+        size += partSize;
+      }
+      long elapsedNanos = lastPartEnd - firstPartStart;
+
+      ImageUpload upload = new ImageUpload();
+      upload.setId(id);
+      upload.setName(name);
+      upload.setReplicationType(replicationType);
+      upload.setParts(new ArrayList<>(partSizes.keySet()));
+      upload.setSize(size);
+      upload.setBytesPerSecond(
+          elapsedNanos > 0 ? (long) (size / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1))) : 0L);
+      return upload;
+    }
+  }
+
+  /**
+   * Opens the part files one at a time, as {@link SequenceInputStream} consumes them.
+   */
+  private static class PartEnumeration implements Enumeration<InputStream> {
+    private final Iterator<Path> parts;
+
+    PartEnumeration(Iterator<Path> parts) {
+      this.parts = parts;
+    }
+
+    @Override
+    public boolean hasMoreElements() {
+      return parts.hasNext();
+    }
+
+    @Override
+    public InputStream nextElement() {
+      if (!parts.hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Path part = parts.next();
+      try {
+        return Files.newInputStream(part);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
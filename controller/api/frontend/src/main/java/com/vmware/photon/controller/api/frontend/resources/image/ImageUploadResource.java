@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.resources.image;
+
+import com.vmware.photon.controller.api.frontend.clients.ImageFeClient;
+import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
+import com.vmware.photon.controller.api.frontend.exceptions.internal.InternalException;
+import com.vmware.photon.controller.api.frontend.resources.routes.ImageResourceRoutes;
+import com.vmware.photon.controller.api.frontend.resources.routes.TaskResourceRoutes;
+import com.vmware.photon.controller.api.model.ImageUpload;
+import com.vmware.photon.controller.api.model.Task;
+import static com.vmware.photon.controller.api.frontend.Responses.generateCustomResponse;
+
+import com.google.inject.Inject;
+import com.wordnik.swagger.annotations.Api;
+import com.wordnik.swagger.annotations.ApiOperation;
+import com.wordnik.swagger.annotations.ApiResponse;
+import com.wordnik.swagger.annotations.ApiResponses;
+import org.glassfish.jersey.server.ContainerRequest;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
+import java.io.InputStream;
+
+/**
+ * This resource is for multi-part image upload related API.
+ */
+@Path(ImageResourceRoutes.IMAGE_UPLOAD_PATH)
+@Api(value = ImageResourceRoutes.API)
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class ImageUploadResource {
+
+  private final ImageFeClient imageFeClient;
+
+  @Inject
+  public ImageUploadResource(ImageFeClient imageFeClient) {
+    this.imageFeClient = imageFeClient;
+  }
+
+  @GET
+  @ApiOperation(value = "Get the parts received and the progress of a multi-part image upload",
+      response = ImageUpload.class)
+  @ApiResponses(value = {
+      @ApiResponse(code = 200, message = "Image upload API representation")
+  })
+  public Response get(@Context Request request, @PathParam("id") String id) throws ExternalException {
+    return generateCustomResponse(
+        Response.Status.OK,
+        imageFeClient.getUpload(id),
+        (ContainerRequest) request,
+        ImageResourceRoutes.IMAGE_UPLOAD_PATH);
+  }
+
+  @DELETE
+  @ApiOperation(value = "Abort a multi-part image upload and drop the parts received", response = ImageUpload.class)
+  @ApiResponses(value = {
+      @ApiResponse(code = 200, message = "Upload aborted, API representation of the upload before it was aborted")
+  })
+  public Response delete(@Context Request request, @PathParam("id") String id) throws ExternalException {
+    return generateCustomResponse(
+        Response.Status.OK,
+        imageFeClient.deleteUpload(id),
+        (ContainerRequest) request,
+        ImageResourceRoutes.IMAGE_UPLOAD_PATH);
+  }
+
+  @PUT
+  @Path(ImageResourceRoutes.IMAGE_UPLOAD_PART_ACTION)
+  @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+  @ApiOperation(value = "Upload a part of the image, replacing the part with the same number if any",
+      response = ImageUpload.class)
+  @ApiResponses(value = {
+      @ApiResponse(code = 200, message = "Part received")
+  })
+  public Response putPart(@Context Request request,
+                          @PathParam("id") String id,
+                          @PathParam("partNumber") int partNumber,
+                          InputStream inputStream) throws ExternalException {
+    return generateCustomResponse(
+        Response.Status.OK,
+        imageFeClient.putUploadPart(id, partNumber, inputStream),
+        (ContainerRequest) request,
+        ImageResourceRoutes.IMAGE_UPLOAD_PATH);
+  }
+
+  @POST
+  @Path(ImageResourceRoutes.IMAGE_UPLOAD_COMPLETE_ACTION)
+  @ApiOperation(value = "Create the image from the parts uploaded", response = Task.class)
+  @ApiResponses(value = {
+      @ApiResponse(code = 201, message = "Task created, image creation process can be fetched via the task")
+  })
+  public Response complete(@Context Request request,
+                           @PathParam("id") String id) throws InternalException, ExternalException {
+    return generateCustomResponse(
+        Response.Status.CREATED,
+        imageFeClient.completeUpload(id),
+        (ContainerRequest) request,
+        TaskResourceRoutes.TASK_PATH);
+  }
+}
@@ -23,4 +23,12 @@ public class ImageResourceRoutes {
   public static final String IMAGE_PATH = "/images/{id}";
 
   public static final String IMAGE_TASKS_PATH = "/images/{id}/tasks";
+
+  public static final String IMAGE_UPLOADS_PATH = "/images/uploads";
+
+  public static final String IMAGE_UPLOAD_PATH = "/images/uploads/{id}";
+
+  public static final String IMAGE_UPLOAD_PART_ACTION = "/parts/{partNumber}";
+
+  public static final String IMAGE_UPLOAD_COMPLETE_ACTION = "/complete";
 }
@@ -49,6 +49,7 @@ import static org.testng.FileAssert.fail;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -232,6 +233,19 @@ public class AttachedDiskXenonBackendTest {
       assertThat(attachedDiskEntities.size(), is(2));
     }
 
+    @Test
+    public void testFindByVmIds() throws Exception {
+      attachedDiskBackend.createAttachedDisks(vmEntity, ImmutableList.of(spec));
+      attachedDiskBackend.attachDisks(vmEntity, ImmutableList.of(persistentDiskEntity));
+
+      Map<String, List<AttachedDiskEntity>> attachedDisks =
+          attachedDiskBackend.findByVmIds(ImmutableList.of(vmEntity.getId(), "vm-without-disks"));
+
+      assertThat(attachedDisks.size(), is(2));
+      assertThat(attachedDisks.get(vmEntity.getId()).size(), is(2));
+      assertThat(attachedDisks.get("vm-without-disks").isEmpty(), is(true));
+    }
+
     @Test
     public void testCreateInvalidAttachedDisk() throws Exception {
       spec.setKind(PersistentDisk.KIND);
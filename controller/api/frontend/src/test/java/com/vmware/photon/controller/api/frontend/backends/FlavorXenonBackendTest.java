@@ -55,6 +55,7 @@ import static org.hamcrest.Matchers.notNullValue;
 import static org.testng.Assert.fail;
 
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -273,6 +274,29 @@ public class FlavorXenonBackendTest {
       flavorBackend.getEntityByNameAndKind(UUID.randomUUID().toString(), "invalid kind");
     }
 
+    @Test
+    public void testGetNamesByIds() throws Exception {
+      FlavorCreateSpec spec1 = createTestFlavorSpec(Vm.KIND);
+      String flavorId1 = flavorBackend.createFlavor(spec1).getEntityId();
+      FlavorCreateSpec spec2 = createTestFlavorSpec(Vm.KIND);
+      spec2.setName("flavor-200");
+      String flavorId2 = flavorBackend.createFlavor(spec2).getEntityId();
+
+      // The first flavor is cached, the second one is queried
+      flavorBackend.getEntityById(flavorId1);
+      Map<String, String> names = flavorBackend.getNamesByIds(ImmutableList.of(flavorId1, flavorId2, flavorId1));
+
+      assertThat(names.size(), is(2));
+      assertThat(names.get(flavorId1), is(spec1.getName()));
+      assertThat(names.get(flavorId2), is(spec2.getName()));
+    }
+
+    @Test(expectedExceptions = FlavorNotFoundException.class)
+    public void testGetNamesByIdsWithNotExistFlavor() throws Exception {
+      String flavorId = flavorBackend.createFlavor(createTestFlavorSpec(Vm.KIND)).getEntityId();
+      flavorBackend.getNamesByIds(ImmutableList.of(flavorId, UUID.randomUUID().toString()));
+    }
+
     @Test
     public void testFindAllFlavors() throws Exception {
       FlavorCreateSpec spec1 = createTestFlavorSpec(Vm.KIND);
@@ -443,6 +467,12 @@ public class FlavorXenonBackendTest {
         fail("should have failed with FlavorNotFoundException.");
       } catch (FlavorNotFoundException e) {
       }
+
+      try {
+        flavorBackend.getNamesByIds(ImmutableList.of(taskEntity.getEntityId()));
+        fail("should have failed with FlavorNotFoundException.");
+      } catch (FlavorNotFoundException e) {
+      }
     }
 
     @Test
@@ -24,6 +24,7 @@ import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalExc
 import com.vmware.photon.controller.api.frontend.exceptions.external.OutOfThreadPoolWorkerException;
 import com.vmware.photon.controller.common.clients.HostClient;
 
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -90,6 +91,38 @@ public class TaskCommandExecutorServiceTest {
     assertThat(getFailureCount(extraCommands), is(extra));
   }
 
+  @Test
+  public void testContinuationIsNotRejectedWhenPoolIsFull() throws Exception {
+    final TaskCommandExecutorService service = new TaskCommandExecutorService(
+        1,
+        1,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(1),
+        new ThreadFactoryBuilder().setNameFormat("BackendWorker" + "-%d").build()
+    );
+    CountDownLatch countDownLatch = new CountDownLatch(1);
+    CountDownLatch resumed = new CountDownLatch(1);
+    SettableFuture<Void> step = SettableFuture.create();
+
+    service.suspend(step, resumed::countDown);
+    assertThat(service.getSuspendedTaskCount(), is(1));
+
+    // fill thread pool, then complete the step the suspended task waits on
+    TestTaskCommand[] commands = startCommands(service, 2, countDownLatch);
+    step.set(null);
+    assertThat(service.getSuspendedTaskCount(), is(0));
+    assertThat(service.getPendingContinuationCount(), is(1));
+
+    // release threads
+    countDownLatch.countDown();
+
+    assertThat(resumed.await(10, TimeUnit.SECONDS), is(true));
+    assertThat(getFailureCount(commands), is(0));
+    assertThat(service.getPendingContinuationCount(), is(0));
+    service.shutdown();
+  }
+
   private int getFailureCount(TestTaskCommand[] commands) throws InterruptedException {
     boolean done = false;
     while (!done) {
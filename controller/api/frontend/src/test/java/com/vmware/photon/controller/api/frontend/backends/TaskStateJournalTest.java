@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.backends;
+
+import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
+import com.vmware.photon.controller.api.frontend.entities.StepEntity;
+import com.vmware.photon.controller.api.frontend.entities.TaskEntity;
+import com.vmware.photon.controller.api.model.Operation;
+import com.vmware.photon.controller.cloudstore.xenon.entity.TaskService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.TaskServiceFactory;
+
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link TaskStateJournal}.
+ */
+public class TaskStateJournalTest {
+
+  private static final String TASK_ID = "task-id";
+
+  private static final String TASK_LINK = TaskServiceFactory.SELF_LINK + "/" + TASK_ID;
+
+  private ApiFeXenonRestClient xenonClient;
+  private ScheduledExecutorService scheduler;
+  private TaskStateJournal journal;
+
+  @BeforeMethod
+  public void setUp() {
+    xenonClient = mock(ApiFeXenonRestClient.class);
+    scheduler = mock(ScheduledExecutorService.class);
+    journal = new TaskStateJournal(xenonClient);
+    journal.setScheduler(scheduler);
+  }
+
+  @Test
+  public void testFailedWriteIsMergedIntoTerminalWrite() throws Throwable {
+    TaskService.State started = new TaskService.State();
+    started.state = TaskService.State.TaskState.STARTED;
+    started.resourceProperties = "properties";
+    journal.patchTask(TASK_ID, started, false);
+
+    when(xenonClient.patch(anyString(), any())).thenThrow(new RuntimeException("Service unavailable"))
+        .thenReturn(null);
+    try {
+      journal.flush(TASK_ID);
+      fail("flush should have failed");
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage(), is("Service unavailable"));
+    }
+    verify(scheduler).schedule(any(Runnable.class), eq(TaskStateJournal.RETRY_DELAY_MILLIS),
+        eq(TimeUnit.MILLISECONDS));
+
+    TaskService.State completed = new TaskService.State();
+    completed.state = TaskService.State.TaskState.COMPLETED;
+    journal.patchTask(TASK_ID, completed, true);
+
+    ArgumentCaptor<Object> patches = ArgumentCaptor.forClass(Object.class);
+    verify(xenonClient, times(2)).patch(eq(TASK_LINK), patches.capture());
+    TaskService.State written = (TaskService.State) patches.getValue();
+    assertThat(written.state, is(TaskService.State.TaskState.COMPLETED));
+    assertThat(written.resourceProperties, is("properties"));
+
+    // Nothing is left to write
+    journal.flush(TASK_ID);
+    verifyNoMoreInteractions(xenonClient);
+  }
+
+  @Test
+  public void testOnlyChangedStepsAreWritten() throws Throwable {
+    TaskEntity task = new TaskEntity();
+    task.setId(TASK_ID);
+    StepEntity createVm = createStep(task, Operation.CREATE_VM);
+    StepEntity reserveResource = createStep(task, Operation.RESERVE_RESOURCE);
+    createStep(task, Operation.CREATE_DISK);
+
+    createVm.setState(StepEntity.State.STARTED);
+    journal.updateStep(createVm);
+    reserveResource.setState(StepEntity.State.STARTED);
+    journal.updateStep(reserveResource);
+    createVm.setState(StepEntity.State.COMPLETED);
+    journal.updateStep(createVm);
+    TaskService.State started = new TaskService.State();
+    started.state = TaskService.State.TaskState.STARTED;
+    journal.patchTask(TASK_ID, started, false);
+
+    journal.flush(TASK_ID);
+
+    ArgumentCaptor<Object> patches = ArgumentCaptor.forClass(Object.class);
+    verify(xenonClient).patch(eq(TASK_LINK), patches.capture());
+    TaskService.StepUpdate written = (TaskService.StepUpdate) patches.getValue();
+    assertThat(written.step, is(nullValue()));
+    List<String> operations = new ArrayList<>();
+    for (TaskService.State.Step step : written.steps) {
+      operations.add(step.operation);
+    }
+    assertThat(operations, contains(Operation.CREATE_VM.toString(), Operation.RESERVE_RESOURCE.toString()));
+    assertThat(written.steps.get(0).state, is(TaskService.State.StepState.COMPLETED));
+    assertThat(written.steps.get(1).state, is(TaskService.State.StepState.STARTED));
+    assertThat(written.fields.state, is(TaskService.State.TaskState.STARTED));
+    assertThat(written.fields.steps, is(nullValue()));
+    assertThat(journal.getSavedWrites() >= 3, is(true));
+  }
+
+  @Test
+  public void testFailedTerminalWriteIsReported() throws Throwable {
+    when(xenonClient.patch(anyString(), any())).thenThrow(new RuntimeException("Service unavailable"));
+
+    TaskService.State completed = new TaskService.State();
+    completed.state = TaskService.State.TaskState.COMPLETED;
+    try {
+      journal.patchTask(TASK_ID, completed, true);
+      fail("patchTask should have failed");
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage(), is("Service unavailable"));
+    }
+  }
+
+  private static StepEntity createStep(TaskEntity task, Operation operation) {
+    StepEntity step = new StepEntity();
+    step.setOperation(operation);
+    step.setState(StepEntity.State.QUEUED);
+    step.setSequence(task.getSteps().size());
+    step.setTask(task);
+    task.addStep(step);
+    return step;
+  }
+}
@@ -36,6 +36,8 @@ import com.vmware.photon.controller.api.model.PersistentDisk;
 import com.vmware.photon.controller.api.model.ResourceList;
 import com.vmware.photon.controller.api.model.Task;
 import com.vmware.photon.controller.api.model.Vm;
+import com.vmware.photon.controller.cloudstore.xenon.entity.TaskService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.TaskServiceFactory;
 import com.vmware.photon.controller.common.xenon.BasicServiceHost;
 import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
 
@@ -61,6 +63,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Tests {@link TaskXenonBackend}.
@@ -1011,6 +1014,42 @@ public class TaskXenonBackendTest {
       assertThat(stepEntity.getWarnings().get(0).getCode(), is(ErrorCode.TOO_MANY_REQUESTS.getCode()));
       assertThat(stepEntity.getWarnings().get(1).getCode(), is(ErrorCode.NAME_TAKEN.getCode()));
     }
+
+    @Test
+    public void testStepChangesAreCoalesced() throws Throwable {
+      TaskXenonBackend taskXenonBackend = (TaskXenonBackend) taskBackend;
+      // Writes are never scheduled, so they only happen when the task is read or terminated
+      taskXenonBackend.setScheduledExecutor(mock(ScheduledExecutorService.class));
+      try {
+        TaskEntity createdTask = taskBackend.createQueuedTask(vmEntity, Operation.CREATE_VM);
+        StepEntity reserveStep = stepBackend.createQueuedStep(createdTask, vmEntity, Operation.RESERVE_RESOURCE);
+        StepEntity createStep = stepBackend.createQueuedStep(createdTask, vmEntity, Operation.CREATE_VM);
+        long savedWrites = taskXenonBackend.getSavedWrites();
+
+        taskBackend.markTaskAsStarted(createdTask);
+        stepBackend.markStepAsStarted(reserveStep);
+        stepBackend.markStepAsDone(reserveStep);
+        stepBackend.markStepAsStarted(createStep);
+
+        TaskEntity foundTask = taskBackend.findById(createdTask.getId());
+        assertThat(foundTask.getState(), is(TaskEntity.State.STARTED));
+        assertThat(foundTask.getSteps().get(0).getState(), is(StepEntity.State.COMPLETED));
+        assertThat(foundTask.getSteps().get(1).getState(), is(StepEntity.State.STARTED));
+        assertThat(taskXenonBackend.getSavedWrites() - savedWrites, is(3L));
+
+        stepBackend.markStepAsDone(createStep);
+        taskBackend.markTaskAsDone(createdTask);
+
+        TaskService.State taskState = xenonClient.get(TaskServiceFactory.SELF_LINK + "/" + createdTask.getId())
+            .getBody(TaskService.State.class);
+        assertThat(taskState.state, is(TaskService.State.TaskState.COMPLETED));
+        assertThat(taskState.steps.get(0).state, is(TaskService.State.StepState.COMPLETED));
+        assertThat(taskState.steps.get(1).state, is(TaskService.State.StepState.COMPLETED));
+        assertThat(taskXenonBackend.getSavedWrites() - savedWrites, is(4L));
+      } finally {
+        taskXenonBackend.setScheduledExecutor(null);
+      }
+    }
   }
 
   private static void commonDataSetup() throws Throwable {
@@ -258,6 +258,9 @@ public class ResourceReserveStepCmdTest extends PowerMockTestCase {
     command.execute();
 
     verify(photonControllerXenonRestClient).post(any(), placementTaskCaptor.capture(), anyLong());
+    assertThat(placementTaskCaptor.getValue().minOkResponses, is(2));
+    assertThat(placementTaskCaptor.getValue().backupHostCount, is(2));
+    assertThat(placementTaskCaptor.getValue().hedgeDelayMs, is(5000L));
     Resource resource = placementTaskCaptor.getValue().resource;
     assertThat(resource.getVm().getId(), is("foo"));
     assertThat(resource.getVm().getFlavor(), is("vm-100"));
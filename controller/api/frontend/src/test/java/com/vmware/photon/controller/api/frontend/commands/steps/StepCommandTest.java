@@ -27,6 +27,7 @@ import com.vmware.photon.controller.api.frontend.exceptions.ApiFeException;
 import com.vmware.photon.controller.api.model.Operation;
 import com.vmware.photon.controller.common.xenon.BasicServiceHost;
 
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Inject;
 import org.junit.AfterClass;
 import org.testng.annotations.BeforeMethod;
@@ -137,6 +138,25 @@ public class StepCommandTest {
     assertThat(stepEntity.getEndTime(), is(notNullValue()));
   }
 
+  @Test
+  public void testRunAsyncFallsBackToExecute() throws Throwable {
+    TestStepCommand command = new TestStepCommand(taskCommand, stepBackend, step) {
+      @Override
+      public boolean isAsync() {
+        return true;
+      }
+    };
+
+    command.runAsync(MoreExecutors.directExecutor()).get();
+
+    assertThat(command.performed, is(true));
+    assertThat(command.cleanedUp, is(true));
+    StepEntity stepEntity = stepBackend.getStepByTaskIdAndOperation(
+        step.getTask().getId(),
+        step.getOperation());
+    assertThat(stepEntity.getState(), is(StepEntity.State.COMPLETED));
+  }
+
   /**
    * A very basic implementation of StepCommand.
    */
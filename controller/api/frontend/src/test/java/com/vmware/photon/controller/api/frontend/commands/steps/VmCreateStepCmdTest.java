@@ -32,11 +32,16 @@ import com.vmware.photon.controller.api.model.VmState;
 import com.vmware.photon.controller.common.clients.HostClient;
 import com.vmware.photon.controller.common.clients.exceptions.InvalidReservationException;
 import com.vmware.photon.controller.host.gen.CreateVmResponse;
+import com.vmware.photon.controller.host.gen.CreateVmResultCode;
+import com.vmware.photon.controller.host.gen.Host;
 import com.vmware.photon.controller.host.gen.VmNetworkInfo;
 import com.vmware.photon.controller.resource.gen.Datastore;
 import com.vmware.photon.controller.resource.gen.Vm;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.thrift.async.AsyncMethodCallback;
 import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.powermock.modules.testng.PowerMockTestCase;
@@ -45,15 +50,19 @@ import org.testng.annotations.Test;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.spy;
 import static org.powermock.api.mockito.PowerMockito.verifyNoMoreInteractions;
+import static org.testng.Assert.assertTrue;
 import static org.testng.AssertJUnit.fail;
 
 import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Tests {@link VmCreateStepCmd}.
@@ -170,6 +179,55 @@ public class VmCreateStepCmdTest extends PowerMockTestCase {
     verify(vmBackend).updateState(vm, VmState.ERROR);
   }
 
+  @Test
+  public void testSuccessfulAsyncVmCreate() throws Throwable {
+    createVmResponse.setResult(CreateVmResultCode.OK);
+    VmCreateStepCmd command = getVmCreateStepCmd();
+    completeAsyncCreateVm();
+
+    EphemeralDiskEntity disk = new EphemeralDiskEntity();
+    disk.setId("disk-1");
+    step.addResource(disk);
+
+    ListenableFuture<?> future = command.executeAsync(MoreExecutors.sameThreadExecutor());
+
+    assertTrue(future.isDone());
+    future.get();
+    InOrder inOrder = inOrder(vmBackend, diskBackend);
+    inOrder.verify(vmBackend).updateState(vm, VmState.STOPPED, agentId, agentIp, "datastore-1", "datastore-name", null);
+    inOrder.verify(diskBackend).updateState(disk, DiskState.ATTACHED, null, null);
+    verifyNoMoreInteractions(vmBackend);
+  }
+
+  @Test
+  public void testFailedAsyncVmCreate() throws Throwable {
+    createVmResponse.setResult(CreateVmResultCode.INVALID_RESERVATION);
+    VmCreateStepCmd command = getVmCreateStepCmd();
+    completeAsyncCreateVm();
+
+    ListenableFuture<?> future = command.executeAsync(MoreExecutors.sameThreadExecutor());
+
+    try {
+      future.get();
+      fail("should have failed due to invalid reservation exception");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof InvalidReservationException);
+    }
+
+    verify(vmBackend).updateState(vm, VmState.ERROR);
+    verifyNoMoreInteractions(vmBackend);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void completeAsyncCreateVm() throws Throwable {
+    Host.AsyncSSLClient.create_vm_call call = mock(Host.AsyncSSLClient.create_vm_call.class);
+    when(call.getResult()).thenReturn(createVmResponse);
+    doAnswer(invocation -> {
+      ((AsyncMethodCallback<Host.AsyncSSLClient.create_vm_call>) invocation.getArguments()[2]).onComplete(call);
+      return null;
+    }).when(hostClient).createVm(anyString(), anyMap(), any(AsyncMethodCallback.class));
+  }
+
   @Test
   public void testSuccessfulDisksAttach() throws Throwable {
     VmCreateStepCmd command = getVmCreateStepCmd();
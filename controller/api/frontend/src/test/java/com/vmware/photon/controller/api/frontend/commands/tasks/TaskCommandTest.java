@@ -58,6 +58,8 @@ import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
 import com.vmware.photon.controller.resource.gen.Datastore;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.inject.Inject;
 import org.junit.AfterClass;
 import org.mockito.ArgumentCaptor;
@@ -77,6 +79,7 @@ import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.doThrow;
@@ -86,6 +89,7 @@ import static org.powermock.api.mockito.PowerMockito.verifyNoMoreInteractions;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 /**
  * Tests {@link TaskCommand}.
@@ -473,6 +477,63 @@ public class TaskCommandTest {
     assertThat(stepCommands[2].performed, is(true));
   }
 
+  @Test
+  public void testRunSuspendsOnAsyncStep() throws Throwable {
+    StepEntity asyncStep = createStep("step-1", StepEntity.State.QUEUED);
+    StepEntity nextStep = createStep("step-2", StepEntity.State.QUEUED);
+    TestTaskCommand command = new TestTaskCommand(apiFeXenonRestClient, photonControllerXenonRestClient, hostClient,
+        housekeeperClient, taskBackend, stepCommandFactory, task, deployerClient,
+        deployerXenonClient, housekeeperXenonClient);
+
+    task.addStep(asyncStep);
+    task.addStep(nextStep);
+    AsyncTestStepCommand asyncStepCommand = new AsyncTestStepCommand(command, stepBackend, asyncStep);
+    TestStepCommand nextStepCommand = new TestStepCommand(command, stepBackend, nextStep);
+    doReturn(asyncStepCommand).when(stepCommandFactory).createCommand(command, asyncStep);
+    doReturn(nextStepCommand).when(stepCommandFactory).createCommand(command, nextStep);
+
+    command.run();
+
+    // The task waits on the first step without marking itself done or releasing its resources
+    assertThat(command.isSuspended(), is(true));
+    assertThat(asyncStep.getState(), is(StepEntity.State.STARTED));
+    assertThat(nextStepCommand.performed, is(false));
+    assertThat(taskBackend.findById(task.getId()).getState(), is(TaskEntity.State.STARTED));
+    verify(hostClient, never()).close();
+
+    asyncStepCommand.result.set(null);
+
+    assertThat(command.isSuspended(), is(false));
+    assertThat(asyncStep.getState(), is(StepEntity.State.COMPLETED));
+    assertThat(nextStepCommand.performed, is(true));
+    assertThat(taskBackend.findById(task.getId()).getState(), is(TaskEntity.State.COMPLETED));
+    verify(hostClient).close();
+  }
+
+  @Test
+  public void testRunFailsWhenAsyncStepFails() throws Throwable {
+    StepEntity asyncStep = createStep("step-1", StepEntity.State.QUEUED);
+    StepEntity nextStep = createStep("step-2", StepEntity.State.QUEUED);
+    TestTaskCommand command = new TestTaskCommand(apiFeXenonRestClient, photonControllerXenonRestClient, hostClient,
+        housekeeperClient, taskBackend, stepCommandFactory, task, deployerClient,
+        deployerXenonClient, housekeeperXenonClient);
+
+    task.addStep(asyncStep);
+    task.addStep(nextStep);
+    AsyncTestStepCommand asyncStepCommand = new AsyncTestStepCommand(command, stepBackend, asyncStep);
+    TestStepCommand nextStepCommand = new TestStepCommand(command, stepBackend, nextStep);
+    doReturn(asyncStepCommand).when(stepCommandFactory).createCommand(command, asyncStep);
+    doReturn(nextStepCommand).when(stepCommandFactory).createCommand(command, nextStep);
+
+    command.run();
+    asyncStepCommand.result.setException(new RpcException("create_vm failed"));
+
+    assertThat(asyncStep.getState(), is(StepEntity.State.ERROR));
+    assertThat(nextStepCommand.performed, is(false));
+    assertThat(taskBackend.findById(task.getId()).getState(), is(TaskEntity.State.ERROR));
+    verify(hostClient).close();
+  }
+
   @Test
   public void testCleanup() {
     TestTaskCommand command = new TestTaskCommand(apiFeXenonRestClient, photonControllerXenonRestClient, hostClient,
@@ -728,4 +789,27 @@ public class TaskCommandTest {
     protected void cleanup() {
     }
   }
+
+  /**
+   * A step which executes asynchronously, completing when the test sets its result.
+   */
+  private class AsyncTestStepCommand extends TestStepCommand {
+
+    private final SettableFuture<Void> result = SettableFuture.create();
+
+    private AsyncTestStepCommand(TaskCommand taskCommand, StepBackend stepBackend, StepEntity step) {
+      super(taskCommand, stepBackend, step);
+    }
+
+    @Override
+    public boolean isAsync() {
+      return true;
+    }
+
+    @Override
+    protected ListenableFuture<?> executeAsync(Executor executor) {
+      performed = true;
+      return result;
+    }
+  }
 }
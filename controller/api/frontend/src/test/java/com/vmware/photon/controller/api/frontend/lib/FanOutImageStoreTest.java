@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.lib;
+
+import com.vmware.photon.controller.api.frontend.backends.HostBackend;
+import com.vmware.photon.controller.api.frontend.config.ImageConfig;
+import com.vmware.photon.controller.api.frontend.exceptions.internal.InternalException;
+import com.vmware.photon.controller.api.model.AgentState;
+import com.vmware.photon.controller.api.model.Host;
+import com.vmware.photon.controller.api.model.HostDatastore;
+import com.vmware.photon.controller.api.model.HostState;
+import com.vmware.photon.controller.api.model.ResourceList;
+import com.vmware.photon.controller.common.clients.HostClientFactory;
+import com.vmware.transfer.nfc.NfcClient;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.fail;
+
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * Test {@link FanOutImageStore}.
+ */
+public class FanOutImageStoreTest {
+
+  private HostBackend hostBackend;
+  private ImageConfig config;
+  private Queue<VsphereImageStore> stores;
+  private FanOutImageStore imageStore;
+
+  /**
+   * Dummy test case to make Intellij recognize this as a test class.
+   */
+  @Test(enabled = false)
+  private void dummy() {
+  }
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    hostBackend = mock(HostBackend.class);
+    config = new ImageConfig();
+    config.setUseEsxStore(true);
+    config.setUploadFanOut(3);
+
+    // Two pages of hosts, with ds1 shared by the first two hosts
+    ResourceList<Host> firstPage = new ResourceList<>(ImmutableList.of(
+        buildHost("host1", "ds1"), buildHost("host2", "ds1")), "page2", null);
+    ResourceList<Host> secondPage = new ResourceList<>(ImmutableList.of(
+        buildHost("host3", "ds2"), buildHost("host4", null), buildHost("host5", "ds3"),
+        buildHost("host6", "ds4")));
+    when(hostBackend.filterByState(HostState.READY, Optional.of(AgentState.ACTIVE), Optional.absent()))
+        .thenReturn(firstPage);
+    when(hostBackend.getHostsPage("page2")).thenReturn(secondPage);
+
+    stores = new LinkedList<>();
+    for (String datastore : new String[]{"ds1", "ds2", "ds3"}) {
+      VsphereImageStore store = mock(VsphereImageStore.class);
+      when(store.getDatastore()).thenReturn(datastore);
+      stores.add(store);
+    }
+
+    imageStore = new FanOutImageStore(hostBackend, mock(HostClientFactory.class), config) {
+      @Override
+      protected VsphereImageStore createImageStore() {
+        return stores.remove();
+      }
+    };
+  }
+
+  @Test
+  public void testDatastoreSelection() throws Exception {
+    VsphereImageStore primary = stores.peek();
+
+    assertThat(imageStore.getDatastore(), is("ds1"));
+    assertThat(imageStore.getSecondaryDatastores(), contains("ds2", "ds3"));
+    assertThat(stores.isEmpty(), is(true));
+    verify(primary, never()).setHostIp(anyString());
+  }
+
+  @Test
+  public void testCreateImage() throws Exception {
+    VsphereImageStore[] selected = stores.toArray(new VsphereImageStore[0]);
+    for (VsphereImageStore store : selected) {
+      when(store.createImage("image-id")).thenReturn(
+          new VsphereImageStoreImage(mock(NfcClient.class), "upload-folder", "image-id"));
+    }
+
+    FanOutImage image = (FanOutImage) imageStore.createImage("image-id");
+    assertThat(image.getImages().size(), is(3));
+    verify(selected[1]).setHostIp("host3");
+    verify(selected[2]).setHostIp("host5");
+
+    imageStore.finalizeImage(image);
+    for (int i = 0; i < selected.length; i++) {
+      verify(selected[i]).finalizeImage(image.getImages().get(i));
+    }
+  }
+
+  @Test
+  public void testCreateImageFailureDeletesCreatedFolders() throws Exception {
+    VsphereImageStore[] selected = stores.toArray(new VsphereImageStore[0]);
+    VsphereImageStoreImage created = new VsphereImageStoreImage(mock(NfcClient.class), "upload-folder", "image-id");
+    when(selected[0].createImage("image-id")).thenReturn(created);
+    when(selected[1].createImage("image-id")).thenThrow(new InternalException("failed"));
+
+    try {
+      imageStore.createImage("image-id");
+      fail("createImage should have failed");
+    } catch (InternalException e) {
+      assertThat(e.getMessage(), equalTo("failed"));
+    }
+
+    verify(selected[0]).deleteUploadFolder(created);
+    verify(selected[2], never()).createImage("image-id");
+  }
+
+  @Test
+  public void testCreateImageFromVmOnGivenHost() throws Exception {
+    VsphereImageStore primary = stores.peek();
+    VsphereImageStoreImage created = new VsphereImageStoreImage(mock(NfcClient.class), "upload-folder", "image-id");
+    when(primary.createImage("image-id")).thenReturn(created);
+
+    imageStore.setHostIp("vm-host");
+    FanOutImage image = (FanOutImage) imageStore.createImage("image-id");
+    imageStore.createImageFromVm(image, "vm-id");
+    imageStore.finalizeImage(image);
+
+    assertThat(image.getImages(), contains(created));
+    assertThat(imageStore.getSecondaryDatastores().isEmpty(), is(true));
+    verify(primary).setHostIp("vm-host");
+    verify(primary).createImageFromVm(created, "vm-id");
+    verify(primary).finalizeImage(created);
+    verify(hostBackend, never()).filterByState(HostState.READY, Optional.of(AgentState.ACTIVE), Optional.absent());
+  }
+
+  private static Host buildHost(String address, String imageDatastore) {
+    Host host = new Host();
+    host.setAddress(address);
+    host.setDatastores(imageDatastore == null
+        ? ImmutableList.of(new HostDatastore("local", "local", false))
+        : ImmutableList.of(new HostDatastore(imageDatastore, imageDatastore + "-name", true)));
+    return host;
+  }
+}
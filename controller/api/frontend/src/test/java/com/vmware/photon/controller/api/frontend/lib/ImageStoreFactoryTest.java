@@ -67,5 +67,30 @@ public class ImageStoreFactoryTest {
       ImageStoreFactory factory = new ImageStoreFactory(hostBackend, hostClientFactory, config);
       assertThat(factory.create(), instanceOf(VsphereImageStore.class));
     }
+
+    @Test
+    public void testUploadWithoutFanOut() {
+      config.setUseEsxStore(true);
+
+      ImageStoreFactory factory = new ImageStoreFactory(hostBackend, hostClientFactory, config);
+      assertThat(factory.createForUpload(), instanceOf(VsphereImageStore.class));
+    }
+
+    @Test
+    public void testUploadWithFanOut() {
+      config.setUseEsxStore(true);
+      config.setUploadFanOut(3);
+
+      ImageStoreFactory factory = new ImageStoreFactory(hostBackend, hostClientFactory, config);
+      assertThat(factory.createForUpload(), instanceOf(FanOutImageStore.class));
+    }
+
+    @Test
+    public void testUploadToLocalStoreIgnoresFanOut() {
+      config.setUploadFanOut(3);
+
+      ImageStoreFactory factory = new ImageStoreFactory(hostBackend, hostClientFactory, config);
+      assertThat(factory.createForUpload(), instanceOf(LocalImageStore.class));
+    }
   }
 }
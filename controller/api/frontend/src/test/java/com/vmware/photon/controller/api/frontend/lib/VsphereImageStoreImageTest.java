@@ -106,15 +106,11 @@ public class VsphereImageStoreImageTest {
 
   @Test
   public void testAddDiskImage() throws Exception {
+    imageConfig.setUploadInflaterThreads(4);
     NfcClient nfcClient = mock(NfcClient.class);
     doReturn(nfcClient).when(imageStore).getNfcClient(any(HostServiceTicket.class));
-    when(nfcClient.putStreamOptimizedDisk(
-        eq(String.format("[%s] tmp_upload_%s/%s.vmdk",
-            imageDatastore,
-            imageId,
-            imageId)),
-        any(InputStream.class)))
-        .thenReturn(1000L);
+    String imagePath = String.format("[%s] tmp_upload_%s/%s.vmdk", imageDatastore, imageId, imageId);
+    when(nfcClient.putStreamOptimizedDisk(eq(imagePath), any(InputStream.class), eq(4))).thenReturn(1000L);
     when(hostClient.getNfcServiceTicket(anyString())).thenReturn(serviceTicketResponse);
     when(hostClient.createImage(imageId, imageDatastore)).thenReturn(new CreateImageResponse(CreateImageResultCode.OK));
 
@@ -122,6 +118,7 @@ public class VsphereImageStoreImageTest {
     imageFolder.addDisk("disk1.vmdk", inputStream);
 
     verify(hostClient).createImage(imageId, imageDatastore);
+    verify(nfcClient).putStreamOptimizedDisk(eq(imagePath), any(InputStream.class), eq(4));
   }
 
   @Test(expectedExceptions = RuntimeException.class)
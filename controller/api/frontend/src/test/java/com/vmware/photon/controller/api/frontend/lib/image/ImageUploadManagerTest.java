@@ -0,0 +1,303 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.lib.image;
+
+import com.vmware.photon.controller.api.frontend.exceptions.external.ImageUploadException;
+import com.vmware.photon.controller.api.frontend.exceptions.external.ImageUploadNotFoundException;
+import com.vmware.photon.controller.api.model.ImageUpload;
+import com.vmware.photon.controller.resource.gen.ImageReplication;
+
+import com.google.common.io.ByteStreams;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link ImageUploadManager}.
+ */
+public class ImageUploadManagerTest {
+
+  private static final int PART_SIZE = 4096;
+
+  private Path stagingRoot;
+  private ImageUploadManager manager;
+  private byte[] image;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    stagingRoot = Files.createTempDirectory("image-uploads");
+    manager = new ImageUploadManager(stagingRoot, TimeUnit.HOURS.toMillis(1));
+
+    image = new byte[PART_SIZE * 4 + 100];
+    for (int i = 0; i < image.length; i++) {
+      image[i] = (byte) i;
+    }
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    manager.stop();
+    FileUtils.deleteDirectory(stagingRoot.toFile());
+  }
+
+  @Test
+  public void testPartsInParallel() throws Exception {
+    ImageUpload upload = manager.create("image1", ImageReplication.EAGER);
+    int parts = (image.length + PART_SIZE - 1) / PART_SIZE;
+
+    ExecutorService executor = Executors.newFixedThreadPool(parts);
+    try {
+      List<Future<ImageUpload>> futures = new ArrayList<>();
+      for (int part = parts; part >= 1; part--) {
+        int partNumber = part;
+        futures.add(executor.submit(() -> manager.putPart(upload.getId(), partNumber, getPart(partNumber))));
+      }
+      for (Future<ImageUpload> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    ImageUpload received = manager.get(upload.getId());
+    assertThat(received.getName(), is("image1"));
+    assertThat(received.getParts(), contains(1, 2, 3, 4, 5));
+    assertThat(received.getSize(), is((long) image.length));
+
+    try (InputStream inputStream = manager.open(upload.getId())) {
+      assertThat(Arrays.equals(ByteStreams.toByteArray(inputStream), image), is(true));
+    }
+  }
+
+  @Test
+  public void testResumeWithMissingPart() throws Exception {
+    ImageUpload upload = manager.create("image1", ImageReplication.EAGER);
+    manager.putPart(upload.getId(), 1, getPart(1));
+    manager.putPart(upload.getId(), 3, getPart(3));
+
+    try {
+      manager.open(upload.getId());
+      fail("open should have failed because part 2 is missing");
+    } catch (ImageUploadException e) {
+      assertThat(e.getMessage(), is("Part 2 of image upload " + upload.getId() + " is missing"));
+    }
+
+    // Parts sent again replace the previous ones
+    manager.putPart(upload.getId(), 1, new ByteArrayInputStream(new byte[10]));
+    manager.putPart(upload.getId(), 1, getPart(1));
+    manager.putPart(upload.getId(), 2, getPart(2));
+
+    try (InputStream inputStream = manager.open(upload.getId())) {
+      assertThat(Arrays.equals(ByteStreams.toByteArray(inputStream), Arrays.copyOf(image, PART_SIZE * 3)), is(true));
+    }
+
+    try {
+      manager.putPart(upload.getId(), 4, getPart(4));
+      fail("putPart should have failed because the upload is completed");
+    } catch (ImageUploadException e) {
+      assertThat(e.getMessage(), is("Image upload " + upload.getId() + " is already completed"));
+    }
+  }
+
+  @Test
+  public void testInvalidPartNumber() throws Exception {
+    ImageUpload upload = manager.create("image1", ImageReplication.EAGER);
+    try {
+      manager.putPart(upload.getId(), 0, getPart(1));
+      fail("putPart should have failed because of the part number");
+    } catch (ImageUploadException e) {
+      assertThat(e.getMessage(), is("Part number 0 is not between 1 and " + ImageUploadManager.MAX_PARTS));
+    }
+  }
+
+  @Test
+  public void testDelete() throws Exception {
+    ImageUpload upload = manager.create("image1", ImageReplication.EAGER);
+    manager.putPart(upload.getId(), 1, getPart(1));
+
+    manager.delete(upload.getId());
+    assertThat(Files.exists(stagingRoot.resolve(upload.getId())), is(false));
+
+    try {
+      manager.get(upload.getId());
+      fail("get should have failed because the upload was deleted");
+    } catch (ImageUploadNotFoundException e) {
+      assertThat(e.getMessage(), is("Image upload '" + upload.getId() + "' not found"));
+    }
+  }
+
+  @Test
+  public void testReopenAfterFailedCompletion() throws Exception {
+    ImageUpload upload = manager.create("image1", ImageReplication.EAGER);
+    manager.putPart(upload.getId(), 1, getPart(1));
+    manager.open(upload.getId()).close();
+
+    manager.reopen(upload.getId());
+    manager.putPart(upload.getId(), 2, getPart(2));
+    try (InputStream inputStream = manager.open(upload.getId())) {
+      assertThat(Arrays.equals(ByteStreams.toByteArray(inputStream), Arrays.copyOf(image, PART_SIZE * 2)), is(true));
+    }
+  }
+
+  @Test
+  public void testDeleteExpired() throws Exception {
+    manager = new ImageUploadManager(stagingRoot, 0);
+    ImageUpload expired = manager.create("image1", ImageReplication.EAGER);
+    manager.putPart(expired.getId(), 1, getPart(1));
+    ImageUpload completing = manager.create("image2", ImageReplication.EAGER);
+    manager.putPart(completing.getId(), 1, getPart(1));
+    manager.open(completing.getId()).close();
+
+    manager.deleteExpired();
+
+    assertThat(Files.exists(stagingRoot.resolve(expired.getId())), is(false));
+    try {
+      manager.get(expired.getId());
+      fail("get should have failed because the upload expired");
+    } catch (ImageUploadNotFoundException e) {
+      assertThat(e.getMessage(), is("Image upload '" + expired.getId() + "' not found"));
+    }
+
+    // Uploads being completed do not expire
+    assertThat(manager.get(completing.getId()).getParts(), contains(1));
+  }
+
+  @Test
+  public void testPartInProgressIsActivity() throws Exception {
+    manager = new ImageUploadManager(stagingRoot, 0);
+    ImageUpload upload = manager.create("image1", ImageReplication.EAGER);
+
+    BlockingInputStream part = new BlockingInputStream(getPart(1));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<ImageUpload> future = executor.submit(() -> manager.putPart(upload.getId(), 1, part));
+      part.awaitRead();
+
+      // An upload with a part being received does not expire
+      manager.deleteExpired();
+      assertThat(manager.get(upload.getId()).getParts().isEmpty(), is(true));
+
+      part.release();
+      assertThat(future.get().getParts(), contains(1));
+    } finally {
+      executor.shutdown();
+    }
+
+    manager.deleteExpired();
+    assertThat(Files.exists(stagingRoot.resolve(upload.getId())), is(false));
+  }
+
+  @Test
+  public void testDeleteWhilePartInProgress() throws Exception {
+    ImageUpload upload = manager.create("image1", ImageReplication.EAGER);
+    manager.putPart(upload.getId(), 1, getPart(1));
+
+    BlockingInputStream part = new BlockingInputStream(getPart(2));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<ImageUpload> future = executor.submit(() -> manager.putPart(upload.getId(), 2, part));
+      part.awaitRead();
+
+      // The staged parts are kept until the part in progress is done
+      manager.delete(upload.getId());
+      assertThat(Files.exists(stagingRoot.resolve(upload.getId())), is(true));
+
+      part.release();
+      try {
+        future.get();
+        fail("putPart should have failed because the upload was deleted");
+      } catch (ExecutionException e) {
+        assertThat(e.getCause() instanceof ImageUploadNotFoundException, is(true));
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(Files.exists(stagingRoot.resolve(upload.getId())), is(false));
+
+    try {
+      manager.putPart(upload.getId(), 3, getPart(3));
+      fail("putPart should have failed because the upload was deleted");
+    } catch (ImageUploadNotFoundException e) {
+      assertThat(e.getMessage(), is("Image upload '" + upload.getId() + "' not found"));
+    }
+  }
+
+  @Test
+  public void testStartAndStop() throws Exception {
+    assertThat(manager.isStarted(), is(false));
+    manager.start();
+    assertThat(manager.isStarted(), is(true));
+    manager.stop();
+    assertThat(manager.isStarted(), is(false));
+  }
+
+  private InputStream getPart(int partNumber) {
+    int offset = (partNumber - 1) * PART_SIZE;
+    return new ByteArrayInputStream(image, offset, Math.min(PART_SIZE, image.length - offset));
+  }
+
+  /**
+   * Stream which blocks on its first read until released, to keep a part in progress.
+   */
+  private static class BlockingInputStream extends FilterInputStream {
+    private final CountDownLatch read = new CountDownLatch(1);
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    BlockingInputStream(InputStream in) {
+      super(in);
+    }
+
+    void awaitRead() throws InterruptedException {
+      assertThat(read.await(10, TimeUnit.SECONDS), is(true));
+    }
+
+    void release() {
+      released.countDown();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      read.countDown();
+      try {
+        released.await();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException();
+      }
+      return super.read(b, off, len);
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.resources;
+
+import com.vmware.photon.controller.api.frontend.clients.ImageFeClient;
+import com.vmware.photon.controller.api.frontend.exceptions.external.ImageUploadNotFoundException;
+import com.vmware.photon.controller.api.frontend.resources.image.ImageUploadResource;
+import com.vmware.photon.controller.api.frontend.resources.image.ImageUploadsResource;
+import com.vmware.photon.controller.api.frontend.resources.routes.ImageResourceRoutes;
+import com.vmware.photon.controller.api.frontend.resources.routes.TaskResourceRoutes;
+import com.vmware.photon.controller.api.model.ImageCreateSpec;
+import com.vmware.photon.controller.api.model.ImageUpload;
+import com.vmware.photon.controller.api.model.Task;
+import com.vmware.photon.controller.resource.gen.ImageReplication;
+
+import com.google.common.collect.ImmutableList;
+import org.mockito.Mock;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+
+import java.io.InputStream;
+
+/**
+ * Tests {@link ImageUploadResource} and {@link ImageUploadsResource}.
+ */
+public class ImageUploadResourceTest extends ResourceTest {
+
+  private String uploadId = "upload1";
+
+  private String uploadRoutePath =
+      UriBuilder.fromPath(ImageResourceRoutes.IMAGE_UPLOAD_PATH).build(uploadId).toString();
+
+  private String taskId = "task1";
+
+  private String taskRoutePath =
+      UriBuilder.fromPath(TaskResourceRoutes.TASK_PATH).build(taskId).toString();
+
+  @Mock
+  private ImageFeClient imageFeClient;
+
+  private ImageUpload upload;
+
+  @Override
+  protected void setUpResources() throws Exception {
+    addResource(new ImageUploadResource(imageFeClient));
+    addResource(new ImageUploadsResource(imageFeClient));
+  }
+
+  @BeforeMethod
+  public void setUp() {
+    upload = new ImageUpload();
+    upload.setId(uploadId);
+    upload.setName("image1");
+    upload.setReplicationType(ImageReplication.EAGER);
+    upload.setParts(ImmutableList.of(1));
+    upload.setSize(3L);
+    upload.setBytesPerSecond(0L);
+  }
+
+  @Test
+  public void testCreateUpload() throws Exception {
+    ImageCreateSpec spec = new ImageCreateSpec();
+    spec.setName("image1");
+    spec.setReplicationType(ImageReplication.EAGER);
+    when(imageFeClient.createUpload(spec)).thenReturn(upload);
+
+    Response response = client().target(ImageResourceRoutes.IMAGE_UPLOADS_PATH).request()
+        .post(Entity.entity(spec, MediaType.APPLICATION_JSON_TYPE));
+    assertThat(response.getStatus(), is(Response.Status.CREATED.getStatusCode()));
+
+    ImageUpload responseUpload = response.readEntity(ImageUpload.class);
+    assertThat(responseUpload.getName(), is("image1"));
+    assertThat(responseUpload.getSelfLink().endsWith(uploadRoutePath), is(true));
+  }
+
+  @Test
+  public void testPutPart() throws Exception {
+    when(imageFeClient.putUploadPart(eq(uploadId), eq(1), any(InputStream.class))).thenReturn(upload);
+
+    Response response = client().target(uploadRoutePath + "/parts/1").request()
+        .put(Entity.entity(new byte[]{1, 2, 3}, MediaType.APPLICATION_OCTET_STREAM_TYPE));
+    assertThat(response.getStatus(), is(Response.Status.OK.getStatusCode()));
+
+    ImageUpload responseUpload = response.readEntity(ImageUpload.class);
+    assertThat(responseUpload.getParts(), contains(1));
+    assertThat(responseUpload.getSize(), is(3L));
+  }
+
+  @Test
+  public void testGetNonExistingUpload() throws Exception {
+    when(imageFeClient.getUpload(uploadId)).thenThrow(new ImageUploadNotFoundException(uploadId));
+
+    Response response = client().target(uploadRoutePath).request().get();
+    assertThat(response.getStatus(), is(Response.Status.NOT_FOUND.getStatusCode()));
+  }
+
+  @Test
+  public void testCompleteUpload() throws Exception {
+    Task task = new Task();
+    task.setId(taskId);
+    when(imageFeClient.completeUpload(uploadId)).thenReturn(task);
+
+    Response response = client().target(uploadRoutePath + "/complete").request()
+        .post(Entity.entity(null, MediaType.APPLICATION_JSON_TYPE));
+    assertThat(response.getStatus(), is(Response.Status.CREATED.getStatusCode()));
+
+    Task responseTask = response.readEntity(Task.class);
+    assertThat(responseTask.getSelfLink().endsWith(taskRoutePath), is(true));
+  }
+}
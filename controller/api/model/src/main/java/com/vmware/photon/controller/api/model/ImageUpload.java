@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.model;
+
+import com.vmware.photon.controller.api.model.base.Base;
+import com.vmware.photon.controller.resource.gen.ImageReplication;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.wordnik.swagger.annotations.ApiModel;
+import com.wordnik.swagger.annotations.ApiModelProperty;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Multi-part image upload session.
+ */
+@ApiModel(value = "This class represents an image being uploaded in numbered parts.")
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ImageUpload extends Base {
+
+  public static final String KIND = "image-upload";
+
+  @JsonProperty
+  @ApiModelProperty(value = "kind=\"image-upload\"", required = true)
+  private String kind = KIND;
+
+  @JsonProperty
+  @ApiModelProperty(value = "Name of the image being uploaded", required = true)
+  private String name;
+
+  @JsonProperty
+  @ApiModelProperty(value = "Image replication type", required = true)
+  private ImageReplication replicationType;
+
+  @JsonProperty
+  @ApiModelProperty(value = "Numbers of the parts received so far, in ascending order", required = true)
+  private List<Integer> parts;
+
+  @JsonProperty
+  @ApiModelProperty(value = "Number of bytes received so far", required = true)
+  private Long size;
+
+  @JsonProperty
+  @ApiModelProperty(value = "Rate at which parts were received (in bytes per second)", required = true)
+  private Long bytesPerSecond;
+
+  @Override
+  public String getKind() {
+    return kind;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public ImageReplication getReplicationType() {
+    return replicationType;
+  }
+
+  public void setReplicationType(ImageReplication replicationType) {
+    this.replicationType = replicationType;
+  }
+
+  public List<Integer> getParts() {
+    return parts;
+  }
+
+  public void setParts(List<Integer> parts) {
+    this.parts = parts;
+  }
+
+  public Long getSize() {
+    return size;
+  }
+
+  public void setSize(Long size) {
+    this.size = size;
+  }
+
+  public Long getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+
+  public void setBytesPerSecond(Long bytesPerSecond) {
+    this.bytesPerSecond = bytesPerSecond;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    ImageUpload other = (ImageUpload) o;
+
+    return super.equals(other) &&
+        Objects.equals(this.name, other.name) &&
+        Objects.equals(this.replicationType, other.replicationType) &&
+        Objects.equals(this.parts, other.parts) &&
+        Objects.equals(this.size, other.size) &&
+        Objects.equals(this.bytesPerSecond, other.bytesPerSecond);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), name, replicationType, parts, size, bytesPerSecond);
+  }
+
+  @Override
+  protected com.google.common.base.Objects.ToStringHelper toStringHelper() {
+    return super.toStringHelper()
+        .add("name", name)
+        .add("replicationType", replicationType)
+        .add("parts", parts)
+        .add("size", size)
+        .add("bytesPerSecond", bytesPerSecond);
+  }
+}
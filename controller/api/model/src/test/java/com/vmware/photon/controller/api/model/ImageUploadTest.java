@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.model;
+
+import com.vmware.photon.controller.api.model.helpers.JsonHelpers;
+import com.vmware.photon.controller.resource.gen.ImageReplication;
+
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.Test;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static uk.co.datumedge.hamcrest.json.SameJSONAs.sameJSONAs;
+
+/**
+ * Tests {@link ImageUpload}.
+ */
+public class ImageUploadTest {
+
+  private static final String JSON_FILE = "fixtures/image-upload.json";
+
+  private static ImageUpload createImageUpload() {
+    ImageUpload upload = new ImageUpload();
+    upload.setId("upload-id");
+    upload.setSelfLink("self link");
+    upload.setName("image1");
+    upload.setReplicationType(ImageReplication.EAGER);
+    upload.setParts(ImmutableList.of(1, 2, 4));
+    upload.setSize(3072L);
+    upload.setBytesPerSecond(1024L);
+    return upload;
+  }
+
+  @Test
+  public void testEqualsAndHashCode() {
+    ImageUpload upload1 = createImageUpload();
+    ImageUpload upload2 = createImageUpload();
+    assertThat(upload1, is(upload2));
+    assertThat(upload1.hashCode(), is(upload2.hashCode()));
+
+    upload2.setParts(ImmutableList.of(1, 2, 3, 4));
+    assertThat(upload1, not(upload2));
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    ImageUpload upload = createImageUpload();
+
+    assertThat(JsonHelpers.asJson(upload), sameJSONAs(JsonHelpers.jsonFixture(JSON_FILE)));
+    assertThat(JsonHelpers.fromJson(JsonHelpers.jsonFixture(JSON_FILE), ImageUpload.class), is(upload));
+  }
+}
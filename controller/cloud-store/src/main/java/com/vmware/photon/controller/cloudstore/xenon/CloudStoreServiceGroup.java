@@ -23,6 +23,7 @@ import com.vmware.photon.controller.cloudstore.xenon.entity.DhcpSubnetService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.DiskServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.EntityLockServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.FlavorServiceFactory;
+import com.vmware.photon.controller.cloudstore.xenon.entity.HostHeartbeatService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.HostServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.ImageServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.ImageToImageDatastoreMappingServiceFactory;
@@ -114,6 +115,9 @@ public class CloudStoreServiceGroup
       DatastoreDeleteFactoryService.class,
       DatastoreCleanerFactoryService.class,
 
+      // Agent heartbeats
+      HostHeartbeatService.class,
+
       // Upgrade
       UpgradeInformationService.class,
   };
@@ -138,7 +142,7 @@ public class CloudStoreServiceGroup
   private static final Logger logger = LoggerFactory.getLogger(CloudStoreServiceGroup.class);
 
   private static final Map<String, TaskSchedulerServiceStateBuilder> TASK_SCHEDULERS = ImmutableMap.of(
-      IP_LEASE_DELETE_SERVICE, new TaskSchedulerServiceStateBuilder(IpLeaseDeleteService.class, 10));
+      IP_LEASE_DELETE_SERVICE, new TaskSchedulerServiceStateBuilder(IpLeaseDeleteService.class, 10, true));
 
   private static final TaskStateBuilder[] TASK_TRIGGERS = new TaskStateBuilder[]{
       new TombstoneCleanerTriggerBuilder(
@@ -256,7 +260,8 @@ public class CloudStoreServiceGroup
             TaskTriggerFactoryService.SELF_LINK + IpLeaseCleanerTriggerBuilder.TRIGGER_SELF_LINK)
 
             // special services
-            && photonControllerXenonHost.checkServiceAvailable(SchedulingConstantGenerator.SINGLETON_LINK);
+            && photonControllerXenonHost.checkServiceAvailable(SchedulingConstantGenerator.SINGLETON_LINK)
+            && photonControllerXenonHost.checkServiceAvailable(HostHeartbeatService.SELF_LINK);
   }
 
   @Override
@@ -22,7 +22,6 @@ import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.photon.controller.common.xenon.ValidationUtils;
 import com.vmware.photon.controller.common.xenon.deployment.MigrateDuringDeployment;
 import com.vmware.photon.controller.common.xenon.deployment.NoMigrationDuringDeployment;
-import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
 import com.vmware.photon.controller.common.xenon.migration.MigrateDuringUpgrade;
 import com.vmware.photon.controller.common.xenon.migration.MigrationUtils;
 import com.vmware.photon.controller.common.xenon.migration.NoMigrationDuringUpgrade;
@@ -43,7 +42,13 @@ import com.google.common.base.Preconditions;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Used for allocating IPs from a subnet and also to track ownership of a CIDR range by a network.
@@ -62,6 +67,12 @@ public class DhcpSubnetService extends StatefulService {
   public static final long MAX_IPV4 = 0xFFFFFFFFL; // this represents 255.255.255.255
   public static final String VIRTUAL_NETWORK_SNAT_IP = "virtual-network-snat-ip";
 
+  /**
+   * Index in the dynamic range where the search for a free IP starts. Allocations are serialized by the owner of the
+   * subnet, so it is not persisted and a new owner starts from the beginning of the range.
+   */
+  private int allocationCursor;
+
   public DhcpSubnetService() {
     super(State.class);
     super.toggleOption(ServiceOption.PERSISTENCE, true);
@@ -99,6 +110,12 @@ public class DhcpSubnetService extends StatefulService {
             IpOperationPatch.class, "kind", IpOperationPatch.Kind.AllocateIp),
         this::handleAllocateIpToMacPatch, "Allocate IP to MAC address");
 
+    myRouter.register(
+        Action.PATCH,
+        new RequestRouter.RequestBodyMatcher<>(
+            IpOperationPatch.class, "kind", IpOperationPatch.Kind.AllocateIps),
+        this::handleAllocateIpsPatch, "Allocate IPs to several MAC addresses");
+
     myRouter.register(
         Action.PATCH,
         new RequestRouter.RequestBodyMatcher<>(
@@ -127,61 +144,174 @@ public class DhcpSubnetService extends StatefulService {
     ServiceUtils.logInfo(this, "Patching service %s to allocate IP to MAC", getSelfLink());
 
     try {
-      String allocatedIp = null;
       IpOperationPatch ipOperationPatch = patch.getBody(IpOperationPatch.class);
-      State currentState = getState(patch);
-
       ipOperationPatch.ipAddress = null;
-      Long dynamicRangeSize = currentState.highIpDynamic - currentState.lowIpDynamic + 1;
+      IpOperationPatch.IpAllocation allocation =
+          new IpOperationPatch.IpAllocation(ipOperationPatch.ownerVmId, ipOperationPatch.macAddress);
 
-      if (currentState.ipAllocations.length() < dynamicRangeSize) {
-        int cur = currentState.ipAllocations.nextClearBit(0);
-        currentState.ipAllocations.set(cur);
+      allocateIps(patch, Collections.singletonList(allocation),
+          () -> ipOperationPatch.ipAddress = allocation.ipAddress);
+    } catch (Throwable t) {
+      ServiceUtils.logSevere(this, t);
+      patch.fail(t);
+    }
+  }
 
-        allocatedIp = IpHelper.longToIpString(cur + currentState.lowIpDynamic);
+  public void handleAllocateIpsPatch(Operation patch) {
+    ServiceUtils.logInfo(this, "Patching service %s to allocate IPs to MACs", getSelfLink());
 
-        IpLeaseService.IpLeaseOperationPatch ipLeaseOperationPatch =
-            new IpLeaseService.IpLeaseOperationPatch(
-                IpLeaseService.IpLeaseOperationPatch.Kind.ACQUIRE,
-                ipOperationPatch.ownerVmId,
-                ipOperationPatch.macAddress);
+    try {
+      IpOperationPatch ipOperationPatch = patch.getBody(IpOperationPatch.class);
+      try {
+        IpOperationPatch.validateAllocations(ipOperationPatch.allocations);
+      } catch (IllegalArgumentException e) {
+        ServiceUtils.failOperationAsBadRequest(this, patch, e);
+        return;
+      }
 
-        Operation patchOperation = Operation
-            .createPatch(this, makeIpLeaseUrl(currentState.isFloatingIpSubnet, currentState.subnetId, allocatedIp))
-            .setBody(ipLeaseOperationPatch);
+      allocateIps(patch, ipOperationPatch.allocations, () -> { });
+    } catch (Throwable t) {
+      ServiceUtils.logSevere(this, t);
+      patch.fail(t);
+    }
+  }
+
+  /**
+   * Allocates a free IP to each of the allocations and acquires their leases in parallel. The patch completes once
+   * all the leases are acquired, with the IPs recorded in the allocations, and the subnet state is only updated if
+   * all of them were acquired.
+   */
+  private void allocateIps(Operation patch, List<IpOperationPatch.IpAllocation> allocations, Runnable onAllocated) {
+    State currentState = getState(patch);
+    int rangeSize = IpHelper.safeLongToInt(currentState.highIpDynamic - currentState.lowIpDynamic + 1);
+    BitSet ipAllocations = (BitSet) currentState.ipAllocations.clone();
+
+    int cursor = allocationCursor;
+    for (IpOperationPatch.IpAllocation allocation : allocations) {
+      int index = findFreeIp(ipAllocations, rangeSize, cursor);
+      if (index < 0) {
+        ServiceUtils.failOperationAsBadRequest(this, patch, new IllegalArgumentException("range is full"),
+            new RangeFullyAllocatedError(currentState, allocation.ownerVmId));
+        return;
+      }
+
+      ipAllocations.set(index);
+      allocation.ipAddress = IpHelper.longToIpString(index + currentState.lowIpDynamic);
+      cursor = index + 1;
+    }
+    int nextCursor = cursor;
+
+    AtomicInteger pendingLeases = new AtomicInteger(allocations.size());
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Queue<IpOperationPatch.IpAllocation> acquired = new ConcurrentLinkedQueue<>();
+    for (IpOperationPatch.IpAllocation allocation : allocations) {
+      acquireLease(currentState, allocation, (o, e) -> {
+        if (e != null) {
+          failure.compareAndSet(null, e);
+        } else {
+          acquired.add(allocation);
+        }
+        if (pendingLeases.decrementAndGet() > 0) {
+          return;
+        }
+
+        if (failure.get() != null) {
+          ServiceUtils.logSevere(this, failure.get());
+          for (IpOperationPatch.IpAllocation acquiredAllocation : acquired) {
+            releaseLease(currentState, acquiredAllocation);
+          }
+          patch.fail(failure.get());
+          return;
+        }
 
         try {
-          ServiceUtils.doServiceOperation(this, patchOperation);
-        } catch (DocumentNotFoundException de) {
+          onAllocated.run();
+          allocationCursor = nextCursor;
+          currentState.ipAllocations = ipAllocations;
+          currentState.version++;
+          setState(patch, currentState);
+          patch.complete();
+        } catch (Throwable t) {
+          ServiceUtils.logSevere(this, t);
+          patch.fail(t);
+        }
+      });
+    }
+  }
+
+  /**
+   * Finds the first free IP at or after the cursor, wrapping around to the beginning of the range. Starting where
+   * the previous allocation stopped saves scanning the allocated beginning of the range on every allocation, and
+   * delays the reuse of released IPs.
+   *
+   * @return index of the free IP in the range, or -1 if the range is full
+   */
+  static int findFreeIp(BitSet ipAllocations, int rangeSize, int cursor) {
+    int index = cursor < rangeSize ? ipAllocations.nextClearBit(cursor) : rangeSize;
+    if (index >= rangeSize) {
+      index = ipAllocations.nextClearBit(0);
+    }
+    return index < rangeSize ? index : -1;
+  }
+
+  /**
+   * Acquires the lease of an allocated IP, creating the lease if this IP was never allocated before.
+   */
+  private void acquireLease(State currentState, IpOperationPatch.IpAllocation allocation,
+                            Operation.CompletionHandler completion) {
+    String ipLeaseLink = makeIpLeaseUrl(currentState.isFloatingIpSubnet, currentState.subnetId, allocation.ipAddress);
+    IpLeaseService.IpLeaseOperationPatch ipLeaseOperationPatch =
+        new IpLeaseService.IpLeaseOperationPatch(
+            IpLeaseService.IpLeaseOperationPatch.Kind.ACQUIRE,
+            allocation.ownerVmId,
+            allocation.macAddress);
+
+    Operation patchOperation = Operation
+        .createPatch(this, ipLeaseLink)
+        .setBody(ipLeaseOperationPatch)
+        .setCompletion((o, e) -> {
+          if (e == null || o.getStatusCode() != Operation.STATUS_CODE_NOT_FOUND) {
+            completion.handle(o, e);
+            return;
+          }
+
           IpLeaseService.State ipLease = new IpLeaseService.State();
-          ipLease.ownerVmId = ipLeaseOperationPatch.ownerVmId;
-          ipLease.macAddress = ipLeaseOperationPatch.macAddress;
-          ipLease.ip = allocatedIp;
+          ipLease.ownerVmId = allocation.ownerVmId;
+          ipLease.macAddress = allocation.macAddress;
+          ipLease.ip = allocation.ipAddress;
           ipLease.subnetId = currentState.subnetId;
-          ipLease.documentSelfLink =
-              makeIpLeaseUrl(currentState.isFloatingIpSubnet, currentState.subnetId, allocatedIp);
+          ipLease.documentSelfLink = ipLeaseLink;
 
           Operation postOperation = Operation
               .createPost(this, IpLeaseService.FACTORY_LINK)
-              .setBody(ipLease);
-          ServiceUtils.doServiceOperation(this, postOperation);
-        }
-
-        ipOperationPatch.ipAddress = allocatedIp;
-      } else {
-        ServiceUtils.failOperationAsBadRequest(this, patch, new IllegalArgumentException("range is full"),
-            new RangeFullyAllocatedError(currentState, ipOperationPatch.ownerVmId));
-        return;
-      }
-
-      currentState.version++;
-      setState(patch, currentState);
+              .setBody(ipLease)
+              .setCompletion(completion);
+          sendRequest(postOperation);
+        });
+    sendRequest(patchOperation);
+  }
 
-      patch.complete();
-    } catch (Throwable t) {
-      ServiceUtils.logSevere(this, t);
-      patch.fail(t);
-    }
+  /**
+   * Releases the lease of an IP whose allocation failed, so that it can be allocated again.
+   */
+  private void releaseLease(State currentState, IpOperationPatch.IpAllocation allocation) {
+    IpLeaseService.IpLeaseOperationPatch ipLeaseOperationPatch =
+        new IpLeaseService.IpLeaseOperationPatch(
+            IpLeaseService.IpLeaseOperationPatch.Kind.RELEASE,
+            allocation.ownerVmId,
+            allocation.macAddress);
+
+    Operation patchOperation = Operation
+        .createPatch(this,
+            makeIpLeaseUrl(currentState.isFloatingIpSubnet, currentState.subnetId, allocation.ipAddress))
+        .setBody(ipLeaseOperationPatch)
+        .setCompletion((o, e) -> {
+          if (e != null) {
+            ServiceUtils.logWarning(this, "Failed to release lease of IP %s for subnetId: %s",
+                allocation.ipAddress, currentState.subnetId);
+          }
+        });
+    sendRequest(patchOperation);
   }
 
   public void handleReleaseIpPatch(Operation patch) {
@@ -202,20 +332,30 @@ public class DhcpSubnetService extends StatefulService {
               ipOperationPatch.macAddress);
 
       Operation patchOperation = Operation.createPatch(this, ipLeaseLink)
-          .setBody(ipLeaseOperationPatch);
-
-      try {
-        ServiceUtils.doServiceOperation(this, patchOperation);
-      } catch (DocumentNotFoundException de) {
-        ServiceUtils.logWarning(this, "Ignoring error: No lease file found for IP: %s for subnetId: %s",
-            ipOperationPatch.ipAddress, currentState.subnetId);
-      }
-
-      currentState.ipAllocations.clear((int) (ipToRelease - currentState.lowIpDynamic));
-
-      currentState.version++;
-      setState(patch, currentState);
-      patch.complete();
+          .setBody(ipLeaseOperationPatch)
+          .setCompletion((o, e) -> {
+            if (e != null) {
+              if (o.getStatusCode() != Operation.STATUS_CODE_NOT_FOUND) {
+                ServiceUtils.logSevere(this, e);
+                patch.fail(e);
+                return;
+              }
+              ServiceUtils.logWarning(this, "Ignoring error: No lease file found for IP: %s for subnetId: %s",
+                  ipOperationPatch.ipAddress, currentState.subnetId);
+            }
+
+            try {
+              currentState.ipAllocations.clear((int) (ipToRelease - currentState.lowIpDynamic));
+
+              currentState.version++;
+              setState(patch, currentState);
+              patch.complete();
+            } catch (Throwable t) {
+              ServiceUtils.logSevere(this, t);
+              patch.fail(t);
+            }
+          });
+      sendRequest(patchOperation);
     } catch (Throwable t) {
       ServiceUtils.logSevere(this, t);
       patch.fail(t);
@@ -352,6 +492,11 @@ public class DhcpSubnetService extends StatefulService {
     public String ipAddress;
     public String ownerVmId;
 
+    /**
+     * The MAC addresses to allocate IPs to with one AllocateIps patch. The allocated IPs are returned in them.
+     */
+    public List<IpAllocation> allocations;
+
     private IpOperationPatch() {
       kind = null;
     }
@@ -381,13 +526,57 @@ public class DhcpSubnetService extends StatefulService {
       this.ownerVmId = ownerVmId;
     }
 
+    public IpOperationPatch(List<IpAllocation> allocations) {
+      validateAllocations(allocations);
+      this.kind = Kind.AllocateIps;
+      this.allocations = allocations;
+    }
+
+    /**
+     * Validates the allocations of an AllocateIps patch. Patches received over the wire are not built with the
+     * constructor, so the service validates them again.
+     */
+    static void validateAllocations(List<IpAllocation> allocations) {
+      if (allocations == null || allocations.isEmpty()) {
+        throw new IllegalArgumentException("allocations cannot be empty for allocate ips operation");
+      }
+
+      for (IpAllocation allocation : allocations) {
+        if (allocation == null || StringUtils.isBlank(allocation.ownerVmId)) {
+          throw new IllegalArgumentException("ownerVmId cannot be blank for allocate ips operation");
+        }
+
+        if (StringUtils.isBlank(allocation.macAddress)) {
+          throw new IllegalArgumentException("macAddress cannot be blank for allocate ips operation");
+        }
+      }
+    }
+
     /**
      * Defines type of IP operations that are supported.
      */
     public enum Kind {
       AllocateIp,
+      AllocateIps,
       ReleaseIp
     }
+
+    /**
+     * An IP allocated to a MAC address by an AllocateIps patch.
+     */
+    public static class IpAllocation {
+      public String ownerVmId;
+      public String macAddress;
+      public String ipAddress;
+
+      private IpAllocation() {
+      }
+
+      public IpAllocation(String ownerVmId, String macAddress) {
+        this.ownerVmId = ownerVmId;
+        this.macAddress = macAddress;
+      }
+    }
   }
 
   /**
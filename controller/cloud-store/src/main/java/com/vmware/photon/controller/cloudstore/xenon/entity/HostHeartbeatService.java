@@ -0,0 +1,401 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.entity;
+
+import com.vmware.photon.controller.agent.gen.AgentControl;
+import com.vmware.photon.controller.api.model.AgentState;
+import com.vmware.photon.controller.cloudstore.SystemConfig;
+import com.vmware.photon.controller.common.clients.AgentControlClient;
+import com.vmware.photon.controller.common.clients.AgentControlClientProvider;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
+import com.vmware.photon.controller.common.xenon.QueryTaskUtils;
+import com.vmware.photon.controller.common.xenon.ServiceUriPaths;
+import com.vmware.photon.controller.common.xenon.ServiceUtils;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.OperationJoin;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+
+import com.codahale.metrics.Histogram;
+import com.google.common.annotations.VisibleForTesting;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.thrift.async.AsyncMethodCallback;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * This class implements the agent heartbeats of the hosts owned by the local node. Every HostService used to ping
+ * its agent from its own maintenance, reading its document and opening a new connection to the agent each time.
+ * Instead, this service keeps the hosts owned by this node in a timer wheel which spreads their pings over the
+ * heartbeat interval, keeps one connection open per agent, and decides whether an agent is missing with a
+ * {@link PhiAccrualFailureDetector} rather than on a single failed ping. The agent state changes found in a tick of
+ * the wheel are written together at the end of the tick.
+ */
+public class HostHeartbeatService extends StatelessService {
+
+  public static final String SELF_LINK = ServiceUriPaths.CLOUDSTORE_ROOT + "/host-heartbeat";
+
+  /**
+   * Interval between two pings of an agent (20 seconds).
+   */
+  public static final long HEARTBEAT_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(20);
+
+  /**
+   * Interval at which the hosts owned by this node are read from the local index (60 seconds).
+   */
+  public static final long REFRESH_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+  /**
+   * The wheel moves by one slot per maintenance, so a host is pinged once per HEARTBEAT_INTERVAL_MILLIS.
+   */
+  private static final long TICK_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+  private static final int WHEEL_SLOTS = (int) (HEARTBEAT_INTERVAL_MILLIS / TICK_MILLIS);
+
+  /**
+   * An agent is marked as missing once phi goes above this threshold. With the acceptable pause of one heartbeat
+   * interval, this takes three consecutive missed pings for an agent whose pings were on time, and four for an agent
+   * which was just added or whose pings were irregular.
+   */
+  private static final double PHI_THRESHOLD = 8.0;
+
+  private static final long ACCEPTABLE_PAUSE_MILLIS = HEARTBEAT_INTERVAL_MILLIS;
+
+  private static final int DETECTOR_WINDOW_SIZE = 100;
+
+  private final Histogram rttHistogram = DefaultMetricRegistry.REGISTRY.histogram(
+      MetricRegistry.name(HostHeartbeatService.class, "rtt-millis"));
+
+  private final Map<String, Target> targets = new HashMap<>();
+
+  private final List<Map<String, Target>> wheel = new ArrayList<>();
+
+  private final Map<String, AgentState> pendingAgentStates = new ConcurrentHashMap<>();
+
+  private final LongSupplier clock;
+
+  private long lastTick = -1;
+
+  private long lastRefreshTime;
+
+  private boolean paused = true;
+
+  public HostHeartbeatService() {
+    this(System::currentTimeMillis);
+  }
+
+  @VisibleForTesting
+  HostHeartbeatService(LongSupplier clock) {
+    this.clock = clock;
+    super.toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
+    super.setMaintenanceIntervalMicros(TimeUnit.MILLISECONDS.toMicros(TICK_MILLIS));
+    for (int i = 0; i < WHEEL_SLOTS; i++) {
+      wheel.add(new HashMap<>());
+    }
+  }
+
+  @Override
+  public void handlePeriodicMaintenance(Operation maintenance) {
+    maintenance.complete();
+
+    if (HostService.isInUnitTests()) {
+      return;
+    }
+
+    try {
+      long now = clock.getAsLong();
+      if (now - lastRefreshTime >= REFRESH_INTERVAL_MILLIS) {
+        lastRefreshTime = now;
+        // Checked once per refresh rather than per tick, as it reads the deployment document
+        SystemConfig systemConfig = SystemConfig.getInstance();
+        paused = systemConfig == null || systemConfig.isBackgroundPaused();
+        if (!paused) {
+          refreshTargets();
+        }
+      }
+
+      if (!paused) {
+        tick(now);
+      }
+    } catch (Throwable t) {
+      ServiceUtils.logWarning(this, "Heartbeat maintenance failed %s", t.getMessage());
+    }
+  }
+
+  /**
+   * Write the agent state changes found since the previous tick, and ping the hosts of the slots of the wheel up to
+   * the current one.
+   */
+  @VisibleForTesting
+  void tick(long now) {
+    flushAgentStates();
+
+    // Catch up with the slots skipped by a late maintenance, but never ping a host twice in a tick
+    long tick = now / TICK_MILLIS;
+    long firstTick = lastTick < 0 ? tick : Math.max(lastTick + 1, tick - WHEEL_SLOTS + 1);
+    lastTick = tick;
+    for (long t = firstTick; t <= tick; t++) {
+      List<Target> slotTargets;
+      synchronized (targets) {
+        slotTargets = new ArrayList<>(wheel.get((int) (t % WHEEL_SLOTS)).values());
+      }
+      for (Target target : slotTargets) {
+        ping(target);
+      }
+    }
+  }
+
+  /**
+   * Read the host documents from the local index, and keep the ones owned by this node as the hosts to ping. The
+   * query replaces the GET each HostService used to send itself before pinging its agent.
+   */
+  private void refreshTargets() {
+    QueryTask.QuerySpecification querySpec = QueryTaskUtils.buildQuerySpec(HostService.State.class, null);
+    querySpec.options = EnumSet.of(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
+
+    Operation.createPost(UriUtils.buildUri(getHost(), ServiceUriPaths.CORE_LOCAL_QUERY_TASKS))
+        .setBody(QueryTask.create(querySpec).setDirect(true))
+        .setCompletion((op, ex) -> {
+          if (ex != null) {
+            ServiceUtils.logWarning(this, "Failed to query the hosts to ping %s", ex.getMessage());
+            return;
+          }
+
+          List<HostService.State> hostStates = new ArrayList<>();
+          QueryTask queryTask = op.getBody(QueryTask.class);
+          if (queryTask.results != null && queryTask.results.documents != null) {
+            for (Object document : queryTask.results.documents.values()) {
+              hostStates.add(Utils.fromJson(document, HostService.State.class));
+            }
+          }
+          updateTargets(hostStates);
+        })
+        .sendWith(this);
+  }
+
+  /**
+   * Keep the hosts owned by this node as the hosts to ping. A host which is no longer owned by this node, or whose
+   * agent moved to another address, is dropped along with the connection to its agent.
+   */
+  @VisibleForTesting
+  void updateTargets(Collection<HostService.State> hostStates) {
+    Map<String, HostService.State> hosts = new HashMap<>();
+    for (HostService.State hostState : hostStates) {
+      if (getHost().getId().equals(hostState.documentOwner)) {
+        hosts.put(hostState.documentSelfLink, hostState);
+      }
+    }
+
+    long now = clock.getAsLong();
+    synchronized (targets) {
+      Set<String> removed = new HashSet<>(targets.keySet());
+      removed.removeAll(hosts.keySet());
+      for (String hostLink : removed) {
+        Target target = targets.remove(hostLink);
+        wheel.get(target.slot).remove(hostLink);
+        target.close();
+      }
+
+      for (HostService.State hostState : hosts.values()) {
+        Target target = targets.get(hostState.documentSelfLink);
+        if (target != null
+            && target.hostAddress.equals(hostState.hostAddress) && target.agentPort == hostState.agentPort) {
+          target.setAgentState(hostState.agentState);
+          continue;
+        }
+
+        if (target != null) {
+          target.close();
+        }
+        target = new Target(hostState, now);
+        targets.put(target.hostLink, target);
+        wheel.get(target.slot).put(target.hostLink, target);
+      }
+    }
+
+    ServiceUtils.logInfo(this, "Sending heartbeats to %d hosts", hosts.size());
+  }
+
+  private void ping(Target target) {
+    AgentControlClient agentControlClient = target.acquireClient(
+        () -> ((AgentControlClientProvider) getHost()).getAgentControlClient());
+    if (agentControlClient == null) {
+      // The previous ping of the agent is still running
+      return;
+    }
+
+    long startTime = System.nanoTime();
+    try {
+      agentControlClient.ping(new AsyncMethodCallback<AgentControl.AsyncSSLClient.ping_call>() {
+        @Override
+        public void onComplete(AgentControl.AsyncSSLClient.ping_call pingCall) {
+          rttHistogram.update(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+          onPingCompleted(target, true);
+        }
+
+        @Override
+        public void onError(Exception e) {
+          onPingCompleted(target, false);
+        }
+      });
+    } catch (Throwable t) {
+      onPingCompleted(target, false);
+    }
+  }
+
+  private void onPingCompleted(Target target, boolean succeeded) {
+    AgentState agentState = target.release(clock.getAsLong(), succeeded);
+    if (agentState != null) {
+      pendingAgentStates.put(target.hostLink, agentState);
+    }
+  }
+
+  /**
+   * Write the agent state changes found since the previous tick, one PATCH per host sent together. A PATCH which
+   * fails is sent again with the next tick, unless a newer agent state was found for the host in the meantime.
+   */
+  private void flushAgentStates() {
+    if (pendingAgentStates.isEmpty()) {
+      return;
+    }
+
+    List<Operation> patches = new ArrayList<>();
+    for (String hostLink : new ArrayList<>(pendingAgentStates.keySet())) {
+      AgentState agentState = pendingAgentStates.remove(hostLink);
+      HostService.State patchState = new HostService.State();
+      patchState.agentState = agentState;
+      patches.add(Operation.createPatch(this, hostLink)
+          .setBody(patchState)
+          .setCompletion((op, ex) -> {
+            synchronized (targets) {
+              Target target = targets.get(hostLink);
+              if (ex != null) {
+                ServiceUtils.logWarning(this, "Failed to set the agent state of %s to %s: %s", hostLink, agentState,
+                    ex.getMessage());
+                if (target != null) {
+                  pendingAgentStates.putIfAbsent(hostLink, agentState);
+                }
+                return;
+              }
+
+              if (target != null) {
+                target.setAgentState(agentState);
+              }
+            }
+          }));
+    }
+
+    ServiceUtils.logInfo(this, "Updating the agent state of %d hosts", patches.size());
+    OperationJoin.create(patches).sendWith(this);
+  }
+
+  @VisibleForTesting
+  Map<String, AgentState> getPendingAgentStates() {
+    return Collections.unmodifiableMap(pendingAgentStates);
+  }
+
+  /**
+   * A host pinged by this node.
+   */
+  private static class Target {
+    final String hostLink;
+    final String hostAddress;
+    final int agentPort;
+    final int slot;
+    final PhiAccrualFailureDetector failureDetector;
+    AgentState agentState;
+    AgentControlClient agentControlClient;
+    boolean pinging;
+    boolean closed;
+
+    Target(HostService.State hostState, long now) {
+      this.hostLink = hostState.documentSelfLink;
+      this.hostAddress = hostState.hostAddress;
+      this.agentPort = hostState.agentPort;
+      this.slot = Math.floorMod(hostLink.hashCode(), WHEEL_SLOTS);
+      this.failureDetector = new PhiAccrualFailureDetector(HEARTBEAT_INTERVAL_MILLIS, ACCEPTABLE_PAUSE_MILLIS,
+          DETECTOR_WINDOW_SIZE, now);
+      this.agentState = hostState.agentState;
+    }
+
+    synchronized void setAgentState(AgentState agentState) {
+      this.agentState = agentState;
+    }
+
+    /**
+     * @return the client of the agent, or null if it is in use by the previous ping
+     */
+    synchronized AgentControlClient acquireClient(Supplier<AgentControlClient> clientSupplier) {
+      if (pinging || closed) {
+        return null;
+      }
+
+      if (agentControlClient == null) {
+        agentControlClient = clientSupplier.get();
+        agentControlClient.setIpAndPort(hostAddress, agentPort);
+      }
+      pinging = true;
+      return agentControlClient;
+    }
+
+    /**
+     * @return the agent state to write to the host document, or null if it does not change
+     */
+    synchronized AgentState release(long now, boolean succeeded) {
+      pinging = false;
+      if (closed) {
+        closeClient();
+        return null;
+      }
+
+      AgentState newAgentState = null;
+      if (succeeded) {
+        failureDetector.heartbeat(now);
+        newAgentState = AgentState.ACTIVE;
+      } else if (failureDetector.phi(now) >= PHI_THRESHOLD) {
+        newAgentState = AgentState.MISSING;
+      }
+
+      return newAgentState != null && newAgentState != agentState ? newAgentState : null;
+    }
+
+    synchronized void close() {
+      closed = true;
+      if (!pinging) {
+        closeClient();
+      }
+    }
+
+    private void closeClient() {
+      if (agentControlClient != null) {
+        agentControlClient.close();
+        agentControlClient = null;
+      }
+    }
+  }
+}
@@ -87,16 +87,16 @@ public class HostService extends StatefulService {
    * All the default values specified below are just good starting points. We might
    * need to adjust them after scale testing.
    *
-   * DEFAULT_MAINTENANCE_INTERVAL = DEFAULT_MAX_PING_WAIT_TIME + MAX_TIME_TO_PING + BUFFER = 50 + 5 + 5 = 60s
+   * DEFAULT_MAINTENANCE_INTERVAL = DEFAULT_MAX_PING_WAIT_TIME + MAX_TIME_TO_GET_CONFIG + BUFFER = 50 + 5 + 5 = 60s
    *
-   * At DEFAULT_MAX_PING_WAIT_TIME of 50 seconds, we will send 20 pings every second if we have 1000 hosts and 200
-   * pings every second if we have 10,000 hosts. The actual ping, get and post are all asynchronous. So we should be
-   * able to scale to 1000 hosts without issues and 10,000 hosts depending on the load on cloud store by other services.
+   * The agents are pinged by the HostHeartbeatService, the maintenance only refreshes the host configuration every
+   * UPDATE_HOST_METADATA_INTERVAL. DEFAULT_MAX_PING_WAIT_TIME spreads these refreshes so that we reduce the number of
+   * concurrent connections to the agents.
    */
 
   /**
-   * The default maintenance interval controls how often we poll the agent for its
-   * state (60 seconds).
+   * The default maintenance interval controls how often we check whether the host configuration
+   * needs to be refreshed (60 seconds).
    */
   public static final long DEFAULT_MAINTENANCE_INTERVAL_MILLIS = 60 * 1000;
 
@@ -108,7 +108,7 @@ public class HostService extends StatefulService {
 
   /**
    * This value represents the upper bound of the wait time in milliseconds for a host
-   * service instance to ping the agent within its polling interval (10 seconds).
+   * service instance to get the host config within its polling interval (50 seconds).
    */
   public static final int DEFAULT_MAX_PING_WAIT_TIME_MILLIS = 50 * 1000;
 
@@ -317,9 +317,14 @@ public class HostService extends StatefulService {
     HostService.inUnitTests = inUnitTests;
   }
 
+  static boolean isInUnitTests() {
+    return inUnitTests;
+  }
+
   /**
-   * Handle periodic maintenance calls for all host service instances. We will be using this to ping all the hosts
-   * periodically to check if they are alive.
+   * Handle periodic maintenance calls for all host service instances. We will be using this to refresh the host
+   * configuration periodically. The agents are pinged by the {@link HostHeartbeatService} of the node which owns the
+   * host.
    *
    * @param maintenance
    */
@@ -333,24 +338,22 @@ public class HostService extends StatefulService {
       maintenance.complete();
       return;
     }
+    if (System.currentTimeMillis() - lastHostMetadataUpdateTime < UPDATE_HOST_METADATA_INTERVAL) {
+      maintenance.complete();
+      return;
+    }
     try {
       getHost().schedule(() -> {
         Operation getOperation = Operation.createGet(this, maintenance.getUri().getPath())
             .setCompletion((op, ex) -> {
               if (ex != null) {
-                ServiceUtils.logWarning(this, "Get request failed on Host Service to ping agent " + ex.getMessage());
+                ServiceUtils.logWarning(this, "Get request failed on Host Service to get host config " +
+                    ex.getMessage());
                 maintenance.fail(ex);
                 return;
               }
 
-              State hostState = op.getBody(State.class);
-              // Retrieve host metadata if the interval has elapsed. Otherwise, just ping the
-              // host to perform a health-check.
-              if (System.currentTimeMillis() - lastHostMetadataUpdateTime >= UPDATE_HOST_METADATA_INTERVAL) {
-                getHostConfig(maintenance, hostState);
-              } else {
-                pingHost(maintenance, hostState);
-              }
+              getHostConfig(maintenance, op.getBody(State.class));
             });
         sendRequest(getOperation);
       }, ThreadLocalRandom.current().nextInt(1, DEFAULT_MAX_PING_WAIT_TIME_MILLIS), TimeUnit.MILLISECONDS);
@@ -360,53 +363,18 @@ public class HostService extends StatefulService {
     }
   }
 
-  /**
-   * This method pings the agent on the host identified by the host document and updates the agent state in the host
-   * document if it determines a change in agent state.
-   * The thrift call to ping the agent is implemented as a runnable, which will be scheduled to run in the future.
-   * The time after which it runs is determined by a random integer between 1 and maxPingWaitTimeMillis. This is needed
-   * to achieve a randomized distribution of the polling task so that we reduce the number of concurrent connections.
-   *
-   * @param maintenance
-   * @param hostState
-   */
-  private void pingHost(Operation maintenance, State hostState) {
-    final Service service = this;
-    try {
-      AgentControlClient agentControlClient = ((AgentControlClientProvider) getHost()).getAgentControlClient();
-      agentControlClient.setIpAndPort(hostState.hostAddress, hostState.agentPort);
-      agentControlClient.ping(new AsyncMethodCallback<AgentControl.AsyncSSLClient.ping_call>() {
-        @Override
-        public void onComplete(AgentControl.AsyncSSLClient.ping_call pingCall) {
-          updateHostState(maintenance, hostState, AgentState.ACTIVE);
-        }
-
-        @Override
-        public void onError(Exception e) {
-          ServiceUtils.logInfo(service, "Failed to ping " + hostState.hostAddress + ", will be marked as missing:" +
-              e.getMessage());
-          updateHostState(maintenance, hostState, AgentState.MISSING);
-        }
-      });
-    } catch (Exception ex) {
-      ServiceUtils.logWarning(this, "Unexpected exception while pinging " + hostState.hostAddress + ", will be " +
-          "marked as missing:" + ex.getMessage());
-      updateHostState(maintenance, hostState, AgentState.MISSING);
-    }
-  }
-
   /**
    * This method gets the host config (datastores, networks, etc.) from agent.
-   * It also sets the agentState to ACTIVE or MISSING, depending on the result
-   * of the getHostConfig call. Because this updates agentState, handlePeriodicMaintenance
-   * does not call pingHost when host configuration is updated.
+   * It also sets the agentState to ACTIVE if the getHostConfig call succeeds. A
+   * failed call leaves the agentState as it is: whether the agent is missing is
+   * decided by the {@link HostHeartbeatService} from its heartbeats, not from a
+   * single failed call.
    * <p>
    * The operation parameter is null when executed by handlePatch. But it
    * is set for handlePeriodicMaintenance.
    */
   private void getHostConfig(Operation operation, State hostState) {
     try {
-      final Service service = this;
       lastHostMetadataUpdateTime = System.currentTimeMillis();
       HostClient hostClient = ((HostClientProvider) getHost()).getHostClient();
       hostClient.setIpAndPort(hostState.hostAddress, hostState.agentPort);
@@ -418,23 +386,24 @@ public class HostService extends StatefulService {
             HostClient.ResponseValidator.checkGetConfigResponse(response);
             processHostConfig(operation, hostState, response.getHostConfig());
           } catch (Throwable t) {
-            ServiceUtils.logWarning(service, "Failed to retrieve host config. Setting agentState to MISSING. " +
-                "Exception:" + t.getMessage());
-            updateHostState(operation, hostState, AgentState.MISSING);
+            onGetHostConfigFailed(operation, t);
           }
         }
 
         @Override
         public void onError(Exception e) {
-          ServiceUtils.logWarning(service, "Failed to retrieve host config. Setting agentState to MISSING. " +
-              "Exception:" + e.getMessage());
-          updateHostState(operation, hostState, AgentState.MISSING);
+          onGetHostConfigFailed(operation, e);
         }
       });
     } catch (Exception e) {
-      ServiceUtils.logWarning(this, "Failed to retrieve host config. Setting agentState to MISSING. " +
-          "Exception:" + e.getMessage());
-      updateHostState(operation, hostState, AgentState.MISSING);
+      onGetHostConfigFailed(operation, e);
+    }
+  }
+
+  private void onGetHostConfigFailed(Operation operation, Throwable t) {
+    ServiceUtils.logWarning(this, "Failed to retrieve host config. Exception:" + t.getMessage());
+    if (operation != null) {
+      operation.complete();
     }
   }
 
@@ -657,26 +626,6 @@ public class HostService extends StatefulService {
     }
   }
 
-  /**
-   * Patch the Host Service document with the agent state if it has changed.
-   *
-   * @param operation
-   * @param hostState
-   * @param agentState
-   */
-  private void updateHostState(Operation operation, State hostState, AgentState agentState) {
-    if (hostState.agentState != agentState) {
-      State patchState = new State();
-      patchState.agentState = agentState;
-      ServiceUtils.logInfo(this, "Agent state for host " + hostState.hostAddress + " changed from " +
-          hostState.agentState + " " + "-> " + agentState);
-      TaskUtils.sendSelfPatch(this, patchState);
-    }
-    if (operation != null) {
-      operation.complete();
-    }
-  }
-
   // Schedule datastore delete tasks to run after a wait time. This is needed for the patchOperation to persist the
   // state before the datastore delete task can start querying.
   private void scheduleDatastoreDeleteTasks(State currentState, Set<String> datastoreIds) {
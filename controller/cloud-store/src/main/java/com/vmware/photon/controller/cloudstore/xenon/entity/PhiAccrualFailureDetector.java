@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.entity;
+
+/**
+ * Phi accrual failure detector over the heartbeats of one agent. Instead of declaring the agent dead after a fixed
+ * timeout, it computes phi, which grows with how unlikely the time elapsed since the last heartbeat is given the
+ * intervals between the recent heartbeats. The agent is suspected once phi crosses a threshold, so an agent whose
+ * heartbeats are irregular gets more slack than one whose heartbeats are on time.
+ * <p/>
+ * The distribution of the intervals is approximated by a normal distribution, see "The phi accrual failure detector"
+ * by Hayashibara et al.
+ */
+class PhiAccrualFailureDetector {
+
+  private final long[] intervals;
+
+  private final long acceptablePauseMillis;
+
+  private final long minStdDeviationMillis;
+
+  private int count;
+
+  private int next;
+
+  private long lastHeartbeatMillis;
+
+  /**
+   * @param expectedIntervalMillis interval between two heartbeats, used until actual intervals are known
+   * @param acceptablePauseMillis  pause on top of the mean interval which is not taken for a failure, such as a
+   *                               missed heartbeat
+   * @param windowSize             number of recent intervals the distribution is computed from
+   * @param nowMillis              time the agent starts being watched, counted as its first heartbeat
+   */
+  PhiAccrualFailureDetector(long expectedIntervalMillis, long acceptablePauseMillis, int windowSize, long nowMillis) {
+    this.intervals = new long[windowSize];
+    this.acceptablePauseMillis = acceptablePauseMillis;
+    this.minStdDeviationMillis = Math.max(1, expectedIntervalMillis / 10);
+    this.lastHeartbeatMillis = nowMillis;
+
+    // Start from a distribution centered on the expected interval
+    addInterval(expectedIntervalMillis - expectedIntervalMillis / 4);
+    addInterval(expectedIntervalMillis + expectedIntervalMillis / 4);
+  }
+
+  synchronized void heartbeat(long nowMillis) {
+    addInterval(nowMillis - lastHeartbeatMillis);
+    lastHeartbeatMillis = nowMillis;
+  }
+
+  synchronized double phi(long nowMillis) {
+    double sum = 0;
+    double sumOfSquares = 0;
+    for (int i = 0; i < count; i++) {
+      sum += intervals[i];
+      sumOfSquares += (double) intervals[i] * intervals[i];
+    }
+    double mean = sum / count;
+    double stdDeviation = Math.max(Math.sqrt(Math.max(0, sumOfSquares / count - mean * mean)), minStdDeviationMillis);
+
+    // Logistic approximation of the cumulative distribution function of the normal distribution
+    double y = (nowMillis - lastHeartbeatMillis - mean - acceptablePauseMillis) / stdDeviation;
+    double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+    if (y > 0) {
+      return -Math.log10(e / (1.0 + e));
+    }
+    return -Math.log10(1.0 - 1.0 / (1.0 + e));
+  }
+
+  private void addInterval(long interval) {
+    intervals[next] = interval;
+    next = (next + 1) % intervals.length;
+    count = Math.min(count + 1, intervals.length);
+  }
+}
@@ -42,9 +42,8 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.TimeoutException;
-import java.util.stream.Collectors;
 
 
 /**
@@ -61,6 +60,19 @@ public class SubnetAllocatorService extends StatefulService {
    */
   public static final String SINGLETON_LINK = FACTORY_LINK + "/root-subnet";
 
+  /**
+   * Index of the free list of the current state, which allocations and releases look up instead of the free list of
+   * the state. The state still holds the whole free list, which is copied from the index and written with each change.
+   */
+  private SubnetFreeList freeListIndex;
+
+  /**
+   * Version and epoch of the state the index was last updated with. The index is rebuilt from the state when the
+   * state was updated by anything else since, e.g. by another owner.
+   */
+  private long freeListIndexVersion;
+  private Long freeListIndexEpoch;
+
   public static FactoryService createFactory() {
     return FactoryService.create(SubnetAllocatorService.class, SubnetAllocatorService.State.class);
   }
@@ -205,38 +217,14 @@ public class SubnetAllocatorService extends StatefulService {
 
     try {
       Long requestedSize = allocateSubnetPatch.numberOfAllIpAddresses;
-      List<IpV4Range> candidateRanges = currentState.freeList.stream()
-          .filter(ipV4Range -> (ipV4Range.high - ipV4Range.low) >= requestedSize - 1)
-          .sorted((left, right) -> Long.compare(left.low, right.low))
-          .collect(Collectors.toList());
-      int inverseSubnetMask = IpHelper.safeLongToInt(requestedSize - 1);
-      int subnetMask = ~(inverseSubnetMask);
+      SubnetFreeList freeList = getFreeListIndex(currentState);
 
       if (allocateSubnetPatch.verbose) {
         currentState.freeList.stream().forEach(
             range -> ServiceUtils.logInfo(this, "Free range before allocation: %d to %d", range.low, range.high));
-        candidateRanges.stream().forEach(
-            range -> ServiceUtils.logInfo(this, "Candidate free range: %d to %d", range.low, range.high));
       }
 
-      IpV4Range createdIpv4Range = null;
-      IpV4Range selectedIpv4Range = null;
-
-      for (IpV4Range ipV4Range : candidateRanges) {
-        long currentLow = ipV4Range.low;
-
-        while ((currentLow & subnetMask) != currentLow) {
-          currentLow++;
-        }
-
-        long currentHigh = currentLow + inverseSubnetMask;
-
-        if (currentHigh <= ipV4Range.high) {
-          createdIpv4Range = new IpV4Range(currentLow, currentHigh);
-          selectedIpv4Range = ipV4Range;
-          break;
-        }
-      }
+      IpV4Range createdIpv4Range = freeList.allocate(requestedSize);
 
       if (createdIpv4Range == null) {
         patch.fail(new IllegalArgumentException("Could not find any IP range big enough to allocate"));
@@ -244,25 +232,11 @@ public class SubnetAllocatorService extends StatefulService {
       }
 
       if (allocateSubnetPatch.verbose) {
-        ServiceUtils.logInfo(this, "Selected range: %d to %d", selectedIpv4Range.low, selectedIpv4Range.high);
+        ServiceUtils.logInfo(this, "Allocated range: %d to %d", createdIpv4Range.low, createdIpv4Range.high);
       }
 
-      currentState.freeList.remove(selectedIpv4Range);
-      if (createdIpv4Range.low > selectedIpv4Range.low) {
-        IpV4Range lowRange = new IpV4Range(selectedIpv4Range.low, createdIpv4Range.low - 1);
-        if (allocateSubnetPatch.verbose) {
-          ServiceUtils.logInfo(this, "Insert low free range: %d to %d", lowRange.low, lowRange.high);
-        }
-        currentState.freeList.add(lowRange);
-      }
-
-      if (createdIpv4Range.high < selectedIpv4Range.high) {
-        IpV4Range highRange = new IpV4Range(createdIpv4Range.high + 1, selectedIpv4Range.high);
-        if (allocateSubnetPatch.verbose) {
-          ServiceUtils.logInfo(this, "Insert high free range: %d to %d", highRange.low, highRange.high);
-        }
-        currentState.freeList.add(highRange);
-      }
+      currentState.freeList = freeList.toList();
+      indexUpdated(currentState);
 
       DhcpSubnetService.State subnet = new DhcpSubnetService.State();
       subnet.cidr = IpHelper.calculateCidrFromIpV4Range(createdIpv4Range.low, createdIpv4Range.high);
@@ -301,6 +275,7 @@ public class SubnetAllocatorService extends StatefulService {
       patch.complete();
     } catch (Throwable t) {
       ServiceUtils.logSevere(this, t);
+      freeListIndex = null;
       patch.fail(t);
     }
   }
@@ -331,27 +306,10 @@ public class SubnetAllocatorService extends StatefulService {
             range -> ServiceUtils.logInfo(this, "Free range before release: %d to %d", range.low, range.high));
       }
 
-      IpV4Range targetRange = new IpV4Range(subnetState.lowIp, subnetState.highIp);
-      List<IpV4Range> currentFreeList = currentState.freeList
-          .stream()
-          .sorted((left, right) -> Long.compare(left.low, right.low))
-          .collect(Collectors.toList());
-      List<IpV4Range> newFreeList = new ArrayList<>();
-      // Merge range
-      for (IpV4Range freeRange : currentFreeList) {
-        if (freeRange.high < targetRange.low - 1) {
-          newFreeList.add(freeRange);
-        } else if (freeRange.low > targetRange.high + 1) {
-          newFreeList.add(targetRange);
-          targetRange = freeRange;
-        } else {
-          targetRange =
-              new IpV4Range(Math.min(targetRange.low, freeRange.low), Math.max(targetRange.high, freeRange.high));
-        }
-      }
-
-      newFreeList.add(targetRange);
-      currentState.freeList = newFreeList;
+      SubnetFreeList freeList = getFreeListIndex(currentState);
+      freeList.release(subnetState.lowIp, subnetState.highIp);
+      currentState.freeList = freeList.toList();
+      indexUpdated(currentState);
 
       if (releaseSubnetPatch.verbose) {
         currentState.freeList.stream().forEach(
@@ -361,10 +319,30 @@ public class SubnetAllocatorService extends StatefulService {
       patch.complete();
     } catch (Throwable t) {
       ServiceUtils.logSevere(this, t);
+      freeListIndex = null;
       patch.fail(t);
     }
   }
 
+  /**
+   * Returns the index of the free list of the state, building it from the state if the state was updated since the
+   * index was. Each update of the state takes the next document version, so this does not look at the free list. The
+   * index is updated in place by allocations and releases, and discarded if they fail.
+   */
+  private SubnetFreeList getFreeListIndex(State currentState) {
+    if (freeListIndex == null ||
+        currentState.documentVersion != freeListIndexVersion + 1 ||
+        !Objects.equals(currentState.documentEpoch, freeListIndexEpoch)) {
+      freeListIndex = new SubnetFreeList(currentState.freeList);
+    }
+    return freeListIndex;
+  }
+
+  private void indexUpdated(State currentState) {
+    freeListIndexVersion = currentState.documentVersion;
+    freeListIndexEpoch = currentState.documentEpoch;
+  }
+
   @Override
   public void handleCreate(Operation createOperation) {
     ServiceUtils.logInfo(this, "Creating service %s", getSelfLink());
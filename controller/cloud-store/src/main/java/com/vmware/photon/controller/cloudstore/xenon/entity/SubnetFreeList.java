@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.entity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Free IPv4 ranges of a {@link SubnetAllocatorService}. The ranges are indexed by address, to merge a released
+ * subnet with its free neighbours, and by address within the size of the largest aligned subnet they hold, to
+ * allocate a subnet from the free range with the lowest address that holds one. Both take O(log n) in the number of
+ * free ranges, while {@link #toList()}, which the allocator writes back to its state, takes O(n).
+ */
+class SubnetFreeList {
+
+  private final TreeMap<Long, SubnetAllocatorService.IpV4Range> rangesByLow = new TreeMap<>();
+
+  /**
+   * Free ranges by address, at the index of the log2 of the largest aligned subnet each of them holds. A range
+   * holds an aligned subnet of a given size if it is at or above the index of that size.
+   */
+  private final List<TreeMap<Long, SubnetAllocatorService.IpV4Range>> rangesByAlignment = new ArrayList<>(Long.SIZE);
+
+  SubnetFreeList(Collection<SubnetAllocatorService.IpV4Range> ranges) {
+    for (int i = 0; i < Long.SIZE; i++) {
+      rangesByAlignment.add(new TreeMap<>());
+    }
+    for (SubnetAllocatorService.IpV4Range range : ranges) {
+      release(range.low, range.high);
+    }
+  }
+
+  int size() {
+    return rangesByLow.size();
+  }
+
+  /**
+   * @return the free ranges, ordered by address
+   */
+  List<SubnetAllocatorService.IpV4Range> toList() {
+    return new ArrayList<>(rangesByLow.values());
+  }
+
+  /**
+   * Allocate a subnet aligned on its size, from the free range with the lowest address that holds one. The subnet is
+   * allocated at the lowest aligned address of that range.
+   *
+   * @param size number of IPs of the subnet, a power of two
+   * @return the allocated range, or null if no free range holds the subnet
+   */
+  SubnetAllocatorService.IpV4Range allocate(long size) {
+    SubnetAllocatorService.IpV4Range range = null;
+    for (int i = Long.numberOfTrailingZeros(size); i < Long.SIZE; i++) {
+      Map.Entry<Long, SubnetAllocatorService.IpV4Range> first = rangesByAlignment.get(i).firstEntry();
+      if (first != null && (range == null || first.getKey() < range.low)) {
+        range = first.getValue();
+      }
+    }
+    if (range == null) {
+      return null;
+    }
+
+    long low = alignUp(range.low, size);
+    long high = low + size - 1;
+    remove(range);
+    if (low > range.low) {
+      add(new SubnetAllocatorService.IpV4Range(range.low, low - 1));
+    }
+    if (high < range.high) {
+      add(new SubnetAllocatorService.IpV4Range(high + 1, range.high));
+    }
+    return new SubnetAllocatorService.IpV4Range(low, high);
+  }
+
+  /**
+   * Return a range to the free list, merging it with the free ranges it is adjacent to or overlaps.
+   */
+  void release(long low, long high) {
+    Map.Entry<Long, SubnetAllocatorService.IpV4Range> lower = rangesByLow.lowerEntry(low);
+    if (lower != null && lower.getValue().high >= low - 1) {
+      low = lower.getValue().low;
+      high = Math.max(high, lower.getValue().high);
+      remove(lower.getValue());
+    }
+
+    Map.Entry<Long, SubnetAllocatorService.IpV4Range> higher = rangesByLow.ceilingEntry(low);
+    while (higher != null && higher.getKey() <= high + 1) {
+      high = Math.max(high, higher.getValue().high);
+      remove(higher.getValue());
+      higher = rangesByLow.ceilingEntry(low);
+    }
+
+    add(new SubnetAllocatorService.IpV4Range(low, high));
+  }
+
+  private void add(SubnetAllocatorService.IpV4Range range) {
+    rangesByLow.put(range.low, range);
+    rangesByAlignment.get(alignment(range)).put(range.low, range);
+  }
+
+  private void remove(SubnetAllocatorService.IpV4Range range) {
+    rangesByLow.remove(range.low);
+    rangesByAlignment.get(alignment(range)).remove(range.low);
+  }
+
+  /**
+   * @return the log2 of the size of the largest aligned subnet the range holds. A range holds one of the largest
+   * power of two not above its size, or else one of half that size.
+   */
+  private static int alignment(SubnetAllocatorService.IpV4Range range) {
+    int log2 = Long.SIZE - 1 - Long.numberOfLeadingZeros(range.high - range.low + 1);
+    long size = 1L << log2;
+    if (alignUp(range.low, size) + size - 1 <= range.high) {
+      return log2;
+    }
+    return log2 - 1;
+  }
+
+  private static long alignUp(long address, long size) {
+    return (address + size - 1) & ~(size - 1);
+  }
+}
@@ -28,6 +28,8 @@ import com.vmware.xenon.common.UriUtils;
 
 import org.apache.commons.net.util.SubnetUtils;
 import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.testng.Assert;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
@@ -37,6 +39,11 @@ import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -45,6 +52,8 @@ import java.util.concurrent.TimeUnit;
  * Tests {@link DhcpSubnetService}.
  */
 public class DhcpSubnetServiceTest {
+  private static final Logger logger = LoggerFactory.getLogger(DhcpSubnetServiceTest.class);
+
   private static BasicServiceHost host;
   private static XenonRestClient xenonClient;
 
@@ -378,6 +387,166 @@ public class DhcpSubnetServiceTest {
       assertThat(currentState.ipAllocations.nextClearBit(0), is(0));
     }
 
+    @Test
+    public void testAllocateIps() throws Throwable {
+      List<DhcpSubnetService.IpOperationPatch.IpAllocation> allocations = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        allocations.add(new DhcpSubnetService.IpOperationPatch.IpAllocation("vm-" + i, macAddress));
+      }
+      Operation patchOperation = new Operation()
+          .setAction(Service.Action.PATCH)
+          .setBody(new DhcpSubnetService.IpOperationPatch(allocations))
+          .setReferer("test-host")
+          .setUri(UriUtils.buildUri(host, startState.documentSelfLink));
+      Operation completedOperation = host.sendRequestAndWait(patchOperation);
+
+      DhcpSubnetService.IpOperationPatch operationResult =
+          completedOperation.getBody(DhcpSubnetService.IpOperationPatch.class);
+      Set<String> ipAddresses = new HashSet<>();
+      for (DhcpSubnetService.IpOperationPatch.IpAllocation allocation : operationResult.allocations) {
+        ipAddresses.add(allocation.ipAddress);
+        IpLeaseService.State ipLease = host.getServiceState(IpLeaseService.State.class,
+            DhcpSubnetService.makeIpLeaseUrl(false, startState.subnetId, allocation.ipAddress));
+        assertThat(ipLease.ownerVmId, is(allocation.ownerVmId));
+      }
+      assertThat(ipAddresses.size(), is(10));
+
+      DhcpSubnetService.State currentState = host.getServiceState(DhcpSubnetService.State.class,
+          startState.documentSelfLink);
+      assertThat(currentState.version, is(startState.version + 1));
+      assertThat(currentState.ipAllocations.cardinality(), is(10));
+
+      // Only 4 IPs are left in the range, so none of them is allocated
+      patchOperation.setBody(new DhcpSubnetService.IpOperationPatch(allocations.subList(0, 5)));
+      try {
+        host.sendRequestAndWait(patchOperation);
+        Assert.fail("Allocation request larger than the free part of the range should have failed");
+      } catch (BadRequestException be) {
+        DhcpSubnetService.RangeFullyAllocatedError error = be.getCompletedOperation()
+            .getBody(DhcpSubnetService.RangeFullyAllocatedError.class);
+        assertThat(error, is(notNullValue()));
+      }
+
+      currentState = host.getServiceState(DhcpSubnetService.State.class, startState.documentSelfLink);
+      assertThat(currentState.version, is(startState.version + 1));
+      assertThat(currentState.ipAllocations.cardinality(), is(10));
+    }
+
+    @Test
+    public void testAllocateIpsWithoutAllocations() throws Throwable {
+      DhcpSubnetService.IpOperationPatch ipOperationPatch = new DhcpSubnetService.IpOperationPatch(
+          DhcpSubnetService.IpOperationPatch.Kind.AllocateIps, "vm-id", null, null);
+      assertAllocateIpsIsBadRequest(ipOperationPatch);
+
+      ipOperationPatch.allocations = new ArrayList<>();
+      assertAllocateIpsIsBadRequest(ipOperationPatch);
+
+      DhcpSubnetService.State currentState = host.getServiceState(DhcpSubnetService.State.class,
+          startState.documentSelfLink);
+      assertThat(currentState.version, is(startState.version));
+    }
+
+    @Test
+    public void testReleasedIpIsNotReusedRightAway() throws Throwable {
+      String firstIp = allocateIp();
+      allocateIp();
+
+      DhcpSubnetService.IpOperationPatch ipOperationPatch =
+          new DhcpSubnetService.IpOperationPatch(
+              DhcpSubnetService.IpOperationPatch.Kind.ReleaseIp,
+              "vm-id", null, firstIp);
+      Operation patchOperation = new Operation()
+          .setAction(Service.Action.PATCH)
+          .setBody(ipOperationPatch)
+          .setReferer("test-host")
+          .setUri(UriUtils.buildUri(host, startState.documentSelfLink));
+      host.sendRequestAndWait(patchOperation);
+
+      String thirdIp = allocateIp();
+      assertThat(thirdIp, is(IpHelper.longToIpString(startState.lowIpDynamic + 2)));
+
+      DhcpSubnetService.State currentState = host.getServiceState(DhcpSubnetService.State.class,
+          startState.documentSelfLink);
+      assertThat(currentState.ipAllocations.get(0), is(false));
+      assertThat(currentState.ipAllocations.cardinality(), is(2));
+    }
+
+    private void assertAllocateIpsIsBadRequest(DhcpSubnetService.IpOperationPatch ipOperationPatch)
+        throws Throwable {
+      Operation patchOperation = new Operation()
+          .setAction(Service.Action.PATCH)
+          .setBody(ipOperationPatch)
+          .setReferer("test-host")
+          .setUri(UriUtils.buildUri(host, startState.documentSelfLink));
+      try {
+        host.sendRequestAndWait(patchOperation);
+        Assert.fail("Allocation request without allocations should have failed");
+      } catch (BadRequestException be) {
+        assertThat(be.getCompletedOperation().getStatusCode(), is(HttpStatus.SC_BAD_REQUEST));
+      }
+    }
+
+    private String allocateIp() throws Throwable {
+      DhcpSubnetService.IpOperationPatch ipOperationPatch =
+          new DhcpSubnetService.IpOperationPatch(
+              DhcpSubnetService.IpOperationPatch.Kind.AllocateIp,
+              "vm-id", macAddress, null);
+      Operation patchOperation = new Operation()
+          .setAction(Service.Action.PATCH)
+          .setBody(ipOperationPatch)
+          .setReferer("test-host")
+          .setUri(UriUtils.buildUri(host, startState.documentSelfLink));
+      return host.sendRequestAndWait(patchOperation)
+          .getBody(DhcpSubnetService.IpOperationPatch.class).ipAddress;
+    }
+  }
+
+  /**
+   * Tests for finding free IPs.
+   */
+  public static class FindFreeIpTest {
+
+    private static final int SLASH_16_RANGE_SIZE = (1 << 16) - 2;
+
+    @Test
+    public void testWrapsAround() {
+      BitSet ipAllocations = new BitSet();
+      ipAllocations.set(1, 4);
+
+      assertThat(DhcpSubnetService.findFreeIp(ipAllocations, 4, 2), is(0));
+      assertThat(DhcpSubnetService.findFreeIp(ipAllocations, 4, 4), is(0));
+      ipAllocations.set(0);
+      assertThat(DhcpSubnetService.findFreeIp(ipAllocations, 4, 2), is(-1));
+    }
+
+    /**
+     * Local benchmark allocating a full /16, comparing a search from the beginning of the range with a search from
+     * the cursor.
+     */
+    @Test
+    public void testAllocateFullSlash16() {
+      BitSet ipAllocations = new BitSet(SLASH_16_RANGE_SIZE);
+      long start = System.nanoTime();
+      for (int i = 0; i < SLASH_16_RANGE_SIZE; i++) {
+        ipAllocations.set(ipAllocations.nextClearBit(0));
+      }
+      long scanMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+      ipAllocations = new BitSet(SLASH_16_RANGE_SIZE);
+      int cursor = 0;
+      start = System.nanoTime();
+      for (int i = 0; i < SLASH_16_RANGE_SIZE; i++) {
+        int index = DhcpSubnetService.findFreeIp(ipAllocations, SLASH_16_RANGE_SIZE, cursor);
+        assertThat(index, is(i));
+        ipAllocations.set(index);
+        cursor = index + 1;
+      }
+      long cursorMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+      assertThat(DhcpSubnetService.findFreeIp(ipAllocations, SLASH_16_RANGE_SIZE, cursor), is(-1));
+      logger.info("Allocated {} IPs in {} ms searching from the beginning, in {} ms searching from the cursor",
+          SLASH_16_RANGE_SIZE, scanMillis, cursorMillis);
+    }
   }
 
   private static DhcpSubnetService.State createInitialState() {
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.entity;
+
+import com.vmware.photon.controller.agent.gen.AgentControl;
+import com.vmware.photon.controller.api.model.AgentState;
+import com.vmware.photon.controller.cloudstore.xenon.helpers.TestEnvironment;
+import com.vmware.photon.controller.cloudstore.xenon.helpers.TestHelper;
+import com.vmware.photon.controller.common.clients.AgentControlClient;
+import com.vmware.photon.controller.common.clients.AgentControlClientFactory;
+import com.vmware.photon.controller.common.clients.HostClient;
+import com.vmware.photon.controller.common.clients.HostClientFactory;
+import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
+import com.vmware.photon.controller.common.xenon.host.PhotonControllerXenonHost;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.UriUtils;
+
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests {@link HostHeartbeatService}. The service is driven tick by tick with a fake clock, and pings agents through
+ * a mocked {@link AgentControlClientFactory}.
+ */
+public class HostHeartbeatServiceTest {
+
+  private static final String SERVICE_LINK = "/test-host-heartbeat";
+
+  private TestEnvironment testEnvironment;
+
+  private PhotonControllerXenonHost host;
+
+  private HostHeartbeatService service;
+
+  private AtomicLong clock;
+
+  private AtomicBoolean agentUp;
+
+  private List<AgentControlClient> agentControlClients;
+
+  @BeforeMethod
+  public void setUp() throws Throwable {
+    agentUp = new AtomicBoolean(true);
+    agentControlClients = new CopyOnWriteArrayList<>();
+
+    AgentControlClientFactory agentControlClientFactory = mock(AgentControlClientFactory.class);
+    doAnswer(invocation -> {
+      AgentControlClient agentControlClient = mock(AgentControlClient.class);
+      doAnswer(pingInvocation -> {
+        AsyncMethodCallback<AgentControl.AsyncSSLClient.ping_call> callback =
+            (AsyncMethodCallback<AgentControl.AsyncSSLClient.ping_call>) pingInvocation.getArguments()[0];
+        if (agentUp.get()) {
+          callback.onComplete(mock(AgentControl.AsyncSSLClient.ping_call.class));
+        } else {
+          callback.onError(new Exception("Agent is down"));
+        }
+        return null;
+      }).when(agentControlClient).ping(any(AsyncMethodCallback.class));
+      agentControlClients.add(agentControlClient);
+      return agentControlClient;
+    }).when(agentControlClientFactory).create();
+
+    // An agent which becomes active gets its host config refreshed, which does nothing here
+    HostClientFactory hostClientFactory = mock(HostClientFactory.class);
+    doReturn(mock(HostClient.class)).when(hostClientFactory).create();
+
+    testEnvironment = new TestEnvironment.Builder()
+        .hostClientFactory(hostClientFactory)
+        .agentControlClientFactory(agentControlClientFactory)
+        .hostCount(1)
+        .build();
+    host = testEnvironment.getHosts()[0];
+
+    clock = new AtomicLong(TimeUnit.DAYS.toMillis(1));
+    service = new HostHeartbeatService(clock::get);
+    CountDownLatch latch = new CountDownLatch(1);
+    Operation startOperation = Operation.createPost(UriUtils.buildUri(host, SERVICE_LINK))
+        .setCompletion((o, e) -> latch.countDown())
+        .setReferer(host.getPublicUri());
+    host.startService(startOperation, service);
+    assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+
+    // The first tick only pings the current slot, so it is done before there are hosts to ping
+    service.tick(clock.get());
+  }
+
+  @AfterMethod
+  public void tearDown() throws Throwable {
+    if (testEnvironment != null) {
+      testEnvironment.stop();
+      testEnvironment = null;
+    }
+  }
+
+  @Test
+  public void testMissingAfterConsecutiveFailedPings() throws Throwable {
+    HostService.State hostState = createHost(AgentState.ACTIVE);
+    service.updateTargets(Collections.singletonList(hostState));
+    agentUp.set(false);
+
+    pingAll();
+    pingAll();
+    assertThat(service.getPendingAgentStates().isEmpty(), is(true));
+    assertThat(getHostState(hostState).agentState, is(AgentState.ACTIVE));
+
+    pingAll();
+    pingAll();
+    flush();
+    waitForAgentState(hostState, AgentState.MISSING);
+  }
+
+  @Test
+  public void testActiveOnRecovery() throws Throwable {
+    HostService.State hostState = createHost(AgentState.ACTIVE);
+    service.updateTargets(Collections.singletonList(hostState));
+    agentUp.set(false);
+    for (int i = 0; i < 4; i++) {
+      pingAll();
+    }
+    flush();
+    waitForAgentState(hostState, AgentState.MISSING);
+    // As the periodic refresh would, so that the target knows its agent is missing
+    service.updateTargets(Collections.singletonList(getHostState(hostState)));
+
+    agentUp.set(true);
+    pingAll();
+    flush();
+    waitForAgentState(hostState, AgentState.ACTIVE);
+    assertThat(agentControlClients, hasSize(1));
+  }
+
+  @Test
+  public void testTargetDroppedWhenNotOwned() throws Throwable {
+    HostService.State hostState = createHost(AgentState.ACTIVE);
+    service.updateTargets(Collections.singletonList(hostState));
+    pingAll();
+    assertThat(agentControlClients, hasSize(1));
+    AgentControlClient agentControlClient = agentControlClients.get(0);
+    verify(agentControlClient).setIpAndPort(hostState.hostAddress, hostState.agentPort);
+
+    hostState.documentOwner = "another-node";
+    service.updateTargets(Collections.singletonList(hostState));
+    verify(agentControlClient).close();
+
+    pingAll();
+    verify(agentControlClient, times(1)).ping(any(AsyncMethodCallback.class));
+    assertThat(agentControlClients, hasSize(1));
+  }
+
+  @Test
+  public void testTargetReplacedWhenAddressChanges() throws Throwable {
+    HostService.State hostState = createHost(AgentState.ACTIVE);
+    service.updateTargets(Collections.singletonList(hostState));
+    pingAll();
+    assertThat(agentControlClients, hasSize(1));
+    AgentControlClient oldAgentControlClient = agentControlClients.get(0);
+
+    hostState.hostAddress = "newHostAddress";
+    service.updateTargets(Collections.singletonList(hostState));
+    verify(oldAgentControlClient).close();
+
+    pingAll();
+    assertThat(agentControlClients, hasSize(2));
+    AgentControlClient newAgentControlClient = agentControlClients.get(1);
+    verify(newAgentControlClient).setIpAndPort("newHostAddress", hostState.agentPort);
+    verify(newAgentControlClient).ping(any(AsyncMethodCallback.class));
+    verify(oldAgentControlClient, times(1)).ping(any(AsyncMethodCallback.class));
+    verify(newAgentControlClient, never()).close();
+  }
+
+  @Test
+  public void testFailedAgentStatePatchIsRetried() throws Throwable {
+    // The host document does not exist yet, so the first PATCH of its agent state fails
+    HostService.State hostState = TestHelper.getHostServiceStartState();
+    hostState.documentSelfLink = HostServiceFactory.SELF_LINK + "/heartbeat-host";
+    hostState.documentOwner = host.getId();
+    hostState.agentState = AgentState.MISSING;
+    service.updateTargets(Collections.singletonList(hostState));
+
+    pingAll();
+    assertThat(service.getPendingAgentStates().get(hostState.documentSelfLink), is(AgentState.ACTIVE));
+
+    // The agent goes down, so only a retry can write the ACTIVE state found by the first ping
+    agentUp.set(false);
+    flush();
+    ServiceHostUtils.waitForState(
+        () -> service.getPendingAgentStates().get(hostState.documentSelfLink),
+        agentState -> agentState == AgentState.ACTIVE,
+        null,
+        "Timeout waiting for the failed PATCH to be retried");
+
+    HostService.State startState = TestHelper.getHostServiceStartState();
+    startState.documentSelfLink = "heartbeat-host";
+    startState.agentState = AgentState.MISSING;
+    testEnvironment.sendPostAndWait(HostServiceFactory.SELF_LINK, startState);
+
+    flush();
+    waitForAgentState(hostState, AgentState.ACTIVE);
+  }
+
+  private HostService.State createHost(AgentState agentState) throws Throwable {
+    HostService.State startState = TestHelper.getHostServiceStartState();
+    startState.agentState = agentState;
+    return TestHelper.createHostService(testEnvironment, startState);
+  }
+
+  private HostService.State getHostState(HostService.State hostState) throws Throwable {
+    return testEnvironment.getServiceState(hostState.documentSelfLink, HostService.State.class);
+  }
+
+  private void waitForAgentState(HostService.State hostState, AgentState agentState) throws Throwable {
+    testEnvironment.waitForServiceState(HostService.State.class, hostState.documentSelfLink,
+        state -> state.agentState == agentState);
+  }
+
+  /**
+   * Moves the clock by one heartbeat interval, so that every host is pinged once.
+   */
+  private void pingAll() {
+    clock.addAndGet(HostHeartbeatService.HEARTBEAT_INTERVAL_MILLIS);
+    service.tick(clock.get());
+  }
+
+  /**
+   * Ticks without moving the clock, which writes the pending agent states without pinging any host.
+   */
+  private void flush() {
+    service.tick(clock.get());
+  }
+}
@@ -67,11 +67,14 @@ import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.fail;
 
@@ -751,16 +754,12 @@ public class HostServiceTest {
       patchState.state = HostState.READY;
       testEnvironment.sendPatchAndWait(createdState.documentSelfLink, patchState);
 
-      // Validate that the host config update failed and the agent is marked as MISSING.
-      int retryCount = 0;
-      HostService.State savedState;
-      do {
-        savedState = testEnvironment.getServiceState(createdState.documentSelfLink, HostService.State.class);
-        Thread.sleep(500);
-      } while (savedState.agentState == null && retryCount++ < 10);
-
-      assertNotNull(savedState.agentState, "Failed to update the agent state");
-      assertThat(savedState.agentState, is(AgentState.MISSING));
+      // Validate that the host config update failed and the agent state is left to the heartbeats.
+      verify(hostClient, timeout(5000)).getHostConfig(any(AsyncMethodCallback.class));
+      Thread.sleep(500);
+      HostService.State savedState =
+          testEnvironment.getServiceState(createdState.documentSelfLink, HostService.State.class);
+      assertThat(savedState.agentState, is(nullValue()));
     }
 
     @Test
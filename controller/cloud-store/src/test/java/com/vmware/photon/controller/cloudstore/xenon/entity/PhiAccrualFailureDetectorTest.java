@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.entity;
+
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Tests {@link PhiAccrualFailureDetector}.
+ */
+public class PhiAccrualFailureDetectorTest {
+
+  private static final long INTERVAL = 20000;
+
+  private static final double THRESHOLD = 8.0;
+
+  @Test
+  public void testOneMissedHeartbeatIsTolerated() {
+    PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(INTERVAL, INTERVAL, 100, 0);
+    for (long now = INTERVAL; now <= 10 * INTERVAL; now += INTERVAL) {
+      detector.heartbeat(now);
+    }
+
+    assertThat(detector.phi(11 * INTERVAL), lessThan(1.0));
+    assertThat(detector.phi(12 * INTERVAL), lessThan(THRESHOLD));
+    assertThat(detector.phi(13 * INTERVAL), greaterThan(THRESHOLD));
+  }
+
+  @Test
+  public void testPhiGrowsWithTime() {
+    PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(INTERVAL, INTERVAL, 100, 0);
+
+    double previous = detector.phi(0);
+    for (long now = 1000; now <= 3 * INTERVAL; now += 1000) {
+      double phi = detector.phi(now);
+      assertThat(phi, greaterThan(previous - 1e-9));
+      previous = phi;
+    }
+  }
+
+  @Test
+  public void testIrregularHeartbeatsGetMoreSlack() {
+    PhiAccrualFailureDetector regular = new PhiAccrualFailureDetector(INTERVAL, INTERVAL, 100, 0);
+    PhiAccrualFailureDetector irregular = new PhiAccrualFailureDetector(INTERVAL, INTERVAL, 100, 0);
+
+    long regularNow = 0;
+    long irregularNow = 0;
+    for (int i = 0; i < 20; i++) {
+      regularNow += INTERVAL;
+      regular.heartbeat(regularNow);
+      irregularNow += i % 2 == 0 ? INTERVAL / 2 : 3 * INTERVAL / 2;
+      irregular.heartbeat(irregularNow);
+    }
+
+    long pause = 5 * INTERVAL / 2;
+    assertThat(regular.phi(regularNow + pause), greaterThan(irregular.phi(irregularNow + pause)));
+  }
+}
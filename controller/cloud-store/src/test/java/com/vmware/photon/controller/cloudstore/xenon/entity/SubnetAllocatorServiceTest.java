@@ -45,6 +45,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Executors;
@@ -381,6 +382,41 @@ public class SubnetAllocatorServiceTest {
           null);
     }
 
+    @Test
+    public void testAllocateSubnetAfterStateIsReplaced() throws Throwable {
+      String subnetId = UUID.randomUUID().toString();
+      Operation patchOperation = new Operation()
+          .setAction(Service.Action.PATCH)
+          .setBody(new SubnetAllocatorService.AllocateSubnet(subnetId, 16L, 4L))
+          .setReferer("test-host")
+          .setUri(UriUtils.buildUri(host, startState.documentSelfLink));
+      host.sendRequestAndWait(patchOperation);
+
+      // The free list changed by anything but an allocation or a release is indexed again
+      SubnetAllocatorService.State allocatorState = host.getServiceState(SubnetAllocatorService.State.class,
+          startState.documentSelfLink);
+      allocatorState.freeList = Collections.singletonList(new SubnetAllocatorService.IpV4Range(
+          IpHelper.ipStringToLong("192.168.1.0"), IpHelper.ipStringToLong("192.168.255.255")));
+      Operation putOperation = new Operation()
+          .setAction(Service.Action.PUT)
+          .setBody(allocatorState)
+          .setReferer("test-host")
+          .setUri(UriUtils.buildUri(host, startState.documentSelfLink));
+      host.sendRequestAndWait(putOperation);
+
+      String otherSubnetId = UUID.randomUUID().toString();
+      patchOperation = new Operation()
+          .setAction(Service.Action.PATCH)
+          .setBody(new SubnetAllocatorService.AllocateSubnet(otherSubnetId, 16L, 4L))
+          .setReferer("test-host")
+          .setUri(UriUtils.buildUri(host, startState.documentSelfLink));
+      host.sendRequestAndWait(patchOperation);
+
+      DhcpSubnetService.State subnetState = host.getServiceState(DhcpSubnetService.State.class,
+          DhcpSubnetService.FACTORY_LINK + "/" + otherSubnetId);
+      assertThat(subnetState.cidr, is("192.168.1.0/28"));
+    }
+
     @Test
     public void testReleaseSubnetFailure() throws Throwable {
       String subnetId = UUID.randomUUID().toString();
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.entity;
+
+import com.vmware.photon.controller.common.IpHelper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link SubnetFreeList}.
+ */
+public class SubnetFreeListTest {
+
+  private static final Logger logger = LoggerFactory.getLogger(SubnetFreeListTest.class);
+
+  private static final long ROOT_LOW = IpHelper.ipStringToLong("10.0.0.0");
+  private static final long ROOT_HIGH = IpHelper.ipStringToLong("10.255.255.255");
+
+  private static final int BENCHMARK_VIRTUAL_NETWORKS = 20000;
+
+  @Test
+  public void testAllocateFromLowestRange() {
+    SubnetFreeList freeList = new SubnetFreeList(Arrays.asList(
+        new SubnetAllocatorService.IpV4Range(0L, 63L),
+        new SubnetAllocatorService.IpV4Range(80L, 95L),
+        new SubnetAllocatorService.IpV4Range(104L, 111L)));
+
+    SubnetAllocatorService.IpV4Range range = freeList.allocate(16);
+    assertThat(range.low, is(0L));
+    assertThat(range.high, is(15L));
+
+    range = freeList.allocate(8);
+    assertThat(range.low, is(16L));
+    assertThat(range.high, is(23L));
+
+    range = freeList.allocate(64);
+    assertThat(range, is(nullValue()));
+
+    assertThat(freeList.size(), is(3));
+  }
+
+  @Test
+  public void testAllocateSkipsRangesWithoutAlignedSubnet() {
+    List<SubnetAllocatorService.IpV4Range> ranges = new ArrayList<>();
+    for (long low = 4L; low < 4096L; low += 32L) {
+      // 16 IPs that do not hold an aligned /28
+      ranges.add(new SubnetAllocatorService.IpV4Range(low, low + 15L));
+    }
+    ranges.add(new SubnetAllocatorService.IpV4Range(8192L, 8207L));
+    SubnetFreeList freeList = new SubnetFreeList(ranges);
+
+    SubnetAllocatorService.IpV4Range range = freeList.allocate(16);
+    assertThat(range.low, is(8192L));
+    assertThat(range.high, is(8207L));
+
+    range = freeList.allocate(8);
+    assertThat(range.low, is(8L));
+    assertThat(range.high, is(15L));
+  }
+
+  @Test
+  public void testAllocateAligned() {
+    SubnetFreeList freeList = new SubnetFreeList(Arrays.asList(
+        new SubnetAllocatorService.IpV4Range(4L, 19L),
+        new SubnetAllocatorService.IpV4Range(24L, 63L)));
+
+    // The first range is big enough, but does not hold an aligned /28
+    SubnetAllocatorService.IpV4Range range = freeList.allocate(16);
+    assertThat(range.low, is(32L));
+    assertThat(range.high, is(47L));
+
+    List<SubnetAllocatorService.IpV4Range> ranges = freeList.toList();
+    assertThat(ranges.size(), is(3));
+    assertThat(ranges.get(1).low, is(24L));
+    assertThat(ranges.get(1).high, is(31L));
+    assertThat(ranges.get(2).low, is(48L));
+    assertThat(ranges.get(2).high, is(63L));
+
+    assertThat(freeList.allocate(64), is(nullValue()));
+  }
+
+  @Test
+  public void testReleaseMergesNeighbours() {
+    SubnetFreeList freeList = new SubnetFreeList(Arrays.asList(
+        new SubnetAllocatorService.IpV4Range(0L, 15L),
+        new SubnetAllocatorService.IpV4Range(32L, 47L)));
+
+    freeList.release(16L, 31L);
+
+    List<SubnetAllocatorService.IpV4Range> ranges = freeList.toList();
+    assertThat(ranges.size(), is(1));
+    assertThat(ranges.get(0).low, is(0L));
+    assertThat(ranges.get(0).high, is(47L));
+  }
+
+  /**
+   * Local benchmark allocating and releasing subnets once the root CIDR is fragmented by many virtual networks.
+   */
+  @Test
+  public void testFragmentedFreeList() {
+    SubnetFreeList freeList = new SubnetFreeList(
+        Collections.singletonList(new SubnetAllocatorService.IpV4Range(ROOT_LOW, ROOT_HIGH)));
+
+    long start = System.nanoTime();
+    List<SubnetAllocatorService.IpV4Range> subnets = new ArrayList<>();
+    for (int i = 0; i < BENCHMARK_VIRTUAL_NETWORKS; i++) {
+      SubnetAllocatorService.IpV4Range subnet = freeList.allocate(16);
+      assertThat(subnet, is(notNullValue()));
+      subnets.add(subnet);
+    }
+    for (int i = 0; i < subnets.size(); i += 2) {
+      freeList.release(subnets.get(i).low, subnets.get(i).high);
+    }
+    long fragmentMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    // Every other subnet is free, besides the rest of the root CIDR
+    assertThat(freeList.size(), is(BENCHMARK_VIRTUAL_NETWORKS / 2 + 1));
+
+    start = System.nanoTime();
+    for (int i = 0; i < BENCHMARK_VIRTUAL_NETWORKS; i++) {
+      SubnetAllocatorService.IpV4Range subnet = freeList.allocate(8);
+      freeList.release(subnet.low, subnet.high);
+    }
+    long churnMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    for (int i = 1; i < subnets.size(); i += 2) {
+      freeList.release(subnets.get(i).low, subnets.get(i).high);
+    }
+    assertThat(freeList.size(), is(1));
+
+    logger.info("{} virtual networks: fragmented the free list in {} ms, allocated and released {} subnets in {} ms",
+        BENCHMARK_VIRTUAL_NETWORKS, fragmentMillis, BENCHMARK_VIRTUAL_NETWORKS, churnMillis);
+  }
+}
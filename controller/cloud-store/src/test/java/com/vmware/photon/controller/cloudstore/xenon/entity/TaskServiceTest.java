@@ -30,10 +30,13 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
+import static org.testng.Assert.fail;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -269,6 +272,62 @@ public class TaskServiceTest {
           is(testState.steps.get(0).warnings.get(0).code));
       assertThat(taskState.steps.get(0).endTime, is(stepUpdate.step.endTime));
     }
+
+    @Test
+    public void testUpdateSteps() throws Throwable {
+      TaskService.State.Step otherStep = new TaskService.State.Step();
+      otherStep.operation = com.vmware.photon.controller.api.model.Operation.RESERVE_RESOURCE.getOperation();
+      otherStep.state = TaskService.State.StepState.QUEUED;
+      testState.steps.add(otherStep);
+      TaskService.State.Step untouchedStep = new TaskService.State.Step();
+      untouchedStep.operation = com.vmware.photon.controller.api.model.Operation.CREATE_DISK.getOperation();
+      untouchedStep.state = TaskService.State.StepState.QUEUED;
+      testState.steps.add(untouchedStep);
+      host.startServiceSynchronously(service, testState);
+
+      List<TaskService.State.Step> steps = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        TaskService.State.Step step = new TaskService.State.Step();
+        step.operation = testState.steps.get(i).operation;
+        step.state = TaskService.State.StepState.COMPLETED;
+        steps.add(step);
+      }
+      TaskService.State fields = new TaskService.State();
+      fields.state = TaskService.State.TaskState.COMPLETED;
+
+      Operation patch = Operation
+          .createPatch(UriUtils.buildUri(host, BasicServiceHost.SERVICE_URI, null))
+          .setBody(new TaskService.StepUpdate(steps, fields));
+      host.sendRequestAndWait(patch);
+
+      TaskService.State taskState = host.getServiceState(TaskService.State.class, BasicServiceHost.SERVICE_URI);
+      assertThat(taskState.state, is(TaskService.State.TaskState.COMPLETED));
+      assertThat(taskState.steps.size(), is(3));
+      for (TaskService.State.Step step : taskState.steps) {
+        // Only the steps of the patch are changed
+        assertThat(step.operation, step.state, is(step.operation.equals(untouchedStep.operation) ?
+            TaskService.State.StepState.QUEUED : TaskService.State.StepState.COMPLETED));
+      }
+    }
+
+    @Test
+    public void testUpdateStepsFailsForUnknownStep() throws Throwable {
+      host.startServiceSynchronously(service, testState);
+
+      TaskService.State.Step step = new TaskService.State.Step();
+      step.operation = com.vmware.photon.controller.api.model.Operation.CREATE_DISK.getOperation();
+      step.state = TaskService.State.StepState.COMPLETED;
+
+      Operation patch = Operation
+          .createPatch(UriUtils.buildUri(host, BasicServiceHost.SERVICE_URI, null))
+          .setBody(new TaskService.StepUpdate(Collections.singletonList(step), null));
+      try {
+        host.sendRequestAndWait(patch);
+        fail("Patch should have failed because the step does not exist");
+      } catch (Exception e) {
+        assertThat(e.getMessage(), is("Cannot update a step that does not exist"));
+      }
+    }
   }
 
   /**
@@ -55,6 +55,7 @@ import com.vmware.photon.controller.nsxclient.models.TransportZoneCreateSpec;
 
 import com.google.common.util.concurrent.FutureCallback;
 import org.apache.commons.lang3.ArrayUtils;
+import org.mockito.stubbing.Answer;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
@@ -71,6 +72,11 @@ import java.util.Queue;
  * This class implements a mock {@link NsxClientMock} object for use in testing.
  */
 public class NsxClientMock extends NsxClient {
+  public static final String LINK_PORT_ON_TIER0_ROUTER_ID = "logical_link_port_on_tier0_router";
+  public static final String LINK_PORT_ON_TIER1_ROUTER_ID = "logical_link_port_on_tier1_router_id";
+  public static final String DOWN_LINK_PORT_ON_TIER1_ROUTER_ID = "logical_down_link_port_on_tier1_router_id";
+  public static final String PORT_ON_SWITCH_ID = "logical_port_on_switch_id";
+
   private FabricApi mockFabricApi;
   private LogicalSwitchApi mockLogicalSwitchApi;
   private LogicalRouterApi mockLogicalRouterApi;
@@ -603,23 +609,18 @@ public class NsxClientMock extends NsxClient {
     }
 
     public Builder deleteLogicalRouterPort(boolean... states) throws Throwable {
-      Boolean[] statesBoxed = ArrayUtils.toObject(states);
-      final Queue<Boolean> statesList = new LinkedList<>(Arrays.asList(statesBoxed));
+      doAnswer(deleteLogicalRouterPortAnswer(states))
+          .when(mockLogicalRouterApi).deleteLogicalRouterPort(any(String.class), any(FutureCallback.class));
 
-      doAnswer(invocation -> {
-        if (!statesList.isEmpty()) {
-          if (statesList.size() == 1) {
-            statesList.add(statesList.peek());
-          }
-          if (statesList.poll()) {
-            ((FutureCallback<Void>) invocation.getArguments()[1]).onSuccess(null);
-          } else {
-            RuntimeException error = new RuntimeException("deleteLogicalRouterPort failed");
-            ((FutureCallback<Void>) invocation.getArguments()[1]).onFailure(error);
-          }
-        }
-        return null;
-      }).when(mockLogicalRouterApi).deleteLogicalRouterPort(any(String.class), any(FutureCallback.class));
+      return this;
+    }
+
+    /**
+     * Answers the deletes of one port only, so that ports which are deleted concurrently each get their own answers.
+     */
+    public Builder deleteLogicalRouterPort(String portId, boolean... states) throws Throwable {
+      doAnswer(deleteLogicalRouterPortAnswer(states))
+          .when(mockLogicalRouterApi).deleteLogicalRouterPort(eq(portId), any(FutureCallback.class));
 
       return this;
     }
@@ -665,37 +666,19 @@ public class NsxClientMock extends NsxClient {
     }
 
     public Builder checkLogicalRouterPortExistence(boolean... states) throws Throwable {
-      final Queue<PortState> statesList = new LinkedList<>();
-      for (boolean isSuccess : states) {
-        if (isSuccess) {
-          statesList.add(PortState.EXIST);
-          statesList.add(PortState.NOTEXIST);
-        } else {
-          statesList.add(PortState.ERROR);
-        }
-      }
-
-      doAnswer(invocation -> {
-        if (!statesList.isEmpty()) {
-          if (statesList.size() == 1) {
-            statesList.add(statesList.peek());
-          }
-          switch (statesList.poll()) {
-            case EXIST:
-              ((FutureCallback<Boolean>) invocation.getArguments()[1]).onSuccess(true);
-              break;
+      doAnswer(checkLogicalRouterPortExistenceAnswer(states))
+          .when(mockLogicalRouterApi).checkLogicalRouterPortExistence(anyString(), any(FutureCallback.class));
 
-            case NOTEXIST:
-              ((FutureCallback<Boolean>) invocation.getArguments()[1]).onSuccess(false);
-              break;
+      return this;
+    }
 
-            case ERROR:
-              RuntimeException e = new RuntimeException("checkLogicalRouterPortExistence failed");
-              ((FutureCallback<Boolean>) invocation.getArguments()[1]).onFailure(e);
-          }
-        }
-        return null;
-      }).when(mockLogicalRouterApi).checkLogicalRouterPortExistence(anyString(), any(FutureCallback.class));
+    /**
+     * Answers the existence checks of one port only, so that ports which are deleted concurrently each get their own
+     * answers.
+     */
+    public Builder checkLogicalRouterPortExistence(String portId, boolean... states) throws Throwable {
+      doAnswer(checkLogicalRouterPortExistenceAnswer(states))
+          .when(mockLogicalRouterApi).checkLogicalRouterPortExistence(eq(portId), any(FutureCallback.class));
 
       return this;
     }
@@ -862,6 +845,68 @@ public class NsxClientMock extends NsxClient {
       return this;
     }
 
+    private static Answer<Void> deleteLogicalRouterPortAnswer(boolean... states) {
+      Boolean[] statesBoxed = ArrayUtils.toObject(states);
+      final Queue<Boolean> statesList = new LinkedList<>(Arrays.asList(statesBoxed));
+
+      return invocation -> {
+        Boolean state;
+        synchronized (statesList) {
+          if (statesList.size() == 1) {
+            statesList.add(statesList.peek());
+          }
+          state = statesList.poll();
+        }
+        if (state != null) {
+          if (state) {
+            ((FutureCallback<Void>) invocation.getArguments()[1]).onSuccess(null);
+          } else {
+            RuntimeException error = new RuntimeException("deleteLogicalRouterPort failed");
+            ((FutureCallback<Void>) invocation.getArguments()[1]).onFailure(error);
+          }
+        }
+        return null;
+      };
+    }
+
+    private static Answer<Void> checkLogicalRouterPortExistenceAnswer(boolean... states) {
+      final Queue<PortState> statesList = new LinkedList<>();
+      for (boolean isSuccess : states) {
+        if (isSuccess) {
+          statesList.add(PortState.EXIST);
+          statesList.add(PortState.NOTEXIST);
+        } else {
+          statesList.add(PortState.ERROR);
+        }
+      }
+
+      return invocation -> {
+        PortState state;
+        synchronized (statesList) {
+          if (statesList.size() == 1) {
+            statesList.add(statesList.peek());
+          }
+          state = statesList.poll();
+        }
+        if (state != null) {
+          switch (state) {
+            case EXIST:
+              ((FutureCallback<Boolean>) invocation.getArguments()[1]).onSuccess(true);
+              break;
+
+            case NOTEXIST:
+              ((FutureCallback<Boolean>) invocation.getArguments()[1]).onSuccess(false);
+              break;
+
+            case ERROR:
+              RuntimeException e = new RuntimeException("checkLogicalRouterPortExistence failed");
+              ((FutureCallback<Boolean>) invocation.getArguments()[1]).onFailure(e);
+          }
+        }
+        return null;
+      };
+    }
+
     public NsxClientMock build() {
       return new NsxClientMock(mockFabricApi, mockLogicalSwitchApi, mockLogicalRouterApi, mockDhcpServiceApi);
     }
@@ -870,21 +915,21 @@ public class NsxClientMock extends NsxClient {
   public static LogicalRouterPortListResult createLogicalRouterPortListResult() {
     ResourceReference linkedLogicalRouterPortId = new ResourceReference();
     linkedLogicalRouterPortId.setTargetType(NsxRouter.PortType.LINK_PORT_ON_TIER0.getValue());
-    linkedLogicalRouterPortId.setTargetId("logical_link_port_on_tier0_router");
+    linkedLogicalRouterPortId.setTargetId(LINK_PORT_ON_TIER0_ROUTER_ID);
 
     LogicalRouterPort logicalRouterToRouterPort = new LogicalRouterPort();
     logicalRouterToRouterPort.setLogicalRouterId("tier1_router_id");
-    logicalRouterToRouterPort.setId("logical_link_port_on_tier1_router_id");
+    logicalRouterToRouterPort.setId(LINK_PORT_ON_TIER1_ROUTER_ID);
     logicalRouterToRouterPort.setResourceType(NsxRouter.PortType.LINK_PORT_ON_TIER1);
     logicalRouterToRouterPort.setLinkedLogicalRouterPortId(linkedLogicalRouterPortId);
 
     ResourceReference linkedLogicalSwitchPortId = new ResourceReference();
     linkedLogicalSwitchPortId.setTargetType("LogicalPort");
-    linkedLogicalSwitchPortId.setTargetId("logical_port_on_switch_id");
+    linkedLogicalSwitchPortId.setTargetId(PORT_ON_SWITCH_ID);
 
     LogicalRouterPort logicalRouterToSwitchPort = new LogicalRouterPort();
     logicalRouterToSwitchPort.setLogicalRouterId("tier1_router_id");
-    logicalRouterToSwitchPort.setId("logical_down_link_port_on_tier1_router_id");
+    logicalRouterToSwitchPort.setId(DOWN_LINK_PORT_ON_TIER1_ROUTER_ID);
     logicalRouterToSwitchPort.setResourceType(NsxRouter.PortType.DOWN_LINK_PORT);
     logicalRouterToSwitchPort.setLinkedLogicalSwitchPortId(linkedLogicalSwitchPortId);
 
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.xenon;
+
+import com.vmware.photon.controller.common.xenon.exceptions.XenonRuntimeException;
+import com.vmware.xenon.common.ServiceDocumentQueryResult;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class iterates over the results of a paginated Xenon query one page at a time.
+ * <p>
+ * The first page is only requested when the iteration starts. As soon as a page is received, the request for the
+ * next page is sent, so that it is fetched while the current page is being consumed. At most the current page and
+ * the prefetched one are held in memory. Closing the iterator stops the prefetching.
+ * <p>
+ * Failures are thrown from {@link #hasNext()} as unchecked exceptions, checked Xenon exceptions being wrapped in
+ * {@link XenonRuntimeException}.
+ *
+ * @param <T> type of the iterated elements
+ */
+class PagedQueryIterator<T> implements Iterator<T>, AutoCloseable {
+
+  private final Supplier<CompletableFuture<ServiceDocumentQueryResult>> firstPageLoader;
+  private final Function<String, CompletableFuture<ServiceDocumentQueryResult>> pageLoader;
+  private final BiFunction<ServiceDocumentQueryResult, String, T> converter;
+
+  private CompletableFuture<ServiceDocumentQueryResult> nextPage;
+  private ServiceDocumentQueryResult currentPage;
+  private Iterator<String> currentLinks;
+  private boolean started;
+  private boolean closed;
+
+  /**
+   * @param firstPageLoader sends the query and returns the first page
+   * @param pageLoader      returns the page of a page link
+   * @param converter       converts a document link of a page to an element
+   */
+  PagedQueryIterator(Supplier<CompletableFuture<ServiceDocumentQueryResult>> firstPageLoader,
+                     Function<String, CompletableFuture<ServiceDocumentQueryResult>> pageLoader,
+                     BiFunction<ServiceDocumentQueryResult, String, T> converter) {
+    this.firstPageLoader = firstPageLoader;
+    this.pageLoader = pageLoader;
+    this.converter = converter;
+    this.currentLinks = Collections.emptyIterator();
+  }
+
+  /**
+   * Builds a sequential stream over the iterator, the stream closes the iterator when it is closed.
+   */
+  static <T> Stream<T> stream(PagedQueryIterator<T> iterator) {
+    return StreamSupport
+        .stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+        .onClose(iterator::close);
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!closed) {
+      if (currentLinks.hasNext()) {
+        return true;
+      }
+
+      if (!started) {
+        started = true;
+        nextPage = firstPageLoader.get();
+      }
+
+      if (nextPage == null) {
+        return false;
+      }
+
+      currentPage = await(nextPage);
+      nextPage = currentPage.nextPageLink != null ? pageLoader.apply(currentPage.nextPageLink) : null;
+      currentLinks = currentPage.documentLinks != null
+          ? currentPage.documentLinks.iterator()
+          : Collections.emptyIterator();
+    }
+
+    return false;
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    return converter.apply(currentPage, currentLinks.next());
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    currentPage = null;
+    currentLinks = Collections.emptyIterator();
+    if (nextPage != null) {
+      nextPage.cancel(false);
+      nextPage = null;
+    }
+  }
+
+  private static ServiceDocumentQueryResult await(CompletableFuture<ServiceDocumentQueryResult> page) {
+    try {
+      return page.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new XenonRuntimeException(cause);
+    }
+  }
+}
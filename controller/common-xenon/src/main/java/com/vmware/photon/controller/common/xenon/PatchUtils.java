@@ -13,12 +13,11 @@
 
 package com.vmware.photon.controller.common.xenon;
 
-import com.vmware.photon.controller.common.xenon.validation.Immutable;
+import com.vmware.photon.controller.common.xenon.validation.DocumentMetadata;
+import com.vmware.photon.controller.common.xenon.validation.DocumentMetadata.FieldAccessor;
 import com.vmware.xenon.common.ServiceDocument;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
+import java.util.List;
 
 /**
  * This class implements utilities for Xenon patching actions.
@@ -27,23 +26,19 @@ public class PatchUtils {
 
   public static <T extends ServiceDocument> void patchState(T currentState, T patchState) {
     try {
-      Field[] patchStateDeclaredFields = patchState.getClass().getDeclaredFields();
-      for (Field patchStateField : patchStateDeclaredFields) {
-        if (Modifier.isStatic(patchStateField.getModifiers())) {
+      List<FieldAccessor> patchStateFields = DocumentMetadata.get(patchState.getClass()).getMutableFields();
+      boolean sameClass = currentState.getClass() == patchState.getClass();
+      for (int i = 0; i < patchStateFields.size(); i++) {
+        FieldAccessor patchStateField = patchStateFields.get(i);
+        Object value = patchStateField.get(patchState);
+        if (null == value) {
           continue;
         }
-        boolean immutableField = false;
-        Annotation[] declaredAnnotations = patchStateField.getDeclaredAnnotations();
-        for (Annotation annotation : declaredAnnotations) {
-          if (annotation.annotationType() == Immutable.class) {
-            immutableField = true;
-            break;
-          }
-        }
 
-        if (!immutableField && null != patchStateField.get(patchState)) {
-          Field currentStateField = currentState.getClass().getField(patchStateField.getName());
-          currentStateField.set(currentState, patchStateField.get(patchState));
+        if (sameClass) {
+          patchStateField.set(currentState, value);
+        } else {
+          currentState.getClass().getField(patchStateField.getName()).set(currentState, value);
         }
       }
     } catch (IllegalStateException e) {
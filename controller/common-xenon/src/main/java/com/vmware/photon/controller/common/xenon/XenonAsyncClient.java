@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.xenon;
+
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceDocumentQueryResult;
+import com.vmware.xenon.services.common.QueryTask;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking REST client API to access Xenon services.
+ * <p>
+ * This is the asynchronous counterpart of {@link XenonClient}. No method blocks the calling thread; the returned
+ * futures complete from the Xenon operation completion, and fail with the same exceptions the synchronous methods
+ * throw (e.g. {@link com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException}).
+ */
+public interface XenonAsyncClient {
+
+  CompletableFuture<Operation> postAsync(String serviceSelfLink, ServiceDocument body);
+
+  CompletableFuture<Operation> postAsync(Boolean forceIndexUpdate, String serviceSelfLink, ServiceDocument body);
+
+  CompletableFuture<Operation> putAsync(String serviceSelfLink, ServiceDocument body);
+
+  CompletableFuture<Operation> getAsync(String documentSelfLink);
+
+  CompletableFuture<Operation> getAsync(URI documentServiceUri);
+
+  /**
+   * Gets a set of documents, sending at most batchSize GET operations at a time.
+   *
+   * @return future of the completed operations keyed by document self link
+   */
+  CompletableFuture<Map<String, Operation>> getAsync(Collection<String> documentSelfLinks, int batchSize);
+
+  CompletableFuture<Operation> deleteAsync(String documentSelfLink, ServiceDocument body);
+
+  CompletableFuture<Operation> patchAsync(String serviceSelfLink, Object body);
+
+  CompletableFuture<Operation> patchAsync(String serviceSelfLink, Object body,
+                                          EnumSet<XenonClient.HeaderOption> headerOptions);
+
+  CompletableFuture<Operation> queryAsync(QueryTask queryTask);
+
+  CompletableFuture<Operation> postToBroadcastQueryServiceAsync(QueryTask query);
+
+  <T extends ServiceDocument> CompletableFuture<List<T>> queryDocumentsAsync(Class<T> documentType,
+                                                                             ImmutableMap<String, String> terms);
+
+  <T extends ServiceDocument> CompletableFuture<ServiceDocumentQueryResult> queryDocumentsAsync(
+      Class<T> documentType,
+      ImmutableMap<String, String> terms,
+      ImmutableMap<String, List<String>> inClauseTerms,
+      Optional<Integer> pageSize,
+      boolean expandContent,
+      boolean broadCast);
+
+  CompletableFuture<ServiceDocumentQueryResult> queryDocumentPageAsync(String pageLink);
+
+  /**
+   * Waits for a task service to reach the FINISHED, FAILED or CANCELLED stage. There is no deadline: the future
+   * only completes when the task does, or when getting the task state fails.
+   *
+   * @param taskServiceUri URI of the task service
+   * @return future of the GET operation which observed the final stage
+   */
+  CompletableFuture<Operation> waitForTaskToFinishAsync(URI taskServiceUri);
+
+  /**
+   * Waits for a task service to reach the FINISHED, FAILED or CANCELLED stage, for at most the given time.
+   *
+   * @param taskServiceUri URI of the task service
+   * @param timeout        maximum time to wait
+   * @param timeUnit       unit of timeout
+   * @return future of the GET operation which observed the final stage, failing with a TimeoutException when the
+   * task does not finish in time
+   */
+  CompletableFuture<Operation> waitForTaskToFinishAsync(URI taskServiceUri, long timeout, TimeUnit timeUnit);
+}
@@ -29,6 +29,7 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
 
 /**
  * REST client API to access Xenon services.
@@ -125,4 +126,23 @@ public interface XenonClient {
   <T extends ServiceDocument> List<String> queryDocumentsForLinks(Class<T> documentType,
                                                                   ImmutableMap<String, String> terms)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException;
+
+  /**
+   * Streams the documents of type T matching the terms, fetching them lazily pageSize documents at a time. The
+   * stream should be closed when it is not consumed to the end. Query failures are thrown while the stream is
+   * consumed, as unchecked exceptions.
+   */
+  <T extends ServiceDocument> Stream<T> queryDocumentsStream(Class<T> documentType,
+                                                             ImmutableMap<String, String> terms,
+                                                             int pageSize,
+                                                             boolean broadCast);
+
+  /**
+   * Streams the links of the documents of type T matching the terms, see
+   * {@link #queryDocumentsStream(Class, ImmutableMap, int, boolean)}.
+   */
+  <T extends ServiceDocument> Stream<String> queryDocumentLinksStream(Class<T> documentType,
+                                                                      ImmutableMap<String, String> terms,
+                                                                      int pageSize,
+                                                                      boolean broadCast);
 }
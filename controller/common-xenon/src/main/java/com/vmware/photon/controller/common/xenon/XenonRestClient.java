@@ -49,15 +49,19 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
 
 /**
  * REST client to access Xenon services.
  */
-public class XenonRestClient implements XenonClient {
+public class XenonRestClient implements XenonClient, XenonAsyncClient {
 
   private static final long POST_OPERATION_EXPIRATION_MICROS = TimeUnit.SECONDS.toMicros(60);
   private long postOperationExpirationMicros = POST_OPERATION_EXPIRATION_MICROS;
@@ -73,6 +77,7 @@ public class XenonRestClient implements XenonClient {
   private long patchOperationExpirationMicros = PATCH_OPERATION_EXPIRATION_MICROS;
   private static final long DEFAULT_OPERATION_LATCH_TIMEOUT_MICROS = TimeUnit.SECONDS.toMicros(90);
   private static final long SERVICE_DOCUMENT_STATUS_CHECK_INTERVAL_MILLIS = 100L;
+  private static final long MAX_TASK_STATUS_CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(1);
   private long serviceDocumentStatusCheckIntervalMillis = SERVICE_DOCUMENT_STATUS_CHECK_INTERVAL_MILLIS;
   private static final Logger logger = LoggerFactory.getLogger(XenonRestClient.class);
 
@@ -144,114 +149,41 @@ public class XenonRestClient implements XenonClient {
   @Override
   public Operation post(Boolean forceIndexUpdate, String serviceSelfLink, ServiceDocument body, long timeOutInMicros)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
-    URI serviceUri = getServiceUri(serviceSelfLink);
-
-    Operation postOperation = Operation
-        .createPost(serviceUri)
-        .setUri(serviceUri)
-        .setExpiration(Utils.getNowMicrosUtc() + timeOutInMicros)
-        .setBody(body)
-        .setReferer(this.localHostUri)
-        .setContextId(LoggingUtils.getRequestId());
-
-    if (forceIndexUpdate) {
-      // this pragma will allow POST to a previously deleted service.
-      postOperation.addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE);
-    }
-
-    return send(postOperation);
+    return send(buildPostOperation(forceIndexUpdate, serviceSelfLink, body, timeOutInMicros));
   }
 
   @Override
   public Operation put(String serviceSelfLink, ServiceDocument body)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
-    URI serviceUri = getServiceUri(serviceSelfLink);
-
-    Operation putOperation = Operation
-        .createPut(serviceUri)
-        .setExpiration(Utils.getNowMicrosUtc() + getPutOperationExpirationMicros())
-        .setBody(body)
-        .setReferer(this.localHostUri)
-        .setContextId(LoggingUtils.getRequestId());
-
-    return send(putOperation);
+    return send(buildPutOperation(serviceSelfLink, body));
   }
 
   @Override
   public Operation get(String documentSelfLink)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
-    URI serviceUri = getServiceUri(documentSelfLink);
-
-    Operation getOperation = Operation
-        .createGet(serviceUri)
-        .setUri(serviceUri)
-        .setExpiration(Utils.getNowMicrosUtc() + getGetOperationExpirationMicros())
-        .setReferer(this.localHostUri)
-        .setContextId(LoggingUtils.getRequestId());
-
-    return send(getOperation);
+    return send(buildGetOperation(getServiceUri(documentSelfLink), getGetOperationExpirationMicros()));
   }
 
   @Override
   public Operation get(URI documentServiceUri)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
-
-    Operation getOperation = Operation
-        .createGet(documentServiceUri)
-        .setUri(documentServiceUri)
-        .setExpiration(Utils.getNowMicrosUtc() + getGetOperationExpirationMicros())
-        .setReferer(this.localHostUri)
-        .setContextId(LoggingUtils.getRequestId());
-
-    return send(getOperation);
+    return send(buildGetOperation(documentServiceUri, getGetOperationExpirationMicros()));
   }
 
   @Override
   public Map<String, Operation> get(Collection<String> documentSelfLinks, int batchSize)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
 
-    if (documentSelfLinks.isEmpty()) {
-      throw new IllegalArgumentException("documentSelfLinks collection cannot be empty");
-    }
-
-    if (batchSize <= 0) {
-      throw new IllegalArgumentException("batchSize must be greater than zero");
-    }
-
-    int batchCount = 1 + (documentSelfLinks.size() - 1) / batchSize;
     Map<Long, Operation> operations = new HashMap<>(documentSelfLinks.size());
     Map<Long, String> sourceLinks = new HashMap<>(documentSelfLinks.size());
-    for (String documentSelfLink : documentSelfLinks) {
-      URI serviceUri = getServiceUri(documentSelfLink);
-
-      Operation getOperation = Operation
-          .createGet(serviceUri)
-          .setUri(serviceUri)
-          .setExpiration(Utils.getNowMicrosUtc() + batchCount * getGetOperationExpirationMicros())
-          .setReferer(this.localHostUri)
-          .setContextId(LoggingUtils.getRequestId());
-
-      operations.put(getOperation.getId(), getOperation);
-      sourceLinks.put(getOperation.getId(), documentSelfLink);
-    }
-
+    buildGetOperations(documentSelfLinks, batchSize, operations, sourceLinks);
     return send(operations, sourceLinks, batchSize);
   }
 
   @Override
   public Operation delete(String documentSelfLink, ServiceDocument body)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
-    URI serviceUri = getServiceUri(documentSelfLink);
-
-    Operation deleteOperation = Operation
-        .createDelete(serviceUri)
-        .setUri(serviceUri)
-        .setExpiration(Utils.getNowMicrosUtc() + getDeleteOperationExpirationMicros())
-        .setReferer(this.localHostUri)
-        .setContextId(LoggingUtils.getRequestId())
-        .setBody(body);
-
-    return send(deleteOperation);
+    return send(buildDeleteOperation(documentSelfLink, body));
   }
 
   @Override
@@ -280,25 +212,7 @@ public class XenonRestClient implements XenonClient {
       DocumentNotFoundException,
       TimeoutException,
       InterruptedException {
-
-    // Build the URI that will broadcast. The base URI is something like /core-node-selectors/default/forwarding
-    // (which is the node selector's forwarder that will pick all nodes), and there is a query term to
-    // tell it where to forward the query to on each node (for us it's /core/local-query-tasks)
-    URI serviceUri = UriUtils.buildBroadcastRequestUri(
-        getServiceUri(ServiceUriPaths.CORE_LOCAL_QUERY_TASKS),
-        ServiceUriPaths.DEFAULT_NODE_SELECTOR);
-
-    query.setDirect(true);
-
-    Operation queryOperation = Operation
-        .createPost(serviceUri)
-        .setUri(serviceUri)
-        .setExpiration(Utils.getNowMicrosUtc() + getQueryOperationExpirationMicros())
-        .setBody(query)
-        .setReferer(this.localHostUri)
-        .setContextId(LoggingUtils.getRequestId());
-
-    return send(queryOperation);
+    return send(buildBroadcastQueryOperation(query));
   }
 
   @Override
@@ -310,16 +224,7 @@ public class XenonRestClient implements XenonClient {
   @Override
   public Operation patch(String serviceSelfLink, Object body, EnumSet<HeaderOption> headerOptions)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
-
-    Operation patchOperation = Operation
-        .createPatch(getServiceUri(serviceSelfLink))
-        .setExpiration(Utils.getNowMicrosUtc() + getPatchOperationExpirationMicros())
-        .setBody(body)
-        .setReferer(this.localHostUri)
-        .setContextId(LoggingUtils.getRequestId());
-
-    addRequestHeaders(patchOperation, headerOptions);
-    return send(patchOperation);
+    return send(buildPatchOperation(serviceSelfLink, body, headerOptions));
   }
 
   @Override
@@ -331,18 +236,7 @@ public class XenonRestClient implements XenonClient {
   @Override
   public Operation query(QueryTask queryTask)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
-
-    URI queryFactoryUri = getServiceUri(ServiceUriPaths.CORE_QUERY_TASKS);
-
-    Operation queryOperation = Operation
-        .createPost(queryFactoryUri)
-        .setUri(queryFactoryUri)
-        .setExpiration(Utils.getNowMicrosUtc() + getQueryOperationExpirationMicros())
-        .setBody(queryTask)
-        .setReferer(this.localHostUri)
-        .setContextId(LoggingUtils.getRequestId());
-
-    return send(queryOperation);
+    return send(buildQueryOperation(queryTask));
   }
 
   /**
@@ -417,21 +311,8 @@ public class XenonRestClient implements XenonClient {
                                                                                boolean broadCast)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
 
-    checkNotNull(documentType, "Cannot query documents with null documentType");
-    if (pageSize.isPresent()) {
-      checkArgument(pageSize.get() >= 1, "Cannot query documents with a page size less than 1");
-    }
-
-    QueryTask.QuerySpecification spec = QueryTaskUtils.buildQuerySpec(documentType, terms, inClauseTerms);
-    if (broadCast) {
-      spec.options = EnumSet.of(QueryTask.QuerySpecification.QueryOption.BROADCAST);
-    }
-    if (expandContent) {
-      spec.options.add(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
-    }
-    if (pageSize.isPresent()) {
-      spec.resultLimit = pageSize.get();
-    }
+    QueryTask.QuerySpecification spec =
+        buildQueryDocumentsSpec(documentType, terms, inClauseTerms, pageSize, expandContent, broadCast);
 
     // Indirect call. Xenon will not return the results. Instead the service URI
     // established will be obtained here, and it will be used to get the results
@@ -474,11 +355,7 @@ public class XenonRestClient implements XenonClient {
 
     Operation result = get(pageLink);
 
-    ServiceDocumentQueryResult queryResult = result.getBody(QueryTask.class).results;
-    queryResult.nextPageLink = encodePageLink(queryResult.nextPageLink);
-    queryResult.prevPageLink = encodePageLink(queryResult.prevPageLink);
-
-    return queryResult;
+    return getEncodedPage(result);
   }
 
   /**
@@ -508,6 +385,208 @@ public class XenonRestClient implements XenonClient {
     return ImmutableList.copyOf(documentLinks);
   }
 
+  @Override
+  public <T extends ServiceDocument> Stream<T> queryDocumentsStream(Class<T> documentType,
+                                                                    ImmutableMap<String, String> terms,
+                                                                    int pageSize,
+                                                                    boolean broadCast) {
+    return queryStream(documentType, terms, pageSize, true, broadCast,
+        (page, documentLink) -> Utils.fromJson(page.documents.get(documentLink), documentType));
+  }
+
+  @Override
+  public <T extends ServiceDocument> Stream<String> queryDocumentLinksStream(Class<T> documentType,
+                                                                             ImmutableMap<String, String> terms,
+                                                                             int pageSize,
+                                                                             boolean broadCast) {
+    return queryStream(documentType, terms, pageSize, false, broadCast, (page, documentLink) -> documentLink);
+  }
+
+  @Override
+  public CompletableFuture<Operation> postAsync(String serviceSelfLink, ServiceDocument body) {
+    return postAsync(false, serviceSelfLink, body);
+  }
+
+  @Override
+  public CompletableFuture<Operation> postAsync(Boolean forceIndexUpdate, String serviceSelfLink,
+                                                ServiceDocument body) {
+    return sendAsync(buildPostOperation(forceIndexUpdate, serviceSelfLink, body, getPostOperationExpirationMicros()));
+  }
+
+  @Override
+  public CompletableFuture<Operation> putAsync(String serviceSelfLink, ServiceDocument body) {
+    return sendAsync(buildPutOperation(serviceSelfLink, body));
+  }
+
+  @Override
+  public CompletableFuture<Operation> getAsync(String documentSelfLink) {
+    return getAsync(getServiceUri(documentSelfLink));
+  }
+
+  @Override
+  public CompletableFuture<Operation> getAsync(URI documentServiceUri) {
+    return sendAsync(buildGetOperation(documentServiceUri, getGetOperationExpirationMicros()));
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Operation>> getAsync(Collection<String> documentSelfLinks, int batchSize) {
+    Map<Long, Operation> operations = new HashMap<>(documentSelfLinks.size());
+    Map<Long, String> sourceLinks = new HashMap<>(documentSelfLinks.size());
+    buildGetOperations(documentSelfLinks, batchSize, operations, sourceLinks);
+    return sendAsync(operations, sourceLinks, batchSize);
+  }
+
+  @Override
+  public CompletableFuture<Operation> deleteAsync(String documentSelfLink, ServiceDocument body) {
+    return sendAsync(buildDeleteOperation(documentSelfLink, body));
+  }
+
+  @Override
+  public CompletableFuture<Operation> patchAsync(String serviceSelfLink, Object body) {
+    return patchAsync(serviceSelfLink, body, null);
+  }
+
+  @Override
+  public CompletableFuture<Operation> patchAsync(String serviceSelfLink, Object body,
+                                                 EnumSet<HeaderOption> headerOptions) {
+    return sendAsync(buildPatchOperation(serviceSelfLink, body, headerOptions));
+  }
+
+  @Override
+  public CompletableFuture<Operation> queryAsync(QueryTask queryTask) {
+    return sendAsync(buildQueryOperation(queryTask));
+  }
+
+  @Override
+  public CompletableFuture<Operation> postToBroadcastQueryServiceAsync(QueryTask query) {
+    return sendAsync(buildBroadcastQueryOperation(query));
+  }
+
+  @Override
+  public <T extends ServiceDocument> CompletableFuture<List<T>> queryDocumentsAsync(
+      Class<T> documentType,
+      ImmutableMap<String, String> terms) {
+    checkNotNull(documentType, "Cannot query documents with null documentType");
+
+    QueryTask.QuerySpecification spec = QueryTaskUtils.buildQuerySpec(documentType, terms);
+    spec.options = EnumSet.of(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
+    return postToBroadcastQueryServiceAsync(QueryTask.create(spec))
+        .thenApply((result) -> QueryTaskUtils.getBroadcastQueryDocuments(documentType, result));
+  }
+
+  /**
+   * Asynchronous version of
+   * {@link #queryDocuments(Class, ImmutableMap, ImmutableMap, Optional, boolean, boolean)}. The query task is
+   * created indirectly and its completion is observed through {@link #waitForTaskToFinishAsync(URI)}.
+   */
+  @Override
+  public <T extends ServiceDocument> CompletableFuture<ServiceDocumentQueryResult> queryDocumentsAsync(
+      Class<T> documentType,
+      ImmutableMap<String, String> terms,
+      ImmutableMap<String, List<String>> inClauseTerms,
+      Optional<Integer> pageSize,
+      boolean expandContent,
+      boolean broadCast) {
+
+    QueryTask.QuerySpecification spec =
+        buildQueryDocumentsSpec(documentType, terms, inClauseTerms, pageSize, expandContent, broadCast);
+
+    return queryAsync(QueryTask.create(spec).setDirect(false))
+        .thenCompose((result) -> waitForTaskToFinishAsync(QueryTaskUtils.getServiceDocumentUri(result)))
+        .thenCompose((result) -> {
+          ServiceDocumentQueryResult queryResult = result.getBody(QueryTask.class).results;
+          if (pageSize.isPresent() && queryResult.nextPageLink != null) {
+            return queryDocumentPageAsync(encodePageLink(queryResult.nextPageLink));
+          }
+          return CompletableFuture.completedFuture(queryResult);
+        });
+  }
+
+  @Override
+  public CompletableFuture<ServiceDocumentQueryResult> queryDocumentPageAsync(String pageLink) {
+    checkNotNull(pageLink, "Cannot query documents with null pageLink");
+    checkArgument(!pageLink.isEmpty(), "Cannot query documents with empty pageLink");
+
+    return getAsync(decodePageLink(pageLink)).thenApply(this::getEncodedPage);
+  }
+
+  /**
+   * Waits for a task service to finish without blocking a thread. There is no deadline, as with the synchronous
+   * wait: use {@link #waitForTaskToFinishAsync(URI, long, TimeUnit)} to bound it.
+   */
+  @Override
+  public CompletableFuture<Operation> waitForTaskToFinishAsync(URI taskServiceUri) {
+    return waitForTaskToFinishUntil(taskServiceUri, Long.MAX_VALUE);
+  }
+
+  @Override
+  public CompletableFuture<Operation> waitForTaskToFinishAsync(URI taskServiceUri, long timeout, TimeUnit timeUnit) {
+    checkArgument(timeout > 0, "timeout must be positive");
+    return waitForTaskToFinishUntil(taskServiceUri, Utils.getNowMicrosUtc() + timeUnit.toMicros(timeout));
+  }
+
+  /**
+   * The task stage is checked right away. Only when the task is not finished yet does the client subscribe to the
+   * task service, and check the task stage whenever a notification arrives. Since the task may finish before the
+   * subscription is in place, or a notification may be lost, the stage is also checked once the subscription is
+   * in place and then with a growing interval, which replaces the fixed interval sleep polling used before.
+   */
+  private CompletableFuture<Operation> waitForTaskToFinishUntil(URI taskServiceUri, long deadlineMicros) {
+    CompletableFuture<Operation> future = new CompletableFuture<>();
+    sendAsync(buildGetOperation(taskServiceUri, getGetOperationExpirationMicros())).whenComplete((result, failure) -> {
+      if (failure != null) {
+        future.completeExceptionally(failure);
+        return;
+      }
+
+      if (isTaskFinished(result)) {
+        future.complete(result);
+        return;
+      }
+
+      subscribeToTask(taskServiceUri, future, deadlineMicros);
+      long checkIntervalMillis = getServiceDocumentStatusCheckIntervalMillis();
+      scheduledExecutorService.schedule(
+          () -> checkTaskStage(taskServiceUri, future, deadlineMicros,
+              Math.min(2 * checkIntervalMillis, MAX_TASK_STATUS_CHECK_INTERVAL_MILLIS)),
+          checkIntervalMillis, TimeUnit.MILLISECONDS);
+    });
+    return future;
+  }
+
+  private void subscribeToTask(URI taskServiceUri, CompletableFuture<Operation> future, long deadlineMicros) {
+    URI subscriberUri;
+    try {
+      Operation subscribe = Operation
+          .createPost(taskServiceUri)
+          .setReferer(this.localHostUri)
+          .setContextId(LoggingUtils.getRequestId())
+          .setCompletion((op, failure) -> {
+            if (failure != null) {
+              logger.debug("waitForTaskToFinishAsync: subscription to {} failed, falling back to polling: {}",
+                  taskServiceUri, failure.getMessage());
+              return;
+            }
+
+            // The task may have finished before the subscription was in place
+            checkTaskStage(taskServiceUri, future, deadlineMicros, 0);
+          });
+
+      subscriberUri = serviceHost.startSubscriptionService(subscribe, (notification) -> {
+        notification.complete();
+        checkTaskStage(taskServiceUri, future, deadlineMicros, 0);
+      });
+    } catch (Throwable t) {
+      logger.debug("waitForTaskToFinishAsync: cannot subscribe to {}, falling back to polling: {}",
+          taskServiceUri, t.getMessage());
+      return;
+    }
+
+    future.whenComplete((result, failure) -> serviceHost.stopSubscriptionService(
+        Operation.createDelete(taskServiceUri).setReferer(this.localHostUri),
+        subscriberUri));
+  }
+
   /**
    * This method sifts through errors from Xenon operations into checked and unchecked(RuntimeExceptions) This is the
    * default handling but it can be overridden by different clients based on their needs.
@@ -633,6 +712,60 @@ public class XenonRestClient implements XenonClient {
     return result;
   }
 
+  /**
+   * Sends an operation without waiting for it. The returned future completes from the operation completion, and
+   * fails with the same exceptions {@link #send(Operation)} throws.
+   */
+  @VisibleForTesting
+  protected CompletableFuture<Operation> sendAsync(Operation requestedOperation) {
+    logger.debug("sendAsync: STARTED {}", OperationUtils.createLogMessage(requestedOperation));
+    CompletableFuture<Operation> future = new CompletableFuture<>();
+    requestedOperation.setCompletion((completedOperation, failure) -> {
+      logCompletedOperation(completedOperation);
+      try {
+        handleOperationResult(requestedOperation, completedOperation);
+        future.complete(completedOperation);
+      } catch (Throwable t) {
+        future.completeExceptionally(t);
+      }
+    });
+
+    serviceHost.sendRequest(requestedOperation);
+    return future;
+  }
+
+  @VisibleForTesting
+  protected CompletableFuture<Map<String, Operation>> sendAsync(Map<Long, Operation> requestedOperations,
+                                                                Map<Long, String> sourceLinks,
+                                                                int batchSize) {
+
+    for (Operation requestedOperation : requestedOperations.values()) {
+      logger.debug("sendAsync: STARTED {}", OperationUtils.createLogMessage(requestedOperation));
+    }
+
+    CompletableFuture<Map<String, Operation>> future = new CompletableFuture<>();
+    OperationJoin
+        .create(requestedOperations.values())
+        .setCompletion((completedOperations, failures) -> {
+          try {
+            for (Operation completedOperation : completedOperations.values()) {
+              logCompletedOperation(completedOperation);
+            }
+            handleOperationResults(requestedOperations, completedOperations.values());
+            Map<String, Operation> result = new HashMap<>(completedOperations.size());
+            for (Operation operation : completedOperations.values()) {
+              result.put(sourceLinks.get(operation.getId()), operation);
+            }
+            future.complete(result);
+          } catch (Throwable t) {
+            future.completeExceptionally(t);
+          }
+        })
+        .sendWith(serviceHost, batchSize);
+
+    return future;
+  }
+
   @VisibleForTesting
   protected long getPostOperationExpirationMicros() {
     return postOperationExpirationMicros;
@@ -742,23 +875,245 @@ public class XenonRestClient implements XenonClient {
 
   private Operation waitForTaskToFinish(URI serviceUri)
       throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
+    return await(waitForTaskToFinishAsync(serviceUri));
+  }
 
-    Operation result = null;
-    do {
-      result = get(serviceUri);
-      TaskState.TaskStage taskStage = QueryTaskUtils.getServiceState(result);
-      if (taskStage == TaskState.TaskStage.FINISHED
-          || taskStage == TaskState.TaskStage.FAILED
-          || taskStage == TaskState.TaskStage.CANCELLED) {
+  /**
+   * Polls the task service once. The poll is repeated with a growing interval as a fallback for missed
+   * notifications, and is triggered right away by every notification of the subscription.
+   */
+  private void checkTaskStage(URI serviceUri, CompletableFuture<Operation> future, long deadlineMicros,
+                              long nextCheckIntervalMillis) {
+    if (future.isDone()) {
+      return;
+    }
 
-        return result;
+    sendAsync(buildGetOperation(serviceUri, getGetOperationExpirationMicros())).whenComplete((result, failure) -> {
+      if (failure != null) {
+        future.completeExceptionally(failure);
+        return;
       }
 
-      Thread.sleep(getServiceDocumentStatusCheckIntervalMillis());
-    } while (Utils.getNowMicrosUtc() <= result.getExpirationMicrosUtc());
+      if (isTaskFinished(result)) {
+        future.complete(result);
+        return;
+      }
 
-    throw new TimeoutException(String.format("Timeout:{%s}, TimeUnit:{%s}", result.getExpirationMicrosUtc(),
-        TimeUnit.MICROSECONDS));
+      if (Utils.getNowMicrosUtc() > deadlineMicros) {
+        future.completeExceptionally(new TimeoutException(
+            String.format("Timeout:{%s}, TimeUnit:{%s}", deadlineMicros, TimeUnit.MICROSECONDS)));
+        return;
+      }
+
+      if (nextCheckIntervalMillis > 0 && !future.isDone()) {
+        scheduledExecutorService.schedule(
+            () -> checkTaskStage(serviceUri, future, deadlineMicros,
+                Math.min(2 * nextCheckIntervalMillis, MAX_TASK_STATUS_CHECK_INTERVAL_MILLIS)),
+            nextCheckIntervalMillis, TimeUnit.MILLISECONDS);
+      }
+    });
+  }
+
+  private static boolean isTaskFinished(Operation taskOperation) {
+    TaskState.TaskStage taskStage = QueryTaskUtils.getServiceState(taskOperation);
+    return taskStage == TaskState.TaskStage.FINISHED
+        || taskStage == TaskState.TaskStage.FAILED
+        || taskStage == TaskState.TaskStage.CANCELLED;
+  }
+
+  /**
+   * Waits for a future, unwrapping the failure into the exceptions the synchronous API declares.
+   */
+  private static <T> T await(CompletableFuture<T> future)
+      throws BadRequestException, DocumentNotFoundException, TimeoutException, InterruptedException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      throw e;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof BadRequestException) {
+        throw (BadRequestException) cause;
+      } else if (cause instanceof DocumentNotFoundException) {
+        throw (DocumentNotFoundException) cause;
+      } else if (cause instanceof TimeoutException) {
+        throw (TimeoutException) cause;
+      } else if (cause instanceof InterruptedException) {
+        throw (InterruptedException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new XenonRuntimeException(cause);
+    }
+  }
+
+  private Operation buildPostOperation(Boolean forceIndexUpdate, String serviceSelfLink, ServiceDocument body,
+                                       long timeOutInMicros) {
+    URI serviceUri = getServiceUri(serviceSelfLink);
+
+    Operation postOperation = Operation
+        .createPost(serviceUri)
+        .setUri(serviceUri)
+        .setExpiration(Utils.getNowMicrosUtc() + timeOutInMicros)
+        .setBody(body)
+        .setReferer(this.localHostUri)
+        .setContextId(LoggingUtils.getRequestId());
+
+    if (forceIndexUpdate) {
+      // this pragma will allow POST to a previously deleted service.
+      postOperation.addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE);
+    }
+
+    return postOperation;
+  }
+
+  private Operation buildPutOperation(String serviceSelfLink, ServiceDocument body) {
+    URI serviceUri = getServiceUri(serviceSelfLink);
+
+    return Operation
+        .createPut(serviceUri)
+        .setExpiration(Utils.getNowMicrosUtc() + getPutOperationExpirationMicros())
+        .setBody(body)
+        .setReferer(this.localHostUri)
+        .setContextId(LoggingUtils.getRequestId());
+  }
+
+  private Operation buildGetOperation(URI serviceUri, long expirationMicros) {
+    return Operation
+        .createGet(serviceUri)
+        .setUri(serviceUri)
+        .setExpiration(Utils.getNowMicrosUtc() + expirationMicros)
+        .setReferer(this.localHostUri)
+        .setContextId(LoggingUtils.getRequestId());
+  }
+
+  private void buildGetOperations(Collection<String> documentSelfLinks,
+                                  int batchSize,
+                                  Map<Long, Operation> operations,
+                                  Map<Long, String> sourceLinks) {
+    if (documentSelfLinks.isEmpty()) {
+      throw new IllegalArgumentException("documentSelfLinks collection cannot be empty");
+    }
+
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be greater than zero");
+    }
+
+    int batchCount = 1 + (documentSelfLinks.size() - 1) / batchSize;
+    for (String documentSelfLink : documentSelfLinks) {
+      Operation getOperation =
+          buildGetOperation(getServiceUri(documentSelfLink), batchCount * getGetOperationExpirationMicros());
+      operations.put(getOperation.getId(), getOperation);
+      sourceLinks.put(getOperation.getId(), documentSelfLink);
+    }
+  }
+
+  private Operation buildDeleteOperation(String documentSelfLink, ServiceDocument body) {
+    URI serviceUri = getServiceUri(documentSelfLink);
+
+    return Operation
+        .createDelete(serviceUri)
+        .setUri(serviceUri)
+        .setExpiration(Utils.getNowMicrosUtc() + getDeleteOperationExpirationMicros())
+        .setReferer(this.localHostUri)
+        .setContextId(LoggingUtils.getRequestId())
+        .setBody(body);
+  }
+
+  private Operation buildPatchOperation(String serviceSelfLink, Object body, EnumSet<HeaderOption> headerOptions) {
+    Operation patchOperation = Operation
+        .createPatch(getServiceUri(serviceSelfLink))
+        .setExpiration(Utils.getNowMicrosUtc() + getPatchOperationExpirationMicros())
+        .setBody(body)
+        .setReferer(this.localHostUri)
+        .setContextId(LoggingUtils.getRequestId());
+
+    return addRequestHeaders(patchOperation, headerOptions);
+  }
+
+  private Operation buildQueryOperation(QueryTask queryTask) {
+    URI queryFactoryUri = getServiceUri(ServiceUriPaths.CORE_QUERY_TASKS);
+
+    return Operation
+        .createPost(queryFactoryUri)
+        .setUri(queryFactoryUri)
+        .setExpiration(Utils.getNowMicrosUtc() + getQueryOperationExpirationMicros())
+        .setBody(queryTask)
+        .setReferer(this.localHostUri)
+        .setContextId(LoggingUtils.getRequestId());
+  }
+
+  private Operation buildBroadcastQueryOperation(QueryTask query) {
+    // Build the URI that will broadcast. The base URI is something like /core-node-selectors/default/forwarding
+    // (which is the node selector's forwarder that will pick all nodes), and there is a query term to
+    // tell it where to forward the query to on each node (for us it's /core/local-query-tasks)
+    URI serviceUri = UriUtils.buildBroadcastRequestUri(
+        getServiceUri(ServiceUriPaths.CORE_LOCAL_QUERY_TASKS),
+        ServiceUriPaths.DEFAULT_NODE_SELECTOR);
+
+    query.setDirect(true);
+
+    return Operation
+        .createPost(serviceUri)
+        .setUri(serviceUri)
+        .setExpiration(Utils.getNowMicrosUtc() + getQueryOperationExpirationMicros())
+        .setBody(query)
+        .setReferer(this.localHostUri)
+        .setContextId(LoggingUtils.getRequestId());
+  }
+
+  private <T extends ServiceDocument> QueryTask.QuerySpecification buildQueryDocumentsSpec(
+      Class<T> documentType,
+      ImmutableMap<String, String> terms,
+      ImmutableMap<String, List<String>> inClauseTerms,
+      Optional<Integer> pageSize,
+      boolean expandContent,
+      boolean broadCast) {
+
+    checkNotNull(documentType, "Cannot query documents with null documentType");
+    if (pageSize.isPresent()) {
+      checkArgument(pageSize.get() >= 1, "Cannot query documents with a page size less than 1");
+    }
+
+    QueryTask.QuerySpecification spec = QueryTaskUtils.buildQuerySpec(documentType, terms, inClauseTerms);
+    if (broadCast) {
+      spec.options = EnumSet.of(QueryTask.QuerySpecification.QueryOption.BROADCAST);
+    }
+    if (expandContent) {
+      spec.options.add(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
+    }
+    if (pageSize.isPresent()) {
+      spec.resultLimit = pageSize.get();
+    }
+
+    return spec;
+  }
+
+  private <T extends ServiceDocument, R> Stream<R> queryStream(
+      Class<T> documentType,
+      ImmutableMap<String, String> terms,
+      int pageSize,
+      boolean expandContent,
+      boolean broadCast,
+      BiFunction<ServiceDocumentQueryResult, String, R> converter) {
+
+    // Validate the parameters now rather than when the stream is consumed
+    buildQueryDocumentsSpec(documentType, terms, null, Optional.of(pageSize), expandContent, broadCast);
+
+    return PagedQueryIterator.stream(new PagedQueryIterator<>(
+        () -> queryDocumentsAsync(documentType, terms, null, Optional.of(pageSize), expandContent, broadCast),
+        this::queryDocumentPageAsync,
+        converter));
+  }
+
+  private ServiceDocumentQueryResult getEncodedPage(Operation result) {
+    ServiceDocumentQueryResult queryResult = result.getBody(QueryTask.class).results;
+    queryResult.nextPageLink = encodePageLink(queryResult.nextPageLink);
+    queryResult.prevPageLink = encodePageLink(queryResult.prevPageLink);
+    return queryResult;
   }
 
   private String encodePageLink(String pageLink) {
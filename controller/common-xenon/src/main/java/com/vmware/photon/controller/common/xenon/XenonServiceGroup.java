@@ -36,6 +36,13 @@ public interface XenonServiceGroup {
      */
     void start() throws Throwable;
 
+    /**
+     * Stops the XenonServiceGroup.  This releases what the group started outside of its
+     * Services / Factories, which are stopped by the XenonHost itself.
+     */
+    default void stop() {
+    }
+
     /**
      * Checks the readiness state of the XenonServiceGroup.  This usually represents the
      * collective readiness state of all of the Services / Factories related to this
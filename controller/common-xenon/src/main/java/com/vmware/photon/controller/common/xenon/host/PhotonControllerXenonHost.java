@@ -223,6 +223,22 @@ public class PhotonControllerXenonHost
         return this;
     }
 
+    /**
+     * This method stops the registered Xenon service groups before stopping the host.
+     */
+    @Override
+    public void stop() {
+        for (XenonServiceGroup xenonServiceGroup : xenonServiceGroups) {
+            try {
+                xenonServiceGroup.stop();
+            } catch (Throwable t) {
+                logger.warn("Stopping service group {} failed: {}", xenonServiceGroup.getName(), t);
+            }
+        }
+
+        super.stop();
+    }
+
     /**
      * This method returns whether the services started above have come up.
      *
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.xenon.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class implements the in-memory index of pending task services used by the fair-share mode of
+ * {@link RateLimitedWorkQueueService}.
+ * <p>
+ * Pending task services are grouped into priority lanes, where a lower value means a higher priority. A lane is
+ * only served when all the lanes with a higher priority are empty or blocked. Within a lane, task services are
+ * grouped by fair-share key (e.g. tenant, project or host) and the keys are served in weighted round-robin order:
+ * a key with weight N gets up to N task services started per turn. A key which has reached the per-key
+ * concurrency limit is skipped until one of its running task services finishes.
+ * <p>
+ * It is NOT thread-safe.
+ */
+class FairShareQueue {
+
+  /**
+   * Fair-share key of task services which did not provide one.
+   */
+  public static final String DEFAULT_KEY = "";
+
+  /**
+   * Priority lane of task services which did not provide one.
+   */
+  public static final int DEFAULT_PRIORITY = 0;
+
+  private final Integer perKeyConcurrencyLimit;
+  private final Map<String, Integer> weights;
+  private final TreeMap<Integer, Lane> lanes;
+  private final Map<String, Entry> pendingEntries;
+  private final Map<String, Entry> runningEntries;
+  private final Map<String, Integer> runningCounts;
+
+  /**
+   * @param perKeyConcurrencyLimit maximum number of running task services per key, or null for no limit
+   * @param weights                weights of the keys, keys which are not listed have weight 1
+   */
+  FairShareQueue(Integer perKeyConcurrencyLimit, Map<String, Integer> weights) {
+    this.perKeyConcurrencyLimit = perKeyConcurrencyLimit;
+    this.weights = weights != null ? new HashMap<>(weights) : Collections.emptyMap();
+    this.lanes = new TreeMap<>();
+    this.pendingEntries = new HashMap<>();
+    this.runningEntries = new HashMap<>();
+    this.runningCounts = new HashMap<>();
+  }
+
+  /**
+   * Adds a pending task service. Task services which are already pending or running are ignored.
+   *
+   * @return true if the task service was added
+   */
+  boolean add(String taskServiceLink, String key, Integer priority, long nowMicros) {
+    if (pendingEntries.containsKey(taskServiceLink) || runningEntries.containsKey(taskServiceLink)) {
+      return false;
+    }
+
+    Entry entry = new Entry(taskServiceLink, key != null ? key : DEFAULT_KEY,
+        priority != null ? priority : DEFAULT_PRIORITY, nowMicros);
+    pendingEntries.put(taskServiceLink, entry);
+    lanes.computeIfAbsent(entry.priority, (p) -> new Lane()).add(entry);
+    return true;
+  }
+
+  /**
+   * Removes up to maxCount pending task services in dispatch order and marks them as running.
+   */
+  List<Entry> poll(int maxCount) {
+    List<Entry> result = new ArrayList<>();
+    while (result.size() < maxCount) {
+      Entry entry = null;
+      for (Lane lane : lanes.values()) {
+        entry = lane.poll();
+        if (entry != null) {
+          break;
+        }
+      }
+
+      if (entry == null) {
+        break;
+      }
+
+      pendingEntries.remove(entry.taskServiceLink);
+      runningEntries.put(entry.taskServiceLink, entry);
+      runningCounts.merge(entry.key, 1, Integer::sum);
+      result.add(entry);
+    }
+
+    lanes.values().removeIf(Lane::isEmpty);
+    return result;
+  }
+
+  /**
+   * Marks a running task service as finished, releasing its slot of the per-key concurrency limit.
+   */
+  void finish(String taskServiceLink) {
+    Entry entry = runningEntries.remove(taskServiceLink);
+    if (entry != null) {
+      runningCounts.computeIfPresent(entry.key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+  }
+
+  /**
+   * Moves a running task service back to pending, e.g. when it could not be started. It keeps its key, its lane
+   * and its arrival time.
+   *
+   * @return true if the task service was running
+   */
+  boolean requeue(String taskServiceLink) {
+    Entry entry = runningEntries.get(taskServiceLink);
+    if (entry == null) {
+      return false;
+    }
+
+    finish(taskServiceLink);
+    pendingEntries.put(taskServiceLink, entry);
+    lanes.computeIfAbsent(entry.priority, (p) -> new Lane()).add(entry);
+    return true;
+  }
+
+  boolean contains(String taskServiceLink) {
+    return pendingEntries.containsKey(taskServiceLink) || runningEntries.containsKey(taskServiceLink);
+  }
+
+  int getPendingCount() {
+    return pendingEntries.size();
+  }
+
+  /**
+   * @return the number of pending task services per priority lane
+   */
+  Map<Integer, Integer> getQueueDepths() {
+    Map<Integer, Integer> depths = new TreeMap<>();
+    for (Map.Entry<Integer, Lane> lane : lanes.entrySet()) {
+      depths.put(lane.getKey(), lane.getValue().size);
+    }
+    return depths;
+  }
+
+  private int getWeight(String key) {
+    Integer weight = weights.get(key);
+    return weight != null && weight > 0 ? weight : 1;
+  }
+
+  private boolean isAtLimit(String key) {
+    if (perKeyConcurrencyLimit == null) {
+      return false;
+    }
+    Integer running = runningCounts.get(key);
+    return running != null && running >= perKeyConcurrencyLimit;
+  }
+
+  /**
+   * This class represents a pending task service.
+   */
+  static class Entry {
+    final String taskServiceLink;
+    final String key;
+    final int priority;
+    final long enqueuedMicros;
+
+    private Entry(String taskServiceLink, String key, int priority, long enqueuedMicros) {
+      this.taskServiceLink = taskServiceLink;
+      this.key = key;
+      this.priority = priority;
+      this.enqueuedMicros = enqueuedMicros;
+    }
+  }
+
+  /**
+   * This class represents the pending task services of a single key within a lane.
+   */
+  private static class KeyQueue {
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private int credits;
+  }
+
+  /**
+   * This class represents a priority lane, served in weighted round-robin order across keys.
+   */
+  private class Lane {
+    private final Map<String, KeyQueue> queues = new HashMap<>();
+    private final ArrayDeque<String> activeKeys = new ArrayDeque<>();
+    private int size;
+
+    private void add(Entry entry) {
+      KeyQueue queue = queues.get(entry.key);
+      if (queue == null) {
+        queue = new KeyQueue();
+        queues.put(entry.key, queue);
+        activeKeys.addLast(entry.key);
+      }
+      queue.entries.addLast(entry);
+      size++;
+    }
+
+    private Entry poll() {
+      for (int i = 0; i < activeKeys.size(); i++) {
+        String key = activeKeys.peekFirst();
+        KeyQueue queue = queues.get(key);
+        if (isAtLimit(key)) {
+          // Give up the rest of the turn
+          queue.credits = 0;
+          activeKeys.addLast(activeKeys.pollFirst());
+          continue;
+        }
+
+        if (queue.credits == 0) {
+          queue.credits = getWeight(key);
+        }
+
+        Entry entry = queue.entries.pollFirst();
+        queue.credits--;
+        size--;
+        if (queue.entries.isEmpty()) {
+          activeKeys.pollFirst();
+          queues.remove(key);
+        } else if (queue.credits == 0) {
+          activeKeys.addLast(activeKeys.pollFirst());
+        }
+        return entry;
+      }
+
+      return null;
+    }
+
+    private boolean isEmpty() {
+      return size == 0;
+    }
+  }
+}
@@ -20,19 +20,26 @@ import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.photon.controller.common.xenon.ValidationUtils;
 import com.vmware.photon.controller.common.xenon.deployment.NoMigrationDuringDeployment;
 import com.vmware.photon.controller.common.xenon.migration.NoMigrationDuringUpgrade;
+import com.vmware.photon.controller.common.xenon.validation.DefaultBoolean;
 import com.vmware.photon.controller.common.xenon.validation.DefaultInteger;
 import com.vmware.photon.controller.common.xenon.validation.Immutable;
 import com.vmware.photon.controller.common.xenon.validation.NotNull;
+import com.vmware.photon.controller.common.xenon.validation.Positive;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.OperationJoin;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.StatefulService;
+import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.QueryTask;
 
 import static com.google.common.base.Preconditions.checkState;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -44,9 +51,24 @@ import java.util.stream.Stream;
  * per task service instance and reject subsequent patches with this payload
  * - They must *always* notify the associated work queue on arrival and on completion, whether
  * successful or otherwise.
+ * <p>
+ * When {@link State#fairShareEnabled} is set, pending task services are dispatched from an in-memory
+ * {@link FairShareQueue} built from the arrival notifications instead of the pending task service
+ * query, which is then only used for task services the queue does not know about (e.g. after a
+ * restart). Task services can then provide a fair-share key and a priority lane on arrival, and
+ * must provide {@link PatchState#finishedTaskServiceLink} on completion so that per-key
+ * concurrency limits can be enforced: completion messages without it are rejected. Task services
+ * whose start patch fails for a reason other than rejecting it are queued again. The queue depth
+ * and the last wait time of each lane are exposed as service stats.
  */
 public class RateLimitedWorkQueueService extends StatefulService {
 
+  public static final String STAT_NAME_QUEUE_DEPTH_FORMAT = "lane-%d-queueDepth";
+
+  public static final String STAT_NAME_WAIT_TIME_FORMAT = "lane-%d-waitTimeMicros";
+
+  private FairShareQueue fairShareQueue;
+
   /**
    * This class defines the document state associated with a {@link RateLimitedWorkQueueService}
    * instance.
@@ -98,6 +120,29 @@ public class RateLimitedWorkQueueService extends StatefulService {
      */
     @DefaultInteger(value = 0)
     public Integer runningTaskServiceCount;
+
+    /**
+     * This value represents whether pending task services are dispatched in weighted fair-share
+     * order from an in-memory index.
+     */
+    @DefaultBoolean(value = false)
+    @Immutable
+    public Boolean fairShareEnabled;
+
+    /**
+     * This optional value represents the maximum number of running task services per fair-share
+     * key.
+     */
+    @Positive
+    @Immutable
+    public Integer perKeyConcurrencyLimit;
+
+    /**
+     * This optional value represents the weights of the fair-share keys. Keys which are not listed
+     * have a weight of one.
+     */
+    @Immutable
+    public Map<String, Integer> fairShareKeyWeights;
   }
 
   /**
@@ -122,6 +167,24 @@ public class RateLimitedWorkQueueService extends StatefulService {
      * message is being sent.
      */
     public String taskServiceLink;
+
+    /**
+     * This optional value represents the fair-share key (e.g. tenant, project or host) of the task
+     * service on whose behalf an arrival message is being sent.
+     */
+    public String fairShareKey;
+
+    /**
+     * This optional value represents the priority lane of the task service on whose behalf an
+     * arrival message is being sent. Lower values are dispatched first.
+     */
+    public Integer priority;
+
+    /**
+     * This optional value represents the document self-link of the task service on whose behalf a
+     * completion message is being sent.
+     */
+    public String finishedTaskServiceLink;
   }
 
   public RateLimitedWorkQueueService() {
@@ -146,6 +209,11 @@ public class RateLimitedWorkQueueService extends StatefulService {
       return;
     }
 
+    if (startState.fairShareEnabled) {
+      toggleOption(ServiceOption.INSTRUMENTATION, true);
+      fairShareQueue = new FairShareQueue(startState.perKeyConcurrencyLimit, startState.fairShareKeyWeights);
+    }
+
     startOp.setBody(startState).complete();
   }
 
@@ -161,12 +229,18 @@ public class RateLimitedWorkQueueService extends StatefulService {
     PatchState patchState = patchOp.getBody(PatchState.class);
 
     try {
+      validatePatch(currentState, patchState);
       applyPatch(currentState, patchState);
     } catch (Throwable t) {
       ServiceUtils.failOperationAsBadRequest(this, patchOp, t);
       return;
     }
 
+    if (currentState.fairShareEnabled) {
+      handleFairSharePatch(patchOp, currentState, patchState);
+      return;
+    }
+
     if (ControlFlags.isOperationProcessingDisabled(currentState.controlFlags)) {
       ServiceUtils.logInfo(this, "Skipping patch operation processing (disabled)");
       patchOp.complete();
@@ -198,6 +272,70 @@ public class RateLimitedWorkQueueService extends StatefulService {
     }
   }
 
+  private void handleFairSharePatch(Operation patchOp, State currentState, PatchState patchState) {
+
+    if (fairShareQueue == null) {
+      fairShareQueue = new FairShareQueue(currentState.perKeyConcurrencyLimit, currentState.fairShareKeyWeights);
+    }
+
+    if (patchState.finishedTaskServiceLink != null) {
+      fairShareQueue.finish(patchState.finishedTaskServiceLink);
+    }
+
+    if (patchState.taskServiceLink != null && patchState.pendingTaskServiceDelta != null &&
+        patchState.pendingTaskServiceDelta > 0) {
+      fairShareQueue.add(patchState.taskServiceLink, patchState.fairShareKey, patchState.priority,
+          Utils.getNowMicrosUtc());
+    }
+
+    if (ControlFlags.isOperationProcessingDisabled(currentState.controlFlags)) {
+      ServiceUtils.logInfo(this, "Skipping patch operation processing (disabled)");
+      updateQueueDepthStats();
+      patchOp.complete();
+      return;
+    }
+
+    int capacity = currentState.concurrencyLimit - currentState.runningTaskServiceCount;
+    if (currentState.pendingTaskServiceCount <= 0 || capacity <= 0) {
+      updateQueueDepthStats();
+      patchOp.complete();
+      return;
+    }
+
+    if (fairShareQueue.getPendingCount() == 0) {
+      // Pending task services which are not indexed yet, e.g. after a restart
+      queryPendingTaskServices(patchOp, currentState);
+      return;
+    }
+
+    dispatchFairShareTaskServices(patchOp, currentState, capacity);
+  }
+
+  private void dispatchFairShareTaskServices(Operation patchOp, State currentState, int capacity) {
+    List<FairShareQueue.Entry> entries = fairShareQueue.poll(capacity);
+    long now = Utils.getNowMicrosUtc();
+    List<String> taskServiceLinks = new ArrayList<>(entries.size());
+    for (FairShareQueue.Entry entry : entries) {
+      setStat(String.format(STAT_NAME_WAIT_TIME_FORMAT, entry.priority), now - entry.enqueuedMicros);
+      taskServiceLinks.add(entry.taskServiceLink);
+    }
+
+    updateQueueDepthStats();
+    if (taskServiceLinks.isEmpty()) {
+      ServiceUtils.logTrace(this, "All pending fair-share keys are at their concurrency limit");
+      patchOp.complete();
+      return;
+    }
+
+    startTaskServices(patchOp, currentState, taskServiceLinks);
+  }
+
+  private void updateQueueDepthStats() {
+    for (Map.Entry<Integer, Integer> depth : fairShareQueue.getQueueDepths().entrySet()) {
+      setStat(String.format(STAT_NAME_QUEUE_DEPTH_FORMAT, depth.getKey()), depth.getValue());
+    }
+  }
+
   private void validateState(State currentState) {
 
     ValidationUtils.validateState(currentState);
@@ -216,6 +354,13 @@ public class RateLimitedWorkQueueService extends StatefulService {
     checkState(currentState.runningTaskServiceCount <= currentState.concurrencyLimit);
   }
 
+  private void validatePatch(State currentState, PatchState patchState) {
+    // Without it the per-key slot of the finished task service would never be released
+    checkState(!currentState.fairShareEnabled || patchState.runningTaskServiceDelta == null ||
+            patchState.runningTaskServiceDelta >= 0 || patchState.finishedTaskServiceLink != null,
+        "finishedTaskServiceLink is required on completion in fair-share mode");
+  }
+
   private void applyPatch(State currentState, PatchState patchState) {
 
     if (patchState.pendingTaskServiceDelta != null) {
@@ -250,14 +395,18 @@ public class RateLimitedWorkQueueService extends StatefulService {
                 ServiceUtils.logSevere(this, exs.values());
               }
 
+              boolean requeued = false;
               for (Operation op : ops.values()) {
                 if (op.getStatusCode() == Operation.STATUS_CODE_OK) {
                   currentState.pendingTaskServiceCount--;
                   currentState.runningTaskServiceCount++;
+                } else if (fairShareQueue != null) {
+                  requeued |= finishOrRequeue(op);
                 }
               }
 
-              boolean triggerQuery = currentState.pendingTaskServiceCount > 0 &&
+              // Task services which were queued again are retried on the next patch instead of right away
+              boolean triggerQuery = !requeued && currentState.pendingTaskServiceCount > 0 &&
                   currentState.runningTaskServiceCount < currentState.concurrencyLimit;
 
               patchOp.complete();
@@ -269,6 +418,25 @@ public class RateLimitedWorkQueueService extends StatefulService {
         .sendWith(this);
   }
 
+  /**
+   * Drops a task service whose start patch failed if it rejected the patch or no longer exists, and queues it
+   * again otherwise (e.g. when the patch timed out).
+   *
+   * @return true if the task service was queued again
+   */
+  private boolean finishOrRequeue(Operation startPatchOp) {
+    String taskServiceLink = startPatchOp.getUri().getPath();
+    int statusCode = startPatchOp.getStatusCode();
+    if (statusCode == Operation.STATUS_CODE_BAD_REQUEST || statusCode == Operation.STATUS_CODE_NOT_FOUND) {
+      fairShareQueue.finish(taskServiceLink);
+      return false;
+    }
+
+    ServiceUtils.logWarning(this, "Queuing %s again after failing to start it with status %d",
+        taskServiceLink, statusCode);
+    return fairShareQueue.requeue(taskServiceLink);
+  }
+
   private void queryPendingTaskServices(Operation patchOp, State currentState) {
 
     QueryTask queryTask = QueryTask.Builder.createDirectTask()
@@ -284,6 +452,14 @@ public class RateLimitedWorkQueueService extends StatefulService {
                 if (e != null) {
                   ServiceUtils.logSevere(this, e);
                   patchOp.fail(e);
+                } else if (currentState.fairShareEnabled) {
+                  List<String> unknownLinks = o.getBody(QueryTask.class).results.documentLinks.stream()
+                      .filter((link) -> !fairShareQueue.contains(link))
+                      .collect(Collectors.toList());
+                  long now = Utils.getNowMicrosUtc();
+                  unknownLinks.forEach((link) -> fairShareQueue.add(link, null, null, now));
+                  dispatchFairShareTaskServices(patchOp, currentState,
+                      currentState.concurrencyLimit - currentState.runningTaskServiceCount);
                 } else {
                   startTaskServices(patchOp, currentState, o.getBody(QueryTask.class).results.documentLinks);
                 }
@@ -21,6 +21,7 @@ import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.photon.controller.common.xenon.ValidationUtils;
 import com.vmware.photon.controller.common.xenon.deployment.NoMigrationDuringDeployment;
 import com.vmware.photon.controller.common.xenon.migration.NoMigrationDuringUpgrade;
+import com.vmware.photon.controller.common.xenon.validation.DefaultBoolean;
 import com.vmware.photon.controller.common.xenon.validation.NotBlank;
 import com.vmware.photon.controller.common.xenon.validation.NotNull;
 import com.vmware.photon.controller.common.xenon.validation.Positive;
@@ -35,12 +36,55 @@ import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.QueryTask;
 import com.vmware.xenon.services.common.ServiceUriPaths;
 
+import com.google.common.annotations.VisibleForTesting;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Class TaskSchedulerService: periodically starts new services based on the threshold of how many services
  * can be running simultaneously.
+ * <p>
+ * In event driven mode the owner subscribes to a continuous query on the scheduled task documents and keeps the
+ * running and pending tasks in memory, so a pending task is started as soon as a running one finishes. The
+ * task state queries are then only run every {@link #EVENT_DRIVEN_RECONCILIATION_INTERVALS} scheduling passes
+ * to reconcile the in-memory view with the index.
  */
 public class TaskSchedulerService extends StatefulService {
 
+  /**
+   * Number of scheduling passes between two reconciliation queries in event driven mode.
+   */
+  public static final int EVENT_DRIVEN_RECONCILIATION_INTERVALS = 10;
+
+  private static final Map<String, TaskType> taskTypes = new ConcurrentHashMap<>();
+
+  /**
+   * In-memory view of the scheduled tasks, only kept by the owner in event driven mode.
+   */
+  private final Object trackerLock = new Object();
+  private Set<String> runningTaskLinks;
+  private Set<String> pendingTaskLinks;
+  private String continuousQueryLink;
+  private URI subscriberUri;
+  private boolean subscribed;
+  private int maintenanceCount;
+  private int reconciliationIntervals = EVENT_DRIVEN_RECONCILIATION_INTERVALS;
+  /**
+   * Incremented whenever tracking stops, so that a continuous query created concurrently is deleted instead of
+   * being kept.
+   */
+  private long trackingGeneration;
+
   /**
    * Default constructor.
    */
@@ -112,6 +156,7 @@ public class TaskSchedulerService extends StatefulService {
         ServiceUtils.logInfo(TaskSchedulerService.this,
             "Host[%s]: Not owner of scheduler [%s] (Owner Info [%s])",
             getHost().getId(), getSelfLink(), Utils.toJson(false, false, rsp));
+        stopTracking();
         return;
       }
 
@@ -126,6 +171,30 @@ public class TaskSchedulerService extends StatefulService {
     getHost().selectOwner(null, getSelfLink(), selectOwnerOp);
   }
 
+  @Override
+  public void handleStop(Operation stop) {
+    stopTracking();
+    super.handleStop(stop);
+  }
+
+  /**
+   * Sets the number of scheduling passes between two reconciliation queries in event driven mode.
+   */
+  @VisibleForTesting
+  void setReconciliationIntervals(int reconciliationIntervals) {
+    this.reconciliationIntervals = reconciliationIntervals;
+  }
+
+  /**
+   * @return true when the in-memory view is built and the continuous query notifications are received
+   */
+  @VisibleForTesting
+  boolean isTracking() {
+    synchronized (trackerLock) {
+      return runningTaskLinks != null && subscribed;
+    }
+  }
+
   /**
    * Initialize state with defaults.
    *
@@ -171,6 +240,11 @@ public class TaskSchedulerService extends StatefulService {
    * reached the threshold.
    */
   private void processPatch(final State current) {
+    if (current.eventDriven) {
+      processEventDrivenPatch(current);
+      return;
+    }
+
     Operation.CompletionHandler handler = new Operation.CompletionHandler() {
       @Override
       public void handle(Operation completedOp, Throwable failure) {
@@ -194,6 +268,272 @@ public class TaskSchedulerService extends StatefulService {
     sendTaskStateQuery(current, TaskState.TaskStage.STARTED, handler);
   }
 
+  /**
+   * Starts pending tasks from the in-memory view when it is available. The view is built, and periodically
+   * reconciled, from the same task state queries the polling mode uses.
+   */
+  private void processEventDrivenPatch(final State current) {
+    boolean reconcile;
+    synchronized (trackerLock) {
+      reconcile = runningTaskLinks == null || ++maintenanceCount >= reconciliationIntervals;
+      if (reconcile) {
+        maintenanceCount = 0;
+      }
+    }
+
+    if (continuousQueryLink == null) {
+      startContinuousQuery(current);
+    }
+
+    if (!reconcile) {
+      startPendingTasks(current);
+      return;
+    }
+
+    sendTaskStateQuery(current, TaskState.TaskStage.STARTED, (startedOp, startedFailure) -> {
+      if (startedFailure != null) {
+        logFailure(startedFailure);
+        return;
+      }
+
+      sendTaskStateQuery(current, TaskState.TaskStage.CREATED, (createdOp, createdFailure) -> {
+        if (createdFailure != null) {
+          logFailure(createdFailure);
+          return;
+        }
+
+        reconcile(startedOp.getBody(QueryTask.class).results.documentLinks,
+            createdOp.getBody(QueryTask.class).results.documentLinks);
+        startPendingTasks(current);
+      });
+    });
+  }
+
+  /**
+   * Replaces the in-memory view with the query results. Tasks that were started by this service but whose
+   * STARTED state is not indexed yet are kept as running so they are not started twice.
+   */
+  private void reconcile(List<String> startedLinks, List<String> createdLinks) {
+    synchronized (trackerLock) {
+      Set<String> running = new HashSet<>(startedLinks);
+      Set<String> pending = new LinkedHashSet<>();
+      for (String link : createdLinks) {
+        if (runningTaskLinks != null && runningTaskLinks.contains(link)) {
+          running.add(link);
+        } else {
+          pending.add(link);
+        }
+      }
+
+      runningTaskLinks = running;
+      pendingTaskLinks = pending;
+    }
+  }
+
+  /**
+   * Moves pending tasks to STARTED stage until the running tasks limit is reached.
+   */
+  private void startPendingTasks(final State current) {
+    List<String> linksToStart = new ArrayList<>();
+    synchronized (trackerLock) {
+      if (runningTaskLinks == null) {
+        return;
+      }
+
+      while (runningTaskLinks.size() < current.tasksLimits && !pendingTaskLinks.isEmpty()) {
+        String link = pendingTaskLinks.iterator().next();
+        pendingTaskLinks.remove(link);
+        runningTaskLinks.add(link);
+        linksToStart.add(link);
+      }
+    }
+
+    if (linksToStart.isEmpty()) {
+      return;
+    }
+
+    ServiceUtils.logInfo(this, "Host[%s]: Services to start: %s", getHost().getId(), linksToStart);
+    for (String link : linksToStart) {
+      sendStartPatch(current, link);
+    }
+  }
+
+  /**
+   * Creates a continuous query on the scheduled task documents and subscribes to its notifications.
+   */
+  private void startContinuousQuery(final State current) {
+    final long generation;
+    synchronized (trackerLock) {
+      if (continuousQueryLink != null) {
+        return;
+      }
+      // Reserve the slot until the query is created
+      continuousQueryLink = "";
+      generation = trackingGeneration;
+    }
+
+    try {
+      QueryTask.QuerySpecification spec = QueryTaskUtils.buildQuerySpec(
+          getTaskType(current.schedulerServiceClassName).documentClass, null);
+      spec.options = EnumSet.of(
+          QueryTask.QuerySpecification.QueryOption.CONTINUOUS,
+          QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
+      QueryTask query = QueryTask.create(spec).setDirect(false);
+      query.documentExpirationTimeMicros = Long.MAX_VALUE;
+
+      Operation queryPost = Operation
+          .createPost(UriUtils.buildUri(getHost(), ServiceUriPaths.CORE_LOCAL_QUERY_TASKS))
+          .setBody(query)
+          .setReferer(getUri())
+          .setCompletion((op, failure) -> {
+            if (failure != null) {
+              logFailure(failure);
+              synchronized (trackerLock) {
+                if (generation == trackingGeneration) {
+                  continuousQueryLink = null;
+                }
+              }
+              return;
+            }
+
+            String queryLink = op.getBody(QueryTask.class).documentSelfLink;
+            Operation subscribe = Operation
+                .createPost(UriUtils.buildUri(getHost(), queryLink))
+                .setReferer(getUri())
+                .setCompletion((subscribeOp, subscribeFailure) -> {
+                  if (subscribeFailure != null) {
+                    logFailure(subscribeFailure);
+                    if (isTrackingGeneration(generation)) {
+                      // Starts over with a new query on the next scheduling pass
+                      stopTracking();
+                    }
+                    return;
+                  }
+
+                  synchronized (trackerLock) {
+                    if (generation == trackingGeneration) {
+                      subscribed = true;
+                    }
+                  }
+                });
+            URI subscriber = getHost().startSubscriptionService(subscribe,
+                (notification) -> handleTaskNotification(current, notification));
+
+            boolean stopped;
+            synchronized (trackerLock) {
+              stopped = generation != trackingGeneration;
+              if (!stopped) {
+                continuousQueryLink = queryLink;
+                subscriberUri = subscriber;
+              }
+            }
+
+            if (stopped) {
+              // Tracking stopped while the query was being created
+              deleteContinuousQuery(subscriber, queryLink);
+            }
+          });
+      sendRequest(queryPost);
+    } catch (ClassNotFoundException e) {
+      logFailure(e);
+      synchronized (trackerLock) {
+        continuousQueryLink = null;
+      }
+    }
+  }
+
+  private boolean isTrackingGeneration(long generation) {
+    synchronized (trackerLock) {
+      return generation == trackingGeneration;
+    }
+  }
+
+  /**
+   * Updates the in-memory view from a continuous query notification, and starts pending tasks if a running one
+   * finished or a new one was created.
+   */
+  private void handleTaskNotification(final State current, Operation notification) {
+    notification.complete();
+
+    QueryTask queryTask = notification.getBody(QueryTask.class);
+    if (queryTask.results == null || queryTask.results.documents == null) {
+      return;
+    }
+
+    try {
+      TaskType taskType = getTaskType(current.schedulerServiceClassName);
+      synchronized (trackerLock) {
+        if (runningTaskLinks == null) {
+          // The view is built by the next reconciliation
+          return;
+        }
+
+        for (Map.Entry<String, Object> entry : queryTask.results.documents.entrySet()) {
+          ServiceDocument document = (ServiceDocument) Utils.fromJson(entry.getValue(), taskType.documentClass);
+          TaskState taskState = (TaskState) taskType.taskStateField.get(document);
+          String link = entry.getKey();
+          if (Action.DELETE.name().equals(document.documentUpdateAction) || taskState == null) {
+            runningTaskLinks.remove(link);
+            pendingTaskLinks.remove(link);
+            continue;
+          }
+
+          switch (taskState.stage) {
+            case CREATED:
+              if (!runningTaskLinks.contains(link)) {
+                pendingTaskLinks.add(link);
+              }
+              break;
+            case STARTED:
+              pendingTaskLinks.remove(link);
+              runningTaskLinks.add(link);
+              break;
+            default:
+              runningTaskLinks.remove(link);
+              pendingTaskLinks.remove(link);
+              break;
+          }
+        }
+      }
+    } catch (Throwable t) {
+      logFailure(t);
+      return;
+    }
+
+    startPendingTasks(current);
+  }
+
+  /**
+   * Drops the in-memory view and the continuous query, e.g. when this node is no longer the owner.
+   */
+  private void stopTracking() {
+    String queryLink;
+    URI subscriber;
+    synchronized (trackerLock) {
+      queryLink = continuousQueryLink;
+      subscriber = subscriberUri;
+      continuousQueryLink = null;
+      subscriberUri = null;
+      subscribed = false;
+      runningTaskLinks = null;
+      pendingTaskLinks = null;
+      maintenanceCount = 0;
+      trackingGeneration++;
+    }
+
+    deleteContinuousQuery(subscriber, queryLink);
+  }
+
+  private void deleteContinuousQuery(URI subscriber, String queryLink) {
+    if (subscriber != null) {
+      sendRequest(Operation.createDelete(subscriber).setReferer(getUri()));
+    }
+
+    if (queryLink != null && !queryLink.isEmpty()) {
+      sendRequest(Operation.createDelete(UriUtils.buildUri(getHost(), queryLink)).setReferer(getUri()));
+    }
+  }
+
   /**
    * Triggers a query task for started service in CREATED stage and moves servicesToStartCount service to STARTED stage.
    */
@@ -230,12 +570,20 @@ public class TaskSchedulerService extends StatefulService {
    */
   private void sendStartPatch(final State current, String docSelfLink) {
     try {
-      ServiceDocument startedPatch =
-          TaskSchedulerServiceStateBuilder
-              .getStartPatch(Class.forName(current.schedulerServiceClassName));
+      ServiceDocument startedPatch = getTaskType(current.schedulerServiceClassName).buildStartPatch();
       Operation patch = Operation.createPatch(UriUtils.buildUri(getHost(), docSelfLink))
           .setBody(startedPatch)
-          .setReferer(UriUtils.buildUri(getHost(), getSelfLink()));
+          .setReferer(UriUtils.buildUri(getHost(), getSelfLink()))
+          .setCompletion((op, failure) -> {
+            if (failure != null) {
+              logFailure(failure);
+              synchronized (trackerLock) {
+                if (runningTaskLinks != null) {
+                  runningTaskLinks.remove(docSelfLink);
+                }
+              }
+            }
+          });
       sendRequest(patch);
 
       ServiceUtils.logInfo(this,
@@ -254,9 +602,8 @@ public class TaskSchedulerService extends StatefulService {
   private void sendTaskStateQuery(final State current, final TaskState.TaskStage stage,
                                   final Operation.CompletionHandler handler) {
     try {
-      QueryTask.QuerySpecification spec =
-          QueryTaskUtils.buildTaskStatusQuerySpec(Class.forName(current.schedulerServiceClassName)
-              .getDeclaredClasses()[0], stage);
+      QueryTask.QuerySpecification spec = QueryTaskUtils.buildTaskStatusQuerySpec(
+          getTaskType(current.schedulerServiceClassName).documentClass, stage);
 
       QueryTask query = QueryTask.create(spec).setDirect(true);
       Operation queryPost = Operation
@@ -281,6 +628,18 @@ public class TaskSchedulerService extends StatefulService {
     sendRequest(patch);
   }
 
+  /**
+   * Returns the cached reflection data of the scheduled task service class.
+   */
+  private static TaskType getTaskType(String className) throws ClassNotFoundException {
+    TaskType taskType = taskTypes.get(className);
+    if (taskType == null) {
+      taskType = new TaskType(Class.forName(className));
+      taskTypes.put(className, taskType);
+    }
+    return taskType;
+  }
+
   /**
    * Log failed query.
    *
@@ -306,5 +665,47 @@ public class TaskSchedulerService extends StatefulService {
     @NotNull
     @Positive
     public Integer tasksLimits;
+
+    /**
+     * Whether the owner tracks the scheduled tasks from continuous query notifications instead of only
+     * polling the index on every maintenance interval.
+     */
+    @DefaultBoolean(false)
+    public Boolean eventDriven;
+  }
+
+  /**
+   * Reflection data of a scheduled task service class, resolved once per class.
+   */
+  private static class TaskType {
+    private final Class<?> documentClass;
+    private final Field taskStateField;
+    private final Method buildStartPatchMethod;
+
+    private TaskType(Class<?> serviceClass) {
+      this.documentClass = serviceClass.getDeclaredClasses()[0];
+      Field stateField = null;
+      for (Field field : documentClass.getFields()) {
+        if (TaskState.class.isAssignableFrom(field.getType())) {
+          stateField = field;
+          break;
+        }
+      }
+      this.taskStateField = stateField;
+      Method startPatchMethod = null;
+      try {
+        startPatchMethod = serviceClass.getMethod("buildStartPatch");
+      } catch (NoSuchMethodException e) {
+        // Reported when a task is started
+      }
+      this.buildStartPatchMethod = startPatchMethod;
+    }
+
+    private ServiceDocument buildStartPatch() throws ReflectiveOperationException {
+      if (buildStartPatchMethod == null) {
+        throw new NoSuchMethodException("buildStartPatch");
+      }
+      return (ServiceDocument) buildStartPatchMethod.invoke(null);
+    }
   }
 }
@@ -44,9 +44,20 @@ public class TaskSchedulerServiceStateBuilder implements TaskStateBuilder {
    */
   private int maxRunningTasks;
 
+  /**
+   * Whether the scheduler tracks the tasks from notifications instead of only polling.
+   */
+  private boolean eventDriven;
+
   public TaskSchedulerServiceStateBuilder(Class<? extends StatefulService> service, int maxRunningTasks) {
+    this(service, maxRunningTasks, false);
+  }
+
+  public TaskSchedulerServiceStateBuilder(Class<? extends StatefulService> service, int maxRunningTasks,
+                                          boolean eventDriven) {
     this.serviceClass = service;
     this.maxRunningTasks = maxRunningTasks;
+    this.eventDriven = eventDriven;
   }
 
   @Override
@@ -55,6 +66,7 @@ public class TaskSchedulerServiceStateBuilder implements TaskStateBuilder {
     TaskSchedulerService.State state = new TaskSchedulerService.State();
     state.schedulerServiceClassName = this.serviceClass.getName();
     state.tasksLimits = this.maxRunningTasks;
+    state.eventDriven = this.eventDriven;
 
     return state;
   }
@@ -13,10 +13,10 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.DocumentMetadata.FieldAccessor;
 import com.vmware.xenon.common.ServiceDocument;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
+import java.util.List;
 
 /**
  * This class initializes fields with the {@link DefaultBoolean} annotation.
@@ -26,15 +26,11 @@ public enum DefaultBooleanInitializer {
 
   public static void initialize(ServiceDocument state) {
     try {
-      Field[] declaredFields = state.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
+      List<FieldAccessor> fields = DocumentMetadata.get(state.getClass()).getFields(DefaultBoolean.class);
+      for (int i = 0; i < fields.size(); i++) {
+        FieldAccessor field = fields.get(i);
         if (field.get(state) == null) {
-          Annotation[] declaredAnnotations = field.getDeclaredAnnotations();
-          for (Annotation annotation : declaredAnnotations) {
-            if (annotation.annotationType() == DefaultBoolean.class) {
-              field.set(state, new Boolean(((DefaultBoolean) annotation).value()));
-            }
-          }
+          field.set(state, field.getAnnotation(DefaultBoolean.class).value());
         }
       }
     } catch (Throwable t) {
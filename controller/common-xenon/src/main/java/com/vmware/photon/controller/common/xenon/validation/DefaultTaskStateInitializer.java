@@ -13,11 +13,11 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.DocumentMetadata.FieldAccessor;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.TaskState;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
+import java.util.List;
 
 /**
  * This class initializes fields with the {@link DefaultTaskState} annotation.
@@ -27,17 +27,13 @@ public enum DefaultTaskStateInitializer {
 
   public static void initialize(ServiceDocument state) throws RuntimeException {
     try {
-      Field[] declaredFields = state.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
+      List<FieldAccessor> fields = DocumentMetadata.get(state.getClass()).getFields(DefaultTaskState.class);
+      for (int i = 0; i < fields.size(); i++) {
+        FieldAccessor field = fields.get(i);
         if (field.get(state) == null) {
-          Annotation[] declaredAnnotations = field.getDeclaredAnnotations();
-          for (Annotation annotation : declaredAnnotations) {
-            if (annotation.annotationType() == DefaultTaskState.class) {
-              TaskState defaultState = (TaskState) field.getType().newInstance();
-              defaultState.stage = ((DefaultTaskState) annotation).value();
-              field.set(state, defaultState);
-            }
-          }
+          TaskState defaultState = (TaskState) field.getType().newInstance();
+          defaultState.stage = field.getAnnotation(DefaultTaskState.class).value();
+          field.set(state, defaultState);
         }
       }
     } catch (Throwable t) {
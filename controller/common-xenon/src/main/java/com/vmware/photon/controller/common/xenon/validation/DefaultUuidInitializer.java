@@ -13,10 +13,10 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.DocumentMetadata.FieldAccessor;
 import com.vmware.xenon.common.ServiceDocument;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -27,15 +27,11 @@ public enum DefaultUuidInitializer {
 
   public static void initialize(ServiceDocument state) {
     try {
-      Field[] declaredFields = state.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
+      List<FieldAccessor> fields = DocumentMetadata.get(state.getClass()).getFields(DefaultUuid.class);
+      for (int i = 0; i < fields.size(); i++) {
+        FieldAccessor field = fields.get(i);
         if (field.get(state) == null) {
-          Annotation[] declaredAnnotations = field.getDeclaredAnnotations();
-          for (Annotation annotation : declaredAnnotations) {
-            if (annotation.annotationType() == DefaultUuid.class) {
-              field.set(state, UUID.randomUUID().toString());
-            }
-          }
+          field.set(state, UUID.randomUUID().toString());
         }
       }
     } catch (Throwable t) {
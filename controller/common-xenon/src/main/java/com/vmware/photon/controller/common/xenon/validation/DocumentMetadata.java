@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.xenon.validation;
+
+import com.google.common.collect.ImmutableList;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class keeps the field metadata the validators, initializers and patch utilities need for a document class.
+ * The declared fields and their annotations are scanned once per class, and field values are read and written
+ * through method handles instead of reflection.
+ * <p>
+ * Only the instance fields declared by the document class itself are considered, the same way the validators
+ * use {@link Class#getDeclaredFields()}.
+ */
+public final class DocumentMetadata {
+
+  private static final ConcurrentMap<Class<?>, DocumentMetadata> cache = new ConcurrentHashMap<>();
+
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+  private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+  private final List<FieldAccessor> mutableFields;
+  private final Map<Class<? extends Annotation>, List<FieldAccessor>> annotatedFields;
+
+  private DocumentMetadata(Class<?> documentClass) {
+    ImmutableList.Builder<FieldAccessor> mutableFieldsBuilder = ImmutableList.builder();
+    Map<Class<? extends Annotation>, ImmutableList.Builder<FieldAccessor>> annotatedFieldsBuilder = new HashMap<>();
+
+    for (Field field : documentClass.getDeclaredFields()) {
+      if (Modifier.isStatic(field.getModifiers())) {
+        continue;
+      }
+
+      FieldAccessor accessor = new FieldAccessor(field);
+      if (!field.isAnnotationPresent(Immutable.class)) {
+        mutableFieldsBuilder.add(accessor);
+      }
+
+      for (Annotation annotation : field.getDeclaredAnnotations()) {
+        annotatedFieldsBuilder.computeIfAbsent(annotation.annotationType(), type -> ImmutableList.builder())
+            .add(accessor);
+      }
+    }
+
+    this.mutableFields = mutableFieldsBuilder.build();
+    Map<Class<? extends Annotation>, List<FieldAccessor>> annotatedFields = new HashMap<>();
+    annotatedFieldsBuilder.forEach((type, builder) -> annotatedFields.put(type, builder.build()));
+    this.annotatedFields = annotatedFields;
+  }
+
+  /**
+   * Returns the metadata of a document class, building it on first use.
+   *
+   * @param documentClass document class
+   * @return metadata of the class
+   */
+  public static DocumentMetadata get(Class<?> documentClass) {
+    return cache.computeIfAbsent(documentClass, DocumentMetadata::new);
+  }
+
+  /**
+   * @return instance fields that are not annotated with {@link Immutable}
+   */
+  public List<FieldAccessor> getMutableFields() {
+    return mutableFields;
+  }
+
+  /**
+   * @param annotationType annotation type
+   * @return instance fields annotated with the given annotation
+   */
+  public List<FieldAccessor> getFields(Class<? extends Annotation> annotationType) {
+    List<FieldAccessor> result = annotatedFields.get(annotationType);
+    return result != null ? result : ImmutableList.of();
+  }
+
+  /**
+   * Reads and writes a single document field.
+   */
+  public static final class FieldAccessor {
+
+    private final Field field;
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+
+    private FieldAccessor(Field field) {
+      this.field = field;
+      this.getter = unreflectGetter(field);
+      this.setter = Modifier.isFinal(field.getModifiers()) ? null : unreflectSetter(field);
+    }
+
+    public String getName() {
+      return field.getName();
+    }
+
+    public Class<?> getType() {
+      return field.getType();
+    }
+
+    public <A extends Annotation> A getAnnotation(Class<A> annotationType) {
+      return field.getAnnotation(annotationType);
+    }
+
+    public Object get(Object document) throws Throwable {
+      if (getter == null) {
+        // Not accessible through a public lookup, let reflection report the access error
+        return field.get(document);
+      }
+      return (Object) getter.invokeExact(document);
+    }
+
+    public void set(Object document, Object value) throws Throwable {
+      if (setter == null) {
+        field.set(document, value);
+        return;
+      }
+      setter.invokeExact(document, value);
+    }
+
+    private static MethodHandle unreflectGetter(Field field) {
+      try {
+        return MethodHandles.publicLookup().unreflectGetter(field).asType(GETTER_TYPE);
+      } catch (IllegalAccessException e) {
+        return null;
+      }
+    }
+
+    private static MethodHandle unreflectSetter(Field field) {
+      try {
+        return MethodHandles.publicLookup().unreflectSetter(field).asType(SETTER_TYPE);
+      } catch (IllegalAccessException e) {
+        return null;
+      }
+    }
+  }
+}
@@ -13,12 +13,10 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.DocumentMetadata.FieldAccessor;
 import com.vmware.xenon.common.ServiceDocument;
 
-import static com.google.common.base.Preconditions.checkState;
-
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
+import java.util.List;
 
 /**
  * This class implements a validator that checks if the {@link Immutable}
@@ -29,13 +27,11 @@ public enum ImmutableValidator {
 
   public static void validate(ServiceDocument state) {
     try {
-      Field[] declaredFields = state.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
-        Annotation[] declaredAnnotations = field.getDeclaredAnnotations();
-        for (Annotation annotation : declaredAnnotations) {
-          if (annotation.annotationType() == Immutable.class) {
-            checkState(null == field.get(state), String.format("%s is immutable", field.getName()));
-          }
+      List<FieldAccessor> fields = DocumentMetadata.get(state.getClass()).getFields(Immutable.class);
+      for (int i = 0; i < fields.size(); i++) {
+        FieldAccessor field = fields.get(i);
+        if (null != field.get(state)) {
+          throw new IllegalStateException(String.format("%s is immutable", field.getName()));
         }
       }
     } catch (IllegalStateException e) {
@@ -44,5 +40,4 @@ public enum ImmutableValidator {
       throw new RuntimeException(t);
     }
   }
-
 }
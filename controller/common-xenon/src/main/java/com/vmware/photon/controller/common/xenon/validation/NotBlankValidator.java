@@ -13,13 +13,12 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.DocumentMetadata.FieldAccessor;
 import com.vmware.xenon.common.ServiceDocument;
 
 import org.apache.commons.lang3.StringUtils;
-import static com.google.common.base.Preconditions.checkState;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
+import java.util.List;
 
 /**
  * This class implements a validator that checks if the {@link NotBlank}
@@ -30,17 +29,15 @@ public enum NotBlankValidator {
 
   public static void validate(ServiceDocument state) {
     try {
-      Field[] declaredFields = state.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
-        Annotation[] declaredAnnotations = field.getDeclaredAnnotations();
-        for (Annotation annotation : declaredAnnotations) {
-          if (annotation.annotationType() == NotBlank.class) {
-            checkState(null != field.get(state), String.format("%s cannot be null", field.getName()));
-            if (String.class.equals(field.getType())) {
-              checkState((StringUtils.isNotBlank((String) field.get(state))),
-                  String.format("%s cannot be blank", field.getName()));
-            }
-          }
+      List<FieldAccessor> fields = DocumentMetadata.get(state.getClass()).getFields(NotBlank.class);
+      for (int i = 0; i < fields.size(); i++) {
+        FieldAccessor field = fields.get(i);
+        Object value = field.get(state);
+        if (null == value) {
+          throw new IllegalStateException(String.format("%s cannot be null", field.getName()));
+        }
+        if (String.class.equals(field.getType()) && !StringUtils.isNotBlank((String) value)) {
+          throw new IllegalStateException(String.format("%s cannot be blank", field.getName()));
         }
       }
     } catch (IllegalStateException e) {
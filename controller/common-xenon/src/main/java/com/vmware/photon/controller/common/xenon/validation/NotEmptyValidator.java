@@ -13,13 +13,11 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.DocumentMetadata.FieldAccessor;
 import com.vmware.xenon.common.ServiceDocument;
 
-import static com.google.common.base.Preconditions.checkState;
-
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * This class implements a validator that checks if the {@link NotEmpty}
@@ -30,22 +28,18 @@ public enum NotEmptyValidator {
 
   public static void validate(ServiceDocument state) {
     try {
-      Field[] declaredFields = state.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
-        Annotation[] declaredAnnotations = field.getDeclaredAnnotations();
-        for (Annotation annotation : declaredAnnotations) {
-          if (annotation.annotationType() == NotEmpty.class) {
-            checkState(null != field.get(state), String.format("%s cannot be null", field.getName()));
-            if (String.class.equals(field.getType())) {
-              checkState(!((String) field.get(state)).isEmpty(),
-                  String.format("%s cannot be empty", field.getName()));
-            }
-
-            if (field.get(state) instanceof Collection) {
-              checkState(!((Collection<?>) field.get(state)).isEmpty(),
-                  String.format("%s cannot be emtpy", field.getName()));
-            }
-          }
+      List<FieldAccessor> fields = DocumentMetadata.get(state.getClass()).getFields(NotEmpty.class);
+      for (int i = 0; i < fields.size(); i++) {
+        FieldAccessor field = fields.get(i);
+        Object value = field.get(state);
+        if (null == value) {
+          throw new IllegalStateException(String.format("%s cannot be null", field.getName()));
+        }
+        if (String.class.equals(field.getType()) && ((String) value).isEmpty()) {
+          throw new IllegalStateException(String.format("%s cannot be empty", field.getName()));
+        }
+        if (value instanceof Collection && ((Collection<?>) value).isEmpty()) {
+          throw new IllegalStateException(String.format("%s cannot be emtpy", field.getName()));
         }
       }
     } catch (IllegalStateException e) {
@@ -13,12 +13,10 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.DocumentMetadata.FieldAccessor;
 import com.vmware.xenon.common.ServiceDocument;
 
-import static com.google.common.base.Preconditions.checkState;
-
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
+import java.util.List;
 
 /**
  * This class implements a validator that checks if the {@link Positive}
@@ -29,17 +27,12 @@ public enum PositiveValidator {
 
   public static void validate(ServiceDocument state) {
     try {
-      Field[] declaredFields = state.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
-        Annotation[] declaredAnnotations = field.getDeclaredAnnotations();
-        for (Annotation annotation : declaredAnnotations) {
-          if (annotation.annotationType() != Positive.class) {
-            continue;
-          }
-
-          checkState(null == field.get(state) || 0 < ((Number) field.get(state)).longValue(),
-              String.format("%s must be greater than zero", field.getName()));
-
+      List<FieldAccessor> fields = DocumentMetadata.get(state.getClass()).getFields(Positive.class);
+      for (int i = 0; i < fields.size(); i++) {
+        FieldAccessor field = fields.get(i);
+        Object value = field.get(state);
+        if (null != value && 0 >= ((Number) value).longValue()) {
+          throw new IllegalStateException(String.format("%s must be greater than zero", field.getName()));
         }
       }
     } catch (IllegalStateException e) {
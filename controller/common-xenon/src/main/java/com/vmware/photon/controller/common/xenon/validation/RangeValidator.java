@@ -13,12 +13,10 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.DocumentMetadata.FieldAccessor;
 import com.vmware.xenon.common.ServiceDocument;
 
-import static com.google.common.base.Preconditions.checkState;
-
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
+import java.util.List;
 
 /**
  * This class implements a validator that checks if the {@link Range}
@@ -29,16 +27,14 @@ public enum RangeValidator {
 
   public static void validate(ServiceDocument state) {
     try {
-      Field[] declaredFields = state.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
-        for (Annotation annotation : field.getDeclaredAnnotations()) {
-          if (annotation.annotationType() == Range.class) {
-            long min = ((Range) annotation).min();
-            long max = ((Range) annotation).max();
-            Number value = (Number) field.get(state);
-            checkState(value == null || (value.longValue() >= min && value.longValue() <= max),
-                String.format("%s is not within range %d, %d", field.getName(), min, max));
-          }
+      List<FieldAccessor> fields = DocumentMetadata.get(state.getClass()).getFields(Range.class);
+      for (int i = 0; i < fields.size(); i++) {
+        FieldAccessor field = fields.get(i);
+        Range range = field.getAnnotation(Range.class);
+        Number value = (Number) field.get(state);
+        if (value != null && (value.longValue() < range.min() || value.longValue() > range.max())) {
+          throw new IllegalStateException(
+              String.format("%s is not within range %d, %d", field.getName(), range.min(), range.max()));
         }
       }
     } catch (IllegalStateException e) {
@@ -13,12 +13,10 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.DocumentMetadata.FieldAccessor;
 import com.vmware.xenon.common.ServiceDocument;
 
-import static com.google.common.base.Preconditions.checkState;
-
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
+import java.util.List;
 
 /**
  * Validates that the marked field is set once and only once in a patch state.
@@ -28,18 +26,12 @@ public enum WriteOnceValidator {
 
   public static void validate(ServiceDocument startState, ServiceDocument patchState) {
     try {
-      Field[] declaredFields = startState.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
-        Annotation[] declaredAnnotations = field.getDeclaredAnnotations();
-        for (Annotation annotation : declaredAnnotations) {
-          if (annotation.annotationType() == WriteOnce.class) {
-            Object startValue = field.get(startState);
-            Object patchValue = field.get(patchState);
-            if (null != patchValue) {
-              checkState(null == startValue,
-                  String.format("%s cannot be set or changed in a patch", field.getName()));
-            }
-          }
+      List<FieldAccessor> fields = DocumentMetadata.get(startState.getClass()).getFields(WriteOnce.class);
+      for (int i = 0; i < fields.size(); i++) {
+        FieldAccessor field = fields.get(i);
+        if (null != field.get(patchState) && null != field.get(startState)) {
+          throw new IllegalStateException(
+              String.format("%s cannot be set or changed in a patch", field.getName()));
         }
       }
     } catch (IllegalStateException e) {
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.xenon;
+
+import com.vmware.photon.controller.common.xenon.exceptions.XenonRuntimeException;
+import com.vmware.xenon.common.ServiceDocumentQueryResult;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class implements tests for {@link PagedQueryIterator}.
+ */
+public class PagedQueryIteratorTest {
+
+  private Map<String, ServiceDocumentQueryResult> pages;
+  private List<String> requestedPages;
+
+  @BeforeMethod
+  public void setUp() {
+    pages = new HashMap<>();
+    pages.put("first", page("page-2", "a", "b"));
+    pages.put("page-2", page("page-3"));
+    pages.put("page-3", page(null, "c"));
+    requestedPages = new ArrayList<>();
+  }
+
+  @Test
+  public void testIteratesAllPages() {
+    try (Stream<String> stream = PagedQueryIterator.stream(createIterator())) {
+      assertThat(stream.collect(Collectors.toList()), contains("a", "b", "c"));
+    }
+
+    assertThat(requestedPages, contains("first", "page-2", "page-3"));
+  }
+
+  @Test
+  public void testFirstPageIsRequestedLazily() {
+    PagedQueryIterator<String> iterator = createIterator();
+    assertThat(requestedPages.isEmpty(), is(true));
+
+    assertThat(iterator.next(), is("a"));
+    // The next page is prefetched as soon as the first one is consumed
+    assertThat(requestedPages, contains("first", "page-2"));
+  }
+
+  @Test
+  public void testEarlyTermination() {
+    try (Stream<String> stream = PagedQueryIterator.stream(createIterator())) {
+      assertThat(stream.limit(1).collect(Collectors.toList()), contains("a"));
+    }
+
+    assertThat(requestedPages, contains("first", "page-2"));
+  }
+
+  @Test
+  public void testFailureIsThrownWhileIterating() {
+    PagedQueryIterator<String> iterator = new PagedQueryIterator<>(
+        () -> load("first"),
+        (pageLink) -> {
+          CompletableFuture<ServiceDocumentQueryResult> future = new CompletableFuture<>();
+          future.completeExceptionally(new TimeoutException("timeout"));
+          return future;
+        },
+        (page, documentLink) -> documentLink);
+
+    assertThat(iterator.next(), is("a"));
+    assertThat(iterator.next(), is("b"));
+    try {
+      iterator.hasNext();
+      fail("hasNext should have failed");
+    } catch (XenonRuntimeException e) {
+      assertThat(e.getCause() instanceof TimeoutException, is(true));
+    }
+  }
+
+  private PagedQueryIterator<String> createIterator() {
+    return new PagedQueryIterator<>(() -> load("first"), this::load, (page, documentLink) -> documentLink);
+  }
+
+  private CompletableFuture<ServiceDocumentQueryResult> load(String pageLink) {
+    requestedPages.add(pageLink);
+    return CompletableFuture.completedFuture(pages.get(pageLink));
+  }
+
+  private static ServiceDocumentQueryResult page(String nextPageLink, String... documentLinks) {
+    ServiceDocumentQueryResult page = new ServiceDocumentQueryResult();
+    page.documentLinks = Arrays.asList(documentLinks);
+    page.nextPageLink = nextPageLink;
+    return page;
+  }
+}
@@ -16,10 +16,14 @@ package com.vmware.photon.controller.common.xenon;
 import com.vmware.photon.controller.common.thrift.StaticServerSet;
 import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
 import com.vmware.photon.controller.common.xenon.exceptions.XenonRuntimeException;
+import com.vmware.photon.controller.common.xenon.helpers.services.TestServiceWithStage;
+import com.vmware.photon.controller.common.xenon.helpers.services.TestServiceWithStageFactory;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceDocumentQueryResult;
 import com.vmware.xenon.common.ServiceErrorResponse;
+import com.vmware.xenon.common.TaskState;
+import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.ExampleService;
 import com.vmware.xenon.services.common.NodeGroupBroadcastResponse;
@@ -54,6 +58,7 @@ import static org.testng.Assert.fail;
 
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
@@ -63,7 +68,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -417,6 +424,136 @@ public class XenonRestClientTest {
     }
   }
 
+  /**
+   * Tests for the asynchronous operations.
+   */
+  public class AsyncTest {
+
+    @BeforeMethod
+    public void setUp() throws Throwable {
+      setUpHostAndClient();
+      xenonRestClient.start();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Throwable {
+      if (host != null) {
+        host.destroy();
+      }
+
+      if (xenonRestClient != null) {
+        xenonRestClient.stop();
+      }
+    }
+
+    @Test
+    public void testComposedPostAndGet() throws Throwable {
+      ExampleService.ExampleServiceState exampleServiceState = new ExampleService.ExampleServiceState();
+      exampleServiceState.name = UUID.randomUUID().toString();
+
+      Operation result = xenonRestClient.postAsync(ExampleService.FACTORY_LINK, exampleServiceState)
+          .thenCompose((op) -> xenonRestClient.getAsync(
+              op.getBody(ExampleService.ExampleServiceState.class).documentSelfLink))
+          .get(10, TimeUnit.SECONDS);
+
+      assertThat(result.getStatusCode(), is(200));
+      assertThat(result.getBody(ExampleService.ExampleServiceState.class).name, is(exampleServiceState.name));
+    }
+
+    @Test
+    public void testGetOfNonExistingDocument() throws Throwable {
+      try {
+        xenonRestClient.getAsync(ExampleService.FACTORY_LINK + "/" + UUID.randomUUID().toString())
+            .get(10, TimeUnit.SECONDS);
+        fail("getAsync should have failed with DocumentNotFoundException");
+      } catch (ExecutionException e) {
+        assertThat(e.getCause() instanceof DocumentNotFoundException, is(true));
+      }
+    }
+
+    @Test
+    public void testGetOfCreatedDocuments() throws Throwable {
+      List<String> documentSelfLinks = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        ExampleService.ExampleServiceState exampleServiceState = new ExampleService.ExampleServiceState();
+        exampleServiceState.name = UUID.randomUUID().toString();
+        documentSelfLinks.add(createDocument(exampleServiceState));
+      }
+
+      Map<String, Operation> results = xenonRestClient.getAsync(documentSelfLinks, 2).get(10, TimeUnit.SECONDS);
+      assertThat(results.keySet(), is(new HashSet<>(documentSelfLinks)));
+    }
+
+    @Test
+    public void testQueryDocumentsPageByPage() throws Throwable {
+      Set<String> documentSelfLinks = new HashSet<>();
+      for (int i = 0; i < 5; i++) {
+        ExampleService.ExampleServiceState exampleServiceState = new ExampleService.ExampleServiceState();
+        exampleServiceState.name = UUID.randomUUID().toString();
+        documentSelfLinks.add(createDocument(exampleServiceState));
+      }
+
+      Set<String> retrievedLinks = new HashSet<>();
+      ServiceDocumentQueryResult page = xenonRestClient.queryDocumentsAsync(
+          ExampleService.ExampleServiceState.class, null, null, Optional.of(2), true, false)
+          .get(10, TimeUnit.SECONDS);
+      retrievedLinks.addAll(page.documentLinks);
+
+      while (page.nextPageLink != null) {
+        page = xenonRestClient.queryDocumentPageAsync(page.nextPageLink).get(10, TimeUnit.SECONDS);
+        retrievedLinks.addAll(page.documentLinks);
+      }
+
+      assertThat(retrievedLinks, is(documentSelfLinks));
+    }
+
+    @Test
+    public void testWaitForTaskToFinish() throws Throwable {
+      host.startServiceSynchronously(new TestServiceWithStageFactory(), null, TestServiceWithStageFactory.SELF_LINK);
+      String taskLink = xenonRestClient.post(TestServiceWithStageFactory.SELF_LINK, new TestServiceWithStage.State())
+          .getBody(ServiceDocument.class).documentSelfLink;
+      URI taskUri = UriUtils.buildUri(host, taskLink);
+
+      try {
+        xenonRestClient.waitForTaskToFinishAsync(taskUri, 1, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS);
+        fail("waitForTaskToFinishAsync should have timed out");
+      } catch (ExecutionException e) {
+        assertThat(e.getCause() instanceof TimeoutException, is(true));
+      }
+
+      // Without a deadline the wait only ends when the task does
+      CompletableFuture<Operation> finished = xenonRestClient.waitForTaskToFinishAsync(taskUri);
+      TestServiceWithStage.State patchState = new TestServiceWithStage.State();
+      patchState.taskInfo = new TaskState();
+      patchState.taskInfo.stage = TaskState.TaskStage.FINISHED;
+      xenonRestClient.patch(taskLink, patchState);
+
+      Operation result = finished.get(10, TimeUnit.SECONDS);
+      assertThat(QueryTaskUtils.getServiceState(result), is(TaskState.TaskStage.FINISHED));
+    }
+
+    @Test
+    public void testQueryDocumentsStream() throws Throwable {
+      Set<String> names = new HashSet<>();
+      for (int i = 0; i < 5; i++) {
+        ExampleService.ExampleServiceState exampleServiceState = new ExampleService.ExampleServiceState();
+        exampleServiceState.name = UUID.randomUUID().toString();
+        createDocument(exampleServiceState);
+        names.add(exampleServiceState.name);
+      }
+
+      try (Stream<ExampleService.ExampleServiceState> documents = xenonRestClient.queryDocumentsStream(
+          ExampleService.ExampleServiceState.class, null, 2, true)) {
+        assertThat(documents.map((document) -> document.name).collect(Collectors.toSet()), is(names));
+      }
+
+      try (Stream<String> documentLinks = xenonRestClient.queryDocumentLinksStream(
+          ExampleService.ExampleServiceState.class, null, 2, false)) {
+        assertThat(documentLinks.limit(3).count(), is(3L));
+      }
+    }
+  }
+
   /**
    * Tests for the postToBroadcastQueryService operation.
    */
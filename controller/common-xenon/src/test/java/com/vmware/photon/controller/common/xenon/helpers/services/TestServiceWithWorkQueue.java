@@ -165,6 +165,7 @@ public class TestServiceWithWorkQueue extends StatefulService {
       case FAILED:
       case CANCELLED:
         patchState.runningTaskServiceDelta = -1;
+        patchState.finishedTaskServiceLink = getSelfLink();
         break;
       default:
         throw new IllegalStateException("Unexpected task state " + currentState.taskState.stage);
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.xenon.scheduler;
+
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * This class implements tests for the {@link FairShareQueue} class.
+ */
+public class FairShareQueueTest {
+
+  @Test
+  public void testKeysAreServedRoundRobin() {
+    FairShareQueue queue = new FairShareQueue(null, null);
+    queue.add("a1", "a", null, 0);
+    queue.add("a2", "a", null, 1);
+    queue.add("a3", "a", null, 2);
+    queue.add("b1", "b", null, 3);
+
+    assertThat(links(queue.poll(3)), contains("a1", "b1", "a2"));
+    assertThat(links(queue.poll(3)), contains("a3"));
+    assertThat(queue.getPendingCount(), is(0));
+  }
+
+  @Test
+  public void testWeights() {
+    FairShareQueue queue = new FairShareQueue(null, ImmutableMap.of("a", 2));
+    queue.add("a1", "a", null, 0);
+    queue.add("a2", "a", null, 0);
+    queue.add("a3", "a", null, 0);
+    queue.add("b1", "b", null, 0);
+    queue.add("b2", "b", null, 0);
+
+    assertThat(links(queue.poll(5)), contains("a1", "a2", "b1", "a3", "b2"));
+  }
+
+  @Test
+  public void testPriorityLanes() {
+    FairShareQueue queue = new FairShareQueue(null, null);
+    queue.add("low", "a", 1, 0);
+    queue.add("high", "b", 0, 1);
+
+    assertThat(links(queue.poll(1)), contains("high"));
+    assertThat(queue.getQueueDepths(), is(ImmutableMap.of(1, 1)));
+    assertThat(links(queue.poll(1)), contains("low"));
+  }
+
+  @Test
+  public void testPerKeyConcurrencyLimit() {
+    FairShareQueue queue = new FairShareQueue(1, null);
+    queue.add("a1", "a", null, 0);
+    queue.add("a2", "a", null, 0);
+    queue.add("b1", "b", null, 0);
+
+    assertThat(links(queue.poll(3)), contains("a1", "b1"));
+    assertThat(queue.poll(3), is(empty()));
+
+    queue.finish("a1");
+    assertThat(links(queue.poll(3)), contains("a2"));
+  }
+
+  @Test
+  public void testDuplicatesAreIgnored() {
+    FairShareQueue queue = new FairShareQueue(null, null);
+    assertThat(queue.add("a1", "a", null, 0), is(true));
+    assertThat(queue.add("a1", "a", null, 0), is(false));
+    queue.poll(1);
+    assertThat(queue.add("a1", "a", null, 0), is(false));
+    assertThat(queue.contains("a1"), is(true));
+
+    queue.finish("a1");
+    assertThat(queue.contains("a1"), is(false));
+  }
+
+  @Test
+  public void testRequeue() {
+    FairShareQueue queue = new FairShareQueue(1, null);
+    queue.add("a1", "a", 1, 0);
+    queue.add("a2", "a", 1, 1);
+
+    assertThat(links(queue.poll(2)), contains("a1"));
+    assertThat(queue.requeue("a1"), is(true));
+    assertThat(queue.getQueueDepths(), is(ImmutableMap.of(1, 2)));
+    assertThat(queue.requeue("a1"), is(false));
+
+    List<FairShareQueue.Entry> entries = queue.poll(2);
+    assertThat(links(entries), contains("a2"));
+    queue.finish("a2");
+    entries = queue.poll(2);
+    assertThat(links(entries), contains("a1"));
+    assertThat(entries.get(0).enqueuedMicros, is(0L));
+  }
+
+  private static List<String> links(List<FairShareQueue.Entry> entries) {
+    return entries.stream().map((entry) -> entry.taskServiceLink).collect(Collectors.toList());
+  }
+}
@@ -188,6 +188,27 @@ public class RateLimitedWorkQueueServiceTest {
           .setBody(patchState));
     }
 
+    @Test(expectedExceptions = BadRequestException.class)
+    public void testFairShareCompletionWithoutFinishedTaskServiceLink() throws Throwable {
+      RateLimitedWorkQueueService.State startState = buildValidStartState();
+      startState.fairShareEnabled = true;
+      basicServiceHost.startServiceSynchronously(rateLimitedWorkQueueService, startState);
+
+      RateLimitedWorkQueueService.PatchState patchState = new RateLimitedWorkQueueService.PatchState();
+      patchState.runningTaskServiceDelta = 1;
+
+      basicServiceHost.sendRequestAndWait(Operation
+          .createPatch(basicServiceHost, BasicServiceHost.SERVICE_URI)
+          .setBody(patchState));
+
+      patchState = new RateLimitedWorkQueueService.PatchState();
+      patchState.runningTaskServiceDelta = -1;
+
+      basicServiceHost.sendRequestAndWait(Operation
+          .createPatch(basicServiceHost, BasicServiceHost.SERVICE_URI)
+          .setBody(patchState));
+    }
+
     @Test(dataProvider = "InvalidPatchTransitions", expectedExceptions = BadRequestException.class)
     public void testInvalidPatchTransition(RateLimitedWorkQueueService.State startState,
                                            RateLimitedWorkQueueService.PatchState patchState) throws Throwable {
@@ -237,6 +258,11 @@ public class RateLimitedWorkQueueServiceTest {
     private final String workQueueSelfLink = UriUtils.buildUriPath(RateLimitedWorkQueueFactoryService.SELF_LINK,
         workQueueName);
 
+    private final String fairShareWorkQueueName = "test-service-fair-share-work-queue";
+
+    private final String fairShareWorkQueueSelfLink = UriUtils.buildUriPath(
+        RateLimitedWorkQueueFactoryService.SELF_LINK, fairShareWorkQueueName);
+
     private final Integer stressTestIterations = 100;
 
     private final Integer stressTestTasksPerIteration = 200;
@@ -259,6 +285,12 @@ public class RateLimitedWorkQueueServiceTest {
       startState.controlFlags = null;
       startState.concurrencyLimit = 10;
       basicHostEnvironment.sendPostAndWait(RateLimitedWorkQueueFactoryService.SELF_LINK, startState);
+
+      // All the task services share the default key, so they only run one at a time
+      startState.documentSelfLink = fairShareWorkQueueName;
+      startState.fairShareEnabled = true;
+      startState.perKeyConcurrencyLimit = 1;
+      basicHostEnvironment.sendPostAndWait(RateLimitedWorkQueueFactoryService.SELF_LINK, startState);
     }
 
     @BeforeMethod
@@ -342,6 +374,37 @@ public class RateLimitedWorkQueueServiceTest {
           (query) -> query.results.documentLinks.size() == 10);
     }
 
+    @Test
+    public void testFairShareSuccessWithPerKeyConcurrencyLimit() throws Throwable {
+
+      TestServiceWithWorkQueue.State startState = new TestServiceWithWorkQueue.State();
+      startState.workQueueServiceLink = fairShareWorkQueueSelfLink;
+
+      for (int i = 0; i < 10; i++) {
+        Operation op = basicHostEnvironment.sendPostAndWait(TestServiceWithWorkQueueFactory.SELF_LINK, startState);
+        checkState(op.getStatusCode() == Operation.STATUS_CODE_OK);
+      }
+
+      QueryTask queryTask = QueryTask.Builder.createDirectTask()
+          .setQuery(QueryTask.Query.Builder.create()
+              .addKindFieldClause(TestServiceWithWorkQueue.State.class)
+              .addCompositeFieldClause("taskState", "stage",
+                  QueryTask.QuerySpecification.toMatchValue(TaskState.TaskStage.FINISHED))
+              .build())
+          .addOption(QueryTask.QuerySpecification.QueryOption.BROADCAST)
+          .build();
+
+      // Each task service can only start once the previous one released the slot of the key
+      basicHostEnvironment.waitForQuery(queryTask,
+          (query) -> query.results.documentLinks.size() == 10);
+
+      RateLimitedWorkQueueService.State queueState = basicHostEnvironment.waitForServiceState(
+          RateLimitedWorkQueueService.State.class,
+          fairShareWorkQueueSelfLink,
+          (state) -> state.runningTaskServiceCount == 0);
+      assertThat(queueState.pendingTaskServiceCount, is(0));
+    }
+
     @Test(enabled = false)
     public void stressTest() throws Throwable {
       for (int i = 0; i < stressTestIterations; i++) {
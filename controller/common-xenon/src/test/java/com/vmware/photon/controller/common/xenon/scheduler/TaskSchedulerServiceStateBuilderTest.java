@@ -61,6 +61,19 @@ public class TaskSchedulerServiceStateBuilderTest {
       TaskSchedulerService.State state = builder.build();
       assertThat(state.schedulerServiceClassName, is(TestServiceWithStage.class.getTypeName()));
       assertThat(state.tasksLimits, is(10));
+      assertThat(state.eventDriven, is(false));
+    }
+
+    /**
+     * Tests building an event driven scheduler state.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void testEventDriven() throws Throwable {
+      builder = new TaskSchedulerServiceStateBuilder(TestServiceWithStage.class, 10, true);
+      TaskSchedulerService.State state = builder.build();
+      assertThat(state.eventDriven, is(true));
     }
   }
 }
@@ -15,6 +15,7 @@ package com.vmware.photon.controller.common.xenon.scheduler;
 
 import com.vmware.photon.controller.common.xenon.BasicServiceHost;
 import com.vmware.photon.controller.common.xenon.QueryTaskUtils;
+import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
 import com.vmware.photon.controller.common.xenon.exceptions.BadRequestException;
 import com.vmware.photon.controller.common.xenon.helpers.services.TestServiceWithStage;
 import com.vmware.photon.controller.common.xenon.helpers.services.TestServiceWithStageFactory;
@@ -35,6 +36,7 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.startsWith;
 import static org.testng.Assert.fail;
 
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
@@ -46,6 +48,7 @@ public class TaskSchedulerServiceTest {
 
   private BasicServiceHost host;
   private TaskSchedulerService service;
+  private TaskSchedulerService[] services;
   private String selfLink = TaskSchedulerServiceFactory.SELF_LINK + "/test-service-scheduler";
 
   private long testInterval = TimeUnit.SECONDS.toMicros(1);
@@ -278,7 +281,39 @@ public class TaskSchedulerServiceTest {
       assertThat(response.results.documentLinks.size(), is(tasksLimit + 3));
     }
 
+    @Test(dataProvider = "hostCount")
+    public void testEventDrivenProcessWithMoreThanThresholdNumberOfTasks(int count) throws Throwable {
+      // Reconciliation only builds the initial, empty, view: the tasks can only be found from notifications
+      initEnvironment(count, true, Integer.MAX_VALUE);
+      ServiceHostUtils.waitForState(
+          () -> Arrays.stream(services).anyMatch(TaskSchedulerService::isTracking),
+          (tracking) -> tracking,
+          null,
+          "Scheduler did not start tracking tasks");
+      startDummyServices(tasksLimit + 3, 0);
+
+      // check that the threshold number of dummy services are moved to STARTED stage
+      QueryTask query = QueryTask.create(
+          QueryTaskUtils.buildTaskStatusQuerySpec(
+              TestServiceWithStage.State.class,
+              TaskState.TaskStage.STARTED))
+          .setDirect(true);
+
+      QueryTask response = environment.waitForQuery(query,
+          new Predicate<QueryTask>() {
+            @Override
+            public boolean test(QueryTask queryTask) {
+              return queryTask.results.documentLinks.size() >= tasksLimit;
+            }
+          });
+      assertThat(response.results.documentLinks.size(), greaterThanOrEqualTo(tasksLimit));
+    }
+
     private void initEnvironment(int count) throws Throwable {
+      initEnvironment(count, false, TaskSchedulerService.EVENT_DRIVEN_RECONCILIATION_INTERVALS);
+    }
+
+    private void initEnvironment(int count, boolean eventDriven, int reconciliationIntervals) throws Throwable {
       BasicServiceHost[] hosts = new BasicServiceHost[count];
       for (int i = 0; i < count; i++) {
         hosts[i] = BasicServiceHost.create();
@@ -292,10 +327,15 @@ public class TaskSchedulerServiceTest {
         environment.waitForHostReady(hosts[i]);
       }
 
-      for (BasicServiceHost host : hosts) {
+      services = new TaskSchedulerService[count];
+      for (int i = 0; i < hosts.length; i++) {
         service = new TaskSchedulerService();
         service.setMaintenanceIntervalMicros(testInterval);
-        host.startServiceSynchronously(service, buildValidStartupState(), selfLink, false);
+        service.setReconciliationIntervals(reconciliationIntervals);
+        TaskSchedulerService.State startState = buildValidStartupState();
+        startState.eventDriven = eventDriven;
+        hosts[i].startServiceSynchronously(service, startState, selfLink, false);
+        services[i] = service;
       }
     }
 
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.xenon.validation;
+
+import com.vmware.photon.controller.common.xenon.validation.DocumentMetadata.FieldAccessor;
+import com.vmware.xenon.common.ServiceDocument;
+
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * This class implements tests for {@link DocumentMetadata}.
+ */
+public class DocumentMetadataTest {
+
+  @Test
+  public void testMetadataIsCached() {
+    assertThat(DocumentMetadata.get(Document.class), sameInstance(DocumentMetadata.get(Document.class)));
+  }
+
+  @Test
+  public void testMutableFields() {
+    assertThat(names(DocumentMetadata.get(Document.class).getMutableFields()),
+        contains("writeOnceValue", "primitiveValue"));
+  }
+
+  @Test
+  public void testAnnotatedFields() {
+    DocumentMetadata metadata = DocumentMetadata.get(Document.class);
+    assertThat(names(metadata.getFields(Immutable.class)), contains("immutableValue"));
+    assertThat(names(metadata.getFields(NotNull.class)), contains("immutableValue", "writeOnceValue"));
+    assertThat(names(metadata.getFields(WriteOnce.class)), contains("writeOnceValue"));
+    assertThat(metadata.getFields(Range.class), is(empty()));
+  }
+
+  @Test
+  public void testFieldAccess() throws Throwable {
+    Document document = new Document();
+    List<FieldAccessor> fields = DocumentMetadata.get(Document.class).getMutableFields();
+
+    fields.get(0).set(document, "value");
+    fields.get(1).set(document, 5);
+
+    assertThat(document.writeOnceValue, is("value"));
+    assertThat(document.primitiveValue, is(5));
+    assertThat(fields.get(0).get(document), is("value"));
+    assertThat(fields.get(1).get(document), is(5));
+  }
+
+  private static List<String> names(List<FieldAccessor> fields) {
+    return fields.stream().map(FieldAccessor::getName).collect(Collectors.toList());
+  }
+
+  /**
+   * Test ServiceDocument.
+   */
+  public static class Document extends ServiceDocument {
+
+    public static final String STATIC_FIELD = "staticField";
+
+    @Immutable
+    @NotNull
+    public Integer immutableValue;
+
+    @WriteOnce
+    @NotNull
+    public String writeOnceValue;
+
+    public int primitiveValue;
+  }
+}
@@ -37,6 +37,7 @@ import com.vmware.photon.controller.common.clients.exceptions.VmNotPoweredOffExc
 import com.vmware.photon.controller.common.thrift.ClientPool;
 import com.vmware.photon.controller.common.thrift.ClientPoolFactory;
 import com.vmware.photon.controller.common.thrift.ClientPoolOptions;
+import com.vmware.photon.controller.common.thrift.ClientPoolRegistry;
 import com.vmware.photon.controller.common.thrift.ClientProxyFactory;
 import com.vmware.photon.controller.common.zookeeper.gen.ServerAddress;
 import com.vmware.photon.controller.host.gen.AttachISORequest;
@@ -131,6 +132,19 @@ public class HostClient {
       .setMaxWaiters(100)
       .setTimeout(30, TimeUnit.SECONDS)
       .setServiceName("Host");
+
+  /**
+   * Options of the per-host pools shared through a {@link ClientPoolRegistry}. Unlike the non-shared pool,
+   * these allow a few concurrent calls to the same host since all the host clients use the same pool.
+   * A client is held for the whole call, so calls that can keep the agent busy for minutes or hours never
+   * use these pools: see {@link #ensureLongRunningClient()}.
+   */
+  public static final ClientPoolOptions SHARED_CLIENT_POOL_OPTIONS = new ClientPoolOptions()
+      .setMaxClients(4)
+      .setMaxWaiters(100)
+      .setTimeout(30, TimeUnit.SECONDS)
+      .setServiceName("Host")
+      .setStriped(true);
   private static final int DEFAULT_PORT_NUMBER = 8835;
   private static final int MAX_RESERVED_PORT_NUMBER = 1023;
 
@@ -161,6 +175,7 @@ public class HostClient {
   private static final long TRANSFER_IMAGE_TIMEOUT_MS = TimeUnit.HOURS.toMillis(2);
   private final ClientProxyFactory<Host.AsyncSSLClient> clientProxyFactory;
   private final ClientPoolFactory<Host.AsyncSSLClient> clientPoolFactory;
+  private final ClientPoolRegistry<Host.AsyncSSLClient> clientPoolRegistry;
   /**
    * clientProxy acquires a new client from ClientPool for every thrift call.
    * Reference: {@link ClientProxyImpl#createMethodHandler() createMethodHandler}.
@@ -169,12 +184,28 @@ public class HostClient {
   private String hostIp;
   private int port;
   private ClientPool<Host.AsyncSSLClient> clientPool;
+  /**
+   * Client used for the long running calls when the other calls go through a shared pool.
+   */
+  private Host.AsyncSSLClient longRunningClientProxy;
+  private ClientPool<Host.AsyncSSLClient> longRunningClientPool;
 
   @Inject
   public HostClient(ClientProxyFactory<Host.AsyncSSLClient> clientProxyFactory,
                     ClientPoolFactory<Host.AsyncSSLClient> clientPoolFactory) {
+    this(clientProxyFactory, clientPoolFactory, null);
+  }
+
+  /**
+   * Creates a host client that gets its connections from the shared pools of the given registry, so that
+   * switching between hosts with {@link #setIpAndPort(String, int)} does not tear down connections.
+   */
+  public HostClient(ClientProxyFactory<Host.AsyncSSLClient> clientProxyFactory,
+                    ClientPoolFactory<Host.AsyncSSLClient> clientPoolFactory,
+                    ClientPoolRegistry<Host.AsyncSSLClient> clientPoolRegistry) {
     this.clientProxyFactory = clientProxyFactory;
     this.clientPoolFactory = clientPoolFactory;
+    this.clientPoolRegistry = clientPoolRegistry;
   }
 
   public String getHostIp() {
@@ -319,7 +350,7 @@ public class HostClient {
   public void copyImage(String imageId, String source, String destination,
                         AsyncMethodCallback<Host.AsyncSSLClient.copy_image_call> handler)
       throws RpcException {
-    ensureClient();
+    Host.AsyncSSLClient client = ensureLongRunningClient();
     CopyImageRequest copyImageRequest = new CopyImageRequest();
     copyImageRequest.setSource(Util.constructImage(source, imageId));
     copyImageRequest.setDestination(Util.constructImage(destination, imageId));
@@ -327,7 +358,7 @@ public class HostClient {
     logger.info("copy_image target {}, request {}", getHostIp(), copyImageRequest);
 
     try {
-      clientProxy.copy_image(copyImageRequest, handler);
+      client.copy_image(copyImageRequest, handler);
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -371,18 +402,18 @@ public class HostClient {
   public void transferImage(String imageId, String source, String destination, ServerAddress destinationHost,
                             AsyncMethodCallback<Host.AsyncSSLClient.transfer_image_call> handler)
       throws RpcException {
-    ensureClient();
+    Host.AsyncSSLClient client = ensureLongRunningClient();
     TransferImageRequest transferImageRequest = new TransferImageRequest();
     transferImageRequest.setDestination_datastore_id(destination);
     transferImageRequest.setDestination_host(destinationHost);
     transferImageRequest.setSource_datastore_id(source);
     transferImageRequest.setSource_image_id(imageId);
 
-    clientProxy.setTimeout(TRANSFER_IMAGE_TIMEOUT_MS);
+    client.setTimeout(TRANSFER_IMAGE_TIMEOUT_MS);
     logger.info("transfer_image target {}, request {}", getHostIp(), transferImageRequest);
 
     try {
-      clientProxy.transfer_image(transferImageRequest, handler);
+      client.transfer_image(transferImageRequest, handler);
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -423,14 +454,14 @@ public class HostClient {
   public void createDisks(String reservation,
                           AsyncMethodCallback<Host.AsyncSSLClient.create_disks_call> handler)
       throws RpcException {
-    ensureClient();
+    Host.AsyncSSLClient client = ensureLongRunningClient();
     CreateDisksRequest createDisksRequest = new CreateDisksRequest(reservation);
-    clientProxy.setTimeout(CREATE_DISKS_TIMEOUT_MS);
+    client.setTimeout(CREATE_DISKS_TIMEOUT_MS);
     logger.info("create_disks reservation {}, target {}, request {}",
         reservation, getHostIp(), createDisksRequest);
 
     try {
-      clientProxy.create_disks(createDisksRequest, handler);
+      client.create_disks(createDisksRequest, handler);
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -470,17 +501,17 @@ public class HostClient {
                        Map<String, String> environment,
                        AsyncMethodCallback<Host.AsyncSSLClient.create_vm_call> handler)
       throws RpcException {
-    ensureClient();
+    Host.AsyncSSLClient client = ensureLongRunningClient();
     CreateVmRequest createVmRequest = new CreateVmRequest(reservation);
     if (environment != null && !environment.isEmpty()) {
       createVmRequest.setEnvironment(environment);
     }
 
-    clientProxy.setTimeout(CREATE_VM_TIMEOUT_MS);
+    client.setTimeout(CREATE_VM_TIMEOUT_MS);
     logger.info("create_vm target {}, reservation {}, request {}", getHostIp(), reservation, createVmRequest);
 
     try {
-      clientProxy.create_vm(createVmRequest, handler);
+      client.create_vm(createVmRequest, handler);
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -519,13 +550,13 @@ public class HostClient {
   public void deleteDisks(List<String> diskIds,
                           AsyncMethodCallback<Host.AsyncSSLClient.delete_disks_call> handler)
       throws RpcException {
-    ensureClient();
+    Host.AsyncSSLClient client = ensureLongRunningClient();
     DeleteDisksRequest deleteDisksRequest = new DeleteDisksRequest(diskIds);
-    clientProxy.setTimeout(DELETE_DISK_TIMEOUT_MS);
+    client.setTimeout(DELETE_DISK_TIMEOUT_MS);
     logger.info("delete_disks diskIds {}, target {}, request {}", diskIds, getHostIp(), deleteDisksRequest);
 
     try {
-      clientProxy.delete_disks(deleteDisksRequest, handler);
+      client.delete_disks(deleteDisksRequest, handler);
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -580,16 +611,16 @@ public class HostClient {
   public void createImage(String imageId, String datastore,
                           AsyncMethodCallback<Host.AsyncSSLClient.create_image_call> handler)
       throws RpcException {
-    ensureClient();
+    Host.AsyncSSLClient client = ensureLongRunningClient();
 
     CreateImageRequest createImageRequest = new CreateImageRequest();
     createImageRequest.setImage_id(imageId);
     createImageRequest.setDatastore(datastore);
-    clientProxy.setTimeout(CREATE_IMAGE_TIMEOUT_MS);
+    client.setTimeout(CREATE_IMAGE_TIMEOUT_MS);
     logger.info("create_image target {}, request {}", getHostIp(), createImageRequest);
 
     try {
-      clientProxy.create_image(createImageRequest, handler);
+      client.create_image(createImageRequest, handler);
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -777,14 +808,14 @@ public class HostClient {
       String tmpImagePath,
       AsyncMethodCallback<Host.AsyncSSLClient.create_image_from_vm_call> handler)
       throws InterruptedException, RpcException {
-    ensureClient();
+    Host.AsyncSSLClient client = ensureLongRunningClient();
     CreateImageFromVmRequest createImageFromVmRequest = new CreateImageFromVmRequest(
         vmId, imageId, datastore, tmpImagePath);
-    clientProxy.setTimeout(CREATE_IMAGE_TIMEOUT_MS);
+    client.setTimeout(CREATE_IMAGE_TIMEOUT_MS);
     logger.info("create_image_from_vm target {}, request {}", getHostIp(), createImageFromVmRequest);
 
     try {
-      clientProxy.create_image_from_vm(createImageFromVmRequest, handler);
+      client.create_image_from_vm(createImageFromVmRequest, handler);
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -873,14 +904,14 @@ public class HostClient {
   public void deleteVm(String vmId, List<String> diskIdsToDetach,
                        AsyncMethodCallback<Host.AsyncSSLClient.delete_vm_call> handler)
       throws RpcException {
-    ensureClient();
+    Host.AsyncSSLClient client = ensureLongRunningClient();
     DeleteVmRequest deleteVmRequest = new DeleteVmRequest(vmId);
     deleteVmRequest.setDisk_ids(diskIdsToDetach);
-    clientProxy.setTimeout(DELETE_VM_TIMEOUT_MS);
+    client.setTimeout(DELETE_VM_TIMEOUT_MS);
     logger.info("delete_vm {}, target {}, request {}", vmId, getHostIp(), deleteVmRequest);
 
     try {
-      clientProxy.delete_vm(deleteVmRequest, handler);
+      client.delete_vm(deleteVmRequest, handler);
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -1263,13 +1294,13 @@ public class HostClient {
   public void powerVmOp(String vmId, PowerVmOp op,
                         AsyncMethodCallback<Host.AsyncSSLClient.power_vm_op_call> handler)
       throws RpcException {
-    ensureClient();
+    Host.AsyncSSLClient client = ensureLongRunningClient();
     PowerVmOpRequest powerVmOpRequest = new PowerVmOpRequest(vmId, op);
-    clientProxy.setTimeout(POWER_VM_OP_TIMEOUT_MS);
+    client.setTimeout(POWER_VM_OP_TIMEOUT_MS);
     logger.info("power_vm_op vm {}, target {}, request {}", vmId, getHostIp(), powerVmOpRequest);
 
     try {
-      clientProxy.power_vm_op(powerVmOpRequest, handler);
+      client.power_vm_op(powerVmOpRequest, handler);
     } catch (TException e) {
       throw new RpcException(e.getMessage());
     }
@@ -1373,11 +1404,17 @@ public class HostClient {
 
   public void close() {
     clientProxy = null;
+    longRunningClientProxy = null;
 
     if (clientPool != null) {
       clientPool.close();
       clientPool = null;
     }
+
+    if (longRunningClientPool != null) {
+      longRunningClientPool.close();
+      longRunningClientPool = null;
+    }
   }
 
   @VisibleForTesting
@@ -1386,11 +1423,38 @@ public class HostClient {
       return;
     }
 
-    close();
+    // Leaves the long running client alone, a call may still be using it
+    if (clientPool != null) {
+      clientPool.close();
+      clientPool = null;
+    }
 
     createClientProxyWithIpAndPort();
   }
 
+  /**
+   * Returns the client for calls that can run for minutes or hours, such as creating a VM or transferring an
+   * image. When the host clients share per-host pools, these calls get a non-shared pool owned by this host
+   * client, so that a few of them cannot hold all the clients of the shared pool and make every other call to
+   * the same host time out waiting for a client.
+   */
+  @VisibleForTesting
+  protected Host.AsyncSSLClient ensureLongRunningClient() {
+    if (clientPoolRegistry == null) {
+      ensureClient();
+      return clientProxy;
+    }
+
+    if (longRunningClientProxy == null) {
+      logger.debug("Creating long running host async client of hostIp {} and port {}", getHostIp(), getPort());
+      InetSocketAddress address = new InetSocketAddress(getHostIp(), getPort());
+      longRunningClientPool = clientPoolFactory.create(ImmutableSet.of(address), CLIENT_POOL_OPTIONS);
+      longRunningClientProxy = clientProxyFactory.create(longRunningClientPool).get();
+    }
+
+    return longRunningClientProxy;
+  }
+
   @VisibleForTesting
   protected Host.AsyncSSLClient getClientProxy() {
     return clientProxy;
@@ -1403,9 +1467,12 @@ public class HostClient {
 
   private void createClientProxyWithIpAndPort() {
     logger.debug("Creating host async client of hostIp {} and port {}", this.getHostIp(), this.getPort());
-    this.clientPool = this.clientPoolFactory.create(
-        ImmutableSet.of(new InetSocketAddress(this.getHostIp(), this.getPort())),
-        CLIENT_POOL_OPTIONS);
+    InetSocketAddress address = new InetSocketAddress(this.getHostIp(), this.getPort());
+    if (this.clientPoolRegistry != null) {
+      this.clientPool = this.clientPoolRegistry.getClientPool(address);
+    } else {
+      this.clientPool = this.clientPoolFactory.create(ImmutableSet.of(address), CLIENT_POOL_OPTIONS);
+    }
     this.clientProxy = clientProxyFactory.create(clientPool).get();
   }
 
@@ -1622,7 +1689,7 @@ public class HostClient {
      * specified as a parameter.
      * @throws RpcException
      */
-    private static CreateVmResponse checkCreateVmResponse(CreateVmResponse createVmResponse)
+    public static CreateVmResponse checkCreateVmResponse(CreateVmResponse createVmResponse)
         throws RpcException {
       logger.info("Checking {}", createVmResponse);
       switch (createVmResponse.getResult()) {
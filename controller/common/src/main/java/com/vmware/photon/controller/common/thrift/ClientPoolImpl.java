@@ -133,11 +133,11 @@ class ClientPoolImpl<C extends TAsyncSSLClient> implements ClientPool<C>, Server
       Promise<C> promise = new Promise<>(future);
       promises.add(promise);
       processPromises();
-      logger.info("options.getTimeoutMs() is {}", options.getTimeoutMs());
+      logger.debug("options.getTimeoutMs() is {}", options.getTimeoutMs());
       if (options.getTimeoutMs() > 0 && !future.isDone()) {
         setTimeout(promise);
       }
-      logger.info("{} Promise processed {}", options.getServiceName(), promise);
+      logger.debug("{} Promise processed {}", options.getServiceName(), promise);
       return future;
     }
 
@@ -155,7 +155,7 @@ class ClientPoolImpl<C extends TAsyncSSLClient> implements ClientPool<C>, Server
       }
     }, getPromiseTimeoutMs(), TimeUnit.MILLISECONDS);
     promise.setTimeout(schedule);
-    logger.info("Timeout set for the promise {}", getPromiseTimeoutMs());
+    logger.debug("Timeout set for the promise {}", getPromiseTimeoutMs());
   }
 
   @Override
@@ -190,7 +190,7 @@ class ClientPoolImpl<C extends TAsyncSSLClient> implements ClientPool<C>, Server
 
   @Override
   public synchronized void release(C client, boolean healthy) {
-    logger.info("{}, client pool {}, releasing: {} healthy: {}",
+    logger.debug("{}, client pool {}, releasing: {} healthy: {}",
         options.getServiceName(), System.identityHashCode(this), client, healthy);
     InetSocketAddress address = acquiredClients.remove(client);
     if (address == null) {
@@ -200,7 +200,7 @@ class ClientPoolImpl<C extends TAsyncSSLClient> implements ClientPool<C>, Server
     if (!closed && healthy && availableServers.contains(address)) {
       availableClients.put(address, client);
     } else {
-      logger.info("{}, client pool {}, closing transport for client: {}, healthy: {}",
+      logger.debug("{}, client pool {}, closing transport for client: {}, healthy: {}",
           options.getServiceName(), System.identityHashCode(this), client, healthy);
       removeClient(client);
     }
@@ -234,13 +234,13 @@ class ClientPoolImpl<C extends TAsyncSSLClient> implements ClientPool<C>, Server
 
       logger.debug("process promise");
       if (availableClients.isEmpty()) {
-        logger.info("{}, no avail clients: acq {}, avail {}, promises {}",
+        logger.debug("{}, no avail clients: acq {}, avail {}, promises {}",
             options.getServiceName(), acquiredClients.size(),
             availableClients.size(), promises.size());
       }
 
       if (!canCreateClient()) {
-        logger.info("{}, client pool {}, not creating new client, request is queued until a client is available: " +
+        logger.debug("{}, client pool {}, not creating new client, request is queued until a client is available: " +
                 "client(s) in use {}, request(s) waiting {}, available client(s) {}",
             options.getServiceName(), System.identityHashCode(this), acquiredClients.size(),
             promises.size(), availableClients.size());
@@ -258,7 +258,7 @@ class ClientPoolImpl<C extends TAsyncSSLClient> implements ClientPool<C>, Server
       }
 
       if (client != null) {
-        logger.info("{}, client pool {}, set promise with client {}",
+        logger.debug("{}, client pool {}, set promise with client {}",
             options.getServiceName(), System.identityHashCode(this), client);
         promises.remove().set(client);
         return;
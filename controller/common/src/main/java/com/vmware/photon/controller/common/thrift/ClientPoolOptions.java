@@ -24,6 +24,7 @@ public class ClientPoolOptions {
   private int maxWaiters = 1;
   private long timeoutMs = 0;
   private String serviceName;
+  private boolean striped = false;
 
   public ClientPoolOptions() {
   }
@@ -33,6 +34,7 @@ public class ClientPoolOptions {
     this.maxWaiters = other.maxWaiters;
     this.timeoutMs = other.timeoutMs;
     this.serviceName = other.serviceName;
+    this.striped = other.striped;
   }
 
   public int getMaxClients() {
@@ -70,4 +72,16 @@ public class ClientPoolOptions {
     this.serviceName = serviceName;
     return this;
   }
+
+  public boolean isStriped() {
+    return striped;
+  }
+
+  /**
+   * Selects the lock-free {@link StripedClientPool} implementation for pools created from a server set.
+   */
+  public ClientPoolOptions setStriped(boolean striped) {
+    this.striped = striped;
+    return this;
+  }
 }
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.thrift;
+
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.thrift.async.TAsyncSSLClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a bounded set of warm {@link ClientPool} instances, one per server address, that are shared by
+ * all the clients talking to that server. This lets repeated calls to the same server reuse connections
+ * instead of setting up a new pool (and a new SSL connection) whenever a client switches servers.
+ * <p>
+ * Pools are removed from the registry when they have been idle for longer than the idle timeout, or
+ * when too many consecutive calls released their client as unhealthy. The total number of connections
+ * is capped: when the cap is reached and no idle pool can be evicted, calls get a non-shared pool
+ * that is closed as soon as its call releases the client.
+ * <p>
+ * It is thread-safe.
+ *
+ * @param <C> client type
+ */
+public class ClientPoolRegistry<C extends TAsyncSSLClient> {
+
+  private static final Logger logger = LoggerFactory.getLogger(ClientPoolRegistry.class);
+
+  private static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+  private final ClientPoolFactory<C> clientPoolFactory;
+  private final ClientPoolOptions options;
+  private final int maxTotalClients;
+  private final long idleTimeoutNanos;
+  private final Map<InetSocketAddress, Entry> entries;
+  private final Map<C, Entry> acquiredClients;
+  private final Set<Entry> overflowEntries;
+  private final ScheduledFuture<?> evictionTask;
+
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter evictions;
+  private final Counter removals;
+  private final Counter overflows;
+
+  private boolean closed;
+
+  /**
+   * @param clientPoolFactory factory used to create the per-server pools
+   * @param scheduledExecutor executor used to periodically evict idle pools
+   * @param options           options of each per-server pool
+   * @param maxTotalClients   maximum number of connections kept by all the shared pools
+   * @param idleTimeout       time after which an unused pool is closed
+   * @param timeUnit          unit of idleTimeout
+   */
+  public ClientPoolRegistry(ClientPoolFactory<C> clientPoolFactory,
+                            ScheduledExecutorService scheduledExecutor,
+                            ClientPoolOptions options,
+                            int maxTotalClients,
+                            long idleTimeout,
+                            TimeUnit timeUnit) {
+    this.clientPoolFactory = clientPoolFactory;
+    this.options = new ClientPoolOptions(options);
+    this.maxTotalClients = maxTotalClients;
+    this.idleTimeoutNanos = timeUnit.toNanos(idleTimeout);
+    this.entries = new HashMap<>();
+    this.acquiredClients = new ConcurrentHashMap<>();
+    this.overflowEntries = ConcurrentHashMap.newKeySet();
+    this.closed = false;
+
+    String prefix = MetricRegistry.name(ClientPoolRegistry.class, options.getServiceName());
+    MetricRegistry registry = DefaultMetricRegistry.REGISTRY;
+    this.hits = registry.counter(MetricRegistry.name(prefix, "hits"));
+    this.misses = registry.counter(MetricRegistry.name(prefix, "misses"));
+    this.evictions = registry.counter(MetricRegistry.name(prefix, "evictions"));
+    this.removals = registry.counter(MetricRegistry.name(prefix, "removals"));
+    this.overflows = registry.counter(MetricRegistry.name(prefix, "overflows"));
+    String poolsGaugeName = MetricRegistry.name(prefix, "pools");
+    if (!registry.getGauges().containsKey(poolsGaugeName)) {
+      registry.register(poolsGaugeName, (Gauge<Integer>) this::getPoolCount);
+    }
+
+    long sweepIntervalNanos = Math.max(this.idleTimeoutNanos / 2, TimeUnit.SECONDS.toNanos(1));
+    this.evictionTask = scheduledExecutor.scheduleWithFixedDelay(
+        this::evictIdlePools, sweepIntervalNanos, sweepIntervalNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns a client pool for the given server. The returned pool is a lightweight view on the shared pool
+   * of that server: closing it has no effect, and it keeps working if the shared pool gets evicted.
+   *
+   * @param address server address
+   * @return client pool for the server
+   */
+  public ClientPool<C> getClientPool(InetSocketAddress address) {
+    return new RegisteredClientPool(address);
+  }
+
+  /**
+   * Closes all the shared and non-shared pools and stops evicting idle pools.
+   */
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+
+    evictionTask.cancel(false);
+    for (Entry entry : entries.values()) {
+      entry.pool.close();
+    }
+
+    for (Entry entry : overflowEntries) {
+      closeOverflowEntry(entry);
+    }
+
+    entries.clear();
+    closed = true;
+  }
+
+  @VisibleForTesting
+  synchronized int getPoolCount() {
+    return entries.size();
+  }
+
+  @VisibleForTesting
+  int getOverflowPoolCount() {
+    return overflowEntries.size();
+  }
+
+  @VisibleForTesting
+  void evictIdlePools() {
+    List<Entry> evicted = new ArrayList<>();
+    synchronized (this) {
+      long now = System.nanoTime();
+      for (Entry entry : new ArrayList<>(entries.values())) {
+        if (entry.isIdle(now)) {
+          entries.remove(entry.address);
+          evicted.add(entry);
+        }
+      }
+    }
+
+    for (Entry entry : evicted) {
+      logger.info("{}, closing idle client pool for {}", options.getServiceName(), entry.address);
+      evictions.inc();
+      entry.pool.close();
+    }
+  }
+
+  private synchronized Entry reserveEntry(InetSocketAddress address) {
+    Entry entry = entries.get(address);
+    if (entry != null) {
+      hits.inc();
+    } else {
+      misses.inc();
+      entry = createEntry(address);
+    }
+
+    entry.outstanding.incrementAndGet();
+    entry.lastUsedNanos = System.nanoTime();
+    return entry;
+  }
+
+  private Entry createEntry(InetSocketAddress address) {
+    if (!closed && ensureCapacity()) {
+      Entry entry = new Entry(address, clientPoolFactory.create(new StaticServerSet(address), options), true);
+      entries.put(address, entry);
+      return entry;
+    }
+
+    logger.warn("{}, client pool registry is full, using a non-shared client pool for {}",
+        options.getServiceName(), address);
+    overflows.inc();
+    Entry entry = new Entry(address, clientPoolFactory.create(ImmutableSet.of(address), options), false);
+    overflowEntries.add(entry);
+    return entry;
+  }
+
+  /**
+   * Closes a non-shared pool once, whether its call drained it or the registry got closed.
+   */
+  private void closeOverflowEntry(Entry entry) {
+    if (overflowEntries.remove(entry)) {
+      entry.pool.close();
+    }
+  }
+
+  /**
+   * Makes room for one more shared pool, evicting the least recently used idle pool if needed.
+   * Must be called while holding the registry lock.
+   */
+  private boolean ensureCapacity() {
+    if ((entries.size() + 1) * options.getMaxClients() <= maxTotalClients) {
+      return true;
+    }
+
+    Entry leastRecentlyUsed = null;
+    for (Entry entry : entries.values()) {
+      if (entry.outstanding.get() == 0 &&
+          (leastRecentlyUsed == null || entry.lastUsedNanos < leastRecentlyUsed.lastUsedNanos)) {
+        leastRecentlyUsed = entry;
+      }
+    }
+
+    if (leastRecentlyUsed == null) {
+      return false;
+    }
+
+    entries.remove(leastRecentlyUsed.address);
+    evictions.inc();
+    leastRecentlyUsed.pool.close();
+    return true;
+  }
+
+  private void removeUnhealthyEntry(Entry entry) {
+    synchronized (this) {
+      if (entries.get(entry.address) != entry) {
+        return;
+      }
+      entries.remove(entry.address);
+    }
+
+    logger.warn("{}, removing client pool for {} after {} consecutive failures",
+        options.getServiceName(), entry.address, MAX_CONSECUTIVE_FAILURES);
+    removals.inc();
+    entry.pool.close();
+  }
+
+  /**
+   * Book-keeping for a single pool.
+   */
+  private class Entry {
+    private final InetSocketAddress address;
+    private final ClientPool<C> pool;
+    private final boolean shared;
+    private final AtomicInteger outstanding;
+    private final AtomicInteger consecutiveFailures;
+    private volatile long lastUsedNanos;
+
+    private Entry(InetSocketAddress address, ClientPool<C> pool, boolean shared) {
+      this.address = address;
+      this.pool = pool;
+      this.shared = shared;
+      this.outstanding = new AtomicInteger(0);
+      this.consecutiveFailures = new AtomicInteger(0);
+      this.lastUsedNanos = System.nanoTime();
+    }
+
+    private boolean isIdle(long now) {
+      return outstanding.get() == 0 && pool.getWaiters() == 0 && now - lastUsedNanos > idleTimeoutNanos;
+    }
+
+    private void onRelease(boolean healthy) {
+      if (outstanding.decrementAndGet() == 0 && !shared) {
+        closeOverflowEntry(this);
+        return;
+      }
+
+      lastUsedNanos = System.nanoTime();
+      if (healthy) {
+        consecutiveFailures.set(0);
+      } else if (consecutiveFailures.incrementAndGet() >= MAX_CONSECUTIVE_FAILURES && shared) {
+        removeUnhealthyEntry(this);
+      }
+    }
+  }
+
+  /**
+   * View on the shared pool of a server, handed out to clients.
+   */
+  private class RegisteredClientPool implements ClientPool<C> {
+    private final InetSocketAddress address;
+
+    private RegisteredClientPool(InetSocketAddress address) {
+      this.address = address;
+    }
+
+    @Override
+    public ListenableFuture<C> acquire() {
+      Entry entry = reserveEntry(address);
+      ListenableFuture<C> future = entry.pool.acquire();
+      Futures.addCallback(future, new FutureCallback<C>() {
+        @Override
+        public void onSuccess(C client) {
+          acquiredClients.put(client, entry);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          entry.onRelease(false);
+        }
+      });
+      return future;
+    }
+
+    @Override
+    public void close() {
+      // The shared pool is owned by the registry
+    }
+
+    @Override
+    public void release(C client, boolean healthy) {
+      Entry entry = acquiredClients.remove(client);
+      if (entry == null) {
+        throw new IllegalArgumentException("Client is not currently acquired by the pool: " + client);
+      }
+
+      entry.pool.release(client, healthy);
+      entry.onRelease(healthy);
+    }
+
+    @Override
+    public int getWaiters() {
+      Entry entry;
+      synchronized (ClientPoolRegistry.this) {
+        entry = entries.get(address);
+      }
+      return entry == null ? 0 : entry.pool.getWaiters();
+    }
+
+    @Override
+    public boolean isClosed() {
+      return false;
+    }
+  }
+}
@@ -36,8 +36,13 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import javax.inject.Named;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -51,9 +56,19 @@ public class ClientProxyImpl<C extends TAsyncSSLClient> implements ClientProxy<C
 
   private static final Logger logger = LoggerFactory.getLogger(ClientProxyImpl.class);
 
+  private static final MethodType TRACING_SETTER_TYPE = MethodType.methodType(void.class, Object.class,
+      TracingInfo.class);
+
+  /**
+   * Setters of the tracing info field, keyed by request type. Request types without a tracing info field map to
+   * an empty value, so the lookup is only done once per type.
+   */
+  private static final ConcurrentMap<Class<?>, Optional<MethodHandle>> tracingSetters = new ConcurrentHashMap<>();
+
   private final ExecutorService executor;
   private final ClientPool<C> clientPool;
   private final Enhancer enhancer;
+  private C proxy;
   private long timeout;
 
   @Inject
@@ -84,15 +99,20 @@ public class ClientProxyImpl<C extends TAsyncSSLClient> implements ClientProxy<C
    * <p>
    * If the original method is 'setTimeout', ClientProxyImpl just saves timeout in its own state and applies it
    * to the actual client before performing any subsequent calls.
+   * <p>
+   * The proxy object doesn't keep any state of its own, so it is created once and returned on every call.
    *
    * @return C
    */
   @Override
   @SuppressWarnings("unchecked")
   public synchronized C get() {
-    return (C) this.enhancer.create(
-        new Class[]{TProtocolFactory.class, TAsyncSSLClientManager.class, TNonblockingSSLTransport.class},
-        new Object[]{null, null, null});
+    if (proxy == null) {
+      proxy = (C) this.enhancer.create(
+          new Class[]{TProtocolFactory.class, TAsyncSSLClientManager.class, TNonblockingSSLTransport.class},
+          new Object[]{null, null, null});
+    }
+    return proxy;
   }
 
   private MethodInterceptor createMethodInterceptor() {
@@ -121,10 +141,10 @@ public class ClientProxyImpl<C extends TAsyncSSLClient> implements ClientProxy<C
 
           AsyncMethodCallback<Object> wrappedCallback = wrapCallback(client, callback);
           args[args.length - 1] = wrappedCallback;
-          setupTracing(method, args);
-
           try {
-            method.invoke(client, args);
+            setupTracing(args);
+            // MethodProxy dispatches through a generated FastClass instead of reflection
+            methodProxy.invoke(client, args);
           } catch (Throwable e) {
             logger.error("Error invoking method {}", methodName, e);
             handleException(wrappedCallback, e);
@@ -157,36 +177,32 @@ public class ClientProxyImpl<C extends TAsyncSSLClient> implements ClientProxy<C
   }
 
   /**
-   * Sets up Thrift request tracing if method supports it.
+   * Sets up Thrift request tracing if the request supports it.
    *
-   * @param method Method being called
-   * @param args   Method arguments
+   * @param args Method arguments
    */
-  private void setupTracing(Method method, Object[] args) {
-    Method tracingMethod = extractTracingMethod(args);
-
-    if (tracingMethod == null) {
+  private void setupTracing(Object[] args) throws Throwable {
+    if (args.length < 1 || !(args[0] instanceof TBase)) {
+      // No tracing possible, no request provided
       return;
     }
 
-    try {
-      tracingMethod.invoke(args[0], getRequestTracingInfo());
-    } catch (IllegalAccessException | InvocationTargetException e) {
-      throw new RuntimeException(e);
+    Optional<MethodHandle> tracingSetter = tracingSetters.computeIfAbsent(args[0].getClass(),
+        ClientProxyImpl::findTracingSetter);
+    if (tracingSetter.isPresent()) {
+      tracingSetter.get().invokeExact(args[0], getRequestTracingInfo());
     }
   }
 
-  private Method extractTracingMethod(Object[] args) {
-    if (args.length < 1 || !(args[0] instanceof TBase)) {
-      // No tracing possible, no request provided
-      return null;
-    }
-
+  private static Optional<MethodHandle> findTracingSetter(Class<?> requestType) {
     try {
-      return args[0].getClass().getMethod("setTracing_info", TracingInfo.class);
+      Method method = requestType.getMethod("setTracing_info", TracingInfo.class);
+      return Optional.of(MethodHandles.publicLookup().unreflect(method).asType(TRACING_SETTER_TYPE));
     } catch (NoSuchMethodException e) {
       // This particular request type doesn't have TracingInfo field
-      return null;
+      return Optional.empty();
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
     }
   }
 
@@ -0,0 +1,440 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.thrift;
+
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.thrift.async.TAsyncSSLClient;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TNonblockingSSLTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free implementation of {@link ClientPool}.
+ * <p>
+ * Unlike {@link ClientPoolImpl}, which serializes every operation on a single monitor, this pool keeps a
+ * separate queue of idle clients per server and a non-blocking queue of waiters. Clients are handed out from
+ * the server with the least outstanding requests, and released clients are handed directly to the oldest
+ * waiter when there is one.
+ * <p>
+ * The number of clients in use, the number of waiters and the acquire latency are published to the default
+ * metric registry, aggregated per service name.
+ *
+ * @param <C> thrift async client type
+ */
+class StripedClientPool<C extends TAsyncSSLClient> implements ClientPool<C>, ServerSet.ChangeListener {
+
+  private static final Logger logger = LoggerFactory.getLogger(StripedClientPool.class);
+
+  private final TAsyncSSLClientFactory<C> clientFactory;
+  private final SSLContext sslContext;
+  private final TProtocolFactory protocolFactory;
+  private final ThriftFactory thriftFactory;
+  private final ScheduledExecutorService scheduledExecutor;
+  private final ServerSet serverSet;
+  private final ClientPoolOptions options;
+  private final Map<InetSocketAddress, Stripe> stripes;
+  private final Map<C, Stripe> acquiredClients;
+  private final Map<C, TNonblockingSSLTransport> clientTransportMap;
+  private final Queue<Promise<C>> promises;
+  private final AtomicInteger promiseCount;
+  private final AtomicInteger clientCount;
+  private final Counter inUseCounter;
+  private final Counter waitersCounter;
+  private final Timer acquireTimer;
+  private volatile boolean closed;
+
+  StripedClientPool(TAsyncSSLClientFactory<C> clientFactory,
+                    SSLContext sslContext,
+                    TProtocolFactory protocolFactory,
+                    ThriftFactory thriftFactory,
+                    ScheduledExecutorService scheduledExecutor,
+                    ServerSet serverSet,
+                    ClientPoolOptions options) {
+    this.clientFactory = clientFactory;
+    this.sslContext = sslContext;
+    this.protocolFactory = protocolFactory;
+    this.thriftFactory = thriftFactory;
+    this.scheduledExecutor = scheduledExecutor;
+    this.serverSet = serverSet;
+    this.options = new ClientPoolOptions(options);
+    this.stripes = new ConcurrentHashMap<>();
+    this.acquiredClients = new ConcurrentHashMap<>();
+    this.clientTransportMap = new ConcurrentHashMap<>();
+    this.promises = new ConcurrentLinkedQueue<>();
+    this.promiseCount = new AtomicInteger(0);
+    this.clientCount = new AtomicInteger(0);
+    this.closed = false;
+
+    String prefix = MetricRegistry.name(StripedClientPool.class, options.getServiceName());
+    this.inUseCounter = DefaultMetricRegistry.REGISTRY.counter(MetricRegistry.name(prefix, "in-use"));
+    this.waitersCounter = DefaultMetricRegistry.REGISTRY.counter(MetricRegistry.name(prefix, "waiters"));
+    this.acquireTimer = DefaultMetricRegistry.REGISTRY.timer(MetricRegistry.name(prefix, "acquire"));
+
+    // Must be last since it can start firing events immediately
+    this.serverSet.addChangeListener(this);
+  }
+
+  @Override
+  public void onServerAdded(InetSocketAddress address) {
+    logger.debug("Server {} added", address);
+    stripes.putIfAbsent(address, new Stripe(address));
+    processPromises();
+  }
+
+  @Override
+  public void onServerRemoved(InetSocketAddress address) {
+    logger.debug("Server {} removed", address);
+    Stripe stripe = stripes.remove(address);
+    if (stripe != null) {
+      closeIdleClients(stripe);
+    }
+  }
+
+  @Override
+  public ListenableFuture<C> acquire() {
+    if (closed) {
+      return Futures.immediateFailedFuture(new ClientPoolException("Client pool closed"));
+    }
+
+    long startNanos = System.nanoTime();
+    try {
+      C client = tryAcquire();
+      if (client != null) {
+        acquireTimer.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        return Futures.immediateFuture(client);
+      }
+    } catch (IOException | TTransportException ex) {
+      logger.error("{}, failed to create client", options.getServiceName(), ex);
+      return Futures.immediateFailedFuture(ex);
+    }
+
+    if (promiseCount.incrementAndGet() > options.getMaxWaiters()) {
+      promiseCount.decrementAndGet();
+      return Futures.immediateFailedFuture(new ClientPoolException("Too many waiters"));
+    }
+
+    SettableFuture<C> future = SettableFuture.create();
+    Promise<C> promise = new Promise<>(future);
+    waitersCounter.inc();
+    promises.add(promise);
+    if (options.getTimeoutMs() > 0) {
+      setTimeout(promise);
+    }
+
+    future.addListener(
+        () -> acquireTimer.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS),
+        Runnable::run);
+
+    // A client might have been released between tryAcquire and queueing the promise
+    processPromises();
+    return future;
+  }
+
+  @Override
+  public void close() {
+    logger.info("{}, closing client pool {}", options.getServiceName(), System.identityHashCode(this));
+    closed = true;
+    serverSet.removeChangeListener(this);
+
+    Promise<C> promise;
+    while ((promise = pollPromise()) != null) {
+      promise.setException(new ClientPoolException("Client pool closing"));
+    }
+
+    for (Stripe stripe : stripes.values()) {
+      closeIdleClients(stripe);
+    }
+  }
+
+  @Override
+  public boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public void release(C client, boolean healthy) {
+    logger.debug("{}, client pool {}, releasing: {} healthy: {}",
+        options.getServiceName(), System.identityHashCode(this), client, healthy);
+    Stripe stripe = acquiredClients.remove(client);
+    if (stripe == null) {
+      throw new IllegalArgumentException("Client is not currently acquired by the pool: " + client);
+    }
+
+    stripe.inFlight.decrementAndGet();
+    inUseCounter.dec();
+
+    if (closed || !healthy || stripes.get(stripe.address) != stripe) {
+      removeClient(client);
+      processPromises();
+      return;
+    }
+
+    // Hand the client directly to the oldest waiter, if any
+    Promise<C> promise;
+    while ((promise = pollPromise()) != null) {
+      reserve(stripe, client);
+      if (promise.set(client)) {
+        return;
+      }
+      unreserve(stripe, client);
+    }
+
+    stripe.idleClients.add(client);
+
+    // Close the race with a waiter that got queued after we checked
+    if (closed) {
+      closeIdleClients(stripe);
+    } else {
+      processPromises();
+    }
+  }
+
+  @Override
+  public int getWaiters() {
+    return promiseCount.get();
+  }
+
+  @VisibleForTesting
+  int getClientCount() {
+    return clientCount.get();
+  }
+
+  @VisibleForTesting
+  int getIdleClientCount(InetSocketAddress address) {
+    Stripe stripe = stripes.get(address);
+    return stripe == null ? 0 : stripe.idleClients.size();
+  }
+
+  /**
+   * Returns an idle client or a new client from the server with the least outstanding requests,
+   * or null if the pool is exhausted.
+   */
+  private C tryAcquire() throws IOException, TTransportException {
+    while (true) {
+      Stripe leastLoaded = null;
+      Stripe leastLoadedIdle = null;
+      for (Stripe stripe : stripes.values()) {
+        int inFlight = stripe.inFlight.get();
+        if (leastLoaded == null || inFlight < leastLoaded.inFlight.get()) {
+          leastLoaded = stripe;
+        }
+        if (!stripe.idleClients.isEmpty() &&
+            (leastLoadedIdle == null || inFlight < leastLoadedIdle.inFlight.get())) {
+          leastLoadedIdle = stripe;
+        }
+      }
+
+      if (leastLoaded == null) {
+        return null;
+      }
+
+      // Reuse an idle client when there is one on a server that is as lightly loaded as any other
+      if (leastLoadedIdle != null && leastLoadedIdle.inFlight.get() <= leastLoaded.inFlight.get()) {
+        C client = pollIdleClient(leastLoadedIdle);
+        if (client == null) {
+          // Lost a race for the idle client, look again
+          continue;
+        }
+        reserve(leastLoadedIdle, client);
+        return client;
+      }
+
+      // Otherwise open a new connection to the least loaded server, if the pool is not full yet
+      if (reserveClientSlot()) {
+        C client;
+        try {
+          client = createNewClient(leastLoaded.address);
+        } catch (IOException | TTransportException ex) {
+          clientCount.decrementAndGet();
+          throw ex;
+        }
+        reserve(leastLoaded, client);
+        return client;
+      }
+
+      if (leastLoadedIdle == null) {
+        return null;
+      }
+
+      C client = pollIdleClient(leastLoadedIdle);
+      if (client != null) {
+        reserve(leastLoadedIdle, client);
+        return client;
+      }
+    }
+  }
+
+  private C pollIdleClient(Stripe stripe) {
+    C client;
+    while ((client = stripe.idleClients.poll()) != null) {
+      if (!client.hasError()) {
+        return client;
+      }
+      logger.warn("service {} available client {} has error", options.getServiceName(), client, client.getError());
+      removeClient(client);
+    }
+    return null;
+  }
+
+  private boolean reserveClientSlot() {
+    while (true) {
+      int count = clientCount.get();
+      if (count >= options.getMaxClients()) {
+        return false;
+      }
+      if (clientCount.compareAndSet(count, count + 1)) {
+        return true;
+      }
+    }
+  }
+
+  private void reserve(Stripe stripe, C client) {
+    stripe.inFlight.incrementAndGet();
+    acquiredClients.put(client, stripe);
+    inUseCounter.inc();
+  }
+
+  private void unreserve(Stripe stripe, C client) {
+    acquiredClients.remove(client);
+    stripe.inFlight.decrementAndGet();
+    inUseCounter.dec();
+  }
+
+  private void processPromises() {
+    while (!closed) {
+      Promise<C> promise = promises.peek();
+      if (promise == null) {
+        return;
+      }
+
+      if (promise.isDone()) {
+        removePromise(promise);
+        continue;
+      }
+
+      C client;
+      try {
+        client = tryAcquire();
+      } catch (IOException | TTransportException ex) {
+        logger.error("{}, failed to create client", options.getServiceName(), ex);
+        if (removePromise(promise)) {
+          promise.setException(ex);
+        }
+        return;
+      }
+
+      if (client == null) {
+        return;
+      }
+
+      if (!removePromise(promise) || !promise.set(client)) {
+        // Someone else took care of this promise, give the client back
+        release(client, true);
+      }
+    }
+  }
+
+  private Promise<C> pollPromise() {
+    Promise<C> promise = promises.poll();
+    if (promise != null) {
+      promiseCount.decrementAndGet();
+      waitersCounter.dec();
+    }
+    return promise;
+  }
+
+  private boolean removePromise(Promise<C> promise) {
+    if (promises.remove(promise)) {
+      promiseCount.decrementAndGet();
+      waitersCounter.dec();
+      return true;
+    }
+    return false;
+  }
+
+  private void setTimeout(final Promise<C> promise) {
+    ScheduledFuture<Void> schedule = scheduledExecutor.schedule(() -> {
+      if (promise.setException(new ClientPoolException(String.format("Timeout acquiring client: %s", serverSet)))) {
+        removePromise(promise);
+      }
+      return null;
+    }, options.getTimeoutMs(), TimeUnit.MILLISECONDS);
+    promise.setTimeout(schedule);
+  }
+
+  private void closeIdleClients(Stripe stripe) {
+    C client;
+    while ((client = stripe.idleClients.poll()) != null) {
+      removeClient(client);
+    }
+  }
+
+  private void removeClient(C client) {
+    logger.debug("remove client {}", client);
+    clientCount.decrementAndGet();
+    TNonblockingSSLTransport transport = clientTransportMap.remove(client);
+    if (transport != null) {
+      transport.close();
+    }
+  }
+
+  private C createNewClient(InetSocketAddress address) throws IOException, TTransportException {
+    return ClientPoolUtils.createNewClient(
+        address,
+        this.protocolFactory,
+        this.options,
+        this.thriftFactory,
+        this.clientFactory,
+        this.clientTransportMap,
+        this.sslContext);
+  }
+
+  /**
+   * Idle clients and outstanding request count of a single server.
+   */
+  private class Stripe {
+    private final InetSocketAddress address;
+    private final Queue<C> idleClients;
+    private final AtomicInteger inFlight;
+
+    private Stripe(InetSocketAddress address) {
+      this.address = address;
+      this.idleClients = new ConcurrentLinkedQueue<>();
+      this.inFlight = new AtomicInteger(0);
+    }
+  }
+}
@@ -42,16 +42,20 @@ import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Guice module for Thrift.
  */
 public class ThriftModule extends AbstractModule {
   private static final Object lock = new Object();
+  private static final int HOST_CLIENT_POOL_REGISTRY_MAX_CLIENTS = 1024;
+  private static final long HOST_CLIENT_POOL_REGISTRY_IDLE_TIMEOUT_MINUTES = 5;
   private volatile SecureRandom secureRandom;
   private volatile TProtocolFactory tProtocolFactory;
   private TAsyncSSLClientManager tAsyncSSLClientManager;
   private volatile ScheduledExecutorService scheduledExecutorService;
+  private volatile ClientPoolRegistry<Host.AsyncSSLClient> hostClientPoolRegistry;
   private final SSLContext sslContext;
 
   public ThriftModule(SSLContext sslContext) {
@@ -220,7 +224,32 @@ public class ThriftModule extends AbstractModule {
     ClientPoolFactory<Host.AsyncSSLClient> clientPoolFactory = getClientPoolFactory(tAsyncSSLClientFactory);
     ClientProxyFactory<Host.AsyncSSLClient> clientProxyFactory = getClientProxyFactory(type);
 
-    return new HostClientFactoryImpl(clientPoolFactory, clientProxyFactory);
+    return new HostClientFactoryImpl(clientPoolFactory, clientProxyFactory,
+        getHostClientPoolRegistry(clientPoolFactory));
+  }
+
+  /**
+   * Returns the registry of per-host client pools shared by all the host clients.
+   *
+   * @param clientPoolFactory
+   * @return
+   */
+  private ClientPoolRegistry<Host.AsyncSSLClient> getHostClientPoolRegistry(
+      ClientPoolFactory<Host.AsyncSSLClient> clientPoolFactory) {
+    if (hostClientPoolRegistry == null) {
+      synchronized (lock) {
+        if (hostClientPoolRegistry == null) {
+          hostClientPoolRegistry = new ClientPoolRegistry<>(
+              clientPoolFactory,
+              getClientPoolTimer(),
+              HostClient.SHARED_CLIENT_POOL_OPTIONS,
+              HOST_CLIENT_POOL_REGISTRY_MAX_CLIENTS,
+              HOST_CLIENT_POOL_REGISTRY_IDLE_TIMEOUT_MINUTES,
+              TimeUnit.MINUTES);
+        }
+      }
+    }
+    return hostClientPoolRegistry;
   }
 
   /**
@@ -229,17 +258,20 @@ public class ThriftModule extends AbstractModule {
   private static class HostClientFactoryImpl implements HostClientFactory {
     private ClientPoolFactory<Host.AsyncSSLClient> clientPoolFactory;
     private ClientProxyFactory<Host.AsyncSSLClient> clientProxyFactory;
+    private ClientPoolRegistry<Host.AsyncSSLClient> clientPoolRegistry;
 
     private HostClientFactoryImpl(
         ClientPoolFactory<Host.AsyncSSLClient> clientPoolFactory,
-        ClientProxyFactory<Host.AsyncSSLClient> clientProxyFactory) {
+        ClientProxyFactory<Host.AsyncSSLClient> clientProxyFactory,
+        ClientPoolRegistry<Host.AsyncSSLClient> clientPoolRegistry) {
       this.clientPoolFactory = clientPoolFactory;
       this.clientProxyFactory = clientProxyFactory;
+      this.clientPoolRegistry = clientPoolRegistry;
     }
 
     @Override
     public HostClient create() {
-      return new HostClient(clientProxyFactory, clientPoolFactory);
+      return new HostClient(clientProxyFactory, clientPoolFactory, clientPoolRegistry);
     }
   }
 
@@ -288,6 +320,17 @@ public class ThriftModule extends AbstractModule {
 
     @Override
     public ClientPool<T> create(ServerSet serverSet, ClientPoolOptions options) {
+      if (options.isStriped()) {
+        return new StripedClientPool<>(
+            tAsyncSSLClientFactory,
+            sslContext,
+            protocolFactory,
+            thriftFactory,
+            scheduledExecutorService,
+            serverSet,
+            options);
+      }
+
       return new ClientPoolImpl<>(
           random,
           tAsyncSSLClientFactory,
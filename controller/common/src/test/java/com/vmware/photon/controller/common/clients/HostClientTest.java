@@ -31,7 +31,10 @@ import com.vmware.photon.controller.common.clients.exceptions.StaleGenerationExc
 import com.vmware.photon.controller.common.clients.exceptions.SystemErrorException;
 import com.vmware.photon.controller.common.clients.exceptions.VmNotFoundException;
 import com.vmware.photon.controller.common.ssl.KeyStoreUtils;
+import com.vmware.photon.controller.common.thrift.ClientPool;
 import com.vmware.photon.controller.common.thrift.ClientPoolFactory;
+import com.vmware.photon.controller.common.thrift.ClientPoolRegistry;
+import com.vmware.photon.controller.common.thrift.ClientProxy;
 import com.vmware.photon.controller.common.thrift.ClientProxyFactory;
 import com.vmware.photon.controller.common.thrift.ModuleFactory;
 import com.vmware.photon.controller.common.thrift.ThriftModule;
@@ -149,12 +152,15 @@ import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anySetOf;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
@@ -162,6 +168,7 @@ import static org.testng.Assert.fail;
 import javax.net.ssl.SSLContext;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -333,6 +340,114 @@ public class HostClientTest {
     }
   }
 
+  /**
+   * This class implements tests for host clients sharing per-host pools through a {@link ClientPoolRegistry}.
+   */
+  public class SharedClientPoolTest {
+
+    private static final int LONG_RUNNING_CALLS = 8;
+
+    private ClientPoolFactory<Host.AsyncSSLClient> clientPoolFactory;
+    private ClientProxyFactory<Host.AsyncSSLClient> clientProxyFactory;
+    private ClientPoolRegistry<Host.AsyncSSLClient> clientPoolRegistry;
+    private ClientPool<Host.AsyncSSLClient> sharedPool;
+    private ClientPool<Host.AsyncSSLClient> longRunningPool;
+    private Host.AsyncSSLClient sharedClient;
+    private Host.AsyncSSLClient longRunningClient;
+
+    @BeforeMethod
+    @SuppressWarnings("unchecked")
+    private void setUp() {
+      clientPoolFactory = mock(ClientPoolFactory.class);
+      clientProxyFactory = mock(ClientProxyFactory.class);
+      clientPoolRegistry = mock(ClientPoolRegistry.class);
+      sharedPool = mock(ClientPool.class);
+      longRunningPool = mock(ClientPool.class);
+      sharedClient = mock(Host.AsyncSSLClient.class);
+      longRunningClient = mock(Host.AsyncSSLClient.class);
+
+      ClientProxy<Host.AsyncSSLClient> sharedProxy = mock(ClientProxy.class);
+      doReturn(sharedClient).when(sharedProxy).get();
+      ClientProxy<Host.AsyncSSLClient> longRunningProxy = mock(ClientProxy.class);
+      doReturn(longRunningClient).when(longRunningProxy).get();
+
+      doReturn(sharedPool).when(clientPoolRegistry).getClientPool(any(InetSocketAddress.class));
+      doReturn(longRunningPool).when(clientPoolFactory)
+          .create(anySetOf(InetSocketAddress.class), eq(HostClient.CLIENT_POOL_OPTIONS));
+      doReturn(sharedProxy).when(clientProxyFactory).create(sharedPool);
+      doReturn(longRunningProxy).when(clientProxyFactory).create(longRunningPool);
+    }
+
+    @AfterMethod
+    private void tearDown() {
+      hostClient = null;
+    }
+
+    private HostClient createHostClient() {
+      HostClient client = new HostClient(clientProxyFactory, clientPoolFactory, clientPoolRegistry);
+      client.setHostIp("127.0.0.1");
+      return client;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLongRunningCallsDoNotUseSharedPool() throws Exception {
+      // The long running calls never complete while the short call runs
+      List<HostClient> longRunningHostClients = new ArrayList<>();
+      for (int i = 0; i < LONG_RUNNING_CALLS; i++) {
+        HostClient client = createHostClient();
+        if (i % 2 == 0) {
+          client.createVm("reservation" + i, null, mock(AsyncMethodCallback.class));
+        } else {
+          client.transferImage("image" + i, "source", "destination", new ServerAddress("127.0.0.2", 8835),
+              mock(AsyncMethodCallback.class));
+        }
+        longRunningHostClients.add(client);
+      }
+
+      VmDisksOpResponse vmDisksOpResponse = new VmDisksOpResponse();
+      vmDisksOpResponse.setResult(VmDiskOpResultCode.OK);
+      final Host.AsyncSSLClient.attach_disks_call attachDisksCall = mock(Host.AsyncSSLClient.attach_disks_call.class);
+      doReturn(vmDisksOpResponse).when(attachDisksCall).getResult();
+      doAnswer(invocation -> {
+        ((AsyncMethodCallback<attach_disks_call>) invocation.getArguments()[1]).onComplete(attachDisksCall);
+        return null;
+      }).when(sharedClient).attach_disks(any(VmDisksAttachRequest.class), any(AsyncMethodCallback.class));
+
+      hostClient = createHostClient();
+      assertThat(hostClient.attachDisks("vmId", Arrays.asList("diskId")), is(vmDisksOpResponse));
+
+      verify(sharedClient, never()).create_vm(any(CreateVmRequest.class), any(AsyncMethodCallback.class));
+      verify(sharedClient, never())
+          .transfer_image(any(TransferImageRequest.class), any(AsyncMethodCallback.class));
+      verify(longRunningClient, times(LONG_RUNNING_CALLS / 2))
+          .create_vm(any(CreateVmRequest.class), any(AsyncMethodCallback.class));
+      verify(longRunningClient, times(LONG_RUNNING_CALLS / 2))
+          .transfer_image(any(TransferImageRequest.class), any(AsyncMethodCallback.class));
+      verify(clientPoolFactory, times(LONG_RUNNING_CALLS))
+          .create(anySetOf(InetSocketAddress.class), eq(HostClient.CLIENT_POOL_OPTIONS));
+
+      for (HostClient client : longRunningHostClients) {
+        client.close();
+      }
+      verify(longRunningPool, times(LONG_RUNNING_CALLS)).close();
+    }
+
+    @Test
+    public void testShortCallKeepsLongRunningClient() throws Exception {
+      hostClient = createHostClient();
+      hostClient.createVm("reservation", null, mock(AsyncMethodCallback.class));
+      hostClient.attachDisks("vmId", Arrays.asList("diskId"), mock(AsyncMethodCallback.class));
+      hostClient.createVm("reservation", null, mock(AsyncMethodCallback.class));
+
+      verify(longRunningPool, never()).close();
+      verify(clientPoolFactory, times(1))
+          .create(anySetOf(InetSocketAddress.class), eq(HostClient.CLIENT_POOL_OPTIONS));
+      verify(longRunningClient, times(2)).create_vm(any(CreateVmRequest.class), any(AsyncMethodCallback.class));
+      verify(sharedClient).attach_disks(any(VmDisksAttachRequest.class), any(AsyncMethodCallback.class));
+    }
+  }
+
   /**
    * This class implements tests for method {@link HostClient.ResponseValidator#checkVmDisksOpError(VmDiskOpError)}
    * checkVmDisksOpError}.
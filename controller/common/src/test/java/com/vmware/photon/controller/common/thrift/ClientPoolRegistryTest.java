@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.thrift;
+
+import com.example.echo.Echoer;
+import com.google.common.util.concurrent.Futures;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link ClientPoolRegistry}.
+ */
+public class ClientPoolRegistryTest {
+
+  private static final ClientPoolOptions OPTIONS = new ClientPoolOptions()
+      .setMaxClients(1)
+      .setMaxWaiters(10)
+      .setServiceName("Echoer");
+
+  @Mock
+  private ClientPoolFactory<Echoer.AsyncSSLClient> clientPoolFactory;
+
+  @Mock
+  private ClientPool<Echoer.AsyncSSLClient> sharedPool;
+
+  @Mock
+  private ClientPool<Echoer.AsyncSSLClient> basicPool;
+
+  @Mock
+  private ScheduledExecutorService executor;
+
+  @Mock
+  private ScheduledFuture<?> evictionTask;
+
+  private Echoer.AsyncSSLClient client;
+
+  private InetSocketAddress address = InetSocketAddress.createUnresolved("127.0.0.1", 8835);
+
+  private ClientPoolRegistry<Echoer.AsyncSSLClient> registry;
+
+  @BeforeMethod
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    client = mock(Echoer.AsyncSSLClient.class);
+    doReturn(evictionTask).when(executor)
+        .scheduleWithFixedDelay(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+    doReturn(sharedPool).when(clientPoolFactory).create(any(ServerSet.class), any(ClientPoolOptions.class));
+    doReturn(basicPool).when(clientPoolFactory)
+        .create(anySetOf(InetSocketAddress.class), any(ClientPoolOptions.class));
+    doReturn(Futures.immediateFuture(client)).when(sharedPool).acquire();
+    doReturn(Futures.immediateFuture(client)).when(basicPool).acquire();
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    if (registry != null) {
+      registry.close();
+      registry = null;
+    }
+  }
+
+  @Test
+  public void testPoolIsSharedAcrossClients() throws Throwable {
+    registry = new ClientPoolRegistry<>(clientPoolFactory, executor, OPTIONS, 10, 1, TimeUnit.MINUTES);
+
+    ClientPool<Echoer.AsyncSSLClient> first = registry.getClientPool(address);
+    first.release(first.acquire().get(), true);
+    first.close();
+
+    ClientPool<Echoer.AsyncSSLClient> second = registry.getClientPool(address);
+    second.release(second.acquire().get(), true);
+
+    verify(clientPoolFactory, times(1)).create(any(ServerSet.class), any(ClientPoolOptions.class));
+    verify(sharedPool, times(2)).release(client, true);
+    verify(sharedPool, never()).close();
+    assertThat(registry.getPoolCount(), is(1));
+  }
+
+  @Test
+  public void testIdlePoolIsEvicted() throws Throwable {
+    registry = new ClientPoolRegistry<>(clientPoolFactory, executor, OPTIONS, 10, 0, TimeUnit.MINUTES);
+
+    ClientPool<Echoer.AsyncSSLClient> pool = registry.getClientPool(address);
+    Echoer.AsyncSSLClient acquired = pool.acquire().get();
+
+    // A pool with a client in use is never evicted
+    registry.evictIdlePools();
+    assertThat(registry.getPoolCount(), is(1));
+
+    pool.release(acquired, true);
+    Thread.sleep(1);
+    registry.evictIdlePools();
+    assertThat(registry.getPoolCount(), is(0));
+    verify(sharedPool).close();
+  }
+
+  @Test
+  public void testUnhealthyPoolIsRemoved() throws Throwable {
+    registry = new ClientPoolRegistry<>(clientPoolFactory, executor, OPTIONS, 10, 1, TimeUnit.MINUTES);
+
+    ClientPool<Echoer.AsyncSSLClient> pool = registry.getClientPool(address);
+    for (int i = 0; i < 3; i++) {
+      pool.release(pool.acquire().get(), false);
+    }
+
+    assertThat(registry.getPoolCount(), is(0));
+    verify(sharedPool).close();
+  }
+
+  @Test
+  public void testFullRegistryUsesNonSharedPool() throws Throwable {
+    registry = new ClientPoolRegistry<>(clientPoolFactory, executor, OPTIONS, 1, 1, TimeUnit.MINUTES);
+
+    ClientPool<Echoer.AsyncSSLClient> first = registry.getClientPool(address);
+    first.acquire().get();
+
+    Echoer.AsyncSSLClient otherClient = mock(Echoer.AsyncSSLClient.class);
+    doReturn(Futures.immediateFuture(otherClient)).when(basicPool).acquire();
+    ClientPool<Echoer.AsyncSSLClient> second =
+        registry.getClientPool(InetSocketAddress.createUnresolved("127.0.0.2", 8835));
+    second.release(second.acquire().get(), true);
+
+    verify(basicPool).release(otherClient, true);
+    verify(basicPool).close();
+    assertThat(registry.getPoolCount(), is(1));
+    assertThat(registry.getOverflowPoolCount(), is(0));
+  }
+
+  @Test
+  public void testCloseClosesNonSharedPools() throws Throwable {
+    registry = new ClientPoolRegistry<>(clientPoolFactory, executor, OPTIONS, 1, 1, TimeUnit.MINUTES);
+
+    ClientPool<Echoer.AsyncSSLClient> first = registry.getClientPool(address);
+    first.acquire().get();
+
+    Echoer.AsyncSSLClient otherClient = mock(Echoer.AsyncSSLClient.class);
+    doReturn(Futures.immediateFuture(otherClient)).when(basicPool).acquire();
+    ClientPool<Echoer.AsyncSSLClient> second =
+        registry.getClientPool(InetSocketAddress.createUnresolved("127.0.0.2", 8835));
+    second.acquire().get();
+    assertThat(registry.getOverflowPoolCount(), is(1));
+    verify(basicPool, never()).close();
+
+    registry.close();
+    verify(sharedPool).close();
+    verify(basicPool).close();
+    assertThat(registry.getOverflowPoolCount(), is(0));
+  }
+}
@@ -13,6 +13,9 @@
 
 package com.vmware.photon.controller.common.thrift;
 
+import com.vmware.photon.controller.common.logging.LoggingUtils;
+
+import com.example.echo.EchoRequest;
 import com.google.common.util.concurrent.Futures;
 import com.google.inject.TypeLiteral;
 import org.apache.thrift.TApplicationException;
@@ -28,6 +31,7 @@ import org.testng.annotations.Test;
 import static com.example.echo.Echoer.AsyncSSLClient;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -172,6 +176,38 @@ public class ClientProxyImplTest extends PowerMockTestCase {
     verifyNoMoreInteractions(clientPool);
   }
 
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testTracingInfoIsSetOnRequest() throws Exception {
+    when(clientPool.acquire()).thenReturn(Futures.immediateFuture(client));
+    ArgumentCaptor<EchoRequest> requestCaptor = ArgumentCaptor.forClass(EchoRequest.class);
+    final CountDownLatch done = new CountDownLatch(2);
+    doAnswer(new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable {
+        done.countDown();
+        return null;
+      }
+    }).when(client).tracedEcho(requestCaptor.capture(), any(AsyncMethodCallback.class));
+
+    ClientProxyImpl<AsyncSSLClient> proxy = new ClientProxyImpl<>(executor, typeLiteral, clientPool);
+    assertThat(proxy.get() == proxy.get(), is(true));
+
+    LoggingUtils.setRequestId("request-id");
+    try {
+      for (int i = 0; i < 2; i++) {
+        proxy.get().tracedEcho(new EchoRequest("foo"), mock(AsyncMethodCallback.class));
+      }
+    } finally {
+      LoggingUtils.clearRequestId();
+    }
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    for (EchoRequest request : requestCaptor.getAllValues()) {
+      assertThat(request.getTracing_info().getRequest_id(), is("request-id"));
+    }
+  }
+
   private void mockCallSuccess(AsyncSSLClient client) throws Exception {
     doAnswer(new Answer<Object>() {
       @Override
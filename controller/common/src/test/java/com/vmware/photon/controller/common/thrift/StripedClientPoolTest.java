@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.thrift;
+
+import com.vmware.photon.controller.common.ssl.KeyStoreUtils;
+
+import com.example.echo.Echoer;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TNonBlockingSSLSocket;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.powermock.api.mockito.PowerMockito.doAnswer;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+import static org.testng.Assert.fail;
+
+import javax.net.ssl.SSLContext;
+
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link StripedClientPool}.
+ */
+public class StripedClientPoolTest extends PowerMockTestCase {
+
+  @Mock
+  private TAsyncSSLClientFactory<Echoer.AsyncSSLClient> factory;
+
+  @Mock
+  private ScheduledExecutorService executor;
+
+  @Mock
+  private TProtocolFactory protocolFactory;
+
+  @Mock
+  private ThriftFactory thriftFactory;
+
+  private StripedClientPool<Echoer.AsyncSSLClient> pool;
+
+  private Field socketAddressField;
+
+  private SSLContext sslContext = KeyStoreUtils.acceptAllCerts(KeyStoreUtils.THRIFT_PROTOCOL);
+
+  private List<Echoer.AsyncSSLClient> clients;
+
+  private Set<InetSocketAddress> usedServers;
+
+  @BeforeMethod
+  public void setUp() throws Throwable {
+    socketAddressField = org.apache.thrift.transport.TNonBlockingSSLSocket.class.getDeclaredField("socketAddress_");
+    socketAddressField.setAccessible(true);
+    clients = new ArrayList<>();
+    usedServers = new HashSet<>();
+
+    doAnswer((InvocationOnMock invocation) -> {
+      Object socket = invocation.getArguments()[1];
+      usedServers.add((InetSocketAddress) socketAddressField.get(socket));
+      Echoer.AsyncSSLClient client = mock(Echoer.AsyncSSLClient.class);
+      when(client.toString()).thenReturn("client-" + clients.size());
+      clients.add(client);
+      return client;
+    }).when(factory).create(any(TProtocolFactory.class), any(TNonBlockingSSLSocket.class));
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    pool.close();
+    assertThat(pool.getWaiters(), is(0));
+  }
+
+  @Test
+  public void testClientsAreSpreadAcrossServers() throws Throwable {
+    TestServerSet serverSet = new TestServerSet();
+    for (int i = 0; i < 3; i++) {
+      serverSet.addServer(InetSocketAddress.createUnresolved("/127.0.0.1", 80 + i));
+    }
+    createPool(serverSet, 3, 10);
+
+    List<Echoer.AsyncSSLClient> acquiredClients = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      acquiredClients.add(acquireClientFromPool());
+    }
+
+    assertThat(usedServers, is(serverSet.getServers()));
+    assertThat(pool.getClientCount(), is(3));
+
+    for (Echoer.AsyncSSLClient acquiredClient : acquiredClients) {
+      pool.release(acquiredClient, true);
+    }
+  }
+
+  @Test
+  public void testReleasedClientIsReused() throws Throwable {
+    InetSocketAddress address = InetSocketAddress.createUnresolved("/127.0.0.1", 80);
+    createPool(new StaticServerSet(address), 2, 10);
+
+    Echoer.AsyncSSLClient client = acquireClientFromPool();
+    pool.release(client, true);
+    assertThat(pool.getIdleClientCount(address), is(1));
+
+    assertThat(acquireClientFromPool(), is(client));
+    assertThat(clients.size(), is(1));
+    pool.release(client, true);
+  }
+
+  @Test
+  public void testReleasedClientIsHandedToWaiter() throws Throwable {
+    InetSocketAddress address = InetSocketAddress.createUnresolved("/127.0.0.1", 80);
+    createPool(new StaticServerSet(address), 1, 10);
+
+    Echoer.AsyncSSLClient client = acquireClientFromPool();
+    ListenableFuture<Echoer.AsyncSSLClient> waiter = pool.acquire();
+    assertThat(waiter.isDone(), is(false));
+    assertThat(pool.getWaiters(), is(1));
+
+    pool.release(client, true);
+    assertThat(waiter.get(), is(client));
+    assertThat(pool.getWaiters(), is(0));
+    assertThat(pool.getIdleClientCount(address), is(0));
+    pool.release(client, true);
+  }
+
+  @Test
+  public void testUnhealthyClientIsClosed() throws Throwable {
+    InetSocketAddress address = InetSocketAddress.createUnresolved("/127.0.0.1", 80);
+    createPool(new StaticServerSet(address), 1, 10);
+
+    pool.release(acquireClientFromPool(), false);
+    assertThat(pool.getClientCount(), is(0));
+    assertThat(pool.getIdleClientCount(address), is(0));
+
+    pool.release(acquireClientFromPool(), true);
+    assertThat(clients.size(), is(2));
+  }
+
+  @Test
+  public void testTooManyWaiters() throws Throwable {
+    InetSocketAddress address = InetSocketAddress.createUnresolved("/127.0.0.1", 80);
+    createPool(new StaticServerSet(address), 1, 1);
+
+    Echoer.AsyncSSLClient client = acquireClientFromPool();
+    ListenableFuture<Echoer.AsyncSSLClient> waiter = pool.acquire();
+
+    try {
+      Futures.get(pool.acquire(), 100, TimeUnit.MILLISECONDS, ClientPoolException.class);
+      fail("acquire client should have thrown an exception");
+    } catch (ClientPoolException ex) {
+      assertThat(ex.getCause().getMessage(), is("Too many waiters"));
+    }
+
+    pool.release(client, true);
+    pool.release(waiter.get(), true);
+  }
+
+  private void createPool(ServerSet serverSet, int maxClients, int maxWaiters) {
+    ClientPoolOptions options = new ClientPoolOptions().setMaxClients(maxClients).setMaxWaiters(maxWaiters);
+    pool = new StripedClientPool<>(
+        factory,
+        sslContext,
+        protocolFactory,
+        thriftFactory,
+        executor,
+        serverSet,
+        options);
+  }
+
+  private Echoer.AsyncSSLClient acquireClientFromPool() throws ClientPoolException {
+    ListenableFuture<Echoer.AsyncSSLClient> futureClient = pool.acquire();
+    return Futures.get(futureClient, 100, TimeUnit.MILLISECONDS, ClientPoolException.class);
+  }
+}
@@ -36,6 +36,9 @@ public class SchedulingConfig {
   @JsonProperty("utilization_transfer_ratio")
   private double utilizationTransferRatio = 9.0;
 
+  @JsonProperty("in_memory_constraint_checker")
+  private boolean inMemoryConstraintChecker = false;
+
   public long getPlaceTimeoutMs() {
     return placeTimeoutMs;
   }
@@ -59,4 +62,12 @@ public class SchedulingConfig {
   public void setUtilizationTransferRatio(double utilizationTransferRatio) {
     this.utilizationTransferRatio = utilizationTransferRatio;
   }
+
+  public boolean isInMemoryConstraintChecker() {
+    return inMemoryConstraintChecker;
+  }
+
+  public void setInMemoryConstraintChecker(boolean inMemoryConstraintChecker) {
+    this.inMemoryConstraintChecker = inMemoryConstraintChecker;
+  }
 }
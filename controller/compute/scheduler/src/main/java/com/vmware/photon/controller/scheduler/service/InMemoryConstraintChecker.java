@@ -0,0 +1,434 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.scheduler.service;
+
+import com.vmware.photon.controller.api.model.UsageTag;
+import com.vmware.photon.controller.cloudstore.xenon.entity.DatastoreService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.HostService;
+import com.vmware.photon.controller.common.clients.exceptions.ConstraintMatchingDatastoreNotFoundException;
+import com.vmware.photon.controller.common.xenon.ServiceUriPaths;
+import com.vmware.photon.controller.common.xenon.ServiceUtils;
+import com.vmware.photon.controller.common.zookeeper.gen.ServerAddress;
+import com.vmware.photon.controller.resource.gen.ResourceConstraint;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Operation.CompletionHandler;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This scheduler constraint checker finds candidate hosts in an in-memory index instead of querying Lucene.
+ * <p>
+ * {@link CloudStoreConstraintChecker} sorts about half of the HostService documents on a random scheduling constant
+ * for every request, which dominates placement latency when there are thousands of hosts. This checker keeps an
+ * {@link InMemoryHostIndex} of the local HostService and DatastoreService documents, kept current by continuous
+ * queries, and picks uniformly random candidates from it.
+ * <p>
+ * Until the index is loaded, and whenever a continuous query fails until it is resubscribed and reloaded, requests
+ * are handed to a fallback checker.
+ */
+public class InMemoryConstraintChecker implements ConstraintChecker {
+
+  private static final Logger logger = LoggerFactory.getLogger(InMemoryConstraintChecker.class);
+
+  private static final long INITIAL_RETRY_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+  private static final long MAX_RETRY_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private final Random random = new Random();
+
+  private final ServiceHost xenonHost;
+  private final ConstraintChecker fallback;
+  private final InMemoryHostIndex index;
+  private final DocumentTracker hostTracker;
+  private final DocumentTracker datastoreTracker;
+
+  private volatile boolean stopped;
+
+  public InMemoryConstraintChecker(ServiceHost xenonHost, ConstraintChecker fallback) {
+    this.xenonHost = xenonHost;
+    this.fallback = fallback;
+    this.index = new InMemoryHostIndex();
+    this.hostTracker = new DocumentTracker(HostService.State.class);
+    this.datastoreTracker = new DocumentTracker(DatastoreService.State.class);
+  }
+
+  /**
+   * Subscribes to HostService and DatastoreService changes, then loads the current documents. This must be called
+   * once the Xenon host is started.
+   */
+  public void start() {
+    hostTracker.subscribe();
+    datastoreTracker.subscribe();
+  }
+
+  /**
+   * Stops the subscriptions and deletes the continuous queries. Requests are handed to the fallback checker from
+   * then on.
+   */
+  public void stop() {
+    stopped = true;
+    hostTracker.unsubscribe();
+    datastoreTracker.unsubscribe();
+  }
+
+  /**
+   * @return whether candidates are picked from the index rather than by the fallback checker
+   */
+  public boolean isLoaded() {
+    return !stopped && hostTracker.isCurrent() && datastoreTracker.isCurrent();
+  }
+
+  /**
+   * Synchronous interface to getCandidates().
+   * This should *only* be used by tests, not production code
+   */
+  @Override
+  public Map<String, ServerAddress> getCandidatesSync(List<ResourceConstraint> constraints, int numCandidates) {
+    List<Map<String, ServerAddress>> candidates = new ArrayList<>();
+    CountDownLatch latch = new CountDownLatch(1);
+    getCandidates(constraints, numCandidates, (c, ex) -> {
+      candidates.add(c);
+      latch.countDown();
+    });
+
+    boolean done = false;
+    while (!done) {
+      try {
+        latch.await();
+        done = true;
+      } catch (InterruptedException ex) {
+        // Thread was interrupted, retry await()
+      }
+    }
+    return candidates.get(0);
+  }
+
+  @Override
+  public void getCandidates(
+      List<ResourceConstraint> constraints,
+      int numCandidates,
+      GetCandidatesCompletion completion) {
+
+    if (!isLoaded()) {
+      fallback.getCandidates(constraints, numCandidates, completion);
+      return;
+    }
+
+    Map<String, ServerAddress> candidates;
+    try {
+      if (numCandidates <= 0) {
+        throw new IllegalArgumentException("getCandidates called with invalid numCandidates: " + numCandidates);
+      }
+      candidates = index.select(toIndexConstraints(constraints), numCandidates, random);
+    } catch (Exception ex) {
+      logger.warn("getCandidates() failed: " + ex);
+      completion.handle(new HashMap<>(), ex);
+      return;
+    }
+
+    logger.info("Found {} candidate(s): {}", candidates.size(), Utils.toJson(false, false, candidates.values()));
+    completion.handle(candidates, null);
+  }
+
+  /**
+   * Translates the resource constraints into index constraints, with the same semantics as the query built by
+   * {@link CloudStoreConstraintChecker}.
+   */
+  private List<InMemoryHostIndex.Constraint> toIndexConstraints(List<ResourceConstraint> resourceConstraints)
+      throws ConstraintMatchingDatastoreNotFoundException {
+    List<InMemoryHostIndex.Constraint> constraints = new ArrayList<>();
+    boolean managementOnly = false;
+
+    if (resourceConstraints != null) {
+      for (ResourceConstraint constraint : resourceConstraints) {
+        if (constraint == null) {
+          continue;
+        }
+
+        List<String> values = constraint.getValues();
+        boolean negative = constraint.isSetNegative() && constraint.isNegative();
+        switch (constraint.getType()) {
+          case AVAILABILITY_ZONE:
+            addConstraint(constraints, InMemoryHostIndex.Field.AVAILABILITY_ZONE, values, negative);
+            break;
+          case DATASTORE:
+            addConstraint(constraints, InMemoryHostIndex.Field.DATASTORE, values, negative);
+            break;
+          case DATASTORE_TAG:
+            if (values != null && !values.isEmpty()) {
+              List<String> datastoreIds = index.getDatastoresWithAnyTag(values);
+              if (datastoreIds.isEmpty()) {
+                throw new ConstraintMatchingDatastoreNotFoundException(
+                    "Cannot satisfy constraint for datastore tag(s) '" + values.toString() + "' found");
+              }
+              addConstraint(constraints, InMemoryHostIndex.Field.DATASTORE, datastoreIds, negative);
+            }
+            break;
+          case HOST:
+            addConstraint(constraints, InMemoryHostIndex.Field.HOST, values, negative);
+            break;
+          case MANAGEMENT_ONLY:
+            managementOnly = true;
+            addConstraint(constraints, InMemoryHostIndex.Field.USAGE_TAG,
+                Collections.singletonList(UsageTag.MGMT.name()), negative);
+            break;
+          case NETWORK:
+            addConstraint(constraints, InMemoryHostIndex.Field.NETWORK, values, negative);
+            break;
+          case VIRTUAL_NETWORK:
+            // All hosts are wired to all virtual networks, so this constraint is ignored
+            break;
+          default:
+            throw new IllegalStateException("Invalid resource constraint: " + constraint);
+        }
+      }
+    }
+
+    // Without a management only constraint, only the cloud hosts are candidates
+    if (!managementOnly) {
+      addConstraint(constraints, InMemoryHostIndex.Field.USAGE_TAG,
+          Collections.singletonList(UsageTag.CLOUD.name()), false);
+    }
+
+    return constraints;
+  }
+
+  private static void addConstraint(List<InMemoryHostIndex.Constraint> constraints, InMemoryHostIndex.Field field,
+                                    List<String> values, boolean negative) {
+    if (values != null && !values.isEmpty()) {
+      constraints.add(new InMemoryHostIndex.Constraint(field, values, negative));
+    }
+  }
+
+  /**
+   * This class keeps the index current for one document kind. It subscribes to a continuous query first and only
+   * then loads the current documents, so that no update is missed in between. When the query or the subscription
+   * fails, the kind is not current until it is resubscribed and reloaded, which is retried with exponential
+   * backoff.
+   */
+  private class DocumentTracker {
+    private final Class<? extends ServiceDocument> documentType;
+
+    private long retryIntervalMillis = INITIAL_RETRY_INTERVAL_MILLIS;
+    private String queryLink;
+    private URI subscriberUri;
+    private volatile boolean current;
+
+    DocumentTracker(Class<? extends ServiceDocument> documentType) {
+      this.documentType = documentType;
+    }
+
+    boolean isCurrent() {
+      return current;
+    }
+
+    void subscribe() {
+      if (stopped) {
+        return;
+      }
+
+      sendQuery(documentType, true, (op, failure) -> {
+        if (failure != null) {
+          retryLater("Creating the continuous query", failure, this::subscribe);
+          return;
+        }
+
+        String link = op.getBody(QueryTask.class).documentSelfLink;
+        AtomicReference<URI> subscriber = new AtomicReference<>();
+        Operation subscribe = Operation
+            .createPost(UriUtils.buildUri(xenonHost, link))
+            .setReferer(xenonHost.getUri())
+            .setCompletion((subscribeOp, subscribeFailure) -> {
+              if (subscribeFailure != null) {
+                delete(link, subscriber.get());
+                retryLater("Subscribing to the continuous query", subscribeFailure, this::subscribe);
+                return;
+              }
+
+              load();
+            });
+
+        subscriber.set(xenonHost.startSubscriptionService(subscribe, (notification) -> {
+          notification.complete();
+          applyDocuments(notification.getBody(QueryTask.class));
+        }));
+
+        synchronized (this) {
+          queryLink = link;
+          subscriberUri = subscriber.get();
+        }
+
+        if (stopped) {
+          unsubscribe();
+        }
+      });
+    }
+
+    void unsubscribe() {
+      String link;
+      URI subscriber;
+      synchronized (this) {
+        link = queryLink;
+        subscriber = subscriberUri;
+        queryLink = null;
+        subscriberUri = null;
+      }
+
+      current = false;
+      delete(link, subscriber);
+    }
+
+    /**
+     * Loads all the local documents into the index. Documents which were updated through notifications in the
+     * meantime are not overwritten by older versions, and documents which were deleted while the kind was not
+     * subscribed to are removed.
+     */
+    private void load() {
+      if (stopped) {
+        return;
+      }
+
+      long loadStartMicros = Utils.getNowMicrosUtc();
+      sendQuery(documentType, false, (op, failure) -> {
+        if (failure != null) {
+          retryLater("Loading the documents", failure, this::load);
+          return;
+        }
+
+        Set<String> ids = applyDocuments(op.getBody(QueryTask.class));
+        if (documentType == HostService.State.class) {
+          index.retainHosts(ids, loadStartMicros);
+        } else {
+          index.retainDatastores(ids, loadStartMicros);
+        }
+
+        synchronized (this) {
+          retryIntervalMillis = INITIAL_RETRY_INTERVAL_MILLIS;
+        }
+
+        current = true;
+        logger.info("Loaded {} into the host index, which has {} host(s)", documentType.getSimpleName(),
+            index.getHostCount());
+      });
+    }
+
+    private void retryLater(String action, Throwable failure, Runnable retry) {
+      current = false;
+      if (stopped) {
+        return;
+      }
+
+      long intervalMillis;
+      synchronized (this) {
+        intervalMillis = retryIntervalMillis;
+        retryIntervalMillis = Math.min(retryIntervalMillis * 2, MAX_RETRY_INTERVAL_MILLIS);
+      }
+
+      logger.warn("{} for {} failed, retrying in {} ms: {}", action, documentType.getSimpleName(), intervalMillis,
+          failure);
+      xenonHost.schedule(retry, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void delete(String link, URI subscriber) {
+      if (link == null) {
+        return;
+      }
+
+      URI queryUri = UriUtils.buildUri(xenonHost, link);
+      if (subscriber != null) {
+        xenonHost.stopSubscriptionService(Operation.createDelete(queryUri).setReferer(xenonHost.getUri()),
+            subscriber);
+      }
+
+      xenonHost.sendRequest(Operation.createDelete(queryUri).setReferer(xenonHost.getUri()));
+    }
+  }
+
+  private void sendQuery(Class<? extends ServiceDocument> documentType, boolean continuous,
+                         CompletionHandler handler) {
+    QueryTask.Builder builder = continuous ? QueryTask.Builder.create() : QueryTask.Builder.createDirectTask();
+    builder.setQuery(QueryTask.Query.Builder.create().addKindFieldClause(documentType).build())
+        .addOption(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
+    if (continuous) {
+      builder.addOption(QueryTask.QuerySpecification.QueryOption.CONTINUOUS);
+    }
+
+    QueryTask query = builder.build();
+    if (continuous) {
+      query.documentExpirationTimeMicros = Long.MAX_VALUE;
+    }
+
+    xenonHost.sendRequest(Operation
+        .createPost(UriUtils.buildUri(xenonHost, ServiceUriPaths.CORE_LOCAL_QUERY_TASKS))
+        .setBody(query)
+        .setReferer(xenonHost.getUri())
+        .setCompletion(handler));
+  }
+
+  /**
+   * @return the IDs of the documents which were not deleted
+   */
+  private Set<String> applyDocuments(QueryTask queryTask) {
+    Set<String> ids = new HashSet<>();
+    if (queryTask == null || queryTask.results == null || queryTask.results.documents == null) {
+      return ids;
+    }
+
+    String hostKind = Utils.buildKind(HostService.State.class);
+    for (Map.Entry<String, Object> entry : queryTask.results.documents.entrySet()) {
+      ServiceDocument document = Utils.fromJson(entry.getValue(), ServiceDocument.class);
+      String id = ServiceUtils.getIDFromDocumentSelfLink(entry.getKey());
+      boolean deleted = Operation.Action.DELETE.name().equals(document.documentUpdateAction);
+      if (!deleted) {
+        ids.add(id);
+      }
+
+      if (hostKind.equals(document.documentKind)) {
+        if (deleted) {
+          index.removeHost(id);
+        } else {
+          index.updateHost(id, Utils.fromJson(entry.getValue(), HostService.State.class));
+        }
+      } else {
+        if (deleted) {
+          index.removeDatastore(id);
+        } else {
+          DatastoreService.State datastore = Utils.fromJson(entry.getValue(), DatastoreService.State.class);
+          index.updateDatastore(id, datastore.tags, datastore.documentUpdateTimeMicros);
+        }
+      }
+    }
+
+    return ids;
+  }
+}
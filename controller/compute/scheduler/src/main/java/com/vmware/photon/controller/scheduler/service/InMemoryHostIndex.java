@@ -0,0 +1,421 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.scheduler.service;
+
+import com.vmware.photon.controller.api.model.AgentState;
+import com.vmware.photon.controller.api.model.HostState;
+import com.vmware.photon.controller.cloudstore.xenon.entity.HostService;
+import com.vmware.photon.controller.common.zookeeper.gen.ServerAddress;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class keeps an in-memory index of the hosts and datastores the scheduler places on.
+ * <p>
+ * Hosts are indexed by reported datastore, reported network, availability zone, usage tag and agent state, and
+ * datastores are indexed by tag. Selecting candidates starts from the smallest index entry matching a positive
+ * constraint, filters it with the remaining constraints, and picks a uniform random sample of the matching hosts
+ * with reservoir sampling, so the cost is linear in the number of candidates rather than in the number of hosts.
+ * <p>
+ * It is thread-safe.
+ */
+class InMemoryHostIndex {
+
+  /**
+   * The host properties a constraint can match on.
+   */
+  enum Field {
+    AVAILABILITY_ZONE,
+    DATASTORE,
+    HOST,
+    NETWORK,
+    USAGE_TAG,
+  }
+
+  /**
+   * This class represents a single constraint: a host matches when the field has any of the values, or none of
+   * them when the constraint is negative.
+   */
+  static class Constraint {
+    final Field field;
+    final Set<String> values;
+    final boolean negative;
+
+    Constraint(Field field, Collection<String> values, boolean negative) {
+      this.field = field;
+      this.values = new HashSet<>(values);
+      this.negative = negative;
+    }
+  }
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final Map<String, HostEntry> hosts = new HashMap<>();
+  private final Map<String, Set<String>> hostsByDatastore = new HashMap<>();
+  private final Map<String, Set<String>> hostsByNetwork = new HashMap<>();
+  private final Map<String, Set<String>> hostsByAvailabilityZone = new HashMap<>();
+  private final Map<String, Set<String>> hostsByUsageTag = new HashMap<>();
+  private final Map<AgentState, Set<String>> hostsByAgentState = new EnumMap<>(AgentState.class);
+
+  private final Map<String, DatastoreEntry> datastores = new HashMap<>();
+
+  /**
+   * Adds or updates a host. Updates older than the indexed version of the host are ignored.
+   */
+  void updateHost(String hostId, HostService.State host) {
+    HostEntry entry = new HostEntry(hostId, host);
+    lock.writeLock().lock();
+    try {
+      HostEntry current = hosts.get(hostId);
+      if (current != null) {
+        if (current.updateTimeMicros > entry.updateTimeMicros) {
+          return;
+        }
+        unindex(current);
+      }
+      hosts.put(hostId, entry);
+      index(entry);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  void removeHost(String hostId) {
+    lock.writeLock().lock();
+    try {
+      HostEntry current = hosts.remove(hostId);
+      if (current != null) {
+        unindex(current);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Adds or updates the tags of a datastore. Updates older than the indexed version of the datastore are ignored.
+   */
+  void updateDatastore(String datastoreId, Set<String> tags, long updateTimeMicros) {
+    lock.writeLock().lock();
+    try {
+      DatastoreEntry current = datastores.get(datastoreId);
+      if (current == null || current.updateTimeMicros <= updateTimeMicros) {
+        datastores.put(datastoreId, new DatastoreEntry(tags, updateTimeMicros));
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  void removeDatastore(String datastoreId) {
+    lock.writeLock().lock();
+    try {
+      datastores.remove(datastoreId);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes the hosts which are not in hostIds and were last updated before updatedBeforeMicros, so that hosts
+   * deleted while the index was not subscribed to changes are dropped when it is reloaded.
+   */
+  void retainHosts(Set<String> hostIds, long updatedBeforeMicros) {
+    lock.writeLock().lock();
+    try {
+      List<HostEntry> removed = new ArrayList<>();
+      for (HostEntry host : hosts.values()) {
+        if (!hostIds.contains(host.hostId) && host.updateTimeMicros < updatedBeforeMicros) {
+          removed.add(host);
+        }
+      }
+
+      for (HostEntry host : removed) {
+        hosts.remove(host.hostId);
+        unindex(host);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes the datastores which are not in datastoreIds and were last updated before updatedBeforeMicros.
+   */
+  void retainDatastores(Set<String> datastoreIds, long updatedBeforeMicros) {
+    lock.writeLock().lock();
+    try {
+      datastores.entrySet().removeIf((datastore) -> !datastoreIds.contains(datastore.getKey()) &&
+          datastore.getValue().updateTimeMicros < updatedBeforeMicros);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  int getHostCount() {
+    lock.readLock().lock();
+    try {
+      return hosts.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the IDs of the datastores which have any of the tags
+   */
+  List<String> getDatastoresWithAnyTag(Collection<String> tags) {
+    List<String> result = new ArrayList<>();
+    lock.readLock().lock();
+    try {
+      for (Map.Entry<String, DatastoreEntry> datastore : datastores.entrySet()) {
+        if (!Collections.disjoint(datastore.getValue().tags, tags)) {
+          result.add(datastore.getKey());
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return result;
+  }
+
+  /**
+   * Picks up to numCandidates random hosts which are ready, have an active agent and match all the constraints.
+   *
+   * @return map from host ID to agent address
+   */
+  Map<String, ServerAddress> select(List<Constraint> constraints, int numCandidates, Random random) {
+    HostEntry[] reservoir = new HostEntry[numCandidates];
+    int matchCount = 0;
+
+    lock.readLock().lock();
+    try {
+      for (String hostId : getCandidateHostIds(constraints)) {
+        HostEntry host = hosts.get(hostId);
+        if (host == null || !host.isSchedulable() || !matchesAll(host, constraints)) {
+          continue;
+        }
+
+        if (matchCount < numCandidates) {
+          reservoir[matchCount] = host;
+        } else {
+          int slot = random.nextInt(matchCount + 1);
+          if (slot < numCandidates) {
+            reservoir[slot] = host;
+          }
+        }
+        matchCount++;
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    Map<String, ServerAddress> candidates = new LinkedHashMap<>();
+    for (int i = 0; i < Math.min(matchCount, numCandidates); i++) {
+      candidates.put(reservoir[i].hostId, reservoir[i].address);
+    }
+    return candidates;
+  }
+
+  /**
+   * Returns the smallest set of hosts which is known to contain all the matching hosts: the union of the index
+   * entries of the most selective positive constraint, or all the hosts with an active agent.
+   */
+  private Collection<String> getCandidateHostIds(List<Constraint> constraints) {
+    Collection<String> best = hostsByAgentState.getOrDefault(AgentState.ACTIVE, Collections.emptySet());
+    int bestSize = best.size();
+
+    for (Constraint constraint : constraints) {
+      if (constraint.negative) {
+        continue;
+      }
+
+      Map<String, Set<String>> index = getIndex(constraint.field);
+      int size = 0;
+      for (String value : constraint.values) {
+        if (index == null) {
+          size++;
+        } else {
+          size += index.getOrDefault(value, Collections.emptySet()).size();
+        }
+      }
+
+      if (size < bestSize) {
+        bestSize = size;
+        best = constraint.values;
+        if (index != null) {
+          Set<String> union = new HashSet<>();
+          for (String value : constraint.values) {
+            union.addAll(index.getOrDefault(value, Collections.emptySet()));
+          }
+          best = union;
+        }
+      }
+    }
+
+    return best;
+  }
+
+  private Map<String, Set<String>> getIndex(Field field) {
+    switch (field) {
+      case AVAILABILITY_ZONE:
+        return hostsByAvailabilityZone;
+      case DATASTORE:
+        return hostsByDatastore;
+      case NETWORK:
+        return hostsByNetwork;
+      case USAGE_TAG:
+        return hostsByUsageTag;
+      default:
+        // Host constraints are matched on the host ID itself
+        return null;
+    }
+  }
+
+  private static boolean matchesAll(HostEntry host, List<Constraint> constraints) {
+    for (Constraint constraint : constraints) {
+      boolean matches;
+      switch (constraint.field) {
+        case AVAILABILITY_ZONE:
+          matches = host.availabilityZoneId != null && constraint.values.contains(host.availabilityZoneId);
+          break;
+        case DATASTORE:
+          matches = !Collections.disjoint(host.datastores, constraint.values);
+          break;
+        case HOST:
+          matches = constraint.values.contains(host.hostId);
+          break;
+        case NETWORK:
+          matches = !Collections.disjoint(host.networks, constraint.values);
+          break;
+        case USAGE_TAG:
+          matches = !Collections.disjoint(host.usageTags, constraint.values);
+          break;
+        default:
+          throw new IllegalStateException("Invalid constraint field: " + constraint.field);
+      }
+
+      if (matches == constraint.negative) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private void index(HostEntry host) {
+    addAll(hostsByDatastore, host.datastores, host.hostId);
+    addAll(hostsByNetwork, host.networks, host.hostId);
+    addAll(hostsByUsageTag, host.usageTags, host.hostId);
+    if (host.availabilityZoneId != null) {
+      hostsByAvailabilityZone.computeIfAbsent(host.availabilityZoneId, (k) -> new HashSet<>()).add(host.hostId);
+    }
+    if (host.agentState != null) {
+      hostsByAgentState.computeIfAbsent(host.agentState, (k) -> new HashSet<>()).add(host.hostId);
+    }
+  }
+
+  private void unindex(HostEntry host) {
+    removeAll(hostsByDatastore, host.datastores, host.hostId);
+    removeAll(hostsByNetwork, host.networks, host.hostId);
+    removeAll(hostsByUsageTag, host.usageTags, host.hostId);
+    if (host.availabilityZoneId != null) {
+      removeAll(hostsByAvailabilityZone, Collections.singleton(host.availabilityZoneId), host.hostId);
+    }
+    if (host.agentState != null) {
+      Set<String> hostIds = hostsByAgentState.get(host.agentState);
+      if (hostIds != null) {
+        hostIds.remove(host.hostId);
+      }
+    }
+  }
+
+  private static void addAll(Map<String, Set<String>> index, Set<String> keys, String hostId) {
+    for (String key : keys) {
+      index.computeIfAbsent(key, (k) -> new HashSet<>()).add(hostId);
+    }
+  }
+
+  private static void removeAll(Map<String, Set<String>> index, Set<String> keys, String hostId) {
+    for (String key : keys) {
+      Set<String> hostIds = index.get(key);
+      if (hostIds != null) {
+        hostIds.remove(hostId);
+        if (hostIds.isEmpty()) {
+          index.remove(key);
+        }
+      }
+    }
+  }
+
+  private static Set<String> copyOf(Set<String> values) {
+    return values != null ? new HashSet<>(values) : Collections.emptySet();
+  }
+
+  /**
+   * This class represents the indexed properties of a host.
+   */
+  private static class HostEntry {
+    final String hostId;
+    final ServerAddress address;
+    final HostState state;
+    final AgentState agentState;
+    final String availabilityZoneId;
+    final Set<String> datastores;
+    final Set<String> networks;
+    final Set<String> usageTags;
+    final long updateTimeMicros;
+
+    HostEntry(String hostId, HostService.State host) {
+      this.hostId = hostId;
+      this.address = new ServerAddress(host.hostAddress, host.agentPort != null ? host.agentPort : 0);
+      this.state = host.state;
+      this.agentState = host.agentState;
+      this.availabilityZoneId = host.availabilityZoneId;
+      this.datastores = copyOf(host.reportedDatastores);
+      this.networks = copyOf(host.reportedNetworks);
+      this.usageTags = copyOf(host.usageTags);
+      this.updateTimeMicros = host.documentUpdateTimeMicros;
+    }
+
+    boolean isSchedulable() {
+      return state == HostState.READY && agentState == AgentState.ACTIVE;
+    }
+  }
+
+  /**
+   * This class represents the indexed properties of a datastore.
+   */
+  private static class DatastoreEntry {
+    final Set<String> tags;
+    final long updateTimeMicros;
+
+    DatastoreEntry(Set<String> tags, long updateTimeMicros) {
+      this.tags = copyOf(tags);
+      this.updateTimeMicros = updateTimeMicros;
+    }
+  }
+}
@@ -17,6 +17,7 @@ import com.vmware.photon.controller.common.xenon.XenonServiceGroup;
 import com.vmware.photon.controller.common.xenon.host.PhotonControllerXenonHost;
 import com.vmware.photon.controller.scheduler.SchedulingConfig;
 import com.vmware.photon.controller.scheduler.service.ConstraintChecker;
+import com.vmware.photon.controller.scheduler.service.InMemoryConstraintChecker;
 import com.vmware.photon.controller.scheduler.service.ScoreCalculator;
 import com.vmware.photon.controller.scheduler.xenon.task.PlacementTaskService;
 
@@ -34,11 +35,13 @@ public class SchedulerServiceGroup
   private static final Logger logger = LoggerFactory.getLogger(SchedulerServiceGroup.class);
 
   private final ScoreCalculator scoreCalculator;
-  private ConstraintChecker checker;
+  private final SchedulingConfig schedulerConfig;
+  private volatile ConstraintChecker checker;
   private PhotonControllerXenonHost photonControllerXenonHost;
 
   public SchedulerServiceGroup(SchedulingConfig schedulerConfig, ConstraintChecker constraintChecker) {
     this.scoreCalculator = new ScoreCalculator(schedulerConfig);
+    this.schedulerConfig = schedulerConfig;
     this.checker = constraintChecker;
   }
 
@@ -68,6 +71,21 @@ public class SchedulerServiceGroup
   public void start() throws Throwable {
     // Start all the factories
     photonControllerXenonHost.startFactory(PlacementTaskService.class, PlacementTaskService::createFactory);
+
+    if (schedulerConfig.isInMemoryConstraintChecker()) {
+      // The configured checker keeps serving placements until the in-memory index is loaded
+      logger.info("Using the in-memory constraint checker");
+      InMemoryConstraintChecker inMemoryChecker = new InMemoryConstraintChecker(photonControllerXenonHost, checker);
+      inMemoryChecker.start();
+      checker = inMemoryChecker;
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (checker instanceof InMemoryConstraintChecker) {
+      ((InMemoryConstraintChecker) checker).stop();
+    }
   }
 
   /**
@@ -63,6 +63,32 @@ public class PlacementTask extends ServiceDocument {
   @Min(1000)
   public Long timeoutMs;
 
+  /**
+   * The number of OK responses after which the placement completes without waiting for the remaining
+   * hosts. When this is set, the placement also completes with the responses received so far once
+   * timeoutMs expires. Zero means wait for every queried host to respond.
+   */
+  @DefaultInteger(0)
+  @Min(0)
+  public Integer minOkResponses;
+
+  /**
+   * The number of extra candidates to select in addition to sampleHostCount. These are used as backups:
+   * a place request is sent to a backup host when a queried host fails to score the resource or when
+   * hedgeDelayMs expires before the placement completes.
+   */
+  @DefaultInteger(0)
+  @Min(0)
+  public Integer backupHostCount;
+
+  /**
+   * The length of time to wait for responses before sending place requests to the backup hosts.
+   * Zero means backup hosts are only used to replace hosts that fail to score the resource.
+   */
+  @DefaultLong(0)
+  @Min(0)
+  public Long hedgeDelayMs;
+
   /**
    * The result of the placement from the queried hosts. It can be success or a type of error.
    */
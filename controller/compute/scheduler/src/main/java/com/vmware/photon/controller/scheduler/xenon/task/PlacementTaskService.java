@@ -21,6 +21,7 @@ import com.vmware.photon.controller.common.clients.exceptions.NoSuchResourceExce
 import com.vmware.photon.controller.common.clients.exceptions.RpcException;
 import com.vmware.photon.controller.common.clients.exceptions.SystemErrorException;
 import com.vmware.photon.controller.common.logging.LoggingUtils;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
 import com.vmware.photon.controller.common.xenon.CloudStoreHelper;
 import com.vmware.photon.controller.common.xenon.ControlFlags;
 import com.vmware.photon.controller.common.xenon.InitializationUtils;
@@ -52,21 +53,22 @@ import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.common.UtilsHelper;
 import com.vmware.xenon.services.common.QueryTask;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Sets;
 import org.apache.thrift.TException;
 import org.apache.thrift.async.AsyncMethodCallback;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -79,12 +81,25 @@ import java.util.stream.Collectors;
  * the highest placement score. See {@link ScoreCalculator} for the placement score
  * calculation logic.
  * <p>
+ * Optionally, the task can complete as soon as a minimum number of hosts accepted the request
+ * (or the timeout expires), and extra candidates can be selected as backups for hosts that
+ * fail or are slow to respond. See {@link PlacementTask#minOkResponses} and
+ * {@link PlacementTask#backupHostCount}.
+ * <p>
  * (1) http://www.eecs.berkeley.edu/~keo/publications/sosp13-final17.pdf
  */
 public class PlacementTaskService extends StatefulService {
 
   public static final String FACTORY_LINK = ServiceUriPaths.SCHEDULER_ROOT + "/placement";
 
+  @VisibleForTesting
+  static final Timer PLACE_OK_TIMER =
+      DefaultMetricRegistry.REGISTRY.timer(MetricRegistry.name(PlacementTaskService.class, "place", "ok"));
+
+  @VisibleForTesting
+  static final Timer PLACE_ERROR_TIMER =
+      DefaultMetricRegistry.REGISTRY.timer(MetricRegistry.name(PlacementTaskService.class, "place", "error"));
+
   // This completion handler provides a new constraint to be added to a set of constraints
   interface CalculateConstraintCompletion {
     public void handle(ResourceConstraint newConstraint, Exception exception);
@@ -265,7 +280,7 @@ public class PlacementTaskService extends StatefulService {
     ServiceUtils.logInfo(this, "Sending place requests to %s with timeout %d ms", candidates, currentState.timeoutMs);
     Stopwatch scoreCandidatesStopwatch = Stopwatch.createStarted();
 
-    queryHostsForScores(currentState.resource, candidates,
+    queryHostsForScores(currentState, candidates,
         (okResponses, allResponses) -> {
           ServiceUtils.logInfo(this, "elapsed-time flat-place-score-candidates %d milliseconds",
               scoreCandidatesStopwatch.elapsed(TimeUnit.MILLISECONDS));
@@ -323,7 +338,7 @@ public class PlacementTaskService extends StatefulService {
     SchedulerServiceGroup scheduler = (SchedulerServiceGroup) ((PhotonControllerXenonHost) getHost()).getScheduler();
     ConstraintChecker checker = scheduler.getConstraintChecker();
     try {
-      checker.getCandidates(constraints, currentState.sampleHostCount, completion);
+      checker.getCandidates(constraints, currentState.sampleHostCount + currentState.backupHostCount, completion);
     } catch (Exception ex) {
       completion.handle(null, ex);
     }
@@ -338,23 +353,129 @@ public class PlacementTaskService extends StatefulService {
    * - The set of "okResponses", from hosts that could accept the resource. This will include the score.
    * - All responses. These are used when there's an error, to summarize what went wrong
    *
-   * @param resource
+   * The first sampleHostCount candidates are queried immediately, the remaining ones are kept as backups.
+   * See {@link ScoreCollector} for when backups are used and when the completion is called.
+   *
+   * @param currentState
    * @param candidates
    * @param completion
    */
   private void queryHostsForScores(
-      Resource resource,
+      PlacementTask currentState,
       Map<String, ServerAddress> candidates,
       ScoreResultsCompletion completion) {
 
-    final int numCandidates = candidates.size();
-    final Set<PlaceResponse> okResponses = Sets.newConcurrentHashSet();
-    final Set<PlaceResponse> allResponses = Sets.newConcurrentHashSet();
-    final AtomicInteger resultCount = new AtomicInteger(0);
+    List<Map.Entry<String, ServerAddress>> entries = new ArrayList<>(candidates.entrySet());
+    int primaryCount = Math.min(entries.size(), currentState.sampleHostCount);
+    ScoreCollector collector = new ScoreCollector(currentState.resource, currentState.minOkResponses,
+        entries.subList(primaryCount, entries.size()), completion);
+
+    if (currentState.minOkResponses > 0) {
+      getHost().schedule(() -> collector.onDeadline(currentState.timeoutMs),
+          currentState.timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    if (currentState.hedgeDelayMs > 0 && primaryCount < entries.size()) {
+      getHost().schedule(collector::onHedgeDelay, currentState.hedgeDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    collector.sendPlaceRequests(entries.subList(0, primaryCount));
+  }
+
+  /**
+   * Collects the place responses of a single placement request and decides when scoring is complete.
+   *
+   * Scoring completes when:
+   * - minOkResponses is set and that many hosts responded with OK, or
+   * - minOkResponses is set and the deadline expired, or
+   * - every host that was sent a place request has responded.
+   *
+   * Whenever a host fails to score the resource, the next backup host (if any) is queried instead. When the
+   * hedge delay expires, all remaining backup hosts are queried at once. Responses arriving after completion
+   * are only used to record per-host place latency.
+   */
+  private class ScoreCollector {
+    private final Resource resource;
+    private final int minOkResponses;
+    private final LinkedList<Map.Entry<String, ServerAddress>> backups;
+    private final ScoreResultsCompletion completion;
+    private final String requestId;
+    private final Set<PlaceResponse> okResponses = new HashSet<>();
+    private final Set<PlaceResponse> allResponses = new HashSet<>();
+    private int pendingCount;
+    private boolean completed;
+
+    ScoreCollector(
+        Resource resource,
+        int minOkResponses,
+        List<Map.Entry<String, ServerAddress>> backups,
+        ScoreResultsCompletion completion) {
+      this.resource = resource;
+      this.minOkResponses = minOkResponses;
+      this.backups = new LinkedList<>(backups);
+      this.completion = completion;
+      this.requestId = LoggingUtils.getRequestId();
+    }
+
+    void sendPlaceRequests(List<Map.Entry<String, ServerAddress>> entries) {
+      synchronized (this) {
+        if (completed) {
+          return;
+        }
+        // Account for all the requests up front: responses can arrive (or sending can fail)
+        // before we are done sending, and we must not complete until every request is counted.
+        pendingCount += entries.size();
+      }
+
+      for (Map.Entry<String, ServerAddress> entry : entries) {
+        if (isCompleted()) {
+          break;
+        }
+        sendPlaceRequest(entry);
+      }
+    }
+
+    void onHedgeDelay() {
+      restoreRequestId();
+      List<Map.Entry<String, ServerAddress>> entries;
+      synchronized (this) {
+        if (completed || backups.isEmpty()) {
+          return;
+        }
+        entries = new ArrayList<>(backups);
+        backups.clear();
+      }
+
+      ServiceUtils.logInfo(PlacementTaskService.this, "Sending backup place requests to %s", entries);
+      sendPlaceRequests(entries);
+    }
+
+    void onDeadline(long timeoutMs) {
+      restoreRequestId();
+      Set<PlaceResponse> okSnapshot;
+      Set<PlaceResponse> allSnapshot;
+      synchronized (this) {
+        if (completed) {
+          return;
+        }
+        completed = true;
+        okSnapshot = new HashSet<>(okResponses);
+        allSnapshot = new HashSet<>(allResponses);
+      }
+
+      ServiceUtils.logWarning(PlacementTaskService.this,
+          "Placement deadline of %d ms expired with %d OK responses out of %d responses",
+          timeoutMs, okSnapshot.size(), allSnapshot.size());
+      completion.handle(okSnapshot, allSnapshot);
+    }
+
+    private synchronized boolean isCompleted() {
+      return completed;
+    }
 
-    final String requestId = LoggingUtils.getRequestId();
-    for (Map.Entry<String, ServerAddress> entry : candidates.entrySet()) {
+    private void sendPlaceRequest(Map.Entry<String, ServerAddress> entry) {
       ServerAddress address = entry.getValue();
+      Stopwatch placeWatch = Stopwatch.createStarted();
       try {
         // The thrift "place" request is a request to get a score from the host indicating how good
         // of a match the host is for the resource request.
@@ -365,14 +486,11 @@ public class PlacementTaskService extends StatefulService {
         hostClient.place(resource, new AsyncMethodCallback<Host.AsyncSSLClient.place_call>() {
           @Override
           public void onComplete(Host.AsyncSSLClient.place_call call) {
-            if (requestId != null) {
-              // We have to do more work here than normal: the PlaceResponse
-              // doesn't have the request ID and we're in a new thread, so we
-              // need to set it correctly for both Xenon (ServiceUtils.log*) and regular
-              // logging.
-              LoggingUtils.setRequestId(requestId);
-              UtilsHelper.setThreadContextId(requestId);
-            }
+            // We have to do more work here than normal: the PlaceResponse
+            // doesn't have the request ID and we're in a new thread, so we
+            // need to set it correctly for both Xenon (ServiceUtils.log*) and regular
+            // logging.
+            restoreRequestId();
             PlaceResponse response;
             try {
               response = call.getResult();
@@ -380,26 +498,21 @@ public class PlacementTaskService extends StatefulService {
               onError(ex);
               return;
             }
-            ServiceUtils.logInfo(PlacementTaskService.this, "Received a place response from %s: %s", entry, response);
+            // A host which cannot place the resource still responds: only OK results count as OK latency.
+            long elapsedMs = recordPlaceLatency(response.getResult() == PlaceResultCode.OK, placeWatch);
+            ServiceUtils.logInfo(PlacementTaskService.this, "Received a place response from %s in %d ms: %s",
+                entry, elapsedMs, response);
             if (response.getAddress() == null) {
               response.setAddress(address);
             }
-            allResponses.add(response);
-            if (response.getResult() == PlaceResultCode.OK) {
-              okResponses.add(response);
-            }
-            if (resultCount.addAndGet(1) == numCandidates) {
-              completion.handle(okResponses, allResponses);
-            }
+            onResponse(response);
           }
 
           @Override
           public void onError(Exception ex) {
-            if (requestId != null) {
-              // See comments above in onComplete()
-              LoggingUtils.setRequestId(requestId);
-              UtilsHelper.setThreadContextId(requestId);
-            }
+            // See comments above in onComplete()
+            restoreRequestId();
+            recordPlaceLatency(false, placeWatch);
             ServiceUtils.logWarning(PlacementTaskService.this, "Failed to get a placement response from %s: %s",
                 entry, ex);
             PlaceResponse errorResponse = new PlaceResponse();
@@ -409,10 +522,7 @@ public class PlacementTaskService extends StatefulService {
             if (errorResponse.getAddress() == null) {
               errorResponse.setAddress(address);
             }
-            allResponses.add(errorResponse);
-            if (resultCount.addAndGet(1) == numCandidates) {
-              completion.handle(okResponses, allResponses);
-            }
+            onResponse(errorResponse);
           }
         });
       } catch (RpcException ex) {
@@ -423,12 +533,61 @@ public class PlacementTaskService extends StatefulService {
         errorResponse.setResult(PlaceResultCode.SYSTEM_ERROR);
         errorResponse.setError(String.format("Failed to send placement request to %s: %s",
             entry, ex.getMessage()));
-        allResponses.add(errorResponse);
-        if (resultCount.addAndGet(1) == numCandidates) {
-          completion.handle(okResponses, allResponses);
+        onResponse(errorResponse);
+      }
+    }
+
+    private void onResponse(PlaceResponse response) {
+      Map.Entry<String, ServerAddress> backup = null;
+      Set<PlaceResponse> okSnapshot = null;
+      Set<PlaceResponse> allSnapshot = null;
+      synchronized (this) {
+        if (completed) {
+          return;
+        }
+
+        pendingCount--;
+        allResponses.add(response);
+        if (response.getResult() == PlaceResultCode.OK) {
+          okResponses.add(response);
+        } else if (!backups.isEmpty()) {
+          backup = backups.removeFirst();
+          pendingCount++;
         }
+
+        if ((minOkResponses > 0 && okResponses.size() >= minOkResponses) || pendingCount == 0) {
+          completed = true;
+          okSnapshot = new HashSet<>(okResponses);
+          allSnapshot = new HashSet<>(allResponses);
+        }
+      }
+
+      if (okSnapshot != null) {
+        completion.handle(okSnapshot, allSnapshot);
+      } else if (backup != null) {
+        ServiceUtils.logInfo(PlacementTaskService.this, "Sending backup place request to %s", backup);
+        sendPlaceRequest(backup);
       }
     }
+
+    private void restoreRequestId() {
+      if (requestId != null) {
+        LoggingUtils.setRequestId(requestId);
+        UtilsHelper.setThreadContextId(requestId);
+      }
+    }
+  }
+
+  /**
+   * Records the place latency of a host in the default metric registry. There is one timer per outcome rather than
+   * per host, so the number of metrics does not grow with the number of hosts.
+   *
+   * @return the elapsed time in milliseconds
+   */
+  private static long recordPlaceLatency(boolean succeeded, Stopwatch placeWatch) {
+    long elapsedMs = placeWatch.elapsed(TimeUnit.MILLISECONDS);
+    (succeeded ? PLACE_OK_TIMER : PLACE_ERROR_TIMER).update(elapsedMs, TimeUnit.MILLISECONDS);
+    return elapsedMs;
   }
 
   /**
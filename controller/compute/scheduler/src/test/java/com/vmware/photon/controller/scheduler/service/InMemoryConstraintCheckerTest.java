@@ -0,0 +1,318 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.scheduler.service;
+
+import com.vmware.photon.controller.api.model.AgentState;
+import com.vmware.photon.controller.api.model.HostState;
+import com.vmware.photon.controller.api.model.UsageTag;
+import com.vmware.photon.controller.cloudstore.xenon.entity.DatastoreService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.DatastoreServiceFactory;
+import com.vmware.photon.controller.cloudstore.xenon.entity.HostService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.HostServiceFactory;
+import com.vmware.photon.controller.cloudstore.xenon.helpers.TestEnvironment;
+import com.vmware.photon.controller.common.clients.exceptions.ConstraintMatchingDatastoreNotFoundException;
+import com.vmware.photon.controller.common.xenon.CloudStoreHelper;
+import com.vmware.photon.controller.common.zookeeper.gen.ServerAddress;
+import com.vmware.photon.controller.resource.gen.ResourceConstraint;
+import com.vmware.photon.controller.resource.gen.ResourceConstraintType;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class implements tests for {@link InMemoryConstraintChecker}.
+ *
+ * The resource constraints are translated into index constraints, so each test checks that the in-memory checker
+ * selects exactly the hosts which {@link CloudStoreConstraintChecker} selects from the same documents.
+ */
+public class InMemoryConstraintCheckerTest {
+
+  private static final int NUM_DATASTORES = 4;
+  private static final int NUM_CLOUD_HOSTS = 6;
+  private static final int NUM_MGMT_HOSTS = 3;
+
+  // Larger than the number of hosts, so that both checkers return every matching host
+  private static final int NUM_CANDIDATES = 100;
+
+  private TestEnvironment cloudStoreEnvironment;
+  private CloudStoreConstraintChecker cloudStoreChecker;
+  private InMemoryConstraintChecker inMemoryChecker;
+
+  @BeforeClass
+  public void setUpClass() throws Throwable {
+    cloudStoreEnvironment = TestEnvironment.create(1);
+    ServiceHost host = cloudStoreEnvironment.getHosts()[0];
+    cloudStoreChecker = new CloudStoreConstraintChecker(
+        new CloudStoreHelper(cloudStoreEnvironment.getServerSet()), host);
+    inMemoryChecker = new InMemoryConstraintChecker(host, cloudStoreChecker);
+    inMemoryChecker.start();
+
+    for (int i = 0; i < NUM_DATASTORES; i++) {
+      DatastoreService.State datastore = new DatastoreService.State();
+      datastore.id = "ds-" + i;
+      datastore.name = datastore.id;
+      datastore.type = "SHARED_VMFS";
+      datastore.tags = new HashSet<>(Arrays.asList("tag-" + i, "tag-all"));
+      datastore.documentSelfLink = datastore.id;
+      createDocument(DatastoreServiceFactory.SELF_LINK, datastore);
+    }
+
+    for (int i = 0; i < NUM_CLOUD_HOSTS; i++) {
+      createDocument(HostServiceFactory.SELF_LINK, createHost("cloud-host-" + i, i, UsageTag.CLOUD, AgentState.ACTIVE));
+    }
+
+    for (int i = 0; i < NUM_MGMT_HOSTS; i++) {
+      createDocument(HostServiceFactory.SELF_LINK, createHost("mgmt-host-" + i, i, UsageTag.MGMT, AgentState.ACTIVE));
+    }
+
+    // Hosts which do not respond are never candidates
+    createDocument(HostServiceFactory.SELF_LINK, createHost("cloud-host-missing", 0, UsageTag.CLOUD,
+        AgentState.MISSING));
+
+    waitForIndex();
+  }
+
+  @AfterClass
+  public void tearDownClass() throws Throwable {
+    if (inMemoryChecker != null) {
+      inMemoryChecker.stop();
+      inMemoryChecker = null;
+    }
+
+    if (cloudStoreEnvironment != null) {
+      cloudStoreEnvironment.stop();
+      cloudStoreEnvironment = null;
+    }
+  }
+
+  @DataProvider(name = "constraints")
+  public Object[][] getConstraints() {
+    return new Object[][]{
+        {"no constraints", null},
+        {"empty constraints", Collections.emptyList()},
+        {"datastore", Arrays.asList(
+            constraint(ResourceConstraintType.DATASTORE, false, "ds-0"))},
+        {"any of the datastores", Arrays.asList(
+            constraint(ResourceConstraintType.DATASTORE, false, "ds-0", "ds-1"))},
+        {"not the datastore", Arrays.asList(
+            constraint(ResourceConstraintType.DATASTORE, true, "ds-0"))},
+        {"not any of the datastores", Arrays.asList(
+            constraint(ResourceConstraintType.DATASTORE, true, "ds-0", "ds-1"))},
+        {"datastore tag", Arrays.asList(
+            constraint(ResourceConstraintType.DATASTORE_TAG, false, "tag-1"))},
+        {"any of the datastore tags", Arrays.asList(
+            constraint(ResourceConstraintType.DATASTORE_TAG, false, "tag-1", "tag-2"))},
+        {"not the datastore tag", Arrays.asList(
+            constraint(ResourceConstraintType.DATASTORE_TAG, true, "tag-1"))},
+        {"datastore tag shared by all the datastores", Arrays.asList(
+            constraint(ResourceConstraintType.DATASTORE_TAG, false, "tag-all"))},
+        {"two datastore tags", Arrays.asList(
+            constraint(ResourceConstraintType.DATASTORE_TAG, false, "tag-1", "tag-2"),
+            constraint(ResourceConstraintType.DATASTORE_TAG, true, "tag-2"))},
+        {"availability zone", Arrays.asList(
+            constraint(ResourceConstraintType.AVAILABILITY_ZONE, false, "zone-1"))},
+        {"any of the availability zones", Arrays.asList(
+            constraint(ResourceConstraintType.AVAILABILITY_ZONE, false, "zone-1", "zone-2"))},
+        {"not the availability zone", Arrays.asList(
+            constraint(ResourceConstraintType.AVAILABILITY_ZONE, true, "zone-1"))},
+        {"unknown availability zone", Arrays.asList(
+            constraint(ResourceConstraintType.AVAILABILITY_ZONE, false, "zone-unknown"))},
+        {"network", Arrays.asList(
+            constraint(ResourceConstraintType.NETWORK, false, "network-1"))},
+        {"not the network", Arrays.asList(
+            constraint(ResourceConstraintType.NETWORK, true, "network-1"))},
+        {"hosts", Arrays.asList(
+            constraint(ResourceConstraintType.HOST, false, "cloud-host-1", "mgmt-host-1", "cloud-host-missing"))},
+        {"not the host", Arrays.asList(
+            constraint(ResourceConstraintType.HOST, true, "cloud-host-1"))},
+        {"management only", Arrays.asList(
+            constraint(ResourceConstraintType.MANAGEMENT_ONLY, false))},
+        {"not management only", Arrays.asList(
+            constraint(ResourceConstraintType.MANAGEMENT_ONLY, true))},
+        {"management only with datastore", Arrays.asList(
+            constraint(ResourceConstraintType.MANAGEMENT_ONLY, false),
+            constraint(ResourceConstraintType.DATASTORE, false, "ds-1"))},
+        {"virtual network", Arrays.asList(
+            constraint(ResourceConstraintType.VIRTUAL_NETWORK, false, "virtual-network-1"))},
+        {"combined", Arrays.asList(
+            constraint(ResourceConstraintType.DATASTORE_TAG, false, "tag-0", "tag-1"),
+            constraint(ResourceConstraintType.NETWORK, false, "network-0"),
+            constraint(ResourceConstraintType.AVAILABILITY_ZONE, true, "zone-2"))},
+    };
+  }
+
+  /**
+   * Test that the in-memory checker selects the same hosts as the Cloudstore checker.
+   */
+  @Test(dataProvider = "constraints")
+  public void testSameCandidatesAsCloudStoreChecker(String description, List<ResourceConstraint> constraints)
+      throws Throwable {
+    assertThat(inMemoryChecker.isLoaded(), is(true));
+
+    Result expected = getCandidates(cloudStoreChecker, copy(constraints));
+    Result actual = getCandidates(inMemoryChecker, copy(constraints));
+
+    assertThat(description, expected.exception, is((Throwable) null));
+    assertThat(description, actual.exception, is((Throwable) null));
+    assertThat(description, actual.candidates.keySet(), equalTo(expected.candidates.keySet()));
+    assertThat(description, actual.candidates, equalTo(expected.candidates));
+  }
+
+  /**
+   * Test that both checkers fail when no datastore has any of the requested tags, even for a negative constraint.
+   */
+  @Test
+  public void testUnknownDatastoreTag() throws Throwable {
+    for (boolean negative : Arrays.asList(false, true)) {
+      List<ResourceConstraint> constraints = Arrays.asList(
+          constraint(ResourceConstraintType.DATASTORE_TAG, negative, "tag-unknown"));
+
+      Result expected = getCandidates(cloudStoreChecker, copy(constraints));
+      Result actual = getCandidates(inMemoryChecker, copy(constraints));
+
+      assertThat(expected.exception, instanceOf(ConstraintMatchingDatastoreNotFoundException.class));
+      assertThat(actual.exception, instanceOf(ConstraintMatchingDatastoreNotFoundException.class));
+      assertThat(actual.candidates.isEmpty(), is(true));
+    }
+  }
+
+  @Test
+  public void testInvalidNumCandidates() throws Throwable {
+    CountDownLatch latch = new CountDownLatch(1);
+    List<Throwable> exceptions = new ArrayList<>();
+    inMemoryChecker.getCandidates(null, 0, (candidates, exception) -> {
+      exceptions.add(exception);
+      latch.countDown();
+    });
+
+    assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+    assertThat(exceptions.get(0), instanceOf(IllegalArgumentException.class));
+  }
+
+  /**
+   * Waits until the index is loaded and has all the hosts created by the test.
+   */
+  private void waitForIndex() throws Throwable {
+    Set<String> expected = new HashSet<>();
+    for (int i = 0; i < NUM_CLOUD_HOSTS; i++) {
+      expected.add("cloud-host-" + i);
+    }
+
+    for (int i = 0; i < 1000; i++) {
+      if (inMemoryChecker.isLoaded() &&
+          inMemoryChecker.getCandidatesSync(null, NUM_CANDIDATES).keySet().equals(expected)) {
+        return;
+      }
+      Thread.sleep(10);
+    }
+
+    assertThat(inMemoryChecker.getCandidatesSync(null, NUM_CANDIDATES).keySet(), equalTo(expected));
+  }
+
+  private void createDocument(String factoryLink, Object state) throws Throwable {
+    Operation result = cloudStoreEnvironment.sendPostAndWait(factoryLink, state);
+    assertThat(result.getStatusCode(), equalTo(200));
+  }
+
+  private static HostService.State createHost(String hostId, int index, UsageTag usageTag, AgentState agentState) {
+    HostService.State host = new HostService.State();
+    host.hostAddress = "10.0." + usageTag.ordinal() + "." + index;
+    host.agentPort = 8835;
+    host.userName = "username";
+    host.password = "password";
+    host.state = HostState.READY;
+    host.agentState = agentState;
+    host.reportedDatastores = new HashSet<>(Arrays.asList("ds-" + (index % NUM_DATASTORES)));
+    host.reportedNetworks = new HashSet<>(Arrays.asList("network-" + (index % 2)));
+    host.availabilityZoneId = "zone-" + (index % 3);
+    host.schedulingConstant = (long) index * 1000;
+    host.usageTags = new HashSet<>(Arrays.asList(usageTag.name()));
+    host.metadata = new HashMap<>();
+    if (usageTag == UsageTag.MGMT) {
+      // We don't need the metadata for our test, but it's required by the HostService
+      host.metadata.put("MANAGEMENT_DATASTORE", "ds1");
+      host.metadata.put("MANAGEMENT_NETWORK_DNS_SERVER", "dns");
+      host.metadata.put("MANAGEMENT_NETWORK_GATEWAY", "gateway");
+      host.metadata.put("MANAGEMENT_NETWORK_IP", "ip");
+      host.metadata.put("MANAGEMENT_NETWORK_NETMASK", "mask");
+      host.metadata.put("MANAGEMENT_PORTGROUP", "pg1");
+    }
+    host.documentSelfLink = hostId;
+    return host;
+  }
+
+  private static ResourceConstraint constraint(ResourceConstraintType type, boolean negative, String... values) {
+    ResourceConstraint constraint = new ResourceConstraint(type, values.length == 0 ? null : Arrays.asList(values));
+    if (negative) {
+      constraint.setNegative(true);
+    }
+    return constraint;
+  }
+
+  /**
+   * The Cloudstore checker sets the values of MANAGEMENT_ONLY constraints, so each checker gets its own copy.
+   */
+  private static List<ResourceConstraint> copy(List<ResourceConstraint> constraints) {
+    if (constraints == null) {
+      return null;
+    }
+
+    List<ResourceConstraint> copy = new ArrayList<>();
+    for (ResourceConstraint constraint : constraints) {
+      copy.add(constraint == null ? null : new ResourceConstraint(constraint));
+    }
+    return copy;
+  }
+
+  private static Result getCandidates(ConstraintChecker checker, List<ResourceConstraint> constraints)
+      throws Throwable {
+    CountDownLatch latch = new CountDownLatch(1);
+    Result result = new Result();
+    checker.getCandidates(constraints, NUM_CANDIDATES, (candidates, exception) -> {
+      result.candidates = candidates;
+      result.exception = exception;
+      latch.countDown();
+    });
+
+    assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+    return result;
+  }
+
+  /**
+   * The candidates or the failure returned by a checker.
+   */
+  private static class Result {
+    private volatile Map<String, ServerAddress> candidates;
+    private volatile Throwable exception;
+  }
+}
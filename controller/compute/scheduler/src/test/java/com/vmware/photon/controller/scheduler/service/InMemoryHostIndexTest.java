@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.scheduler.service;
+
+import com.vmware.photon.controller.api.model.AgentState;
+import com.vmware.photon.controller.api.model.HostState;
+import com.vmware.photon.controller.api.model.UsageTag;
+import com.vmware.photon.controller.cloudstore.xenon.entity.HostService;
+import com.vmware.photon.controller.common.zookeeper.gen.ServerAddress;
+
+import com.google.common.collect.ImmutableSet;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * This class implements tests for {@link InMemoryHostIndex}.
+ */
+public class InMemoryHostIndexTest {
+
+  private InMemoryHostIndex index;
+  private Random random;
+
+  @BeforeMethod
+  public void setUp() {
+    index = new InMemoryHostIndex();
+    random = new Random(0);
+    index.updateHost("host1", createHost("ds1", "net1", "zone1", UsageTag.CLOUD, AgentState.ACTIVE, 1));
+    index.updateHost("host2", createHost("ds2", "net1", "zone1", UsageTag.CLOUD, AgentState.ACTIVE, 1));
+    index.updateHost("host3", createHost("ds2", "net2", "zone2", UsageTag.MGMT, AgentState.ACTIVE, 1));
+    index.updateHost("host4", createHost("ds1", "net2", "zone2", UsageTag.CLOUD, AgentState.MISSING, 1));
+  }
+
+  @Test
+  public void testSelectOnlySchedulableHosts() {
+    assertThat(select(10).keySet(), containsInAnyOrder("host1", "host2", "host3"));
+  }
+
+  @Test
+  public void testSelectWithConstraints() {
+    assertThat(select(10, constraint(InMemoryHostIndex.Field.DATASTORE, false, "ds2")).keySet(),
+        containsInAnyOrder("host2", "host3"));
+    assertThat(select(10,
+        constraint(InMemoryHostIndex.Field.DATASTORE, false, "ds2"),
+        constraint(InMemoryHostIndex.Field.USAGE_TAG, false, UsageTag.CLOUD.name())).keySet(),
+        containsInAnyOrder("host2"));
+    assertThat(select(10, constraint(InMemoryHostIndex.Field.NETWORK, true, "net1")).keySet(),
+        containsInAnyOrder("host3"));
+    assertThat(select(10, constraint(InMemoryHostIndex.Field.HOST, false, "host1", "host4")).keySet(),
+        containsInAnyOrder("host1"));
+    assertThat(select(10, constraint(InMemoryHostIndex.Field.AVAILABILITY_ZONE, false, "zone3")).isEmpty(),
+        is(true));
+  }
+
+  @Test
+  public void testSelectLimitsCandidates() {
+    Map<String, Integer> selections = new HashMap<>();
+    for (int i = 0; i < 3000; i++) {
+      Map<String, ServerAddress> candidates = select(1);
+      assertThat(candidates.size(), is(1));
+      selections.merge(candidates.keySet().iterator().next(), 1, Integer::sum);
+    }
+
+    // Each of the three schedulable hosts should be picked about a third of the time
+    for (String hostId : Arrays.asList("host1", "host2", "host3")) {
+      assertThat(selections.get(hostId) > 800, is(true));
+    }
+  }
+
+  @Test
+  public void testUpdateAndRemoveHost() {
+    index.updateHost("host4", createHost("ds1", "net2", "zone2", UsageTag.CLOUD, AgentState.ACTIVE, 2));
+    assertThat(select(10, constraint(InMemoryHostIndex.Field.DATASTORE, false, "ds1")).keySet(),
+        containsInAnyOrder("host1", "host4"));
+
+    // Older updates are ignored
+    index.updateHost("host4", createHost("ds1", "net2", "zone2", UsageTag.CLOUD, AgentState.MISSING, 1));
+    assertThat(select(10, constraint(InMemoryHostIndex.Field.DATASTORE, false, "ds1")).keySet(),
+        containsInAnyOrder("host1", "host4"));
+
+    index.removeHost("host1");
+    assertThat(select(10, constraint(InMemoryHostIndex.Field.DATASTORE, false, "ds1")).keySet(),
+        containsInAnyOrder("host4"));
+    assertThat(index.getHostCount(), is(3));
+  }
+
+  @Test
+  public void testRetainHosts() {
+    index.updateHost("host2", createHost("ds2", "net1", "zone1", UsageTag.CLOUD, AgentState.ACTIVE, 3));
+
+    // host2 was updated after the load started, so it is kept even though the load did not return it
+    index.retainHosts(ImmutableSet.of("host1"), 2);
+    assertThat(select(10).keySet(), containsInAnyOrder("host1", "host2"));
+    assertThat(index.getHostCount(), is(2));
+  }
+
+  @Test
+  public void testRetainDatastores() {
+    index.updateDatastore("ds1", ImmutableSet.of("tag1"), 1);
+    index.updateDatastore("ds2", ImmutableSet.of("tag1"), 1);
+    index.updateDatastore("ds3", ImmutableSet.of("tag1"), 3);
+
+    index.retainDatastores(ImmutableSet.of("ds1"), 2);
+    assertThat(index.getDatastoresWithAnyTag(Collections.singletonList("tag1")), containsInAnyOrder("ds1", "ds3"));
+  }
+
+  @Test
+  public void testDatastoreTags() {
+    index.updateDatastore("ds1", ImmutableSet.of("tag1", "tag2"), 1);
+    index.updateDatastore("ds2", ImmutableSet.of("tag2"), 1);
+
+    assertThat(index.getDatastoresWithAnyTag(Collections.singletonList("tag1")), containsInAnyOrder("ds1"));
+    assertThat(index.getDatastoresWithAnyTag(Arrays.asList("tag2", "tag3")), containsInAnyOrder("ds1", "ds2"));
+
+    index.removeDatastore("ds1");
+    assertThat(index.getDatastoresWithAnyTag(Collections.singletonList("tag1")).isEmpty(), is(true));
+  }
+
+  private Map<String, ServerAddress> select(int numCandidates, InMemoryHostIndex.Constraint... constraints) {
+    return index.select(Arrays.asList(constraints), numCandidates, random);
+  }
+
+  private static InMemoryHostIndex.Constraint constraint(InMemoryHostIndex.Field field, boolean negative,
+                                                         String... values) {
+    List<String> valueList = Arrays.asList(values);
+    return new InMemoryHostIndex.Constraint(field, valueList, negative);
+  }
+
+  private static HostService.State createHost(String datastore, String network, String availabilityZoneId,
+                                              UsageTag usageTag, AgentState agentState, long updateTimeMicros) {
+    HostService.State host = new HostService.State();
+    host.hostAddress = "127.0.0.1";
+    host.agentPort = 8835;
+    host.state = HostState.READY;
+    host.agentState = agentState;
+    host.availabilityZoneId = availabilityZoneId;
+    host.reportedDatastores = ImmutableSet.of(datastore);
+    host.reportedNetworks = ImmutableSet.of(network);
+    host.usageTags = ImmutableSet.of(usageTag.name());
+    host.documentUpdateTimeMicros = updateTimeMicros;
+    return host;
+  }
+}
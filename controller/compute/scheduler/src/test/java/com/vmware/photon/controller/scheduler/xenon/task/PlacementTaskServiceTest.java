@@ -448,6 +448,215 @@ public class PlacementTaskServiceTest {
       verify(client, times(4)).place(any(), any());
     }
 
+    /**
+     * Test that placement completes once enough hosts respond successfully, without waiting for the others.
+     */
+    @Test
+    public void testPlaceMinOkResponses() throws Throwable {
+      Resource resource = new Resource();
+
+      ImmutableMap<String, ServerAddress> matches = ImmutableMap.of(
+          "h1", new ServerAddress("h1", 1234),
+          "h2", new ServerAddress("h2", 1234),
+          "h3", new ServerAddress("h3", 1234),
+          "h4", new ServerAddress("h4", 1234));
+
+      this.checker.setCandidates(matches);
+
+      PlacementTask placementTask = new PlacementTask();
+      placementTask.resource = resource;
+      placementTask.sampleHostCount = config.getRoot().getMaxFanoutCount();
+      placementTask.timeoutMs = config.getRoot().getPlaceTimeoutMs();
+      placementTask.minOkResponses = 2;
+      placementTask.taskState = new TaskState();
+      placementTask.taskState.stage = TaskState.TaskStage.CREATED;
+      placementTask.taskState.isDirect = true;
+
+      doAnswer((InvocationOnMock invocation) -> {
+        Object[] arguments = invocation.getArguments();
+        @SuppressWarnings("unchecked")
+        AsyncMethodCallback<Host.AsyncSSLClient.place_call> call =
+            (AsyncMethodCallback<Host.AsyncSSLClient.place_call>) arguments[1];
+        PlaceResponse response = new PlaceResponse(PlaceResultCode.OK);
+        response.setScore(new Score(random.nextInt(), random.nextInt()));
+        Host.AsyncSSLClient.place_call placeResponse = mock(Host.AsyncSSLClient.place_call.class);
+        doReturn(response).when(placeResponse).getResult();
+        call.onComplete(placeResponse);
+        return null;
+      }).when(client).place(any(), any());
+
+      Operation operation = schedulerTestEnvironment.sendPostAndWait(
+          PlacementTaskService.FACTORY_LINK,
+          placementTask);
+
+      PlacementTask finalState = operation.getBody(PlacementTask.class);
+
+      assertThat(finalState.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      assertThat(finalState.resultCode, is(PlaceResultCode.OK));
+      verify(client, times(2)).place(any(), any());
+    }
+
+    /**
+     * Test that placement completes with the responses received so far when the deadline expires.
+     */
+    @Test
+    public void testPlaceMinOkResponsesDeadline() throws Throwable {
+      Resource resource = new Resource();
+
+      ImmutableMap<String, ServerAddress> matches = ImmutableMap.of(
+          "h1", new ServerAddress("h1", 1234),
+          "h2", new ServerAddress("h2", 1234));
+
+      this.checker.setCandidates(matches);
+
+      PlacementTask placementTask = new PlacementTask();
+      placementTask.resource = resource;
+      placementTask.sampleHostCount = config.getRoot().getMaxFanoutCount();
+      placementTask.timeoutMs = 1000L;
+      placementTask.minOkResponses = 2;
+      placementTask.taskState = new TaskState();
+      placementTask.taskState.stage = TaskState.TaskStage.CREATED;
+      placementTask.taskState.isDirect = true;
+
+      // Only the first host ever responds
+      Set<PlaceResponse> responses = new HashSet<>();
+      doAnswer((InvocationOnMock invocation) -> {
+        Object[] arguments = invocation.getArguments();
+        @SuppressWarnings("unchecked")
+        AsyncMethodCallback<Host.AsyncSSLClient.place_call> call =
+            (AsyncMethodCallback<Host.AsyncSSLClient.place_call>) arguments[1];
+        if (responses.isEmpty()) {
+          PlaceResponse response = new PlaceResponse(PlaceResultCode.OK);
+          response.setScore(new Score(random.nextInt(), random.nextInt()));
+          responses.add(response);
+          Host.AsyncSSLClient.place_call placeResponse = mock(Host.AsyncSSLClient.place_call.class);
+          doReturn(response).when(placeResponse).getResult();
+          call.onComplete(placeResponse);
+        }
+        return null;
+      }).when(client).place(any(), any());
+
+      Operation operation = schedulerTestEnvironment.sendPostAndWait(
+          PlacementTaskService.FACTORY_LINK,
+          placementTask);
+
+      PlacementTask finalState = operation.getBody(PlacementTask.class);
+
+      assertThat(finalState.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      assertThat(finalState.resultCode, is(PlaceResultCode.OK));
+      verify(client, times(2)).place(any(), any());
+    }
+
+    /**
+     * Test that backup hosts are queried when the sampled hosts fail to score the resource.
+     */
+    @Test
+    public void testPlaceBackupHosts() throws Throwable {
+      Resource resource = new Resource();
+
+      ImmutableMap<String, ServerAddress> matches = ImmutableMap.of(
+          "h1", new ServerAddress("h1", 1234),
+          "h2", new ServerAddress("h2", 1234),
+          "h3", new ServerAddress("h3", 1234),
+          "h4", new ServerAddress("h4", 1234));
+
+      this.checker.setCandidates(matches);
+
+      PlacementTask placementTask = new PlacementTask();
+      placementTask.resource = resource;
+      placementTask.sampleHostCount = 2;
+      placementTask.backupHostCount = 2;
+      placementTask.timeoutMs = config.getRoot().getPlaceTimeoutMs();
+      placementTask.taskState = new TaskState();
+      placementTask.taskState.stage = TaskState.TaskStage.CREATED;
+      placementTask.taskState.isDirect = true;
+
+      int numFailures = 2;
+      Set<Integer> failures = new HashSet<>();
+      doAnswer((InvocationOnMock invocation) -> {
+        Object[] arguments = invocation.getArguments();
+        @SuppressWarnings("unchecked")
+        AsyncMethodCallback<Host.AsyncSSLClient.place_call> call =
+            (AsyncMethodCallback<Host.AsyncSSLClient.place_call>) arguments[1];
+        if (failures.size() < numFailures) {
+          failures.add(failures.size());
+          call.onError(new Exception());
+        } else {
+          PlaceResponse response = new PlaceResponse(PlaceResultCode.OK);
+          response.setScore(new Score(random.nextInt(), random.nextInt()));
+          Host.AsyncSSLClient.place_call placeResponse = mock(Host.AsyncSSLClient.place_call.class);
+          doReturn(response).when(placeResponse).getResult();
+          call.onComplete(placeResponse);
+        }
+        return null;
+      }).when(client).place(any(), any());
+
+      Operation operation = schedulerTestEnvironment.sendPostAndWait(
+          PlacementTaskService.FACTORY_LINK,
+          placementTask);
+
+      PlacementTask finalState = operation.getBody(PlacementTask.class);
+
+      assertThat(finalState.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      assertThat(finalState.resultCode, is(PlaceResultCode.OK));
+      verify(client, times(4)).place(any(), any());
+    }
+
+    /**
+     * Test that the place latency of a host which responds but cannot place the resource is not recorded as OK.
+     */
+    @Test
+    public void testPlaceLatencyRecordedByResult() throws Throwable {
+      Resource resource = new Resource();
+
+      ImmutableMap<String, ServerAddress> matches = ImmutableMap.of(
+          "h1", new ServerAddress("h1", 1234),
+          "h2", new ServerAddress("h2", 1234));
+
+      this.checker.setCandidates(matches);
+
+      PlacementTask placementTask = new PlacementTask();
+      placementTask.resource = resource;
+      placementTask.sampleHostCount = 2;
+      placementTask.timeoutMs = config.getRoot().getPlaceTimeoutMs();
+      placementTask.taskState = new TaskState();
+      placementTask.taskState.stage = TaskState.TaskStage.CREATED;
+      placementTask.taskState.isDirect = true;
+
+      Set<Integer> responses = new HashSet<>();
+      doAnswer((InvocationOnMock invocation) -> {
+        Object[] arguments = invocation.getArguments();
+        @SuppressWarnings("unchecked")
+        AsyncMethodCallback<Host.AsyncSSLClient.place_call> call =
+            (AsyncMethodCallback<Host.AsyncSSLClient.place_call>) arguments[1];
+        PlaceResponse response;
+        synchronized (responses) {
+          response = new PlaceResponse(
+              responses.isEmpty() ? PlaceResultCode.OK : PlaceResultCode.NOT_ENOUGH_CPU_RESOURCE);
+          responses.add(responses.size());
+        }
+        response.setScore(new Score(random.nextInt(), random.nextInt()));
+        Host.AsyncSSLClient.place_call placeResponse = mock(Host.AsyncSSLClient.place_call.class);
+        doReturn(response).when(placeResponse).getResult();
+        call.onComplete(placeResponse);
+        return null;
+      }).when(client).place(any(), any());
+
+      long okCount = PlacementTaskService.PLACE_OK_TIMER.getCount();
+      long errorCount = PlacementTaskService.PLACE_ERROR_TIMER.getCount();
+
+      Operation operation = schedulerTestEnvironment.sendPostAndWait(
+          PlacementTaskService.FACTORY_LINK,
+          placementTask);
+
+      PlacementTask finalState = operation.getBody(PlacementTask.class);
+
+      assertThat(finalState.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      assertThat(finalState.resultCode, is(PlaceResultCode.OK));
+      assertThat(PlacementTaskService.PLACE_OK_TIMER.getCount(), is(okCount + 1));
+      assertThat(PlacementTaskService.PLACE_ERROR_TIMER.getCount(), is(errorCount + 1));
+    }
+
     /**
      * Test that when we have failures querying datastore (looking for image) the error is properly propagated.
      */
@@ -299,6 +299,7 @@ public class UploadVibTaskService extends StatefulService {
 
     RateLimitedWorkQueueService.PatchState workQueuePatchState = new RateLimitedWorkQueueService.PatchState();
     workQueuePatchState.runningTaskServiceDelta = -1;
+    workQueuePatchState.finishedTaskServiceLink = getSelfLink();
 
     sendRequest(Operation
         .createPatch(this, currentState.workQueueServiceLink)
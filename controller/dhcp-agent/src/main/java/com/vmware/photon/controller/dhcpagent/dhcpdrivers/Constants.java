@@ -42,4 +42,9 @@ public class Constants {
    * The 5 second timeout to wait for a process to finish running a command.
    */
   public static final long TIMEOUT = 5;
+
+  /**
+   * The delay in milliseconds before dnsmasq is reloaded, during which further reload requests are coalesced.
+   */
+  public static final long RELOAD_DELAY_MILLIS = 200;
 }
@@ -13,7 +13,9 @@
 
 package com.vmware.photon.controller.dhcpagent.dhcpdrivers;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Interface defining the functionality to be implemented by all DHCP drivers.
@@ -71,6 +73,25 @@ public interface DHCPDriver {
         Map<String, String> ipAddressToMACAddressMap,
         Long version) throws Exception;
 
+    /**
+     * This method applies the changes in subnet allocation of
+     * IP for MAC address since a base version.
+     *
+     * @param subnetId
+     * @param ipAddressToMACAddressMap IP to MAC address associations added or changed since the base version
+     * @param removedIPAddresses IP addresses released since the base version
+     * @param baseVersion
+     * @param version
+     *
+     * @return non zero exit code if the subnet is not at the base version
+     */
+    Response updateSubnetDelta(
+        String subnetId,
+        Map<String, String> ipAddressToMACAddressMap,
+        List<String> removedIPAddresses,
+        Long baseVersion,
+        Long version) throws Exception;
+
     /**
      * This method attempt to reload the DHCP server's cache.
      * Return true if it was reloaded.
@@ -79,6 +100,14 @@ public interface DHCPDriver {
      */
      boolean reload();
 
+    /**
+     * This method reloads the DHCP server's cache without blocking the caller.
+     * The future completes with true if it was reloaded.
+     *
+     * @return
+     */
+    CompletableFuture<Boolean> reloadAsync();
+
     /**
      * Class to hold the response for Driver operations.
      */
@@ -14,7 +14,11 @@
 package com.vmware.photon.controller.dhcpagent.dhcpdrivers;
 
 import com.vmware.photon.controller.common.IpHelper;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,36 +28,93 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
-import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * Class implements Driver interface for Dnsmasq DHCP server.
+ * <p/>
+ * The IP-MAC mapping of each subnet is kept in memory, so an update only diffs the new mapping against it instead of
+ * re-reading the host file. Reloads requested within a short window are coalesced into one restart of dnsmasq.
  */
 public class DnsmasqDriver implements DHCPDriver {
 
   private static final Logger logger = LoggerFactory.getLogger(DnsmasqDriver.class);
 
+  private static final Pattern VERSION_PATTERN = Pattern.compile("^# Version=(?<version>[0-9]+)$");
+
+  private static final Timer updateSubnetTimer =
+      DefaultMetricRegistry.REGISTRY.timer(MetricRegistry.name(DnsmasqDriver.class, "update-subnet"));
+
+  private static final Timer reloadTimer =
+      DefaultMetricRegistry.REGISTRY.timer(MetricRegistry.name(DnsmasqDriver.class, "reload"));
+
   private String dhcpLeaseFilePath = Constants.DNSMASQ_LEASE_PATH;
   private String dhcpHostFileDir = Constants.DNSMASQ_HOST_DIR_PATH;
   private String dhcpHostFileCopyDir = Constants.DNSMASQ_HOST_DIR_PATH + "-copy";
   private String dhcpOptionFileDir = Constants.DNSMASQ_OPTION_DIR_PATH;
   private String dhcpOptionFileCopyDir = Constants.DNSMASQ_OPTION_DIR_PATH + "-copy";
   private String dhcpConfigFilePath = Constants.DNSMASQ_CONF_PATH;
+  private final long reloadDelayMillis;
+  private final BooleanSupplier restarter;
+
+  private final ConcurrentMap<String, SubnetHosts> subnetHosts = new ConcurrentHashMap<>();
+
+  private final Object leaseFileLock = new Object();
+
+  private final ScheduledExecutorService reloadExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "dnsmasq-reload");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private CompletableFuture<Boolean> pendingReload;
 
   public DnsmasqDriver(
       String dhcpLeaseFilePath,
       String dhcpHostFileDir,
       String dhcpOptionFileDir,
       String dhcpConfigFilePath) {
+    this(dhcpLeaseFilePath, dhcpHostFileDir, dhcpOptionFileDir, dhcpConfigFilePath,
+        Constants.RELOAD_DELAY_MILLIS);
+  }
+
+  public DnsmasqDriver(
+      String dhcpLeaseFilePath,
+      String dhcpHostFileDir,
+      String dhcpOptionFileDir,
+      String dhcpConfigFilePath,
+      long reloadDelayMillis) {
+    this(dhcpLeaseFilePath, dhcpHostFileDir, dhcpOptionFileDir, dhcpConfigFilePath, reloadDelayMillis,
+        DnsmasqDriver::restart);
+  }
+
+  @VisibleForTesting
+  DnsmasqDriver(
+      String dhcpLeaseFilePath,
+      String dhcpHostFileDir,
+      String dhcpOptionFileDir,
+      String dhcpConfigFilePath,
+      long reloadDelayMillis,
+      BooleanSupplier restarter) {
+    this.reloadDelayMillis = reloadDelayMillis;
+    this.restarter = restarter;
     this.dhcpLeaseFilePath = dhcpLeaseFilePath;
     this.dhcpHostFileDir = dhcpHostFileDir;
     this.dhcpHostFileCopyDir = dhcpHostFileDir + "-copy";
@@ -79,6 +140,52 @@ public class DnsmasqDriver implements DHCPDriver {
    */
   @Override
   public boolean reload() {
+    try {
+      return reloadAsync().get(reloadDelayMillis + TimeUnit.SECONDS.toMillis(Constants.TIMEOUT) * 2,
+          TimeUnit.MILLISECONDS);
+    } catch (Exception e) {
+      // Swallow the exception--we'll return false, as appropriate
+      return false;
+    }
+  }
+
+  /**
+   * This method reloads the DHCP server's cache without blocking the caller.
+   * <p/>
+   * The reload is delayed by a short window, and all the callers within the window share one restart of dnsmasq.
+   *
+   * @return
+   */
+  @Override
+  public CompletableFuture<Boolean> reloadAsync() {
+    synchronized (reloadExecutor) {
+      if (pendingReload == null) {
+        pendingReload = new CompletableFuture<>();
+        reloadExecutor.schedule(this::runReload, reloadDelayMillis, TimeUnit.MILLISECONDS);
+      }
+      return pendingReload;
+    }
+  }
+
+  private void runReload() {
+    CompletableFuture<Boolean> reload;
+    synchronized (reloadExecutor) {
+      reload = pendingReload;
+      pendingReload = null;
+    }
+
+    Timer.Context context = reloadTimer.time();
+    try {
+      reload.complete(restarter.getAsBoolean());
+    } catch (Throwable t) {
+      logger.error("Failed to reload dhcp-agent", t);
+      reload.complete(false);
+    } finally {
+      context.stop();
+    }
+  }
+
+  private static boolean restart() {
     logger.info("Reloading dhcp-agent");
 
     boolean response = false;
@@ -198,13 +305,20 @@ public class DnsmasqDriver implements DHCPDriver {
     // Remove range from dnsmasq configuration file.
     removeLinesFromFile(
         dhcpConfigFilePath,
-        Arrays.asList(subnetId));
-
-    // Remove host file if exist.
-    String hostFilePath = dhcpHostFileDir + "/" + subnetId;
-    File hostFile = new File(hostFilePath);
-    if (hostFile.exists()) {
-      hostFile.delete();
+        line -> line.contains(subnetId));
+
+    // Remove host file if exist. The subnet is marked deleted with its lock held, so that an update which looked it
+    // up before it was removed does not write its host file again.
+    SubnetHosts hosts = subnetHosts.computeIfAbsent(subnetId, id -> new SubnetHosts());
+    synchronized (hosts) {
+      hosts.deleted = true;
+      subnetHosts.remove(subnetId, hosts);
+
+      String hostFilePath = dhcpHostFileDir + "/" + subnetId;
+      File hostFile = new File(hostFilePath);
+      if (hostFile.exists()) {
+        hostFile.delete();
+      }
     }
 
     Response response = new Response();
@@ -227,88 +341,207 @@ public class DnsmasqDriver implements DHCPDriver {
       Map<String, String> ipAddressToMACAddressMap,
       Long version) throws Exception {
     logger.info(String.format(
-        "Updating subnet leases for [%s]: new mapping is [%s]",
+        "Updating subnet leases for [%s]: version [%d], [%d] leases",
         subnetId,
-        ipAddressToMACAddressMap.toString()));
+        version,
+        ipAddressToMACAddressMap.size()));
 
     Response response = new Response();
+    Timer.Context context = updateSubnetTimer.time();
+    try {
+      SubnetHosts hosts = subnetHosts.computeIfAbsent(subnetId, this::readSubnetHosts);
+      synchronized (hosts) {
+        if (hosts.deleted) {
+          return subnetDeleted(subnetId);
+        }
 
-    // Read the old subnet file, compare the version, and get a list of IP-MAC mapping that needs
-    // to be removed.
-    String oldSubnetFilename = dhcpHostFileDir + "/" + subnetId;
-    File oldSubnetHostFile = new File(oldSubnetFilename);
-    Map<String, String> ipToMacToRemove = new HashMap<>();
-
-    if (oldSubnetHostFile.exists()) {
-      BufferedReader reader = new BufferedReader(new FileReader(oldSubnetHostFile));
-
-      try {
-        String line = null;
-        while ((line = reader.readLine()) != null) {
-          Pattern versionPattern = Pattern.compile("^# Version=(?<version>[0-9]+)$");
-          Matcher versionMatcher = versionPattern.matcher(line);
-          if (versionMatcher.matches()) {
-            Long oldVersion = Long.parseLong(versionMatcher.group("version"));
-
-            if (oldVersion > version) {
-              response.exitCode = 1;
-              return response;
-            }
-
-            if (oldVersion.equals(version)) {
-              response.exitCode = 0;
-              return response;
-            }
-          } else {
-            String[] ipToMacParts = line.split(",");
-            if (ipToMacParts.length != 3) {
-              continue;
-            }
-
-            String ip = ipToMacParts[0];
-            String mac = ipToMacParts[1];
-            if (!ipAddressToMACAddressMap.containsKey(ip) ||
-                !ipAddressToMACAddressMap.get(ip).equalsIgnoreCase(mac)) {
-              ipToMacToRemove.put(ip, mac);
-            }
-          }
+        if (hosts.version != null && hosts.version > version) {
+          response.exitCode = 1;
+          return response;
         }
-      } finally {
-        reader.close();
+
+        if (version.equals(hosts.version)) {
+          response.exitCode = 0;
+          return response;
+        }
+
+        applySubnetHosts(subnetId, hosts, ipAddressToMACAddressMap, version);
       }
+    } finally {
+      context.stop();
+    }
+
+    response.exitCode = 0;
+    return response;
+  }
+
+  /**
+   * This method applies the changes in subnet leases of
+   * IP for MAC address since a base version.
+   *
+   * @param subnetId
+   * @param ipAddressToMACAddressMap
+   * @param removedIPAddresses
+   * @param baseVersion
+   * @param version
+   * @return
+   */
+  @Override
+  public Response updateSubnetDelta(
+      String subnetId,
+      Map<String, String> ipAddressToMACAddressMap,
+      List<String> removedIPAddresses,
+      Long baseVersion,
+      Long version) throws Exception {
+    logger.info(String.format(
+        "Updating subnet leases for [%s]: version [%d] from [%d], [%d] leases added, [%d] removed",
+        subnetId,
+        version,
+        baseVersion,
+        ipAddressToMACAddressMap.size(),
+        removedIPAddresses.size()));
+
+    Response response = new Response();
+    Timer.Context context = updateSubnetTimer.time();
+    try {
+      SubnetHosts hosts = subnetHosts.computeIfAbsent(subnetId, this::readSubnetHosts);
+      synchronized (hosts) {
+        if (hosts.deleted) {
+          return subnetDeleted(subnetId);
+        }
+
+        if (version.equals(hosts.version)) {
+          response.exitCode = 0;
+          return response;
+        }
+
+        if (!baseVersion.equals(hosts.version)) {
+          response.exitCode = 1;
+          response.stdError = String.format("Subnet [%s] is at version [%s], not at base version [%d]",
+              subnetId, hosts.version, baseVersion);
+          return response;
+        }
+
+        Map<String, String> ipToMac = new HashMap<>(hosts.ipToMac);
+        ipToMac.keySet().removeAll(removedIPAddresses);
+        ipToMac.putAll(ipAddressToMACAddressMap);
+        applySubnetHosts(subnetId, hosts, ipToMac, version);
+      }
+    } finally {
+      context.stop();
+    }
+
+    response.exitCode = 0;
+    return response;
+  }
+
+  private static Response subnetDeleted(String subnetId) {
+    Response response = new Response();
+    response.exitCode = 1;
+    response.stdError = String.format("Subnet [%s] was deleted while it was updated", subnetId);
+    return response;
+  }
+
+  /**
+   * Writes the new IP-MAC mapping of a subnet to its host file, after removing the leases it makes obsolete from the
+   * lease file. The host file holds the version of the subnet, so an update which fails before it is written is
+   * retried in full, lease removal included.
+   */
+  private void applySubnetHosts(String subnetId, SubnetHosts hosts, Map<String, String> ipToMac, Long version)
+      throws IOException {
+    // Get the IP-MAC mapping that needs to be removed.
+    Set<String> leasesToRemove = new HashSet<>();
+    for (Map.Entry<String, String> pair : hosts.ipToMac.entrySet()) {
+      String mac = ipToMac.get(pair.getKey());
+      if (mac == null || !mac.equalsIgnoreCase(pair.getValue())) {
+        leasesToRemove.add(leaseKey(pair.getValue(), pair.getKey()));
+      }
+    }
+
+    if (!leasesToRemove.isEmpty()) {
+      logger.info(String.format(
+          "Updating subnet leases for [%s]: leases to be removed are [%s]",
+          subnetId,
+          leasesToRemove.toString()));
+      removeLeases(leasesToRemove);
     }
 
     // Update the subnet file with new version and IP-MAC mapping.
+    writeSubnetHosts(subnetId, ipToMac, version);
+    hosts.ipToMac = new HashMap<>(ipToMac);
+    hosts.version = version;
+  }
+
+  /**
+   * Reads the version and the IP-MAC mapping of a subnet from its host file, when it is first updated.
+   */
+  private SubnetHosts readSubnetHosts(String subnetId) {
+    SubnetHosts hosts = new SubnetHosts();
+    File subnetHostFile = new File(dhcpHostFileDir + "/" + subnetId);
+    if (!subnetHostFile.exists()) {
+      return hosts;
+    }
+
+    try (BufferedReader reader = new BufferedReader(new FileReader(subnetHostFile))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        Matcher versionMatcher = VERSION_PATTERN.matcher(line);
+        if (versionMatcher.matches()) {
+          hosts.version = Long.parseLong(versionMatcher.group("version"));
+          continue;
+        }
+
+        String[] ipToMacParts = line.split(",");
+        if (ipToMacParts.length == 3) {
+          hosts.ipToMac.put(ipToMacParts[0], ipToMacParts[1]);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    return hosts;
+  }
+
+  private void writeSubnetHosts(String subnetId, Map<String, String> ipAddressToMACAddressMap, Long version)
+      throws IOException {
     String newSubnetFilename = dhcpHostFileCopyDir + "/" + subnetId;
-    PrintWriter writer = new PrintWriter(newSubnetFilename, "UTF-8");
-    writer.println("# Version=" + version);
-    for (Map.Entry<String, String> pair : ipAddressToMACAddressMap.entrySet()) {
-      String line = pair.getKey() + "," + pair.getValue() + ",net:" + subnetId;
-      writer.println(line);
+    try (PrintWriter writer = new PrintWriter(newSubnetFilename, "UTF-8")) {
+      writer.println("# Version=" + version);
+      for (Map.Entry<String, String> pair : ipAddressToMACAddressMap.entrySet()) {
+        writer.println(pair.getKey() + "," + pair.getValue() + ",net:" + subnetId);
+      }
     }
 
-    writer.close();
     File newSubnetHostFile = new File(newSubnetFilename);
-    Files.move(newSubnetHostFile.toPath(), oldSubnetHostFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    File subnetHostFile = new File(dhcpHostFileDir + "/" + subnetId);
+    Files.move(newSubnetHostFile.toPath(), subnetHostFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
 
-    // Remove obsolete IP-MAC lease.
-    logger.info(String.format(
-        "Updating subnet leases for [%s]: mapping to be removed is [%s]",
-        subnetId,
-        ipToMacToRemove.toString()));
+  /**
+   * Removes leases, given as "MAC IP" keys, from the lease file in one pass. Each line of the lease file is
+   * "expiry MAC IP hostname client-id". The subnets are updated concurrently, so the lease file is rewritten by one
+   * update at a time.
+   */
+  private void removeLeases(Set<String> leasesToRemove) throws IOException {
+    synchronized (leaseFileLock) {
+      if (!new File(dhcpLeaseFilePath).exists()) {
+        return;
+      }
 
-    if (!ipToMacToRemove.isEmpty()) {
-      removeLinesFromFile(dhcpLeaseFilePath,
-          ipToMacToRemove.entrySet().stream()
-              .map(entry -> entry.getValue() + " " + entry.getKey()).collect(Collectors.toList()));
+      removeLinesFromFile(dhcpLeaseFilePath, line -> {
+        String[] leaseParts = line.split(" ");
+        return leaseParts.length >= 3 && leasesToRemove.contains(leaseKey(leaseParts[1], leaseParts[2]));
+      });
     }
+  }
 
-    response.exitCode = 0;
-    return response;
+  private static String leaseKey(String mac, String ip) {
+    return mac.toLowerCase() + " " + ip;
   }
 
   private void removeLinesFromFile(String filePath,
-                                  List<String> excludeLineContents) throws IOException {
+                                   Predicate<String> excludeLine) throws IOException {
     File file = new File(filePath);
     File tmpFile = new File(filePath + ".tmp");
     BufferedReader fileReader = new BufferedReader(new FileReader(file));
@@ -316,15 +549,7 @@ public class DnsmasqDriver implements DHCPDriver {
     String line = null;
 
     while ((line = fileReader.readLine()) != null) {
-      boolean excludeLine = false;
-      for (String excludeLineContent : excludeLineContents) {
-        if (line.contains(excludeLineContent)) {
-          excludeLine = true;
-          break;
-        }
-      }
-
-      if (excludeLine) {
+      if (excludeLine.test(line)) {
         continue;
       }
 
@@ -339,4 +564,14 @@ public class DnsmasqDriver implements DHCPDriver {
       tmpFile.delete();
     }
   }
+
+  /**
+   * Version and IP-MAC mapping of a subnet, as written in its host file, and whether the subnet was deleted since it
+   * was looked up.
+   */
+  private static class SubnetHosts {
+    private Long version;
+    private Map<String, String> ipToMac = new HashMap<>();
+    private boolean deleted;
+  }
 }
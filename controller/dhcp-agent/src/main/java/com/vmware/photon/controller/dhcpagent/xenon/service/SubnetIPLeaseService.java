@@ -30,6 +30,9 @@ import com.vmware.xenon.common.Utils;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+
 /**
  * The main responsibility of this class is to communicate with DHCP server IP leases
  * for a subnet provided in the patch. This service will be invoked for each Subnet.
@@ -142,23 +145,45 @@ public class SubnetIPLeaseService extends StatefulService {
     public void handleUpdateSubnetIPLease(SubnetIPLeaseTask currentState, Operation operation) {
         try {
             DHCPDriver dhcpDriver = ((DHCPAgentXenonHost) getHost()).getDHCPDriver();
-            dhcpDriver.updateSubnet(
-                currentState.subnetIPLease.subnetId,
-                currentState.subnetIPLease.ipToMACAddressMap,
-                currentState.subnetIPLease.version);
-
-            SubnetIPLeaseTask patchState;
-            if (dhcpDriver.reload()) {
-                patchState = buildPatch(TaskState.TaskStage.FINISHED, null);
+            SubnetIPLeaseTask.SubnetIPLease subnetIPLease = currentState.subnetIPLease;
+            if (subnetIPLease.baseVersion == null) {
+                dhcpDriver.updateSubnet(
+                    subnetIPLease.subnetId,
+                    subnetIPLease.ipToMACAddressMap,
+                    subnetIPLease.version);
             } else {
-                patchState = buildPatch(TaskState.TaskStage.FAILED, null);
+                // A delta only applies on top of its base version, the sender falls back to the full
+                // association of the subnet when it fails.
+                DHCPDriver.Response response = dhcpDriver.updateSubnetDelta(
+                    subnetIPLease.subnetId,
+                    subnetIPLease.ipToMACAddressMap != null ? subnetIPLease.ipToMACAddressMap : new HashMap<>(),
+                    subnetIPLease.removedIPAddresses != null ? subnetIPLease.removedIPAddresses : new ArrayList<>(),
+                    subnetIPLease.baseVersion,
+                    subnetIPLease.version);
+
+                if (response.exitCode != 0) {
+                    IllegalStateException e = new IllegalStateException(response.stdError);
+                    failTask(buildPatch(TaskState.TaskStage.FAILED, e), e, operation);
+                    return;
+                }
             }
 
-            if (operation == null) {
-                TaskUtils.sendSelfPatch(this, patchState);
-            } else {
-                operation.setBody(patchState).complete();
-            }
+            // The reload is delayed to be shared with other updates, so the operation completes from the reload
+            // instead of blocking the handler.
+            dhcpDriver.reloadAsync().whenComplete((reloaded, t) -> {
+                SubnetIPLeaseTask patchState;
+                if (t == null && reloaded) {
+                    patchState = buildPatch(TaskState.TaskStage.FINISHED, null);
+                } else {
+                    patchState = buildPatch(TaskState.TaskStage.FAILED, t);
+                }
+
+                if (operation == null) {
+                    TaskUtils.sendSelfPatch(this, patchState);
+                } else {
+                    operation.setBody(patchState).complete();
+                }
+            });
 
         } catch (Throwable ex) {
             SubnetIPLeaseTask patchState = buildPatch(TaskState.TaskStage.FAILED, null);
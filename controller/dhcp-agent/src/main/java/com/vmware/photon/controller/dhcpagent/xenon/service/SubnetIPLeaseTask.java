@@ -20,6 +20,7 @@ import com.vmware.photon.controller.common.xenon.validation.NotNull;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.TaskState;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -62,10 +63,22 @@ public class SubnetIPLeaseTask extends ServiceDocument {
         public String subnetId;
 
         /**
-         * The map containing IP to MAC address association.
+         * The map containing IP to MAC address association. When baseVersion is set, it only contains the
+         * associations added or changed since that version.
          */
         public Map<String, String> ipToMACAddressMap;
 
+        /**
+         * The IP addresses released since baseVersion.
+         */
+        public List<String> removedIPAddresses;
+
+        /**
+         * The version of the subnet IP lease this lease is a delta from. When null, ipToMACAddressMap is the full
+         * IP to MAC address association of the subnet.
+         */
+        public Long baseVersion;
+
         /**
          * The type of operation update or delete for subnet information.
          */
@@ -22,8 +22,20 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 /**
  * Class implements tests for Dnsmasq driver.
@@ -200,4 +212,159 @@ public class DnsmasqDriverTest {
       fail(String.format("Failed with exception: %s", e.toString()));
     }
   }
+
+  @Test
+  public void testUpdateSubnetRemovesObsoleteLeases() throws Throwable {
+    Path directory = Files.createTempDirectory("dnsmasq");
+    try {
+      File leaseFile = new File(directory.toFile(), "dnsmasq.leases");
+      Files.write(leaseFile.toPath(), Arrays.asList(
+          "1463701168 08:00:27:5c:9a:7b 192.168.0.4 * *",
+          "1463701168 08:00:27:d8:7d:8e 192.168.0.2 ubuntu *",
+          "1463701168 08:00:27:d2:b6:66 192.168.0.3 * *"), StandardCharsets.UTF_8);
+      DnsmasqDriver driver = createDriver(directory.toFile(), leaseFile);
+
+      Map<String, String> ipToMac = new HashMap<>();
+      ipToMac.put("192.168.0.2", "08:00:27:d8:7d:8e");
+      ipToMac.put("192.168.0.3", "08:00:27:d2:b6:66");
+      ipToMac.put("192.168.0.4", "08:00:27:5c:9a:7b");
+      assertEquals(driver.updateSubnet("subnet2", ipToMac, 1L).exitCode, 0);
+
+      ipToMac.remove("192.168.0.4");
+      ipToMac.put("192.168.0.3", "08:00:27:00:00:01");
+      assertEquals(driver.updateSubnet("subnet2", ipToMac, 2L).exitCode, 0);
+
+      // An older version is rejected
+      assertEquals(driver.updateSubnet("subnet2", new HashMap<>(), 1L).exitCode, 1);
+
+      assertEquals(Files.readAllLines(leaseFile.toPath(), StandardCharsets.UTF_8),
+          Arrays.asList("1463701168 08:00:27:d8:7d:8e 192.168.0.2 ubuntu *"));
+    } finally {
+      deleteDirectory(directory);
+    }
+  }
+
+  @Test
+  public void testUpdateSubnetAfterDeleteSubnet() throws Throwable {
+    Path directory = Files.createTempDirectory("dnsmasq");
+    try {
+      File leaseFile = new File(directory.toFile(), "dnsmasq.leases");
+      Files.write(leaseFile.toPath(), new ArrayList<String>(), StandardCharsets.UTF_8);
+      DnsmasqDriver driver = createDriver(directory.toFile(), leaseFile);
+      File hostFile = new File(directory.toFile(), "hosts/subnet4");
+
+      Map<String, String> ipToMac = new HashMap<>();
+      ipToMac.put("192.168.0.2", "08:00:27:d8:7d:8e");
+      assertEquals(driver.updateSubnet("subnet4", ipToMac, 2L).exitCode, 0);
+
+      assertEquals(driver.deleteSubnet("subnet4").exitCode, 0);
+      assertEquals(hostFile.exists(), false);
+
+      // The deleted subnet is forgotten, so a subnet created again with the same id starts over
+      assertEquals(driver.updateSubnet("subnet4", ipToMac, 1L).exitCode, 0);
+      assertEquals(Files.readAllLines(hostFile.toPath(), StandardCharsets.UTF_8),
+          Arrays.asList("# Version=1", "192.168.0.2,08:00:27:d8:7d:8e,net:subnet4"));
+    } finally {
+      deleteDirectory(directory);
+    }
+  }
+
+  @Test
+  public void testUpdateSubnetDelta() throws Throwable {
+    Path directory = Files.createTempDirectory("dnsmasq");
+    try {
+      File leaseFile = new File(directory.toFile(), "dnsmasq.leases");
+      Files.write(leaseFile.toPath(), Arrays.asList(
+          "1463701168 08:00:27:d8:7d:8e 192.168.0.2 ubuntu *",
+          "1463701168 08:00:27:d2:b6:66 192.168.0.3 * *"), StandardCharsets.UTF_8);
+      DnsmasqDriver driver = createDriver(directory.toFile(), leaseFile);
+
+      Map<String, String> ipToMac = new HashMap<>();
+      ipToMac.put("192.168.0.2", "08:00:27:d8:7d:8e");
+      ipToMac.put("192.168.0.3", "08:00:27:d2:b6:66");
+      assertEquals(driver.updateSubnet("subnet3", ipToMac, 1L).exitCode, 0);
+
+      Map<String, String> added = new HashMap<>();
+      added.put("192.168.0.4", "08:00:27:5c:9a:7b");
+      assertEquals(driver.updateSubnetDelta("subnet3", added, Arrays.asList("192.168.0.3"), 1L, 2L).exitCode, 0);
+
+      // A delta from another version is rejected
+      assertEquals(driver.updateSubnetDelta("subnet3", added, new ArrayList<>(), 1L, 3L).exitCode, 1);
+
+      List<String> hostLines = Files.readAllLines(
+          new File(directory.toFile(), "hosts/subnet3").toPath(), StandardCharsets.UTF_8);
+      assertEquals(hostLines.size(), 3);
+      assertEquals(hostLines.get(0), "# Version=2");
+      assertEquals(hostLines.contains("192.168.0.2,08:00:27:d8:7d:8e,net:subnet3"), true);
+      assertEquals(hostLines.contains("192.168.0.4,08:00:27:5c:9a:7b,net:subnet3"), true);
+      assertEquals(Files.readAllLines(leaseFile.toPath(), StandardCharsets.UTF_8),
+          Arrays.asList("1463701168 08:00:27:d8:7d:8e 192.168.0.2 ubuntu *"));
+    } finally {
+      deleteDirectory(directory);
+    }
+  }
+
+  @Test
+  public void testConcurrentReloadsAreCoalesced() throws Throwable {
+    Path directory = Files.createTempDirectory("dnsmasq");
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      AtomicInteger restartCount = new AtomicInteger();
+      DnsmasqDriver driver = createDriver(directory.toFile(), new File(directory.toFile(), "dnsmasq.leases"), () -> {
+        restartCount.incrementAndGet();
+        return true;
+      });
+
+      List<Future<Boolean>> reloads = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        reloads.add(executor.submit(driver::reload));
+      }
+      for (Future<Boolean> reload : reloads) {
+        assertEquals(reload.get(), Boolean.TRUE);
+      }
+
+      assertEquals(restartCount.get(), 1);
+    } finally {
+      executor.shutdownNow();
+      deleteDirectory(directory);
+    }
+  }
+
+  @Test
+  public void testReloadAsyncReportsFailedRestart() throws Throwable {
+    Path directory = Files.createTempDirectory("dnsmasq");
+    try {
+      DnsmasqDriver driver = createDriver(directory.toFile(), new File(directory.toFile(), "dnsmasq.leases"),
+          () -> false);
+
+      assertEquals(driver.reloadAsync().get(), Boolean.FALSE);
+    } finally {
+      deleteDirectory(directory);
+    }
+  }
+
+  private DnsmasqDriver createDriver(File directory, File leaseFile) throws IOException {
+    return createDriver(directory, leaseFile, () -> true);
+  }
+
+  private DnsmasqDriver createDriver(File directory, File leaseFile, BooleanSupplier restarter) throws IOException {
+    File configFile = new File(directory, "dnsmasq.conf");
+    configFile.createNewFile();
+
+    // Requests within the 1 second window are coalesced
+    return new DnsmasqDriver(
+        leaseFile.getPath(),
+        new File(directory, "hosts").getPath(),
+        new File(directory, "options").getPath(),
+        configFile.getPath(),
+        1000,
+        restarter);
+  }
+
+  private void deleteDirectory(Path directory) throws IOException {
+    Files.walk(directory)
+        .sorted(Comparator.reverseOrder())
+        .map(Path::toFile)
+        .forEach(File::delete);
+  }
 }
@@ -46,6 +46,7 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 
 
@@ -298,7 +299,7 @@ public class SubnetIPLeaseServiceTest {
         @Test
         public void testSubnetLeaseIPSuccess() throws Throwable {
             setUpEnvironment();
-            doReturn(true).when(dnsmasqDriver).reload();
+            doReturn(CompletableFuture.completedFuture(true)).when(dnsmasqDriver).reloadAsync();
             SubnetIPLeaseTask subnetIPLeaseTask = buildValidState(TaskState.TaskStage.CREATED, false,
                     SubnetIPLeaseTask.SubnetOperation.UPDATE);
 
@@ -317,6 +318,7 @@ public class SubnetIPLeaseServiceTest {
         @Test
         public void testSubnetLeaseIPFailure() throws Throwable {
             setUpEnvironment(Constants.DNSMASQ_HOST_DIR_PATH);
+            doReturn(CompletableFuture.completedFuture(false)).when(dnsmasqDriver).reloadAsync();
 
             SubnetIPLeaseTask subnetIPLeaseTask = buildValidState(TaskState.TaskStage.CREATED, false,
                     SubnetIPLeaseTask.SubnetOperation.UPDATE);
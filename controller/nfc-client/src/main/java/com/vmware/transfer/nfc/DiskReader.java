@@ -19,6 +19,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -115,6 +116,45 @@ public class DiskReader implements AutoCloseable {
     return getNextSector(expectedSector, data, dataOffset);
   }
 
+  /**
+   * Read consecutive sectors from stream. Each run of data sectors is read with a single bulk read, and
+   * zero sectors are filled with zeros. Reading stops at the end of the disk.
+   *
+   * @param expectedSector [in] expected number of the first sector
+   * @param data           [in/out] buffer to hold sector data
+   * @param dataOffset     [in] offset in data buffer to write sector data
+   * @param maxSectors     [in] maximum number of sectors to read
+   * @return number of sectors read
+   */
+  public int getNextSectors(long expectedSector, byte[] data, int dataOffset, int maxSectors) throws IOException {
+    if (expectedSector != nextSector) {
+      logger.error("NFC error: Unexpected sector in stream: Expected {}, was {}", expectedSector, nextSector);
+      throw new IOException("NFC error: Unexpected sector in stream");
+    }
+    assert data.length - dataOffset >= maxSectors * SparseUtil.DISKLIB_SECTOR_SIZE;
+
+    int sectors = (int) Math.min(maxSectors, capacitySectors - nextSector);
+    int sectorsRead = 0;
+    while (sectorsRead < sectors) {
+      int offset = dataOffset + sectorsRead * SparseUtil.DISKLIB_SECTOR_SIZE;
+      if (pendingZeroSectors > 0) {
+        int count = Math.min(pendingZeroSectors, sectors - sectorsRead);
+        Arrays.fill(data, offset, offset + count * SparseUtil.DISKLIB_SECTOR_SIZE, (byte) 0);
+        pendingZeroSectors -= count;
+        sectorsRead += count;
+      } else if (pendingDataSectors > 0) {
+        int count = Math.min(pendingDataSectors, sectors - sectorsRead);
+        readSectors(data, offset, count);
+        pendingDataSectors -= count;
+        sectorsRead += count;
+      } else {
+        readRLEHeader();
+      }
+    }
+    nextSector += sectorsRead;
+    return sectorsRead;
+  }
+
   private void readRLEHeader() throws IOException {
     if (frameBytesRemaining == 0) {
       readIncoming();
@@ -143,7 +183,11 @@ public class DiskReader implements AutoCloseable {
   }
 
   private void readSector(byte[] data, int offset) throws IOException {
-    ByteBuffer buffer = ByteBuffer.wrap(data, offset, SparseUtil.DISKLIB_SECTOR_SIZE);
+    readSectors(data, offset, 1);
+  }
+
+  private void readSectors(byte[] data, int offset, int sectors) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(data, offset, sectors * SparseUtil.DISKLIB_SECTOR_SIZE);
 
     readFromFrame(buffer);
     if (buffer.hasRemaining()) {
@@ -70,10 +70,45 @@ public class DiskWriter implements AutoCloseable {
 
     zeroSectors += lba - nextLba;
     nextLba = lba + 1;
-    if (isZero(data, offset, NfcClient.SECTOR_SIZE)) {
+    if (isZero(ByteBuffer.wrap(data), offset)) {
       zeroSectors++;
     } else {
-      outputDataSector(data, offset);
+      outputDataSectors(data, offset, 1);
+    }
+  }
+
+  /**
+   * Write consecutive sectors, typically a whole grain. Each run of zero sectors is buffered like in
+   * {@link #writeGrain(long, byte[], int)}, and each run of data sectors is written with a single RLE header.
+   *
+   * @param lba    LBA of the first sector
+   * @param data   Sector data
+   * @param offset Offset of the first sector in data
+   * @param length Number of bytes to write, rounded up to whole sectors
+   */
+  public void writeSectors(long lba, byte[] data, int offset, int length) throws IOException {
+    int sectors = (length + NfcClient.SECTOR_SIZE - 1) / NfcClient.SECTOR_SIZE;
+    assert data.length - offset >= sectors * NfcClient.SECTOR_SIZE;
+    if (lba < nextLba) {
+      throw new RuntimeException("Sectors are out of order");
+    }
+
+    zeroSectors += lba - nextLba;
+    nextLba = lba + sectors;
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    int sector = 0;
+    while (sector < sectors) {
+      boolean zeroRun = isZero(buffer, offset + sector * NfcClient.SECTOR_SIZE);
+      int runEnd = sector + 1;
+      while (runEnd < sectors && isZero(buffer, offset + runEnd * NfcClient.SECTOR_SIZE) == zeroRun) {
+        runEnd++;
+      }
+      if (zeroRun) {
+        zeroSectors += runEnd - sector;
+      } else {
+        outputDataSectors(data, offset + sector * NfcClient.SECTOR_SIZE, runEnd - sector);
+      }
+      sector = runEnd;
     }
   }
 
@@ -111,11 +146,23 @@ public class DiskWriter implements AutoCloseable {
     }
   }
 
-  private void outputDataSector(byte[] data, int offset) throws IOException {
+  private void outputDataSectors(byte[] data, int offset, int sectors) throws IOException {
     outputBufferedZeroSectors();
-    writeNfcFileDskRLEHdr(1, false);
-    fileData.put(data, offset, NfcClient.SECTOR_SIZE);
-    flushIfAtLimit();
+    while (sectors > 0) {
+      // Room for the RLE header, and for the disk header if this is the first section of the message
+      int headerSize = isDirty ? 2 * 4 : 4 * 4;
+      int count = Math.min(sectors, NfcClient.RLE_MAX_COUNT);
+      count = Math.min(count, (fileData.remaining() - headerSize) / NfcClient.SECTOR_SIZE);
+      if (count <= 0) {
+        flush();
+        continue;
+      }
+      writeNfcFileDskRLEHdr(count, false);
+      fileData.put(data, offset, count * NfcClient.SECTOR_SIZE);
+      offset += count * NfcClient.SECTOR_SIZE;
+      sectors -= count;
+      flushIfAtLimit();
+    }
   }
 
   private void flushIfAtLimit() throws IOException {
@@ -139,9 +186,12 @@ public class DiskWriter implements AutoCloseable {
     isDirty = false;
   }
 
-  private boolean isZero(byte[] data, int offset, int length) {
-    for (int i = offset; i < offset + length; ++i) {
-      if (data[i] != 0) {
+  /**
+   * Check whether a sector is all zero, comparing a long at a time.
+   */
+  private static boolean isZero(ByteBuffer data, int offset) {
+    for (int i = offset; i < offset + NfcClient.SECTOR_SIZE; i += 8) {
+      if (data.getLong(i) != 0) {
         return false;
       }
     }
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.transfer.nfc;
+
+import com.vmware.transfer.streamVmdk.StreamVmdkReader;
+import com.vmware.transfer.streamVmdk.VmdkFormatException;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * FanOutDiskUploader uploads a stream-optimized VMDK to several NFC destinations at once. The image is read and
+ * inflated once, and every grain is handed to one writer thread per destination.
+ * <p/>
+ * Grain buffers are shared by all destinations and only recycled once every destination has written them, so the
+ * number of buffers bounds how far the fastest destination can get ahead of the slowest one. When all the buffers
+ * are in use, reading the image blocks until the slowest destination catches up.
+ * <p/>
+ * The disk is only finalized once every destination wrote every grain. If any destination fails to write, the upload
+ * is aborted on all of them, and if any fails to finalize, the disks already finalized on the others are deleted.
+ */
+public class FanOutDiskUploader {
+  private static final Logger logger = LoggerFactory.getLogger(FanOutDiskUploader.class);
+
+  private static final long FAILURE_CHECK_INTERVAL_MILLIS = 100;
+
+  private final int bufferedGrains;
+
+  /**
+   * @param bufferedGrains Number of grain buffers shared by the destinations
+   */
+  public FanOutDiskUploader(int bufferedGrains) {
+    checkArgument(bufferedGrains > 0, "bufferedGrains must be positive");
+    this.bufferedGrains = bufferedGrains;
+  }
+
+  /**
+   * Upload image to the destinations as a disk, see {@link NfcClient#putStreamOptimizedDisk(String, InputStream)}.
+   * The NFC clients are closed once the upload is complete, and aborted if it fails.
+   *
+   * @param inputStream  input stream of image
+   * @param destinations map from NFC client to image datastore path
+   * @return number of bytes uploaded to each destination
+   */
+  public long upload(InputStream inputStream, Map<NfcClient, String> destinations)
+      throws IOException, VmdkFormatException {
+    checkArgument(!destinations.isEmpty(), "No destination to upload to");
+
+    StreamVmdkReader disk;
+    try {
+      disk = new StreamVmdkReader(inputStream);
+    } catch (VmdkFormatException e) {
+      logger.error("Unable to parse disk image: {}", e);
+      throw e;
+    }
+
+    List<Destination> targets = new ArrayList<>();
+    ExecutorService executor = Executors.newFixedThreadPool(destinations.size(),
+        new ThreadFactoryBuilder().setNameFormat("nfc-fan-out-%d").setDaemon(true).build());
+    try {
+      for (Map.Entry<NfcClient, String> entry : destinations.entrySet()) {
+        DiskWriter writer = entry.getKey().putDisk(entry.getValue(), disk.getAdapterType(),
+            disk.getCapacityInSectors());
+        targets.add(new Destination(entry.getKey(), entry.getValue(), writer));
+        writer.writeDdb(disk.getDdb());
+      }
+
+      AtomicReference<Throwable> failure = new AtomicReference<>();
+      List<Future<?>> futures = new ArrayList<>();
+      for (Destination target : targets) {
+        futures.add(executor.submit(() -> target.run(failure)));
+      }
+
+      readGrains(disk, targets, failure);
+
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      if (failure.get() != null) {
+        throwFailure(failure.get());
+      }
+
+      finalizeAll(targets, executor);
+      return disk.getCapacityInSectors() * SparseUtil.DISKLIB_SECTOR_SIZE;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while uploading to datastores");
+    } catch (ExecutionException e) {
+      throwFailure(e.getCause());
+      throw new IllegalStateException(e);
+    } finally {
+      executor.shutdownNow();
+      disk.close();
+      for (Destination target : targets) {
+        target.writer.close();
+      }
+      for (NfcClient nfcClient : destinations.keySet()) {
+        nfcClient.abort();
+      }
+    }
+  }
+
+  /**
+   * Reads and inflates the grains, and hands each one to all the destinations. Stops early if a destination fails.
+   */
+  private void readGrains(StreamVmdkReader disk, List<Destination> targets, AtomicReference<Throwable> failure)
+      throws IOException, VmdkFormatException, InterruptedException {
+    int grainBytes = disk.getGrainSize() * SparseUtil.DISKLIB_SECTOR_SIZE;
+    BlockingQueue<Grain> freeGrains = new ArrayBlockingQueue<>(bufferedGrains);
+    for (int i = 0; i < bufferedGrains; i++) {
+      freeGrains.add(new Grain(grainBytes, freeGrains));
+    }
+
+    try {
+      while (true) {
+        Grain grain = null;
+        while (grain == null) {
+          if (failure.get() != null) {
+            return;
+          }
+          // Blocks while the slowest destination holds all the buffers
+          grain = freeGrains.poll(FAILURE_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        int grainSize = disk.getNextGrain(grain.data);
+        if (grainSize < 0) {
+          break;
+        }
+        if (grainSize == 0) {
+          freeGrains.add(grain);
+          continue;
+        }
+
+        grain.lba = disk.getCurrentLba();
+        grain.length = grainSize;
+        grain.references.set(targets.size());
+        for (Destination target : targets) {
+          target.queue.add(grain);
+          target.updateMaxQueueDepth();
+        }
+      }
+    } catch (Throwable t) {
+      // Make sure that the destinations do not finalize a partial disk
+      failure.compareAndSet(null, t);
+      throw t;
+    } finally {
+      for (Destination target : targets) {
+        target.queue.add(Grain.END_OF_STREAM);
+      }
+    }
+  }
+
+  /**
+   * Finalizes the disk on all the destinations. If any of them fails, the disks finalized on the others are deleted
+   * before the failure is thrown.
+   */
+  private void finalizeAll(List<Destination> targets, ExecutorService executor)
+      throws IOException, VmdkFormatException, InterruptedException {
+    List<Future<?>> futures = new ArrayList<>();
+    for (Destination target : targets) {
+      futures.add(executor.submit(() -> {
+        target.writer.finalizeWrite();
+        return null;
+      }));
+    }
+
+    List<Destination> finalized = new ArrayList<>();
+    Throwable failure = null;
+    for (int i = 0; i < targets.size(); i++) {
+      try {
+        futures.get(i).get();
+        finalized.add(targets.get(i));
+      } catch (ExecutionException e) {
+        logger.error("Finalizing upload to {} failed", targets.get(i).filePath, e.getCause());
+        if (failure == null) {
+          failure = e.getCause();
+        }
+      }
+    }
+
+    if (failure != null) {
+      for (Destination target : finalized) {
+        try {
+          target.nfcClient.delete(target.filePath);
+        } catch (IOException e) {
+          logger.warn("Deleting {} after a failed upload failed", target.filePath, e);
+        }
+      }
+      throwFailure(failure);
+    }
+
+    for (Destination target : targets) {
+      try {
+        target.nfcClient.close();
+      } catch (IOException e) {
+        // The disk was acknowledged, only the session did not end cleanly
+        logger.warn("Closing NFC session for {} failed", target.filePath, e);
+      }
+    }
+  }
+
+  private static void throwFailure(Throwable failure) throws IOException, VmdkFormatException {
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    } else if (failure instanceof VmdkFormatException) {
+      throw (VmdkFormatException) failure;
+    } else if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    throw new RuntimeException(failure);
+  }
+
+  /**
+   * An NFC destination, with its queue of grains to write.
+   */
+  private static class Destination {
+    final NfcClient nfcClient;
+    final String filePath;
+    final DiskWriter writer;
+    final BlockingQueue<Grain> queue = new LinkedBlockingQueue<>();
+    volatile int maxQueueDepth;
+
+    Destination(NfcClient nfcClient, String filePath, DiskWriter writer) {
+      this.nfcClient = nfcClient;
+      this.filePath = filePath;
+      this.writer = writer;
+    }
+
+    void updateMaxQueueDepth() {
+      maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+    }
+
+    void run(AtomicReference<Throwable> failure) {
+      long start = System.nanoTime();
+      long grains = 0;
+      try {
+        while (failure.get() == null) {
+          Grain grain = queue.take();
+          if (grain == Grain.END_OF_STREAM) {
+            logger.info("Wrote {} grains to {} in {} ms, max queue depth {}", grains, filePath,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), maxQueueDepth);
+            return;
+          }
+          writer.writeSectors(grain.lba, grain.data, 0, grain.length);
+          grain.release();
+          grains++;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Throwable t) {
+        logger.error("Upload to {} failed", filePath, t);
+        failure.compareAndSet(null, t);
+      }
+    }
+  }
+
+  /**
+   * A grain buffer shared by all the destinations.
+   */
+  private static class Grain {
+    static final Grain END_OF_STREAM = new Grain(0, null);
+
+    final byte[] data;
+    final AtomicInteger references = new AtomicInteger();
+    final BlockingQueue<Grain> pool;
+    long lba;
+    int length;
+
+    Grain(int size, BlockingQueue<Grain> pool) {
+      this.data = new byte[size];
+      this.pool = pool;
+    }
+
+    void release() {
+      if (references.decrementAndGet() == 0) {
+        pool.add(this);
+      }
+    }
+  }
+}
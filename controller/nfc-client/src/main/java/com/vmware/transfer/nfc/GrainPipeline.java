@@ -0,0 +1,322 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.transfer.nfc;
+
+import com.vmware.transfer.streamVmdk.StreamVmdkReader;
+import com.vmware.transfer.streamVmdk.VmdkFormatException;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Inflater;
+
+/**
+ * GrainPipeline copies the grains of a stream-optimized VMDK to a {@link DiskWriter} in three stages: a reader
+ * thread reads the compressed grains, a pool of inflater threads inflates them and the calling thread writes them
+ * in their original order.
+ * <p/>
+ * Grain buffers are allocated once and recycled, so the number of buffers bounds the number of grains in flight.
+ * Each inflater thread reuses a single {@link Inflater}.
+ */
+public class GrainPipeline {
+  private static final Logger logger = LoggerFactory.getLogger(GrainPipeline.class);
+
+  private static final long STATS_LOG_INTERVAL_GRAINS = 1000;
+
+  private final StreamVmdkReader disk;
+  private final DiskWriter writer;
+  private final int inflaterThreads;
+  private final BlockingQueue<Grain> freeGrains;
+  private final BlockingQueue<Grain> inflateQueue;
+  private final BlockingQueue<Grain> writeQueue;
+  private final Stats stats;
+
+  /**
+   * @param disk            Source disk, positioned at the first grain
+   * @param writer          Destination disk
+   * @param inflaterThreads Number of threads inflating grains
+   * @param bufferedGrains  Number of grain buffers, at least one per inflater thread
+   */
+  public GrainPipeline(StreamVmdkReader disk, DiskWriter writer, int inflaterThreads, int bufferedGrains) {
+    checkArgument(inflaterThreads > 0, "inflaterThreads must be positive");
+    checkArgument(bufferedGrains >= inflaterThreads, "bufferedGrains must be at least inflaterThreads");
+    this.disk = disk;
+    this.writer = writer;
+    this.inflaterThreads = inflaterThreads;
+    this.freeGrains = new ArrayBlockingQueue<>(bufferedGrains);
+    this.inflateQueue = new LinkedBlockingQueue<>();
+    this.writeQueue = new LinkedBlockingQueue<>();
+    this.stats = new Stats();
+
+    int grainBytes = disk.getGrainSize() * SparseUtil.DISKLIB_SECTOR_SIZE;
+    for (int i = 0; i < bufferedGrains; i++) {
+      freeGrains.add(new Grain(disk.getMaxCompressedGrainSize(), grainBytes));
+    }
+  }
+
+  /**
+   * Copy all the grains of the disk. This does not finalize the writer.
+   *
+   * @return Statistics of the copy
+   */
+  public Stats run() throws IOException, VmdkFormatException, InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(inflaterThreads + 1,
+        new ThreadFactoryBuilder().setNameFormat("nfc-grain-pipeline-%d").setDaemon(true).build());
+    try {
+      executor.submit(this::read);
+      for (int i = 0; i < inflaterThreads; i++) {
+        executor.submit(this::inflate);
+      }
+      write();
+      return stats;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Reader stage. Hands every data grain to the inflaters, tagged with its sequence number.
+   */
+  private void read() {
+    long sequence = 0;
+    try {
+      while (true) {
+        Grain grain = freeGrains.take();
+        int cmpSize = disk.getNextCompressedGrain(grain.compressed);
+        while (cmpSize == 0) {
+          // Progress marker, there is no data to write
+          cmpSize = disk.getNextCompressedGrain(grain.compressed);
+        }
+        if (cmpSize < 0) {
+          freeGrains.add(grain);
+          writeQueue.add(Grain.endOfStream(sequence));
+          break;
+        }
+        grain.sequence = sequence++;
+        grain.lba = disk.getCurrentLba();
+        grain.cmpSize = cmpSize;
+        stats.compressedBytes += cmpSize;
+        inflateQueue.add(grain);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Throwable t) {
+      writeQueue.add(Grain.failure(t));
+    } finally {
+      for (int i = 0; i < inflaterThreads; i++) {
+        inflateQueue.add(Grain.endOfStream(-1));
+      }
+    }
+  }
+
+  /**
+   * Inflater stage.
+   */
+  private void inflate() {
+    Inflater inflater = new Inflater();
+    try {
+      while (true) {
+        Grain grain = inflateQueue.take();
+        if (grain.isEndOfStream()) {
+          break;
+        }
+        grain.grainSize = StreamVmdkReader.inflateGrain(inflater, grain.compressed, grain.cmpSize, grain.data);
+        writeQueue.add(grain);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Throwable t) {
+      writeQueue.add(Grain.failure(t));
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Writer stage. Grains inflated out of order are held until all the grains before them are written.
+   */
+  private void write() throws IOException, VmdkFormatException, InterruptedException {
+    Map<Long, Grain> pending = new HashMap<>();
+    long nextSequence = 0;
+    long start = System.nanoTime();
+    while (true) {
+      Grain grain = writeQueue.take();
+      if (grain.failure != null) {
+        throwFailure(grain.failure);
+      }
+      pending.put(grain.sequence, grain);
+
+      while ((grain = pending.remove(nextSequence)) != null) {
+        if (grain.isEndOfStream()) {
+          stats.elapsedNanos = System.nanoTime() - start;
+          logger.info("Copied {} grains: {}", nextSequence, stats);
+          return;
+        }
+        stats.sample(inflateQueue.size(), writeQueue.size() + pending.size());
+
+        writer.writeSectors(grain.lba, grain.data, 0, grain.grainSize);
+        stats.grains++;
+        stats.bytes += grain.grainSize;
+        freeGrains.add(grain);
+        nextSequence++;
+
+        if (nextSequence % STATS_LOG_INTERVAL_GRAINS == 0) {
+          stats.elapsedNanos = System.nanoTime() - start;
+          logger.debug("Copied {} grains: {}", nextSequence, stats);
+        }
+      }
+    }
+  }
+
+  private static void throwFailure(Throwable failure) throws IOException, VmdkFormatException {
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    } else if (failure instanceof VmdkFormatException) {
+      throw (VmdkFormatException) failure;
+    } else if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    throw new RuntimeException(failure);
+  }
+
+  /**
+   * A grain buffer, or a marker for the end of the stream or a failure.
+   */
+  private static class Grain {
+    final byte[] compressed;
+    final byte[] data;
+    long sequence;
+    long lba;
+    int cmpSize;
+    int grainSize;
+    Throwable failure;
+
+    Grain(int compressedSize, int grainSize) {
+      this.compressed = new byte[compressedSize];
+      this.data = new byte[grainSize];
+    }
+
+    static Grain endOfStream(long sequence) {
+      Grain grain = new Grain(0, 0);
+      grain.sequence = sequence;
+      grain.cmpSize = -1;
+      return grain;
+    }
+
+    static Grain failure(Throwable failure) {
+      Grain grain = new Grain(0, 0);
+      grain.failure = failure;
+      return grain;
+    }
+
+    boolean isEndOfStream() {
+      return cmpSize < 0;
+    }
+  }
+
+  /**
+   * Throughput and queue depth statistics. Queue depths are sampled every time a grain is written.
+   */
+  public static class Stats {
+    private volatile long compressedBytes;
+    private long grains;
+    private long bytes;
+    private long elapsedNanos;
+    private long samples;
+    private long inflateQueueDepthSum;
+    private long writeQueueDepthSum;
+    private int maxInflateQueueDepth;
+    private int maxWriteQueueDepth;
+
+    private void sample(int inflateQueueDepth, int writeQueueDepth) {
+      samples++;
+      inflateQueueDepthSum += inflateQueueDepth;
+      writeQueueDepthSum += writeQueueDepth;
+      maxInflateQueueDepth = Math.max(maxInflateQueueDepth, inflateQueueDepth);
+      maxWriteQueueDepth = Math.max(maxWriteQueueDepth, writeQueueDepth);
+    }
+
+    public long getGrains() {
+      return grains;
+    }
+
+    /**
+     * @return Number of inflated bytes written
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    public long getCompressedBytes() {
+      return compressedBytes;
+    }
+
+    public long getElapsedNanos() {
+      return elapsedNanos;
+    }
+
+    /**
+     * @return Sustained throughput in inflated MB/s
+     */
+    public double getMegabytesPerSecond() {
+      if (elapsedNanos == 0) {
+        return 0;
+      }
+      return bytes / (1024.0 * 1024.0) / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * @return Average number of grains waiting to be inflated
+     */
+    public double getAverageInflateQueueDepth() {
+      return samples == 0 ? 0 : inflateQueueDepthSum / (double) samples;
+    }
+
+    /**
+     * @return Average number of inflated grains waiting to be written
+     */
+    public double getAverageWriteQueueDepth() {
+      return samples == 0 ? 0 : writeQueueDepthSum / (double) samples;
+    }
+
+    public int getMaxInflateQueueDepth() {
+      return maxInflateQueueDepth;
+    }
+
+    public int getMaxWriteQueueDepth() {
+      return maxWriteQueueDepth;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d MB in %d ms (%.1f MB/s), inflate queue depth avg/max %.1f/%d, "
+              + "write queue depth avg/max %.1f/%d",
+          bytes / (1024 * 1024), TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getMegabytesPerSecond(),
+          getAverageInflateQueueDepth(), maxInflateQueueDepth, getAverageWriteQueueDepth(), maxWriteQueueDepth);
+    }
+  }
+}
@@ -24,6 +24,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.Socket;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
@@ -72,6 +73,8 @@ public class NfcClient implements AutoCloseable {
   // Flags for file management
   static final int NFC_FILE_FORCE = 1 << 0;
   static final int NFC_FILE_CREATEDIRHIER = 1 << 1;
+  // Grain buffers of the grain pipeline, per inflater thread
+  static final int GRAIN_BUFFERS_PER_INFLATER = 4;
   private static final Logger logger = LoggerFactory.getLogger(NfcClient.class);
   // Newer nfc message types
   private static final int NFC_ERROR = 20;
@@ -193,12 +196,40 @@ public class NfcClient implements AutoCloseable {
       String filePath,
       InputStream inputStream)
       throws IOException, VmdkFormatException {
+    return putStreamOptimizedDisk(filePath, inputStream, 1);
+  }
+
+  /**
+   * Upload image to remote datastore as a disk, like {@link #putStreamOptimizedDisk(String, InputStream)}, inflating
+   * grains on a pool of threads with a {@link GrainPipeline}. With a single inflater thread, the grains are inflated
+   * on the calling thread.
+   *
+   * @param filePath        image datastore path
+   * @param inputStream     input stream of image
+   * @param inflaterThreads number of threads inflating grains
+   * @return number of bytes uploaded
+   */
+  public long putStreamOptimizedDisk(
+      String filePath,
+      InputStream inputStream,
+      int inflaterThreads)
+      throws IOException, VmdkFormatException {
+    checkArgument(inflaterThreads > 0, "inflaterThreads must be positive");
     StreamVmdkReader disk = getStreamVmdkReader(inputStream);
 
     DiskWriter writer = null;
     try {
       writer = putDisk(filePath, disk.getAdapterType(), disk.getCapacityInSectors());
       writer.writeDdb(disk.getDdb());
+      if (inflaterThreads > 1) {
+        GrainPipeline.Stats stats = new GrainPipeline(disk, writer, inflaterThreads,
+            inflaterThreads * GRAIN_BUFFERS_PER_INFLATER).run();
+        logger.info("NfcClient putStreamOptimizedDisk for file {} write complete: {}", filePath, stats);
+        writer.finalizeWrite();
+        close();
+        return disk.getCapacityInSectors() * SparseUtil.DISKLIB_SECTOR_SIZE;
+      }
+
       byte[] grain = new byte[disk.getGrainSize() * SparseUtil.DISKLIB_SECTOR_SIZE];
       int grainSize = disk.getNextGrain(grain);
       int grainCount = 0;
@@ -211,10 +242,7 @@ public class NfcClient implements AutoCloseable {
               grainSize);
         }
         if (grainSize > 0) {
-          long lba = disk.getCurrentLba();
-          for (int offset = 0; offset < grainSize; offset += SparseUtil.DISKLIB_SECTOR_SIZE) {
-            writer.writeGrain(lba++, grain, offset);
-          }
+          writer.writeSectors(disk.getCurrentLba(), grain, 0, grainSize);
         }
         grainSize = disk.getNextGrain(grain);
       }
@@ -226,10 +254,14 @@ public class NfcClient implements AutoCloseable {
     } catch (SocketException e) {
       logger.error("Remote host closed connection while uploading to datastore (could be of out of space): {}", e);
       throw e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while uploading to datastore");
     } finally {
       if (writer != null) {
         writer.close();
       }
+      disk.close();
       abort();
     }
   }
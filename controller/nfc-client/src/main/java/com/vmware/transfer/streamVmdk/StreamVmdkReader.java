@@ -40,6 +40,9 @@ public class StreamVmdkReader {
   private long currentLba;
   private String adapterType;
   private Map<String, String> ddb;
+  private final byte[] headerBytes = new byte[SparseUtil.STREAMED_GRAIN_HEADER_SIZE];
+  private byte[] compressedGrain;
+  private Inflater inflater;
 
   public StreamVmdkReader(InputStream input) throws VmdkFormatException, IOException {
     this.input = new DataInputStream(input);
@@ -156,8 +159,57 @@ public class StreamVmdkReader {
     return (int) grainSize;
   }
 
+  /**
+   * @return size of the buffer needed to hold any compressed grain of this disk
+   */
+  public int getMaxCompressedGrainSize() {
+    return getGrainSize() * SparseUtil.DISKLIB_SECTOR_SIZE * 3;
+  }
+
   public int getNextGrain(byte[] grain) throws VmdkFormatException, IOException {
-    byte[] headerBytes = new byte[12];
+    if (compressedGrain == null) {
+      compressedGrain = new byte[grain.length * 3];
+      inflater = new Inflater();
+    }
+    int cmpSize = readNextGrain(compressedGrain, grain.length * 3);
+    if (cmpSize <= 0) {
+      if (cmpSize < 0) {
+        endInflater();
+      }
+      return cmpSize;
+    }
+    return inflateGrain(inflater, compressedGrain, cmpSize, grain);
+  }
+
+  /**
+   * Read the next grain without inflating it, so that grains can be inflated on other threads with
+   * {@link #inflateGrain(Inflater, byte[], int, byte[])}.
+   *
+   * @param compressed Buffer of at least {@link #getMaxCompressedGrainSize()} bytes
+   * @return Size of the compressed grain, 0 for a progress marker or -1 at the end of the stream
+   */
+  public int getNextCompressedGrain(byte[] compressed) throws VmdkFormatException, IOException {
+    return readNextGrain(compressed, getMaxCompressedGrainSize());
+  }
+
+  /**
+   * Inflate a grain read by {@link #getNextCompressedGrain(byte[])}. The inflater is reset, so it can be reused
+   * for every grain.
+   *
+   * @return Size of the inflated grain
+   */
+  public static int inflateGrain(Inflater inflater, byte[] compressed, int cmpSize, byte[] grain)
+      throws VmdkFormatException {
+    inflater.reset();
+    inflater.setInput(compressed, 0, cmpSize);
+    try {
+      return inflater.inflate(grain);
+    } catch (DataFormatException e) {
+      throw new VmdkFormatException("Zlib error: " + e.getMessage(), e);
+    }
+  }
+
+  private int readNextGrain(byte[] compressed, int maxCmpSize) throws VmdkFormatException, IOException {
     readFully(headerBytes);
     ByteBuffer header = ByteBuffer.wrap(headerBytes);
     header.order(ByteOrder.LITTLE_ENDIAN);
@@ -165,7 +217,7 @@ public class StreamVmdkReader {
     int cmpSize = header.getInt();
 
     // Sanity check
-    if (cmpSize > grain.length * 3) {
+    if (cmpSize > maxCmpSize || cmpSize > compressed.length) {
       throw new VmdkFormatException("Disk format error: Invalid grain size");
     }
 
@@ -196,19 +248,12 @@ public class StreamVmdkReader {
       header.order(ByteOrder.LITTLE_ENDIAN);
       sector = header.getLong();
       cmpSize = header.getInt();
+      if (cmpSize > maxCmpSize || cmpSize > compressed.length) {
+        throw new VmdkFormatException("Disk format error: Invalid grain size");
+      }
     }
     assert cmpSize > 0;
-    byte[] cmpBytes = new byte[cmpSize];
-    readFully(cmpBytes);
-    Inflater inf = new Inflater();
-    inf.setInput(cmpBytes);
-    int grainSize = -1;
-    try {
-      grainSize = inf.inflate(grain);
-    } catch (DataFormatException e) {
-      throw new VmdkFormatException("Zlib error: " + e.getMessage(), e);
-    }
-    inf.end();
+    readFully(compressed, cmpSize);
 
     long totalGrainSize = 12 + cmpSize;
     long paddingSize = ((totalGrainSize + 512 - 1) / 512) * 512 - totalGrainSize;
@@ -216,12 +261,16 @@ public class StreamVmdkReader {
       paddingSize -= input.skip(paddingSize);
     }
     currentLba = sector;
-    return grainSize;
+    return cmpSize;
   }
 
   private void readFully(byte[] buffer) throws IOException, VmdkFormatException {
+    readFully(buffer, buffer.length);
+  }
+
+  private void readFully(byte[] buffer, int length) throws IOException, VmdkFormatException {
     try {
-      input.readFully(buffer);
+      input.readFully(buffer, 0, length);
     } catch (EOFException e) {
       throw new VmdkFormatException("Unexpected end of file", e);
     }
@@ -231,7 +280,19 @@ public class StreamVmdkReader {
     return currentLba;
   }
 
+  /**
+   * Close the input stream, and release the inflater of {@link #getNextGrain(byte[])} if the end of the stream was
+   * not reached.
+   */
   public void close() throws IOException {
+    endInflater();
     input.close();
   }
+
+  private void endInflater() {
+    if (inflater != null) {
+      inflater.end();
+      inflater = null;
+    }
+  }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.transfer.nfc;
+
+import com.google.common.base.Stopwatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link com.vmware.transfer.nfc.DiskWriter} and {@link com.vmware.transfer.nfc.DiskReader}.
+ */
+public class DiskWriterTest {
+  private static final Logger logger = LoggerFactory.getLogger(DiskWriterTest.class);
+
+  private static final int GRAIN_SIZE = SparseUtil.DEFAULT_GRAIN_SIZE_BYTES;
+
+  private static final int BENCHMARK_GRAINS = 1024;
+
+  @DataProvider(name = "Disks")
+  public Object[][] getDisks() {
+    return new Object[][]{
+        {"sparse", createDisk(64, 0.05)},
+        {"dense", createDisk(64, 1.0)},
+        {"mixed", createDisk(64, 0.5)},
+    };
+  }
+
+  @Test(dataProvider = "Disks")
+  public void testWriteSectorsRoundTrip(String name, byte[] disk) throws Exception {
+    byte[] stream = writeDisk(disk, true, true);
+    assertThat(Arrays.equals(readDisk(stream, true), disk), is(true));
+    assertThat(Arrays.equals(readDisk(stream, false), disk), is(true));
+  }
+
+  @Test(dataProvider = "Disks")
+  public void testWriteGrainRoundTrip(String name, byte[] disk) throws Exception {
+    byte[] stream = writeDisk(disk, false, true);
+    assertThat(Arrays.equals(readDisk(stream, true), disk), is(true));
+    assertThat(Arrays.equals(readDisk(stream, false), disk), is(true));
+  }
+
+  @Test
+  public void testWriteSectorsMergesRuns() throws Exception {
+    byte[] disk = createDisk(64, 1.0);
+
+    byte[] bulk = writeDisk(disk, true, true);
+    byte[] sectorBySector = writeDisk(disk, false, true);
+
+    // One RLE header per message instead of one per sector
+    int sectors = disk.length / SparseUtil.DISKLIB_SECTOR_SIZE;
+    assertThat(sectorBySector.length - bulk.length > (sectors - 100) * 8, is(true));
+  }
+
+  @DataProvider(name = "Benchmark")
+  public Object[][] getBenchmark() {
+    return new Object[][]{
+        {"sparse", 0.05},
+        {"dense", 1.0},
+    };
+  }
+
+  /**
+   * Local benchmark comparing the sector and the bulk write and read paths, with a loopback NFC client. It is excluded
+   * from the unit tests, and run by the benchmark task.
+   */
+  @Test(groups = "benchmark", dataProvider = "Benchmark")
+  public void testThroughput(String name, double dataRatio) throws Exception {
+    byte[] disk = createDisk(BENCHMARK_GRAINS, dataRatio);
+    byte[] stream = writeDisk(disk, true, true);
+    double megabytes = disk.length / (1024.0 * 1024.0);
+
+    for (boolean bulk : new boolean[]{false, true}) {
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      writeDisk(disk, bulk, false);
+      long writeMillis = Math.max(stopwatch.elapsed(TimeUnit.MILLISECONDS), 1);
+
+      stopwatch = Stopwatch.createStarted();
+      readDisk(stream, bulk);
+      long readMillis = Math.max(stopwatch.elapsed(TimeUnit.MILLISECONDS), 1);
+
+      logger.info("{} disk, {} path: write {} MB/s, read {} MB/s", name, bulk ? "bulk" : "sector",
+          String.format("%.1f", megabytes * 1000 / writeMillis), String.format("%.1f", megabytes * 1000 / readMillis));
+    }
+  }
+
+  private static byte[] writeDisk(byte[] disk, boolean bulk, boolean capture) throws Exception {
+    LoopbackNfcClient nfcClient = new LoopbackNfcClient(capture);
+    long capacity = disk.length / SparseUtil.DISKLIB_SECTOR_SIZE;
+    try (DiskWriter writer = nfcClient.putDisk("[datastore1] disk/disk.vmdk", "lsilogic", capacity)) {
+      writer.writeDdb(Collections.singletonMap("adapterType", "lsilogic"));
+      for (int offset = 0; offset < disk.length; offset += GRAIN_SIZE) {
+        long lba = offset / SparseUtil.DISKLIB_SECTOR_SIZE;
+        if (bulk) {
+          writer.writeSectors(lba, disk, offset, GRAIN_SIZE);
+        } else {
+          for (int sector = 0; sector < GRAIN_SIZE; sector += SparseUtil.DISKLIB_SECTOR_SIZE) {
+            writer.writeGrain(lba++, disk, offset + sector);
+          }
+        }
+      }
+      writer.finalizeWrite();
+    }
+    return nfcClient.getSent();
+  }
+
+  private static byte[] readDisk(byte[] stream, boolean bulk) throws Exception {
+    LoopbackNfcClient nfcClient = new LoopbackNfcClient(stream);
+    try (DiskReader reader = new DiskReader(nfcClient)) {
+      reader.init();
+      assertThat(reader.getDDB().get("adapterType"), is("lsilogic"));
+
+      long capacity = reader.getCapacitySectors();
+      byte[] disk = new byte[(int) capacity * SparseUtil.DISKLIB_SECTOR_SIZE];
+      long sector = 0;
+      while (sector < capacity) {
+        int offset = (int) sector * SparseUtil.DISKLIB_SECTOR_SIZE;
+        if (bulk) {
+          sector += reader.getNextSectors(sector, disk, offset, GRAIN_SIZE / SparseUtil.DISKLIB_SECTOR_SIZE);
+        } else {
+          reader.getNextSector(sector++, disk, offset);
+        }
+      }
+      return disk;
+    }
+  }
+
+  /**
+   * Creates a disk where runs of sectors have data with the given probability.
+   */
+  private static byte[] createDisk(int grains, double dataRatio) {
+    Random random = new Random(0);
+    byte[] disk = new byte[grains * GRAIN_SIZE];
+    byte[] data = new byte[SparseUtil.DISKLIB_SECTOR_SIZE];
+    int sector = 0;
+    while (sector < disk.length / SparseUtil.DISKLIB_SECTOR_SIZE) {
+      int runLength = 1 + random.nextInt(64);
+      boolean hasData = random.nextDouble() < dataRatio;
+      for (int i = 0; i < runLength && sector < disk.length / SparseUtil.DISKLIB_SECTOR_SIZE; i++, sector++) {
+        if (hasData) {
+          random.nextBytes(data);
+          data[0] = 1;
+          System.arraycopy(data, 0, disk, sector * SparseUtil.DISKLIB_SECTOR_SIZE, data.length);
+        }
+      }
+    }
+    return disk;
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.transfer.nfc;
+
+import com.vmware.transfer.streamVmdk.VmdkFormatException;
+
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tests {@link com.vmware.transfer.nfc.FanOutDiskUploader}.
+ */
+public class FanOutDiskUploaderTest {
+
+  private static final String PATH = "[datastore1] image/image.vmdk";
+
+  @Test
+  public void testUploadToAllDestinations() throws Exception {
+    byte[] image = GrainPipelineTest.createImage(128);
+    LoopbackNfcClient single = new LoopbackNfcClient(true);
+    long expectedBytes = single.putStreamOptimizedDisk(PATH, new ByteArrayInputStream(image));
+
+    Map<NfcClient, String> destinations = new LinkedHashMap<>();
+    LoopbackNfcClient[] clients = new LoopbackNfcClient[3];
+    for (int i = 0; i < clients.length; i++) {
+      clients[i] = i == 1 ? new SlowNfcClient(Integer.MAX_VALUE) : new LoopbackNfcClient(true);
+      destinations.put(clients[i], PATH);
+    }
+
+    long bytes = new FanOutDiskUploader(4).upload(new ByteArrayInputStream(image), destinations);
+
+    assertThat(bytes, is(expectedBytes));
+    for (LoopbackNfcClient client : clients) {
+      assertThat(client.getAcknowledgements(), is(1));
+      assertThat(Arrays.equals(client.getSent(), single.getSent()), is(true));
+    }
+  }
+
+  @Test
+  public void testDestinationFailureAbortsUpload() throws Exception {
+    byte[] image = GrainPipelineTest.createImage(128);
+    LoopbackNfcClient healthy = new LoopbackNfcClient(true);
+    SlowNfcClient failing = new SlowNfcClient(4);
+
+    Map<NfcClient, String> destinations = new LinkedHashMap<>();
+    destinations.put(healthy, PATH);
+    destinations.put(failing, PATH);
+
+    try {
+      new FanOutDiskUploader(4).upload(new ByteArrayInputStream(image), destinations);
+      fail("upload should have failed");
+    } catch (IOException e) {
+      assertThat(e.getMessage(), is("Connection reset"));
+    }
+
+    // The other destination is not finalized
+    assertThat(healthy.getAcknowledgements(), is(0));
+    assertThat(healthy.getDeleted().isEmpty(), is(true));
+  }
+
+  @Test
+  public void testFinalizeFailureDeletesFinalizedDisks() throws Exception {
+    byte[] image = GrainPipelineTest.createImage(128);
+    LoopbackNfcClient healthy = new LoopbackNfcClient(true);
+    LoopbackNfcClient rejecting = new LoopbackNfcClient(true) {
+      @Override
+      ByteBuffer readNfcResponse() throws IOException {
+        throw new IOException("Upload rejected");
+      }
+    };
+
+    Map<NfcClient, String> destinations = new LinkedHashMap<>();
+    destinations.put(healthy, PATH);
+    destinations.put(rejecting, PATH);
+
+    try {
+      new FanOutDiskUploader(4).upload(new ByteArrayInputStream(image), destinations);
+      fail("upload should have failed");
+    } catch (IOException e) {
+      assertThat(e.getMessage(), is("Upload rejected"));
+    }
+
+    // Both destinations wrote every grain before finalizing, and the finalized disk is deleted
+    assertThat(Arrays.equals(healthy.getSent(), rejecting.getSent()), is(true));
+    assertThat(healthy.getAcknowledgements(), is(1));
+    assertThat(healthy.getDeleted(), contains(PATH));
+    assertThat(rejecting.getDeleted().isEmpty(), is(true));
+  }
+
+  @Test
+  public void testTruncatedImageAbortsUpload() throws Exception {
+    byte[] image = GrainPipelineTest.createImage(128);
+    image = Arrays.copyOf(image, image.length / 2);
+    LoopbackNfcClient first = new LoopbackNfcClient(false);
+    LoopbackNfcClient second = new LoopbackNfcClient(false);
+
+    Map<NfcClient, String> destinations = new LinkedHashMap<>();
+    destinations.put(first, PATH);
+    destinations.put(second, PATH);
+
+    try {
+      new FanOutDiskUploader(4).upload(new ByteArrayInputStream(image), destinations);
+      fail("upload should have failed");
+    } catch (VmdkFormatException e) {
+      assertThat(e.getMessage(), is("Unexpected end of file"));
+    }
+
+    assertThat(first.getAcknowledgements(), is(0));
+    assertThat(second.getAcknowledgements(), is(0));
+  }
+
+  /**
+   * Loopback NFC client which is slower than the others, and fails after a number of FILE_DATA messages.
+   */
+  private static class SlowNfcClient extends LoopbackNfcClient {
+    private int messagesBeforeFailure;
+
+    SlowNfcClient(int messagesBeforeFailure) {
+      super(true);
+      this.messagesBeforeFailure = messagesBeforeFailure;
+    }
+
+    @Override
+    void writeFully(ByteBuffer data) throws IOException {
+      if (data.remaining() > NFC_MESSAGE_SIZE) {
+        if (messagesBeforeFailure-- == 0) {
+          throw new IOException("Connection reset");
+        }
+        try {
+          Thread.sleep(1);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException(e);
+        }
+      }
+      super.writeFully(data);
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.transfer.nfc;
+
+import com.vmware.transfer.streamVmdk.StreamVmdkReader;
+import com.vmware.transfer.streamVmdk.StreamVmdkWriter;
+import com.vmware.transfer.streamVmdk.VmdkFormatException;
+
+import com.google.common.base.Stopwatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link com.vmware.transfer.nfc.GrainPipeline}.
+ */
+public class GrainPipelineTest {
+  private static final Logger logger = LoggerFactory.getLogger(GrainPipelineTest.class);
+
+  private static final int BENCHMARK_GRAINS = 1024;
+
+  @Test
+  public void testPipelineMatchesSequentialUpload() throws Exception {
+    byte[] image = createImage(256);
+
+    byte[] sequential = upload(image, 1, true);
+    byte[] pipelined = upload(image, 4, true);
+
+    assertThat(sequential.length > 0, is(true));
+    assertThat(Arrays.equals(sequential, pipelined), is(true));
+  }
+
+  @Test
+  public void testPipelineStats() throws Exception {
+    byte[] image = createImage(64);
+    LoopbackNfcClient nfcClient = new LoopbackNfcClient(false);
+    StreamVmdkReader disk = new StreamVmdkReader(new ByteArrayInputStream(image));
+    DiskWriter writer = nfcClient.putDisk("[datastore1] image/image.vmdk", disk.getAdapterType(),
+        disk.getCapacityInSectors());
+
+    GrainPipeline.Stats stats = new GrainPipeline(disk, writer, 2, 8).run();
+    writer.finalizeWrite();
+
+    // Every other grain is written
+    assertThat(stats.getGrains(), is(32L));
+    assertThat(stats.getBytes(), is(32L * SparseUtil.DEFAULT_GRAIN_SIZE_BYTES));
+    assertThat(stats.getCompressedBytes() > 0, is(true));
+    assertThat(stats.getMaxInflateQueueDepth() <= 8, is(true));
+    assertThat(stats.getMaxWriteQueueDepth() <= 8, is(true));
+  }
+
+  @Test
+  public void testTruncatedImage() throws Exception {
+    byte[] image = createImage(64);
+    image = Arrays.copyOf(image, image.length / 2);
+
+    try {
+      upload(image, 4, false);
+      fail("upload should have failed");
+    } catch (VmdkFormatException e) {
+      assertThat(e.getMessage(), is("Unexpected end of file"));
+    }
+  }
+
+  @DataProvider(name = "InflaterThreads")
+  public Object[][] getInflaterThreads() {
+    return new Object[][]{
+        {1},
+        {2},
+        {4},
+    };
+  }
+
+  /**
+   * Local upload benchmark, with a loopback NFC client which discards the data. It is excluded from the unit tests,
+   * and run by the benchmark task.
+   */
+  @Test(groups = "benchmark", dataProvider = "InflaterThreads")
+  public void testUploadThroughput(int inflaterThreads) throws Exception {
+    byte[] image = createImage(BENCHMARK_GRAINS);
+
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    upload(image, inflaterThreads, false);
+    long elapsedMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+    double megabytes = (double) BENCHMARK_GRAINS * SparseUtil.DEFAULT_GRAIN_SIZE_BYTES / (1024 * 1024);
+    logger.info("Uploaded {} MB with {} inflater thread(s) in {} ms ({} MB/s)", megabytes, inflaterThreads,
+        elapsedMillis, String.format("%.1f", megabytes * 1000 / Math.max(elapsedMillis, 1)));
+  }
+
+  private static byte[] upload(byte[] image, int inflaterThreads, boolean capture) throws Exception {
+    LoopbackNfcClient nfcClient = new LoopbackNfcClient(capture);
+    nfcClient.putStreamOptimizedDisk("[datastore1] image/image.vmdk", new ByteArrayInputStream(image),
+        inflaterThreads);
+    return nfcClient.getSent();
+  }
+
+  /**
+   * Creates a stream-optimized image where every other grain has data, half of the sectors of a data grain
+   * being zero.
+   */
+  static byte[] createImage(int grains) throws IOException {
+    ByteArrayOutputStream image = new ByteArrayOutputStream();
+    StreamVmdkWriter writer = new StreamVmdkWriter(image, (long) grains * SparseUtil.DEFAULT_GRAIN_SIZE);
+    writer.writeHeader(0x12345678, Collections.singletonMap("adapterType", "lsilogic"));
+
+    Random random = new Random(0);
+    byte[] grain = new byte[SparseUtil.DEFAULT_GRAIN_SIZE_BYTES];
+    for (int i = 0; i < grains; i += 2) {
+      Arrays.fill(grain, (byte) 0);
+      for (int offset = 0; offset < grain.length; offset += 2 * SparseUtil.DISKLIB_SECTOR_SIZE) {
+        for (int j = offset; j < offset + SparseUtil.DISKLIB_SECTOR_SIZE; j++) {
+          // Compressible, but not trivially
+          grain[j] = (byte) random.nextInt(16);
+        }
+      }
+      writer.writeDataGrain((long) i * SparseUtil.DEFAULT_GRAIN_SIZE, grain);
+    }
+    writer.writeTrailer();
+    writer.close();
+    return image.toByteArray();
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.transfer.nfc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * NFC client stand-in without a connection. What is sent is recorded or discarded, uploads are acknowledged, and
+ * deletes are recorded. When created with the bytes of a server stream, reads are served from them instead.
+ */
+class LoopbackNfcClient extends NfcClient {
+  private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+  private final boolean capture;
+  private final ByteBuffer received;
+  private final List<String> deleted = new ArrayList<>();
+  private int acknowledgements;
+
+  LoopbackNfcClient(boolean capture) {
+    this.capture = capture;
+    this.received = null;
+  }
+
+  LoopbackNfcClient(byte[] received) {
+    this.capture = false;
+    this.received = ByteBuffer.wrap(received);
+  }
+
+  byte[] getSent() {
+    return sent.toByteArray();
+  }
+
+  /**
+   * @return number of uploads acknowledged
+   */
+  int getAcknowledgements() {
+    return acknowledgements;
+  }
+
+  /**
+   * @return datastore paths deleted
+   */
+  List<String> getDeleted() {
+    return deleted;
+  }
+
+  @Override
+  public void delete(String dsPath) throws IOException {
+    deleted.add(dsPath);
+  }
+
+  @Override
+  void writeFully(ByteBuffer data) throws IOException {
+    if (capture) {
+      byte[] bytes = new byte[data.remaining()];
+      data.get(bytes);
+      sent.write(bytes, 0, bytes.length);
+    } else {
+      data.position(data.limit());
+    }
+  }
+
+  @Override
+  void readFully(ByteBuffer data) throws IOException {
+    if (received == null || received.remaining() < data.remaining()) {
+      throw new EOFException();
+    }
+    ByteBuffer slice = received.slice();
+    slice.limit(data.remaining());
+    data.put(slice);
+    received.position(received.position() + slice.limit());
+  }
+
+  @Override
+  ByteBuffer readNfcResponse() throws IOException {
+    if (received != null) {
+      return super.readNfcResponse();
+    }
+    acknowledgements++;
+    ByteBuffer reply = ByteBuffer.allocate(NFC_MESSAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    reply.putInt(NFC_PUTFILE_DONE);
+    reply.flip();
+    return reply;
+  }
+}
@@ -21,13 +21,11 @@ import org.testng.annotations.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.anyInt;
-import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
-import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
@@ -63,7 +61,7 @@ public class NfcClientTest extends PowerMockTestCase {
 
     InOrder inOrder = inOrder(writer, nfcClient);
     inOrder.verify(writer).writeDdb(ddb);
-    inOrder.verify(writer, times(128)).writeGrain(anyLong(), any(byte[].class), anyInt());
+    inOrder.verify(writer).writeSectors(eq(0L), any(byte[].class), eq(0), eq(65536));
     inOrder.verify(writer).finalizeWrite();
     inOrder.verify(nfcClient).close();
     inOrder.verify(writer).close();
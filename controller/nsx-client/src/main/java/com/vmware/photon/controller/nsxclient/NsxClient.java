@@ -18,6 +18,8 @@ import com.vmware.photon.controller.nsxclient.apis.FabricApi;
 import com.vmware.photon.controller.nsxclient.apis.LogicalRouterApi;
 import com.vmware.photon.controller.nsxclient.apis.LogicalSwitchApi;
 
+import com.google.common.annotations.VisibleForTesting;
+
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
@@ -53,11 +55,12 @@ public class NsxClient {
   public NsxClient(String target,
                    String username,
                    String password) {
-    if (!target.startsWith("https")) {
-      target = "https://" + target;
-    }
+    this(new RestClient(target.startsWith("https") ? target : "https://" + target, username, password));
+  }
 
-    this.restClient = new RestClient(target, username, password);
+  @VisibleForTesting
+  NsxClient(RestClient restClient) {
+    this.restClient = restClient;
 
     this.fabricApi = new FabricApi(restClient);
     this.logicalSwitchApi = new LogicalSwitchApi(restClient);
@@ -133,6 +136,21 @@ public class NsxClient {
     return ENABLE_ROUTING_ADVERTISEMENT_RETRY_DELAY;
   }
 
+  /**
+   * Closes the connections to the NSX manager. The client cannot be used afterwards.
+   */
+  public void close() {
+    this.restClient.close();
+  }
+
+  /**
+   * Closes the connections to the NSX manager once the requests in flight are completed. The client should not be
+   * used afterwards.
+   */
+  public void closeWhenIdle() {
+    this.restClient.closeWhenIdle();
+  }
+
   public String getHostThumbprint(String ipAddress, int port) throws Throwable {
     // Create a trust manager that does not validate certificate chains
     TrustManager[] trustAllCerts = new TrustManager[] {new X509TrustManager() {
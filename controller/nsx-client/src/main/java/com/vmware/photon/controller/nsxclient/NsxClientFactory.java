@@ -13,12 +13,57 @@
 
 package com.vmware.photon.controller.nsxclient;
 
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
- * Factory for instances of {@link NsxClient}.
+ * Factory for instances of {@link NsxClient}. A client is created once per endpoint, and then shared by all its
+ * users, so that the connections it keeps open to the NSX manager are reused. When the credentials of an endpoint
+ * change, its client is replaced by a new one, and closed once the requests already sent through it are completed.
  */
 public class NsxClientFactory {
 
+  private final ConcurrentMap<String, SharedClient> clients = new ConcurrentHashMap<>();
+
   public NsxClient create(String endpoint, String username, String password) {
+    List<String> credentials = Arrays.asList(username, password);
+    NsxClient[] replacedClient = new NsxClient[1];
+    SharedClient sharedClient = clients.compute(endpoint, (key, current) -> {
+      if (current != null && current.credentials.equals(credentials)) {
+        return current;
+      }
+
+      if (current != null) {
+        replacedClient[0] = current.client;
+      }
+      return new SharedClient(credentials, createClient(endpoint, username, password));
+    });
+
+    if (replacedClient[0] != null) {
+      replacedClient[0].closeWhenIdle();
+    }
+    return sharedClient.client;
+  }
+
+  @VisibleForTesting
+  NsxClient createClient(String endpoint, String username, String password) {
     return new NsxClient(endpoint, username, password);
   }
+
+  /**
+   * The client of an endpoint, and the credentials it was created with.
+   */
+  private static class SharedClient {
+    final List<String> credentials;
+    final NsxClient client;
+
+    SharedClient(List<String> credentials, NsxClient client) {
+      this.credentials = credentials;
+      this.client = client;
+    }
+  }
 }
@@ -30,6 +30,7 @@ import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
 import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
@@ -41,13 +42,30 @@ import javax.net.ssl.SSLContext;
 
 import java.io.IOException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
- * A RESTful client which utilizes basic HTTP methods.
+ * A RESTful client which utilizes basic HTTP methods. The client keeps a pool of up to {@link #MAX_CONNECTIONS}
+ * connections to the target, which are reused across requests. Requests sent while all the connections are in use
+ * wait for one to be released, which bounds the number of requests in flight to the target.
+ * <p/>
+ * The client is safe to share between threads: each request is sent with its own HTTP client context, and only the
+ * credentials and the authentication cache are shared.
  */
 public class RestClient {
 
+  /**
+   * Maximum number of connections open to the target.
+   */
+  public static final int MAX_CONNECTIONS = 16;
+
+  /**
+   * How long an idle connection is kept open, unless the target asks for less.
+   */
+  public static final long KEEP_ALIVE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
   /**
    * Possible HTTP methods.
    */
@@ -59,9 +77,17 @@ public class RestClient {
   }
 
   private final String target;
-  private final HttpClientContext clientContext;
+  private final CredentialsProvider credentialsProvider;
+  private final AuthCache authCache;
   private final CloseableHttpAsyncClient asyncClient;
 
+  /**
+   * Number of requests sent and not completed yet, and whether to close the client once there are none. Guarded by
+   * this.
+   */
+  private int requestsInFlight;
+  private boolean closeWhenIdle;
+
   /**
    * Constructs a RestClient.
    */
@@ -78,7 +104,10 @@ public class RestClient {
     checkNotNull(password, "password cannot be null");
 
     this.target = target;
-    this.clientContext = getHttpClientContext(target, username, password);
+    this.credentialsProvider = new BasicCredentialsProvider();
+    this.credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
+    this.authCache = new BasicAuthCache();
+    this.authCache.put(HttpHost.create(target), new BasicScheme());
     this.asyncClient = asyncClient == null ? getHttpClient() : asyncClient;
   }
 
@@ -99,7 +128,54 @@ public class RestClient {
   public Future<HttpResponse> sendAsync(final Method method, final String path, final HttpEntity payload,
                                            final FutureCallback<HttpResponse> responseHandler) throws IOException {
     HttpUriRequest request = getHttpRequest(method, path, payload);
-    return this.asyncClient.execute(request, this.clientContext, responseHandler);
+    synchronized (this) {
+      requestsInFlight++;
+    }
+
+    try {
+      return this.asyncClient.execute(request, getHttpClientContext(), new RequestCallback(responseHandler));
+    } catch (RuntimeException e) {
+      onRequestDone();
+      throw e;
+    }
+  }
+
+  /**
+   * Closes the connections to the target. The client cannot be used afterwards.
+   */
+  public void close() {
+    try {
+      this.asyncClient.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Closes the connections to the target once the requests in flight are completed, e.g. when the client is replaced
+   * by another one while it is still in use. The client should not be used afterwards.
+   */
+  public void closeWhenIdle() {
+    synchronized (this) {
+      closeWhenIdle = true;
+      if (requestsInFlight > 0) {
+        return;
+      }
+    }
+
+    close();
+  }
+
+  private void onRequestDone() {
+    synchronized (this) {
+      requestsInFlight--;
+      if (requestsInFlight > 0 || !closeWhenIdle) {
+        return;
+      }
+    }
+
+    // The last request completes on an I/O dispatcher thread of the client, which cannot shut the client down
+    ForkJoinPool.commonPool().execute(this::close);
   }
 
   /**
@@ -159,16 +235,10 @@ public class RestClient {
   }
 
   /**
-   * Creates a HTTP client context with preemptive basic authentication.
+   * Creates a HTTP client context with preemptive basic authentication. A context holds the state of one request, so
+   * a new one is created for each request.
    */
-  private HttpClientContext getHttpClientContext(String target, String username, String password) {
-    CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-    credentialsProvider.setCredentials(AuthScope.ANY,
-        new UsernamePasswordCredentials(username, password));
-    HttpHost targetHost = HttpHost.create(target);
-    AuthCache authCache = new BasicAuthCache();
-    authCache.put(targetHost, new BasicScheme());
-
+  private HttpClientContext getHttpClientContext() {
     HttpClientContext context = HttpClientContext.create();
     context.setCredentialsProvider(credentialsProvider);
     context.setAuthCache(authCache);
@@ -188,6 +258,12 @@ public class RestClient {
       CloseableHttpAsyncClient httpAsyncClient = HttpAsyncClientBuilder.create()
           .setHostnameVerifier(SSLIOSessionStrategy.ALLOW_ALL_HOSTNAME_VERIFIER)
           .setSSLContext(sslcontext)
+          .setMaxConnPerRoute(MAX_CONNECTIONS)
+          .setMaxConnTotal(MAX_CONNECTIONS)
+          .setKeepAliveStrategy((response, context) -> {
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive > 0 ? Math.min(keepAlive, KEEP_ALIVE_MILLIS) : KEEP_ALIVE_MILLIS;
+          })
           .build();
       httpAsyncClient.start();
       return httpAsyncClient;
@@ -195,4 +271,48 @@ public class RestClient {
       throw new RuntimeException(e);
     }
   }
+
+  /**
+   * Passes the outcome of a request to its response handler, if any, and counts it as completed.
+   */
+  private class RequestCallback implements FutureCallback<HttpResponse> {
+    private final FutureCallback<HttpResponse> responseHandler;
+
+    RequestCallback(FutureCallback<HttpResponse> responseHandler) {
+      this.responseHandler = responseHandler;
+    }
+
+    @Override
+    public void completed(HttpResponse result) {
+      try {
+        if (responseHandler != null) {
+          responseHandler.completed(result);
+        }
+      } finally {
+        onRequestDone();
+      }
+    }
+
+    @Override
+    public void failed(Exception ex) {
+      try {
+        if (responseHandler != null) {
+          responseHandler.failed(ex);
+        }
+      } finally {
+        onRequestDone();
+      }
+    }
+
+    @Override
+    public void cancelled() {
+      try {
+        if (responseHandler != null) {
+          responseHandler.cancelled();
+        }
+      } finally {
+        onRequestDone();
+      }
+    }
+  }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.nsxclient;
+
+import com.vmware.photon.controller.nsxclient.apis.LogicalSwitchApi;
+import com.vmware.photon.controller.nsxclient.builders.LogicalSwitchCreateSpecBuilder;
+import com.vmware.photon.controller.nsxclient.models.LogicalSwitch;
+import com.vmware.photon.controller.nsxclient.models.LogicalSwitchCreateSpec;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.protocol.HttpContext;
+import org.mockito.ArgumentCaptor;
+import org.testng.Reporter;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests {@link NsxClientFactory}.
+ */
+public class NsxClientFactoryTest {
+
+  private static final int BENCHMARK_VIRTUAL_NETWORKS = 1000;
+
+  private static final String LOGICAL_SWITCH_JSON =
+      "{\"id\":\"switch-id\",\"display_name\":\"switch\",\"resource_type\":\"LogicalSwitch\"}";
+
+  @Test
+  public void testCreateReturnsSharedClient() {
+    NsxClientFactory factory = new NsxClientFactory();
+    NsxClient nsxClient = factory.create("1.2.3.4", "username", "password");
+
+    assertThat(factory.create("1.2.3.4", "username", "password"), sameInstance(nsxClient));
+    assertThat(factory.create("5.6.7.8", "username", "password"), not(sameInstance(nsxClient)));
+  }
+
+  @Test
+  public void testCreateWithOtherCredentialsReplacesClient() {
+    NsxClientFactory factory = new NsxClientFactory() {
+      @Override
+      NsxClient createClient(String endpoint, String username, String password) {
+        return mock(NsxClient.class);
+      }
+    };
+    NsxClient nsxClient = factory.create("1.2.3.4", "username", "password");
+    NsxClient otherEndpointClient = factory.create("5.6.7.8", "username", "password");
+
+    NsxClient newClient = factory.create("1.2.3.4", "username", "other-password");
+    assertThat(newClient, not(sameInstance(nsxClient)));
+    verify(nsxClient).closeWhenIdle();
+    verify(otherEndpointClient, never()).closeWhenIdle();
+
+    assertThat(factory.create("1.2.3.4", "username", "other-password"), sameInstance(newClient));
+    verify(newClient, never()).closeWhenIdle();
+  }
+
+  @Test
+  public void testReplacedClientIsClosedAfterRequestsInFlight() throws Exception {
+    List<CloseableHttpAsyncClient> asyncClients = new ArrayList<>();
+    NsxClientFactory factory = new NsxClientFactory() {
+      @Override
+      NsxClient createClient(String endpoint, String username, String password) {
+        CloseableHttpAsyncClient asyncClient = mock(CloseableHttpAsyncClient.class);
+        asyncClients.add(asyncClient);
+        return new NsxClient(new RestClient("https://" + endpoint, username, password, asyncClient));
+      }
+    };
+    NsxClient nsxClient = factory.create("1.2.3.4", "username", "password");
+    FutureCallback<Void> deleteCallback = mock(FutureCallback.class);
+    nsxClient.getLogicalSwitchApi().deleteLogicalSwitch("switch-id", deleteCallback);
+    ArgumentCaptor<org.apache.http.concurrent.FutureCallback> requestCallback =
+        ArgumentCaptor.forClass(org.apache.http.concurrent.FutureCallback.class);
+    verify(asyncClients.get(0)).execute(any(HttpUriRequest.class), any(HttpContext.class),
+        requestCallback.capture());
+
+    // The client is replaced while the request is in flight
+    factory.create("1.2.3.4", "username", "other-password");
+    verify(asyncClients.get(0), never()).close();
+
+    HttpResponse response = mock(HttpResponse.class);
+    StatusLine statusLine = mock(StatusLine.class);
+    when(response.getStatusLine()).thenReturn(statusLine);
+    when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+    requestCallback.getValue().completed(response);
+
+    verify(deleteCallback).onSuccess(null);
+    verify(asyncClients.get(0), timeout(5000)).close();
+    verify(asyncClients.get(1), never()).close();
+  }
+
+  /**
+   * Local benchmark creating and deleting the logical switches of many virtual networks at once through one client,
+   * against a mock NSX manager. It is excluded from the unit tests, and run with the benchmark group.
+   */
+  @Test(groups = "benchmark")
+  public void testSharedClientThroughput() throws Exception {
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext(LogicalSwitchApi.LOGICAL_SWITCHS_BASE_PATH, exchange -> {
+      if ("POST".equals(exchange.getRequestMethod())) {
+        byte[] body = LOGICAL_SWITCH_JSON.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(HttpStatus.SC_CREATED, body.length);
+        exchange.getResponseBody().write(body);
+      } else {
+        exchange.sendResponseHeaders(HttpStatus.SC_OK, -1);
+      }
+      exchange.close();
+    });
+    ExecutorService executor = Executors.newFixedThreadPool(RestClient.MAX_CONNECTIONS);
+    server.setExecutor(executor);
+    server.start();
+
+    RestClient restClient = new RestClient("http://127.0.0.1:" + server.getAddress().getPort(), "username",
+        "password");
+    try {
+      LogicalSwitchApi logicalSwitchApi = new LogicalSwitchApi(restClient);
+      LogicalSwitchCreateSpec spec = new LogicalSwitchCreateSpecBuilder()
+          .displayName("switch")
+          .transportZoneId("transport-zone-id")
+          .build();
+
+      CountDownLatch latch = new CountDownLatch(BENCHMARK_VIRTUAL_NETWORKS);
+      AtomicInteger failures = new AtomicInteger();
+      FutureCallback<Void> deleteCallback = new FutureCallback<Void>() {
+        @Override
+        public void onSuccess(Void result) {
+          latch.countDown();
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          failures.incrementAndGet();
+          latch.countDown();
+        }
+      };
+
+      long start = System.nanoTime();
+      for (int i = 0; i < BENCHMARK_VIRTUAL_NETWORKS; i++) {
+        logicalSwitchApi.createLogicalSwitch(spec, new FutureCallback<LogicalSwitch>() {
+          @Override
+          public void onSuccess(LogicalSwitch result) {
+            try {
+              logicalSwitchApi.deleteLogicalSwitch(result.getId(), deleteCallback);
+            } catch (Throwable t) {
+              onFailure(t);
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            failures.incrementAndGet();
+            latch.countDown();
+          }
+        });
+      }
+
+      assertThat(latch.await(60, TimeUnit.SECONDS), is(true));
+      long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      assertThat(failures.get(), is(0));
+
+      Reporter.log(String.format("Created and deleted %d logical switches in %d ms (%d per second)",
+          BENCHMARK_VIRTUAL_NETWORKS, elapsedMillis, BENCHMARK_VIRTUAL_NETWORKS * 1000L / elapsedMillis), true);
+    } finally {
+      restClient.close();
+      server.stop(0);
+      executor.shutdownNow();
+    }
+  }
+}
@@ -19,6 +19,7 @@ import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
@@ -29,13 +30,16 @@ import org.mockito.ArgumentCaptor;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -72,17 +76,23 @@ public class RestClientTest {
     }
 
     ArgumentCaptor<HttpUriRequest> argumentCaptor = ArgumentCaptor.forClass(HttpUriRequest.class);
+    ArgumentCaptor<FutureCallback> callbackCaptor = ArgumentCaptor.forClass(FutureCallback.class);
 
     try {
       verify(
           mockAsyncClient,
           times(1)).execute(argumentCaptor.capture(),
           any(BasicHttpContext.class),
-          eq(mockCallback));
+          callbackCaptor.capture());
     } catch (Exception e) {
       fail(e.getMessage());
     }
 
+    // The response is passed on to the callback of the request
+    HttpResponse httpResponse = mock(HttpResponse.class);
+    callbackCaptor.getValue().completed(httpResponse);
+    verify(mockCallback).completed(httpResponse);
+
     return argumentCaptor;
   }
 
@@ -150,6 +160,52 @@ public class RestClientTest {
     assertEquals(request.getURI().toString(), target + path);
   }
 
+  @Test
+  public void testSendUsesContextPerRequest() throws IOException {
+    CloseableHttpAsyncClient mockAsyncClient = mock(CloseableHttpAsyncClient.class);
+    RestClient restClient = new RestClient(target, username, password, mockAsyncClient);
+
+    restClient.sendAsync(RestClient.Method.GET, path, null, null);
+    restClient.sendAsync(RestClient.Method.GET, path, null, null);
+
+    ArgumentCaptor<HttpClientContext> contextCaptor = ArgumentCaptor.forClass(HttpClientContext.class);
+    verify(mockAsyncClient, times(2)).execute(any(HttpUriRequest.class), contextCaptor.capture(),
+        any(FutureCallback.class));
+    HttpClientContext first = contextCaptor.getAllValues().get(0);
+    HttpClientContext second = contextCaptor.getAllValues().get(1);
+    assertNotSame(first, second);
+    assertSame(first.getCredentialsProvider(), second.getCredentialsProvider());
+    assertSame(first.getAuthCache(), second.getAuthCache());
+  }
+
+  @Test
+  public void testCloseWhenIdleWaitsForRequestsInFlight() throws IOException {
+    CloseableHttpAsyncClient mockAsyncClient = mock(CloseableHttpAsyncClient.class);
+    RestClient restClient = new RestClient(target, username, password, mockAsyncClient);
+
+    restClient.sendAsync(RestClient.Method.GET, path, null, null);
+    restClient.sendAsync(RestClient.Method.GET, path, null, null);
+    ArgumentCaptor<FutureCallback> callbackCaptor = ArgumentCaptor.forClass(FutureCallback.class);
+    verify(mockAsyncClient, times(2)).execute(any(HttpUriRequest.class), any(HttpClientContext.class),
+        callbackCaptor.capture());
+
+    restClient.closeWhenIdle();
+    callbackCaptor.getAllValues().get(0).completed(mock(HttpResponse.class));
+    verify(mockAsyncClient, never()).close();
+
+    callbackCaptor.getAllValues().get(1).failed(new IOException("Connection reset"));
+    verify(mockAsyncClient, timeout(5000)).close();
+  }
+
+  @Test
+  public void testCloseWhenIdleClosesIdleClient() throws IOException {
+    CloseableHttpAsyncClient mockAsyncClient = mock(CloseableHttpAsyncClient.class);
+    RestClient restClient = new RestClient(target, username, password, mockAsyncClient);
+
+    restClient.closeWhenIdle();
+    verify(mockAsyncClient).close();
+  }
+
   @Test
   public void testCheckResponseMatch() {
     RestClient restClient = new RestClient(target, username, password, HttpAsyncClients.createDefault());
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.housekeeper.xenon;
+
+import com.vmware.photon.controller.common.xenon.ServiceUtils;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.TaskState;
+import com.vmware.xenon.common.UriUtils;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Completion reports of the child tasks of ImageSeederService, ImageReplicatorService and ImageCleanerService.
+ * <p/>
+ * A child PATCHes its parent with its own link once it reaches a final stage. The parent also queries the status of
+ * its children every queryPollDelay, to catch the reports which were lost. It can learn about a child both ways, so it
+ * keeps the links of its finished and failed children and counts each of them once.
+ */
+final class ChildTaskReports {
+
+  private ChildTaskReports() {
+  }
+
+  /**
+   * Sends the completion report of a child to its parent. A report which fails is only logged, since the parent
+   * finds the child with its next status query.
+   *
+   * @param child
+   * @param parentLink
+   * @param report
+   */
+  static void send(Service child, String parentLink, ServiceDocument report) {
+    child.sendRequest(Operation
+        .createPatch(UriUtils.buildUri(child.getHost(), parentLink))
+        .setBody(report)
+        .setCompletion((o, e) -> {
+          if (e != null) {
+            ServiceUtils.logWarning(child, "Failed to report completion to %s: %s", parentLink, e.getMessage());
+          }
+        }));
+  }
+
+  /**
+   * Whether a patch of a parent is the completion report of a child, as opposed to a stage progress patch or the
+   * result of a status query.
+   *
+   * @param taskInfo
+   * @param finishedLinks
+   * @param failedLinks
+   * @return
+   */
+  static boolean isReport(TaskState taskInfo, Set<String> finishedLinks, Set<String> failedLinks) {
+    return taskInfo == null && (finishedLinks != null || failedLinks != null);
+  }
+
+  /**
+   * Whether a patch of a parent holds child results, from a report or a status query, which arrive once the parent
+   * has completed or has sent itself the patch to complete. The parent ignores them, so it does not complete twice
+   * and stops querying the status of its children.
+   *
+   * @param current
+   * @param childrenDone whether all the children of the parent have completed
+   * @param finishedLinks
+   * @param failedLinks
+   * @return
+   */
+  static boolean isLate(TaskState current, boolean childrenDone, Set<String> finishedLinks, Set<String> failedLinks) {
+    return (finishedLinks != null || failedLinks != null)
+        && (childrenDone || current.stage.ordinal() >= TaskState.TaskStage.FINISHED.ordinal());
+  }
+
+  /**
+   * Adds the links of a patch to the links of the current state.
+   *
+   * @param current
+   * @param patch
+   * @return
+   */
+  static Set<String> union(Set<String> current, Set<String> patch) {
+    Set<String> union = current != null ? current : new HashSet<>();
+    if (patch != null) {
+      union.addAll(patch);
+    }
+    return union;
+  }
+}
@@ -53,7 +53,7 @@ public class HousekeeperServiceGroup
       TaskSchedulerServiceFactory.SELF_LINK + "/image-host-to-host-copiers";
 
   private static final Map<String, TaskSchedulerServiceStateBuilder> TASK_SCHEDULERS = ImmutableMap.of(
-      IMAGE_COPY_SCHEDULER_SERVICE, new TaskSchedulerServiceStateBuilder(ImageCopyService.class, 10),
+      IMAGE_COPY_SCHEDULER_SERVICE, new TaskSchedulerServiceStateBuilder(ImageCopyService.class, 10, true),
       IMAGE_TRANSFER_SCHEDULER_SERVICE, new TaskSchedulerServiceStateBuilder(ImageHostToHostCopyService.class, 1)
   );
 
@@ -89,6 +89,8 @@ public class HousekeeperServiceGroup
 
   private PhotonControllerXenonHost photonControllerXenonHost;
 
+  private final PushedSubnetIPLeases pushedSubnetIPLeases = new PushedSubnetIPLeases();
+
   public HousekeeperServiceGroup() {
   }
 
@@ -118,6 +120,13 @@ public class HousekeeperServiceGroup
     return TaskTriggerFactoryService.SELF_LINK + ImageSeederSyncTriggerBuilder.TRIGGER_SELF_LINK;
   }
 
+  /**
+   * Get the IP leases last pushed to the DHCP agents by the SubnetIPLeaseSyncService tasks of this host.
+   */
+  PushedSubnetIPLeases getPushedSubnetIPLeases() {
+    return pushedSubnetIPLeases;
+  }
+
   @Override
   public String getName() {
     return "housekeeper";
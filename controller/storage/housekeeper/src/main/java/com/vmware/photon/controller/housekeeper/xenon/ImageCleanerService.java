@@ -25,6 +25,7 @@ import com.vmware.photon.controller.common.xenon.ServiceUriPaths;
 import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.photon.controller.housekeeper.xenon.trigger.ImageCleanerTriggerBuilder;
 import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.OperationJoin;
 import com.vmware.xenon.common.OperationSequence;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.StatefulService;
@@ -55,6 +56,10 @@ public class ImageCleanerService extends StatefulService {
    */
   private static final int DEFAULT_QUERY_POLL_DELAY = 10000;
 
+  public static final String STAT_NAME_DELETE_REPORTS = "deleteReports";
+
+  public static final String STAT_NAME_STATUS_QUERIES = "statusQueries";
+
   /**
    * Default constructor.
    */
@@ -118,6 +123,13 @@ public class ImageCleanerService extends StatefulService {
       State currentState = getState(patch);
       State patchState = patch.getBody(State.class);
 
+      if (ChildTaskReports.isLate(currentState.taskInfo, areDeletesDone(currentState),
+          patchState.finishedDeleteLinks, patchState.failedOrCanceledDeleteLinks)) {
+        ServiceUtils.logInfo(this, "Ignoring delete results received after completion");
+        patch.complete();
+        return;
+      }
+
       this.validatePatch(currentState, patchState);
       this.applyPatch(currentState, patchState);
 
@@ -242,6 +254,15 @@ public class ImageCleanerService extends StatefulService {
     if (patch.failedOrCanceledDeletes != null) {
       current.failedOrCanceledDeletes = patch.failedOrCanceledDeletes;
     }
+
+    if (patch.finishedDeleteLinks != null || patch.failedOrCanceledDeleteLinks != null) {
+      // Deletes can be both reported and found by a status query, so they are counted by link
+      current.finishedDeleteLinks = ChildTaskReports.union(current.finishedDeleteLinks, patch.finishedDeleteLinks);
+      current.failedOrCanceledDeleteLinks =
+          ChildTaskReports.union(current.failedOrCanceledDeleteLinks, patch.failedOrCanceledDeleteLinks);
+      current.finishedDeletes = current.finishedDeleteLinks.size();
+      current.failedOrCanceledDeletes = current.failedOrCanceledDeleteLinks.size();
+    }
   }
 
   /**
@@ -271,6 +292,15 @@ public class ImageCleanerService extends StatefulService {
    */
   private void processStartedStage(final State current, final State patch)
       throws IOException, RpcException {
+    if (ChildTaskReports.isReport(patch.taskInfo, patch.finishedDeleteLinks, patch.failedOrCanceledDeleteLinks)) {
+      // Deletes may report before they are all triggered, the counts are checked from then on
+      adjustStat(STAT_NAME_DELETE_REPORTS, 1);
+      if (current.taskInfo.subStage == TaskState.SubStage.AWAIT_COMPLETION) {
+        completeIfDeletesDone(current);
+      }
+      return;
+    }
+
     switch (current.taskInfo.subStage) {
       case TRIGGER_DELETES:
         this.processTriggerDeletes(current);
@@ -382,11 +412,42 @@ public class ImageCleanerService extends StatefulService {
    * @param patch
    */
   private void processAwaitCompletion(final State current, final State patch) {
+    if (completeIfDeletesDone(current)) {
+      return;
+    }
+
+    getHost().schedule(() -> checkStatus(current), current.queryPollDelay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Whether the service awaits the completion of its deletes and all of them have completed.
+   *
+   * @param current
+   * @return
+   */
+  private static boolean areDeletesDone(final State current) {
+    if (current.taskInfo.subStage != TaskState.SubStage.AWAIT_COMPLETION
+        || current.dataStoreCount == null
+        || current.finishedDeletes == null) {
+      return false;
+    }
+
+    int failed = current.failedOrCanceledDeletes != null ? current.failedOrCanceledDeletes : 0;
+    return current.dataStoreCount == current.finishedDeletes + failed;
+  }
+
+  /**
+   * Moves the service to FINISHED or FAILED once all the child services have completed.
+   *
+   * @param current
+   * @return whether all the child services have completed
+   */
+  private boolean completeIfDeletesDone(final State current) {
     if (current.finishedDeletes != null
         && current.dataStoreCount.equals(current.finishedDeletes)) {
       // all copies have completed successfully
       this.sendSelfPatch(buildPatch(TaskState.TaskStage.FINISHED, null, null));
-      return;
+      return true;
     }
 
     if (current.finishedDeletes != null
@@ -399,114 +460,66 @@ public class ImageCleanerService extends StatefulService {
               current.failedOrCanceledDeletes)
       );
       this.failTask(e);
-      return;
+      return true;
     }
 
-    // determine if we have already received answers from queries that check for completion
-    // of ImageDatastoreSweeperService instances
-    boolean isFirstCheck = current.finishedDeletes == null
-        && current.failedOrCanceledDeletes == null;
-
-    if (isFirstCheck || patch.finishedDeletes != null) {
-      // issue the query to get the count of finished ImageDatastoreSweeperService instances,
-      // because we either have not yet run the query yet or we have just processed the patch
-      // from the previous query
-      getHost().schedule(() -> checkFailedOrCancelledCount(current), current.queryPollDelay, TimeUnit.MILLISECONDS);
-    }
-
-    if (patch.failedOrCanceledDeletes != null) {
-      // issue the query to get the count of failed or cancelled ImageDatastoreSweeperService instances,
-      // because we either have not run the query yet or we have just processed the patch
-      // from the previous query
-      getHost().schedule(() -> checkFinishedCount(current), current.queryPollDelay, TimeUnit.MILLISECONDS);
-    }
+    return false;
   }
 
   /**
-   * Triggers a query to retrieve the "child" ImageDatastoreSweeperService instances in FINISHED state.
+   * Triggers the queries to retrieve the "child" ImageDatastoreSweeperService instances which have completed.
    *
    * @param current
    */
-  private void checkFinishedCount(final State current) {
-    Operation.CompletionHandler handler = (completedOp, failure) -> {
-      if (failure != null) {
-        // The query failed to execute. This most likely means that the
-        // host is in a bad state and if we re-issue the query it is likely
-        // to fail again. Terminate and fail the task early and delegate any
-        // retry logic to the caller.
-        failTask(failure);
-        return;
-      }
-
-      QueryTask rsp = completedOp.getBody(QueryTask.class);
-
-      State s = buildPatch(current.taskInfo.stage, current.taskInfo.subStage, null);
-      ServiceUtils.logInfo(ImageCleanerService.this, "ImageDatastoreSweeperService instances that are finished: %s",
-          Utils.toJson(false, false, rsp.results.documentLinks));
-
-      s.finishedDeletes = rsp.results.documentLinks.size();
-      sendSelfPatch(s);
-    };
-
-    QueryTask.QuerySpecification spec =
-        QueryTaskUtils.buildChildServiceTaskStatusQuerySpec(
-            this.getSelfLink(), ImageDatastoreSweeperService.State.class, TaskState.TaskStage.FINISHED);
-
-    this.sendQuery(spec, handler);
+  private void checkStatus(final State current) {
+    adjustStat(STAT_NAME_STATUS_QUERIES, 1);
+    Operation finished = buildChildQueryOperation(TaskState.TaskStage.FINISHED);
+    Operation failedOrCanceled = buildChildQueryOperation(TaskState.TaskStage.FAILED, TaskState.TaskStage.CANCELLED);
+
+    OperationJoin
+        .create(finished, failedOrCanceled)
+        .setCompletion((ops, failures) -> {
+          if (failures != null && !failures.isEmpty()) {
+            // The query failed to execute. This most likely means that the
+            // host is in a bad state and if we re-issue the query it is likely
+            // to fail again. Terminate and fail the task early and delegate any
+            // retry logic to the caller.
+            failTask(failures.values().iterator().next());
+            return;
+          }
+
+          QueryTask finishedRsp = ops.get(finished.getId()).getBody(QueryTask.class);
+          QueryTask failedOrCanceledRsp = ops.get(failedOrCanceled.getId()).getBody(QueryTask.class);
+
+          State s = buildPatch(current.taskInfo.stage, current.taskInfo.subStage, null);
+          ServiceUtils.logInfo(ImageCleanerService.this,
+              "ImageDatastoreSweeperService instances that are finished: %s",
+              Utils.toJson(false, false, finishedRsp.results.documentLinks));
+          s.finishedDeleteLinks = new HashSet<>(finishedRsp.results.documentLinks);
+
+          ServiceUtils.logInfo(ImageCleanerService.this, "ImageDatastoreSweeperService instances that have failed or " +
+              "cancelled %s", Utils.toJson(false, false, failedOrCanceledRsp.results.documentLinks));
+          s.failedOrCanceledDeleteLinks = new HashSet<>(failedOrCanceledRsp.results.documentLinks);
+
+          sendSelfPatch(s);
+        })
+        .sendWith(this);
   }
 
   /**
-   * Triggers a query to retrieve the "child" ImageDatastoreSweeperService instances in FAILED or CANCELLED state.
+   * Builds a query for the "child" ImageDatastoreSweeperService instances in the specified stages.
    *
-   * @param current
+   * @param stages
+   * @return
    */
-  private void checkFailedOrCancelledCount(final State current) {
-    Operation.CompletionHandler handler = (completedOp, failure) -> {
-      if (failure != null) {
-        // The query failed to execute. This most likely means that the
-        // host is in a bad state and if we re-issue the query it is likely
-        // to fail again. Terminate and fail the task early and delegate any
-        // retry logic to the caller.
-        failTask(failure);
-        return;
-      }
-
-      QueryTask rsp = completedOp.getBody(QueryTask.class);
-
-      State s = buildPatch(current.taskInfo.stage, current.taskInfo.subStage, null);
-      ServiceUtils.logInfo(ImageCleanerService.this, "ImageDatastoreSweeperService instances that have failed or " +
-              "cancelled %s", Utils.toJson(false, false, rsp.results.documentLinks));
-
-      s.failedOrCanceledDeletes = rsp.results.documentLinks.size();
-      sendSelfPatch(s);
-    };
-
+  private Operation buildChildQueryOperation(final TaskState.TaskStage... stages) {
     QueryTask.QuerySpecification spec =
         QueryTaskUtils.buildChildServiceTaskStatusQuerySpec(
-            this.getSelfLink(),
-            ImageDatastoreSweeperService.State.class,
-            TaskState.TaskStage.FAILED,
-            TaskState.TaskStage.CANCELLED);
-
-    this.sendQuery(spec, handler);
-  }
-
-  /**
-   * This method sends a Xenon query.
-   *
-   * @param spec
-   * @param handler
-   */
-  private void sendQuery(final QueryTask.QuerySpecification spec, final Operation.CompletionHandler handler) {
-    QueryTask task = QueryTask.create(spec)
-        .setDirect(true);
+            this.getSelfLink(), ImageDatastoreSweeperService.State.class, stages);
 
-    Operation queryPost = Operation
+    return Operation
         .createPost(UriUtils.buildUri(getHost(), ServiceUriPaths.CORE_QUERY_TASKS))
-        .setBody(task)
-        .setCompletion(handler);
-
-    sendRequest(queryPost);
+        .setBody(QueryTask.create(spec).setDirect(true));
   }
 
   /**
@@ -650,5 +663,15 @@ public class ImageCleanerService extends StatefulService {
      * Count of individual copies in FAILED or CANCELED state.
      */
     public Integer failedOrCanceledDeletes;
+
+    /**
+     * Links of the ImageDatastoreSweeperService instances in FINISHED state.
+     */
+    public Set<String> finishedDeleteLinks;
+
+    /**
+     * Links of the ImageDatastoreSweeperService instances in FAILED or CANCELED state.
+     */
+    public Set<String> failedOrCanceledDeleteLinks;
   }
 }
@@ -133,6 +133,9 @@ public class ImageCopyService extends StatefulService {
         case FAILED:
         case FINISHED:
         case CANCELLED:
+          if (currentState.parentLink != null) {
+            reportCompletionToParent(currentState);
+          }
           break;
         default:
           throw new IllegalStateException(
@@ -351,6 +354,26 @@ public class ImageCopyService extends StatefulService {
     return requestBody;
   }
 
+  /**
+   * Reports the completion of the copy to the ImageReplicatorService which triggered it, so that the replicator does
+   * not wait for its next status query.
+   *
+   * @param current
+   */
+  private void reportCompletionToParent(final State current) {
+    Set<String> copyLinks = new HashSet<>();
+    copyLinks.add(getSelfLink());
+
+    ImageReplicatorService.State report = new ImageReplicatorService.State();
+    if (current.taskInfo.stage == TaskState.TaskStage.FINISHED) {
+      report.finishedCopyLinks = copyLinks;
+    } else {
+      report.failedOrCanceledCopyLinks = copyLinks;
+    }
+
+    ChildTaskReports.send(this, current.parentLink, report);
+  }
+
   /**
    * Moves the service into the FAILED state.
    *
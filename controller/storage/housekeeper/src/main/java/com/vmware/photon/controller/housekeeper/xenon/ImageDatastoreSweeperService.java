@@ -260,6 +260,9 @@ public class ImageDatastoreSweeperService extends StatefulService {
         case FAILED:
         case FINISHED:
         case CANCELLED:
+          if (current.parentLink != null) {
+            reportCompletionToParent(current);
+          }
           break;
 
         default:
@@ -754,6 +757,26 @@ public class ImageDatastoreSweeperService extends StatefulService {
     return imagesToDelete;
   }
 
+  /**
+   * Reports the completion of the sweep to the ImageCleanerService which triggered it, so that the cleaner does not
+   * wait for its next status query.
+   *
+   * @param current
+   */
+  private void reportCompletionToParent(final State current) {
+    Set<String> deleteLinks = new HashSet<>();
+    deleteLinks.add(getSelfLink());
+
+    ImageCleanerService.State report = new ImageCleanerService.State();
+    if (current.taskState.stage == TaskState.TaskStage.FINISHED) {
+      report.finishedDeleteLinks = deleteLinks;
+    } else {
+      report.failedOrCanceledDeleteLinks = deleteLinks;
+    }
+
+    ChildTaskReports.send(this, current.parentLink, report);
+  }
+
   /**
    * Moves the service into the FAILED state.
    *
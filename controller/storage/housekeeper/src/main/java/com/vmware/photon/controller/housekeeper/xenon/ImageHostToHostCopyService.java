@@ -151,6 +151,7 @@ public class ImageHostToHostCopyService extends StatefulService {
         case FINISHED:
         case CANCELLED:
           sendTaskSchedulerServicePatch();
+          reportCompletionToParent(currentState);
           break;
         default:
           throw new IllegalStateException(
@@ -581,6 +582,26 @@ public class ImageHostToHostCopyService extends StatefulService {
         .getTaskSchedulerImageHostToHostServiceUri(), s, UriUtils.buildUri(getHost(), getSelfLink()));
   }
 
+  /**
+   * Reports the completion of the copy to the ImageSeederService which triggered it, so that the seeder does not wait
+   * for its next status query.
+   *
+   * @param current
+   */
+  private void reportCompletionToParent(final State current) {
+    Set<String> copyLinks = new HashSet<>();
+    copyLinks.add(getSelfLink());
+
+    ImageSeederService.State report = new ImageSeederService.State();
+    if (current.taskInfo.stage == TaskState.TaskStage.FINISHED) {
+      report.finishedCopyLinks = copyLinks;
+    } else {
+      report.failedOrCancelledCopyLinks = copyLinks;
+    }
+
+    ChildTaskReports.send(this, current.parentLink, report);
+  }
+
   /**
    * Sends post request to imageToImageDatastoreMappingService to
    * create a document with imageId and destination datastore.
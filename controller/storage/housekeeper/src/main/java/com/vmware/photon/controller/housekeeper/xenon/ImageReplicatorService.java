@@ -21,6 +21,7 @@ import com.vmware.photon.controller.common.xenon.QueryTaskUtils;
 import com.vmware.photon.controller.common.xenon.ServiceUriPaths;
 import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.OperationJoin;
 import com.vmware.xenon.common.OperationSequence;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.StatefulService;
@@ -46,12 +47,19 @@ import java.util.concurrent.TimeUnit;
  * data stores. The copy is performed by create ImageCopyService, TaskSchedulerService will move those to STARTED
  * stage, and wait for the copy to finish. Client will poll until task state is FINISH or FAIL. CANCELLED is not
  * supported.
+ * <p/>
+ * Each copy reports its completion to the replicator with a PATCH. The replicator also queries the status of its
+ * copies every queryPollDelay, to catch the reports which were lost.
  */
 public class ImageReplicatorService extends StatefulService {
   /**
    * Time to delay query task executions.
    */
-  private static final int DEFAULT_QUERY_POLL_DELAY = 10000;
+  private static final int DEFAULT_QUERY_POLL_DELAY = 60000;
+
+  public static final String STAT_NAME_COPY_REPORTS = "copyReports";
+
+  public static final String STAT_NAME_STATUS_QUERIES = "statusQueries";
 
   /**
    * Default constructor.
@@ -110,6 +118,13 @@ public class ImageReplicatorService extends StatefulService {
     State patchState = patch.getBody(State.class);
 
     try {
+      if (ChildTaskReports.isLate(currentState.taskInfo, areCopiesDone(currentState),
+          patchState.finishedCopyLinks, patchState.failedOrCanceledCopyLinks)) {
+        ServiceUtils.logInfo(this, "Ignoring copy results received after completion");
+        patch.complete();
+        return;
+      }
+
       validatePatch(currentState, patchState);
       applyPatch(currentState, patchState);
 
@@ -244,6 +259,15 @@ public class ImageReplicatorService extends StatefulService {
       currentState.failedOrCanceledCopies = patchState.failedOrCanceledCopies;
     }
 
+    if (patchState.finishedCopyLinks != null || patchState.failedOrCanceledCopyLinks != null) {
+      // Copies can be both reported and found by a status query, so they are counted by link
+      currentState.finishedCopyLinks =
+          ChildTaskReports.union(currentState.finishedCopyLinks, patchState.finishedCopyLinks);
+      currentState.failedOrCanceledCopyLinks =
+          ChildTaskReports.union(currentState.failedOrCanceledCopyLinks, patchState.failedOrCanceledCopyLinks);
+      currentState.finishedCopies = currentState.finishedCopyLinks.size();
+      currentState.failedOrCanceledCopies = currentState.failedOrCanceledCopyLinks.size();
+    }
   }
 
   /**
@@ -252,6 +276,15 @@ public class ImageReplicatorService extends StatefulService {
    * @param current
    */
   protected void handleStartedStage(final State current, final State patch) {
+    if (ChildTaskReports.isReport(patch.taskInfo, patch.finishedCopyLinks, patch.failedOrCanceledCopyLinks)) {
+      // Copies may report before they are all triggered, the counts are checked from then on
+      adjustStat(STAT_NAME_COPY_REPORTS, 1);
+      if (current.taskInfo.subStage == TaskState.SubStage.AWAIT_COMPLETION) {
+        completeIfCopiesDone(current);
+      }
+      return;
+    }
+
     // Handle task sub-state.
     switch (current.taskInfo.subStage) {
       case TRIGGER_COPIES:
@@ -329,11 +362,44 @@ public class ImageReplicatorService extends StatefulService {
    * @param current
    */
   protected void processAwaitCompletion(final State current, final State patch) {
+    if (completeIfCopiesDone(current)) {
+      return;
+    }
+
+    getHost().schedule(() -> {
+      checkStatus(current);
+    }, current.queryPollDelay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Whether the service awaits the completion of its copies and all of them have completed.
+   *
+   * @param current
+   * @return
+   */
+  private static boolean areCopiesDone(final State current) {
+    if (current.taskInfo.subStage != TaskState.SubStage.AWAIT_COMPLETION
+        || current.dataStoreCount == null
+        || current.finishedCopies == null) {
+      return false;
+    }
+
+    int failed = current.failedOrCanceledCopies != null ? current.failedOrCanceledCopies : 0;
+    return current.dataStoreCount == current.finishedCopies + failed;
+  }
+
+  /**
+   * Moves the service to FINISHED or FAILED once all the copies have completed.
+   *
+   * @param current
+   * @return whether all the copies have completed
+   */
+  private boolean completeIfCopiesDone(final State current) {
     if (current.finishedCopies != null
         && current.dataStoreCount.equals(current.finishedCopies)) {
       // all copies have completed successfully
       this.sendSelfPatch(buildPatch(TaskState.TaskStage.FINISHED, null, null));
-      return;
+      return true;
     }
 
     if (current.finishedCopies != null
@@ -346,37 +412,10 @@ public class ImageReplicatorService extends StatefulService {
               current.failedOrCanceledCopies)
       );
       this.failTask(e);
-      return;
+      return true;
     }
 
-    // determine if we have already received answers from queries that check for completion
-    // of ImageCopyService instances
-    boolean isFirstCheck = current.finishedCopies == null
-        && current.failedOrCanceledCopies == null;
-
-    if (isFirstCheck || patch.finishedCopies != null) {
-      // issue the query to get the count of finished ImageCopyService instances,
-      // because we either have not yet run the query yet or we have just processed the patch
-      // from the previous query on children in FINISHED stage
-      getHost().schedule(new Runnable() {
-        @Override
-        public void run() {
-          checkFailedOrCancelledCount(current);
-        }
-      }, current.queryPollDelay, TimeUnit.MILLISECONDS);
-    }
-
-    if (patch.failedOrCanceledCopies != null) {
-      // issue the query to get the count of failed or cancelled ImageCopyService instances,
-      // because we either have not run the query yet or we have just processed the patch
-      // from the previous query on children in CANCELLED OR FAILED stage
-      getHost().schedule(new Runnable() {
-        @Override
-        public void run() {
-          checkFinishedCount(current);
-        }
-      }, current.queryPollDelay, TimeUnit.MILLISECONDS);
-    }
+    return false;
   }
 
   protected CloudStoreHelper getCloudStoreHelper() {
@@ -439,78 +478,61 @@ public class ImageReplicatorService extends StatefulService {
   }
 
   /**
-   * Triggers a query to retrieve the "child" ImageCopyService instances in FINISHED state.
+   * Issues the queries to retrieve the "child" ImageCopyService instances which have completed.
    *
    * @param current
    */
-  private void checkFinishedCount(final State current) {
-    Operation.CompletionHandler handler = new Operation.CompletionHandler() {
-      @Override
-      public void handle(Operation completedOp, Throwable failure) {
-        if (failure != null) {
-          // The query failed to execute. This most likely means that the
-          // host is in a bad state and if we re-issue the query it is likely
-          // to fail again. Terminate and fail the task early and delegate any
-          // retry logic to the caller.
-          failTask(failure);
-          return;
-        }
+  private void checkStatus(final State current) {
+    adjustStat(STAT_NAME_STATUS_QUERIES, 1);
+    Operation finished = buildChildQueryOperation(TaskState.TaskStage.FINISHED);
+    Operation failedOrCanceled = buildChildQueryOperation(
+        TaskState.TaskStage.FAILED, TaskState.TaskStage.CANCELLED);
+
+    OperationJoin.JoinedCompletionHandler handler = (Map<Long, Operation> ops, Map<Long, Throwable> failures) -> {
+      if (failures != null && !failures.isEmpty()) {
+        // The query failed to execute. This most likely means that the
+        // host is in a bad state and if we re-issue the query it is likely
+        // to fail again. Terminate and fail the task early and delegate any
+        // retry logic to the caller.
+        failTask(failures.values().iterator().next());
+        return;
+      }
 
-        QueryTask rsp = completedOp.getBody(QueryTask.class);
+      QueryTask finishedRsp = ops.get(finished.getId()).getBody(QueryTask.class);
+      QueryTask failedOrCanceledRsp = ops.get(failedOrCanceled.getId()).getBody(QueryTask.class);
 
-        State s = buildPatch(current.taskInfo.stage, current.taskInfo.subStage, null);
-        ServiceUtils.logInfo(ImageReplicatorService.this, "Finished %s",
-            Utils.toJson(false, false, rsp.results.documentLinks));
-        s.finishedCopies = rsp.results.documentLinks.size();
+      State s = buildPatch(current.taskInfo.stage, current.taskInfo.subStage, null);
+      ServiceUtils.logInfo(ImageReplicatorService.this, "Finished %s",
+          Utils.toJson(false, false, finishedRsp.results.documentLinks));
+      s.finishedCopyLinks = new HashSet<>(finishedRsp.results.documentLinks);
 
-        sendSelfPatch(s);
-      }
-    };
+      ServiceUtils.logInfo(ImageReplicatorService.this, "Failed %s",
+          Utils.toJson(false, false, failedOrCanceledRsp.results.documentLinks));
+      s.failedOrCanceledCopyLinks = new HashSet<>(failedOrCanceledRsp.results.documentLinks);
 
-    QueryTask.QuerySpecification spec =
-        QueryTaskUtils.buildChildServiceTaskStatusQuerySpec(
-            this.getSelfLink(), ImageCopyService.State.class, TaskState.TaskStage.FINISHED);
+      sendSelfPatch(s);
+    };
 
-    this.sendQuery(spec, handler);
+    OperationJoin
+        .create(finished, failedOrCanceled)
+        .setCompletion(handler)
+        .sendWith(this);
   }
 
   /**
-   * Triggers a query to retrieve the "child" ImageCopyService instances in FAILED or CANCELLED state.
+   * Creates a query operation for the "child" ImageCopyService instances in the specified stages.
    *
-   * @param current
+   * @param stages
+   * @return
    */
-  private void checkFailedOrCancelledCount(final State current) {
-    Operation.CompletionHandler handler = new Operation.CompletionHandler() {
-      @Override
-      public void handle(Operation completedOp, Throwable failure) {
-        if (failure != null) {
-          // The query failed to execute. This most likely means that the
-          // host is in a bad state and if we re-issue the query it is likely
-          // to fail again. Terminate and fail the task early and delegate any
-          // retry logic to the caller.
-          failTask(failure);
-          return;
-        }
-
-        QueryTask rsp = completedOp.getBody(QueryTask.class);
-
-        State s = buildPatch(current.taskInfo.stage, current.taskInfo.subStage, null);
-        ServiceUtils.logInfo(ImageReplicatorService.this, "Failed %s",
-            Utils.toJson(false, false, rsp.results.documentLinks));
-        s.failedOrCanceledCopies = rsp.results.documentLinks.size();
-
-        sendSelfPatch(s);
-      }
-    };
-
+  private Operation buildChildQueryOperation(TaskState.TaskStage... stages) {
     QueryTask.QuerySpecification spec =
         QueryTaskUtils.buildChildServiceTaskStatusQuerySpec(
-            this.getSelfLink(),
-            ImageCopyService.State.class,
-            TaskState.TaskStage.FAILED,
-            TaskState.TaskStage.CANCELLED);
+            this.getSelfLink(), ImageCopyService.State.class, stages);
 
-    this.sendQuery(spec, handler);
+    return Operation
+        .createPost(UriUtils.buildUri(getHost(), ServiceUriPaths.CORE_QUERY_TASKS))
+        .setBody(QueryTask.create(spec).setDirect(true));
   }
 
   /**
@@ -533,23 +555,6 @@ public class ImageReplicatorService extends StatefulService {
         .setBody(QueryTask.create(querySpecification).setDirect(true));
   }
 
-
-  /**
-   * Triggers a query task with the spec passed as parameters.
-   *
-   * @param spec
-   */
-  private void sendQuery(QueryTask.QuerySpecification spec, Operation.CompletionHandler handler) {
-    QueryTask task = QueryTask.create(spec)
-        .setDirect(true);
-
-    Operation queryPost = Operation
-        .createPost(UriUtils.buildUri(getHost(), ServiceUriPaths.CORE_QUERY_TASKS))
-        .setBody(task)
-        .setCompletion(handler);
-    sendRequest(queryPost);
-  }
-
   /**
    * Moves the service into the FAILED state.
    *
@@ -660,7 +665,8 @@ public class ImageReplicatorService extends StatefulService {
     public boolean isSelfProgressionDisabled;
 
     /**
-     * Time in milliseconds to delay before issuing query tasks.
+     * Time in milliseconds to delay before issuing query tasks. The queries only catch the copies whose completion
+     * report was lost.
      */
     public Integer queryPollDelay;
 
@@ -679,5 +685,15 @@ public class ImageReplicatorService extends StatefulService {
      * Count of individual copies in FAILED or CANCELED state.
      */
     public Integer failedOrCanceledCopies;
+
+    /**
+     * Links of the individual copies in FINISHED state.
+     */
+    public Set<String> finishedCopyLinks;
+
+    /**
+     * Links of the individual copies in FAILED or CANCELED state.
+     */
+    public Set<String> failedOrCanceledCopyLinks;
   }
 }
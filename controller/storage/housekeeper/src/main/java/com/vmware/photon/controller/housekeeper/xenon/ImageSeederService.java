@@ -50,12 +50,19 @@ import java.util.concurrent.TimeUnit;
  * data stores. The copy is performed by creating ImageHostToHostCopyService, TaskSchedulerService will move those to
  * STARTED stage, and wait for the copy to finish. Client will poll until task state is FINISH or FAIL. CANCELLED is not
  * supported.
+ * <p/>
+ * Each copy reports its completion to the seeder with a PATCH. The seeder also queries the status of its copies every
+ * queryPollDelay, to catch the reports which were lost.
  */
 public class ImageSeederService extends StatefulService {
   /**
    * Time to delay query task executions.
    */
-  private static final int DEFAULT_QUERY_POLL_DELAY = 10000;
+  private static final int DEFAULT_QUERY_POLL_DELAY = 60000;
+
+  public static final String STAT_NAME_COPY_REPORTS = "copyReports";
+
+  public static final String STAT_NAME_STATUS_QUERIES = "statusQueries";
 
   /**
    * Default constructor.
@@ -98,6 +105,13 @@ public class ImageSeederService extends StatefulService {
     State patchState = patch.getBody(State.class);
 
     try {
+      if (ChildTaskReports.isLate(currentState.taskInfo, areCopiesDone(currentState),
+          patchState.finishedCopyLinks, patchState.failedOrCancelledCopyLinks)) {
+        ServiceUtils.logInfo(this, "Ignoring copy results received after completion");
+        patch.complete();
+        return;
+      }
+
       validatePatch(currentState, patchState);
       applyPatch(currentState, patchState);
 
@@ -232,6 +246,16 @@ public class ImageSeederService extends StatefulService {
     if (patchState.failedOrCancelledCopies != null) {
       currentState.failedOrCancelledCopies = patchState.failedOrCancelledCopies;
     }
+
+    if (patchState.finishedCopyLinks != null || patchState.failedOrCancelledCopyLinks != null) {
+      // Copies can be both reported and found by a status query, so they are counted by link
+      currentState.finishedCopyLinks =
+          ChildTaskReports.union(currentState.finishedCopyLinks, patchState.finishedCopyLinks);
+      currentState.failedOrCancelledCopyLinks =
+          ChildTaskReports.union(currentState.failedOrCancelledCopyLinks, patchState.failedOrCancelledCopyLinks);
+      currentState.finishedCopies = currentState.finishedCopyLinks.size();
+      currentState.failedOrCancelledCopies = currentState.failedOrCancelledCopyLinks.size();
+    }
   }
 
   /**
@@ -240,6 +264,15 @@ public class ImageSeederService extends StatefulService {
    * @param current
    */
   protected void handleStartedStage(final State current, final State patch) {
+    if (ChildTaskReports.isReport(patch.taskInfo, patch.finishedCopyLinks, patch.failedOrCancelledCopyLinks)) {
+      // Copies may report before they are all triggered, the counts are checked from then on
+      adjustStat(STAT_NAME_COPY_REPORTS, 1);
+      if (current.taskInfo.subStage == TaskState.SubStage.AWAIT_COMPLETION) {
+        completeIfCopiesDone(current);
+      }
+      return;
+    }
+
     // Handle task sub-state.
     switch (current.taskInfo.subStage) {
       case UPDATE_DATASTORE_COUNTS:
@@ -370,6 +403,39 @@ public class ImageSeederService extends StatefulService {
    * @param current
    */
   protected void processAwaitCompletion(final State current) {
+    if (completeIfCopiesDone(current)) {
+      return;
+    }
+
+    getHost().schedule(() -> {
+      this.checkStatus(current);
+    }, current.queryPollDelay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Whether the service awaits the completion of its copies and all of them have completed.
+   *
+   * @param current
+   * @return
+   */
+  private static boolean areCopiesDone(final State current) {
+    if (current.taskInfo.subStage != TaskState.SubStage.AWAIT_COMPLETION
+        || current.triggeredCopies == null
+        || current.finishedCopies == null) {
+      return false;
+    }
+
+    int failed = current.failedOrCancelledCopies != null ? current.failedOrCancelledCopies : 0;
+    return current.triggeredCopies == current.finishedCopies + failed;
+  }
+
+  /**
+   * Moves the service to FINISHED or FAILED once all the triggered copies have completed.
+   *
+   * @param current
+   * @return whether all the triggered copies have completed
+   */
+  private boolean completeIfCopiesDone(final State current) {
     ServiceUtils.logInfo(this, "Checking status:  finishedCopies is %s, failedOrCancelledCopies is %s," +
         "triggeredCopies is %s", current.finishedCopies, current.failedOrCancelledCopies, current.triggeredCopies);
 
@@ -377,7 +443,7 @@ public class ImageSeederService extends StatefulService {
         && current.triggeredCopies.equals(current.finishedCopies)) {
       // all copies have completed successfully
       this.sendSelfPatch(buildPatch(TaskState.TaskStage.FINISHED, null, null));
-      return;
+      return true;
     }
 
     if (current.finishedCopies != null
@@ -390,12 +456,10 @@ public class ImageSeederService extends StatefulService {
               current.failedOrCancelledCopies)
       );
       this.failTask(e);
-      return;
+      return true;
     }
 
-    getHost().schedule(() -> {
-      this.checkStatus(current);
-    }, current.queryPollDelay, TimeUnit.MILLISECONDS);
+    return false;
   }
 
   /**
@@ -450,6 +514,7 @@ public class ImageSeederService extends StatefulService {
    * @param current
    */
   private void checkStatus(final State current) {
+    adjustStat(STAT_NAME_STATUS_QUERIES, 1);
     Operation finished = this.buildChildQueryOperation(TaskState.TaskStage.FINISHED);
     Operation failedOrCanceled = this.buildChildQueryOperation(
         TaskState.TaskStage.FAILED, TaskState.TaskStage.CANCELLED);
@@ -465,11 +530,11 @@ public class ImageSeederService extends StatefulService {
         QueryTask failedOrCanceledRsp = ops.get(failedOrCanceled.getId()).getBody(QueryTask.class);
 
         State s = buildPatch(current.taskInfo.stage, current.taskInfo.subStage, null);
-        s.finishedCopies = finishedRsp.results.documentLinks.size();
+        s.finishedCopyLinks = new HashSet<>(finishedRsp.results.documentLinks);
         ServiceUtils.logInfo(ImageSeederService.this, "Finished %s",
             Utils.toJson(false, false, finishedRsp.results.documentLinks));
 
-        s.failedOrCancelledCopies = failedOrCanceledRsp.results.documentLinks.size();
+        s.failedOrCancelledCopyLinks = new HashSet<>(failedOrCanceledRsp.results.documentLinks);
         ServiceUtils.logInfo(ImageSeederService.this, "FailedOrCanceledRsp %s",
             Utils.toJson(false, false, failedOrCanceledRsp.results.documentLinks));
 
@@ -744,7 +809,8 @@ public class ImageSeederService extends StatefulService {
     public boolean isSelfProgressionDisabled;
 
     /**
-     * Time in milliseconds to delay before issuing query tasks.
+     * Time in milliseconds to delay before issuing query tasks. The queries only catch the copies whose completion
+     * report was lost.
      */
     @DefaultInteger(value = DEFAULT_QUERY_POLL_DELAY)
     public Integer queryPollDelay;
@@ -768,5 +834,15 @@ public class ImageSeederService extends StatefulService {
      * Failed or canceled copies.
      */
     public Integer failedOrCancelledCopies;
+
+    /**
+     * Links of the finished copies.
+     */
+    public Set<String> finishedCopyLinks;
+
+    /**
+     * Links of the failed or canceled copies.
+     */
+    public Set<String> failedOrCancelledCopyLinks;
   }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.housekeeper.xenon;
+
+import com.vmware.photon.controller.dhcpagent.xenon.service.SubnetIPLeaseTask.SubnetIPLease;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * IP leases last pushed to the DHCP agents by one host, per subnet, which {@link SubnetIPLeaseSyncService} pushes the
+ * next deltas from.
+ * <p/>
+ * Each host keeps its own records in its {@link HousekeeperServiceGroup}. A record expires after a time to live, so
+ * the records of deleted subnets do not pile up, and a subnet synced again after a long time gets all its IP leases.
+ */
+final class PushedSubnetIPLeases {
+
+  static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  private final ConcurrentMap<String, Record> records = new ConcurrentHashMap<>();
+
+  private final long timeToLiveMillis;
+
+  private final LongSupplier clock;
+
+  PushedSubnetIPLeases() {
+    this(DEFAULT_TIME_TO_LIVE_MILLIS, System::currentTimeMillis);
+  }
+
+  @VisibleForTesting
+  PushedSubnetIPLeases(long timeToLiveMillis, LongSupplier clock) {
+    this.timeToLiveMillis = timeToLiveMillis;
+    this.clock = clock;
+  }
+
+  /**
+   * Returns the IP leases last pushed to a subnet, or null when they are unknown or expired.
+   *
+   * @param subnetId
+   * @return
+   */
+  Record get(String subnetId) {
+    Record record = records.get(subnetId);
+    if (record != null && isExpired(record, clock.getAsLong())) {
+      records.remove(subnetId, record);
+      return null;
+    }
+
+    return record;
+  }
+
+  /**
+   * Records the IP leases pushed to a subnet, unless a later version is already recorded, and drops the expired
+   * records.
+   *
+   * @param subnetIPLease
+   * @param isDelta
+   */
+  void record(SubnetIPLease subnetIPLease, boolean isDelta) {
+    long now = clock.getAsLong();
+    records.values().removeIf(record -> isExpired(record, now));
+    records.compute(subnetIPLease.subnetId, (subnetId, pushed) -> {
+      if (pushed != null && pushed.version > subnetIPLease.version) {
+        return pushed;
+      }
+
+      return new Record(subnetIPLease.version, new HashMap<>(subnetIPLease.ipToMACAddressMap),
+          isDelta && pushed != null ? pushed.deltaCount + 1 : 0, now);
+    });
+  }
+
+  /**
+   * Forgets the IP leases pushed to a subnet, so that the next push sends all its IP leases.
+   *
+   * @param subnetId
+   */
+  void remove(String subnetId) {
+    records.remove(subnetId);
+  }
+
+  @VisibleForTesting
+  int size() {
+    return records.size();
+  }
+
+  private boolean isExpired(Record record, long now) {
+    return now - record.pushedAtMillis >= timeToLiveMillis;
+  }
+
+  /**
+   * IP leases of a subnet pushed to the DHCP agent.
+   */
+  static class Record {
+    final Long version;
+    final Map<String, String> ipToMACAddressMap;
+    final int deltaCount;
+    final long pushedAtMillis;
+
+    private Record(Long version, Map<String, String> ipToMACAddressMap, int deltaCount, long pushedAtMillis) {
+      this.version = version;
+      this.ipToMACAddressMap = ipToMACAddressMap;
+      this.deltaCount = deltaCount;
+      this.pushedAtMillis = pushedAtMillis;
+    }
+  }
+}
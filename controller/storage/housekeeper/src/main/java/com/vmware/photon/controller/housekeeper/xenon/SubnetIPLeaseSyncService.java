@@ -15,11 +15,14 @@ package com.vmware.photon.controller.housekeeper.xenon;
 
 import com.vmware.photon.controller.cloudstore.xenon.entity.DhcpSubnetService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.IpLeaseService;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
 import com.vmware.photon.controller.common.xenon.InitializationUtils;
 import com.vmware.photon.controller.common.xenon.PatchUtils;
 import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.photon.controller.common.xenon.ValidationUtils;
+import com.vmware.photon.controller.common.xenon.XenonServiceGroup;
 import com.vmware.photon.controller.common.xenon.deployment.NoMigrationDuringDeployment;
+import com.vmware.photon.controller.common.xenon.host.PhotonControllerXenonHost;
 import com.vmware.photon.controller.common.xenon.migration.NoMigrationDuringUpgrade;
 import com.vmware.photon.controller.common.xenon.scheduler.TaskSchedulerServiceFactory;
 import com.vmware.photon.controller.common.xenon.validation.DefaultInteger;
@@ -38,10 +41,13 @@ import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.QueryTask;
 import com.vmware.xenon.services.common.ServiceUriPaths;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
@@ -51,6 +57,8 @@ import java.util.Map;
  * from the cloud store to DHCP agent.
  * Service will query subnet IP leases with pagination, and send
  * the update to DHCP agent.
+ * The update is the delta from the IP leases last pushed by this host when it is known and smaller,
+ * and all the IP leases of the subnet otherwise, or every {@link #FULL_SYNC_INTERVAL} updates.
  */
 public class SubnetIPLeaseSyncService extends StatefulService {
 
@@ -58,6 +66,12 @@ public class SubnetIPLeaseSyncService extends StatefulService {
       + "/subnet-ip-lease-sync";
   public static final int DEFAULT_PAGE_LIMIT = 1000;
 
+  /**
+   * Number of delta pushes to a subnet after which all its IP leases are pushed again, to repair any drift on the
+   * DHCP agent.
+   */
+  public static final int FULL_SYNC_INTERVAL = 10;
+
   public static FactoryService createFactory() {
     return FactoryService.create(SubnetIPLeaseSyncService.class, SubnetIPLeaseSyncService.State.class);
   }
@@ -215,6 +229,10 @@ public class SubnetIPLeaseSyncService extends StatefulService {
    */
   private void processDhcpSubnetServiceQueryResults(ServiceDocumentQueryResult results, State current) {
     if (results == null || results.documentCount == 0) {
+      PushedSubnetIPLeases pushedIPLeases = getPushedSubnetIPLeases();
+      if (pushedIPLeases != null) {
+        pushedIPLeases.remove(current.subnetId);
+      }
       failTask(new Throwable("Dhcp subnet not found"));
       return;
     }
@@ -361,16 +379,51 @@ public class SubnetIPLeaseSyncService extends StatefulService {
    * @param current
    */
   protected void triggerSubnetIPLeaseService(State current) {
+    sendSubnetIPLease(current, true);
+  }
+
+  /**
+   * Sends the IP leases of the subnet to the DHCP agent, as a delta from the leases last pushed when possible.
+   *
+   * @param current
+   * @param allowDelta
+   */
+  private void sendSubnetIPLease(State current, boolean allowDelta) {
+    // build SubnetIPLease service start state
+    SubnetIPLeaseTask subnetIPLeaseTask = this.buildSubnetIPLeaseState(current, allowDelta);
+    boolean isDelta = subnetIPLeaseTask.subnetIPLease.baseVersion != null;
+
+    DefaultMetricRegistry.REGISTRY
+        .histogram(MetricRegistry.name(SubnetIPLeaseSyncService.class, isDelta ? "delta-bytes" : "snapshot-bytes"))
+        .update(Utils.toJson(subnetIPLeaseTask).length());
+    Timer.Context syncTimer = DefaultMetricRegistry.REGISTRY
+        .timer(MetricRegistry.name(SubnetIPLeaseSyncService.class, "sync"))
+        .time();
+
     // build completion handler
     Operation.CompletionHandler handler = (Operation acknowledgeOp, Throwable failure) -> {
+      syncTimer.stop();
+      SubnetIPLeaseTask result = null;
       if (failure != null) {
         // we could not start an SubnetIPLease service. Something went wrong. Fail
         // the current task and stop processing.
         RuntimeException e = new RuntimeException(
                 String.format("Failed to send DHCP agent subnet IP lease request %s", failure));
         failTask(e);
+      } else {
+        result = acknowledgeOp.getBody(SubnetIPLeaseTask.class);
+        if (isDelta && result.taskState != null && result.taskState.stage == TaskState.TaskStage.FAILED) {
+          ServiceUtils.logInfo(SubnetIPLeaseSyncService.this,
+              "DHCP agent rejected the IP lease delta of subnet %s, sending all IP leases", current.subnetId);
+          sendSubnetIPLease(current, false);
+          return;
+        }
       }
 
+      boolean isPushed = result != null &&
+          (result.taskState == null || result.taskState.stage == TaskState.TaskStage.FINISHED);
+      recordPushedIPLeases(current.subnetIPLease, isDelta, isPushed);
+
       ServiceUtils.logInfo(SubnetIPLeaseSyncService.this, "DHCP agent SubnetIPLeaseService %s, is triggered",
               acknowledgeOp.getBody(SubnetIPLeaseTask.class).documentSelfLink);
       current.operationPatch.versionPushed = current.operationPatch.versionStaged;
@@ -379,9 +432,6 @@ public class SubnetIPLeaseSyncService extends StatefulService {
       sendStageProgressPatch(current);
     };
 
-    // build SubnetIPLease service start state
-    SubnetIPLeaseTask subnetIPLeaseTask = this.buildSubnetIPLeaseState(current);
-
     // start service
     this.startSubnetIPLeaseService(current, subnetIPLeaseTask, handler);
   }
@@ -407,17 +457,103 @@ public class SubnetIPLeaseSyncService extends StatefulService {
    * Builds DHCP agent SubnetIPLease service start state.
    *
    * @param current
+   * @param allowDelta
    * @return
    */
-  private SubnetIPLeaseTask buildSubnetIPLeaseState(final State current) {
+  private SubnetIPLeaseTask buildSubnetIPLeaseState(final State current, boolean allowDelta) {
     SubnetIPLeaseTask startState = new SubnetIPLeaseTask();
     startState.subnetIPLease = current.subnetIPLease;
 
+    PushedSubnetIPLeases pushedIPLeases = getPushedSubnetIPLeases();
+    PushedSubnetIPLeases.Record pushed = pushedIPLeases != null ? pushedIPLeases.get(current.subnetId) : null;
+    if (allowDelta && pushed != null && pushed.deltaCount < FULL_SYNC_INTERVAL) {
+      SubnetIPLease delta = buildDelta(current.subnetIPLease, pushed.version, pushed.ipToMACAddressMap);
+      if (delta.ipToMACAddressMap.size() + delta.removedIPAddresses.size()
+          < current.subnetIPLease.ipToMACAddressMap.size()) {
+        startState.subnetIPLease = delta;
+      }
+    }
+
     startState.documentExpirationTimeMicros = current.documentExpirationTimeMicros;
 
     return startState;
   }
 
+  /**
+   * Builds the changes in the IP to MAC address association of a subnet since a base version.
+   *
+   * @param subnetIPLease
+   * @param baseVersion
+   * @param baseIPToMACAddressMap
+   * @return
+   */
+  static SubnetIPLease buildDelta(SubnetIPLease subnetIPLease,
+                                  Long baseVersion,
+                                  Map<String, String> baseIPToMACAddressMap) {
+    SubnetIPLease delta = new SubnetIPLease();
+    delta.subnetId = subnetIPLease.subnetId;
+    delta.subnetOperation = subnetIPLease.subnetOperation;
+    delta.version = subnetIPLease.version;
+    delta.baseVersion = baseVersion;
+    delta.ipToMACAddressMap = new HashMap<>();
+    delta.removedIPAddresses = new ArrayList<>();
+
+    for (Map.Entry<String, String> entry : subnetIPLease.ipToMACAddressMap.entrySet()) {
+      if (!entry.getValue().equals(baseIPToMACAddressMap.get(entry.getKey()))) {
+        delta.ipToMACAddressMap.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    for (String ipAddress : baseIPToMACAddressMap.keySet()) {
+      if (!subnetIPLease.ipToMACAddressMap.containsKey(ipAddress)) {
+        delta.removedIPAddresses.add(ipAddress);
+      }
+    }
+
+    return delta;
+  }
+
+  /**
+   * Records the IP leases pushed to the DHCP agent, for the next push to be a delta from them. A failed push
+   * forgets them, so the next push sends all IP leases.
+   *
+   * @param subnetIPLease
+   * @param isDelta
+   * @param isPushed
+   */
+  private void recordPushedIPLeases(SubnetIPLease subnetIPLease, boolean isDelta, boolean isPushed) {
+    PushedSubnetIPLeases pushedIPLeases = getPushedSubnetIPLeases();
+    if (pushedIPLeases == null) {
+      return;
+    }
+
+    if (!isPushed) {
+      pushedIPLeases.remove(subnetIPLease.subnetId);
+      return;
+    }
+
+    pushedIPLeases.record(subnetIPLease, isDelta);
+  }
+
+  /**
+   * Gets the IP leases last pushed by this host. A host without the housekeeper services keeps none, and always
+   * pushes all IP leases.
+   *
+   * @return
+   */
+  private PushedSubnetIPLeases getPushedSubnetIPLeases() {
+    if (!(getHost() instanceof PhotonControllerXenonHost)) {
+      return null;
+    }
+
+    XenonServiceGroup housekeeper = ((PhotonControllerXenonHost) getHost()).getHousekeeper();
+    if (!(housekeeper instanceof HousekeeperServiceGroup)) {
+      return null;
+    }
+
+    return ((HousekeeperServiceGroup) housekeeper).getPushedSubnetIPLeases();
+  }
+
   /**
    * Parse IpLeaseService query results.
    *
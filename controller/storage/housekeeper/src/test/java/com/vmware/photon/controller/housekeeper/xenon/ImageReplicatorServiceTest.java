@@ -177,7 +177,7 @@ public class ImageReplicatorServiceTest {
       assertThat(savedState.taskInfo, notNullValue());
       assertThat(savedState.taskInfo.stage, is(ImageReplicatorService.TaskState.TaskStage.STARTED));
       assertThat(savedState.taskInfo.subStage, is(ImageReplicatorService.TaskState.SubStage.TRIGGER_COPIES));
-      assertThat(savedState.queryPollDelay, is(10000));
+      assertThat(savedState.queryPollDelay, is(60000));
       assertThat(new BigDecimal(savedState.documentExpirationTimeMicros),
           is(closeTo(new BigDecimal(ServiceUtils.computeExpirationTime(
                   ServiceUtils.DEFAULT_DOC_EXPIRATION_TIME_MICROS)),
@@ -920,6 +920,78 @@ public class ImageReplicatorServiceTest {
       };
     }
 
+    /**
+     * This function tests that the service goes into the FINISHED state as soon as all copies
+     * report their completion, without waiting for a status query.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void testCopyReports() throws Throwable {
+      ImageReplicatorService.State startState = buildValidStartupState(
+          ImageReplicatorService.TaskState.TaskStage.STARTED,
+          ImageReplicatorService.TaskState.SubStage.AWAIT_COMPLETION);
+      startState.queryPollDelay = 60000;
+      startState.dataStoreCount = 2;
+      host.startServiceSynchronously(service, startState);
+
+      for (String copyLink : new String[]{"copy-1", "copy-1", "copy-2"}) {
+        ImageReplicatorService.State report = new ImageReplicatorService.State();
+        report.finishedCopyLinks = new HashSet<>();
+        report.finishedCopyLinks.add(copyLink);
+        host.sendRequestAndWait(Operation
+            .createPatch(UriUtils.buildUri(host, TestHost.SERVICE_URI, null))
+            .setBody(report));
+      }
+
+      ImageReplicatorService.State savedState = host.waitForState(ImageReplicatorService.State.class,
+          state -> state.taskInfo.stage == ImageReplicatorService.TaskState.TaskStage.FINISHED);
+      assertThat(savedState.finishedCopies, is(2));
+      assertThat(savedState.failedOrCanceledCopies, is(0));
+    }
+
+    /**
+     * This function tests that copy results which arrive once the service has completed, from a
+     * report or a status query, are ignored instead of failing the patch.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void testCopyResultsAfterCompletion() throws Throwable {
+      ImageReplicatorService.State startState = buildValidStartupState(
+          ImageReplicatorService.TaskState.TaskStage.STARTED,
+          ImageReplicatorService.TaskState.SubStage.AWAIT_COMPLETION);
+      startState.queryPollDelay = 60000;
+      startState.dataStoreCount = 1;
+      host.startServiceSynchronously(service, startState);
+
+      ImageReplicatorService.State report = new ImageReplicatorService.State();
+      report.finishedCopyLinks = new HashSet<>();
+      report.finishedCopyLinks.add("copy-1");
+      host.sendRequestAndWait(Operation
+          .createPatch(UriUtils.buildUri(host, TestHost.SERVICE_URI, null))
+          .setBody(report));
+      host.waitForState(ImageReplicatorService.State.class,
+          state -> state.taskInfo.stage == ImageReplicatorService.TaskState.TaskStage.FINISHED);
+
+      ImageReplicatorService.State statusQueryResult = new ImageReplicatorService.State();
+      statusQueryResult.taskInfo = new ImageReplicatorService.TaskState();
+      statusQueryResult.taskInfo.stage = ImageReplicatorService.TaskState.TaskStage.STARTED;
+      statusQueryResult.taskInfo.subStage = ImageReplicatorService.TaskState.SubStage.AWAIT_COMPLETION;
+      statusQueryResult.finishedCopyLinks = new HashSet<>();
+      statusQueryResult.finishedCopyLinks.add("copy-1");
+      for (ImageReplicatorService.State patch : new ImageReplicatorService.State[]{report, statusQueryResult}) {
+        Operation result = host.sendRequestAndWait(Operation
+            .createPatch(UriUtils.buildUri(host, TestHost.SERVICE_URI, null))
+            .setBody(patch));
+        assertThat(result.getStatusCode(), is(200));
+      }
+
+      ImageReplicatorService.State savedState = host.getServiceState(ImageReplicatorService.State.class);
+      assertThat(savedState.taskInfo.stage, is(ImageReplicatorService.TaskState.TaskStage.FINISHED));
+      assertThat(savedState.finishedCopies, is(1));
+    }
+
     /**
      * This function tests that the service goes into the FINISHED state if all copies
      * tasks finish successfully.
@@ -175,7 +175,7 @@ public class ImageSeederServiceTest {
       assertThat(savedState.taskInfo, notNullValue());
       assertThat(savedState.taskInfo.stage, is(TaskState.TaskStage.STARTED));
       assertThat(savedState.taskInfo.subStage, is(ImageSeederService.TaskState.SubStage.UPDATE_DATASTORE_COUNTS));
-      assertThat(savedState.queryPollDelay, is(10000));
+      assertThat(savedState.queryPollDelay, is(60000));
       assertThat(new BigDecimal(savedState.documentExpirationTimeMicros),
           is(closeTo(new BigDecimal(ServiceUtils.computeExpirationTime(
                   ServiceUtils.DEFAULT_DOC_EXPIRATION_TIME_MICROS)),
@@ -571,6 +571,48 @@ public class ImageSeederServiceTest {
       };
     }
 
+    /**
+     * Tests that the copies reporting their completion move the service to its final stage without waiting for a
+     * status query, and that a copy reported twice is counted once.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void testCopyReports() throws Throwable {
+      ImageSeederService.State startState = buildValidStartupState(
+          TaskState.TaskStage.STARTED, ImageSeederService.TaskState.SubStage.AWAIT_COMPLETION);
+      startState.queryPollDelay = 60000;
+      startState.triggeredCopies = 2;
+      host.startServiceSynchronously(service, startState);
+
+      ImageSeederService.State report = new ImageSeederService.State();
+      report.finishedCopyLinks = new HashSet<>();
+      report.finishedCopyLinks.add("copy-1");
+      for (int i = 0; i < 2; i++) {
+        host.sendRequestAndWait(Operation
+            .createPatch(UriUtils.buildUri(host, TestHost.SERVICE_URI, null))
+            .setBody(report));
+      }
+
+      ImageSeederService.State savedState = host.getServiceState(ImageSeederService.State.class);
+      assertThat(savedState.taskInfo.stage, is(TaskState.TaskStage.STARTED));
+      assertThat(savedState.finishedCopies, is(1));
+
+      report = new ImageSeederService.State();
+      report.failedOrCancelledCopyLinks = new HashSet<>();
+      report.failedOrCancelledCopyLinks.add("copy-2");
+      host.sendRequestAndWait(Operation
+          .createPatch(UriUtils.buildUri(host, TestHost.SERVICE_URI, null))
+          .setBody(report));
+
+      savedState = host.waitForState(ImageSeederService.State.class,
+          state -> state.taskInfo.stage == TaskState.TaskStage.FAILED);
+      assertThat(savedState.finishedCopies, is(1));
+      assertThat(savedState.failedOrCancelledCopies, is(1));
+      assertThat(savedState.taskInfo.failure.message,
+          containsString("1 image seeding succeeded, 1 image seeding failed or cancelled"));
+    }
+
     /**
      * This test verifies that errors occur on illegal state transitions.
      *
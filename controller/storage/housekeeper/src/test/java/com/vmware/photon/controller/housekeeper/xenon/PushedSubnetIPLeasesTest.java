@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.housekeeper.xenon;
+
+import com.vmware.photon.controller.dhcpagent.xenon.service.SubnetIPLeaseTask.SubnetIPLease;
+
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests {@link PushedSubnetIPLeases}.
+ */
+public class PushedSubnetIPLeasesTest {
+
+  private static final long TIME_TO_LIVE_MILLIS = 1000;
+
+  private AtomicLong clock;
+
+  private PushedSubnetIPLeases pushedSubnetIPLeases;
+
+  @BeforeMethod
+  public void setUp() {
+    clock = new AtomicLong(0);
+    pushedSubnetIPLeases = new PushedSubnetIPLeases(TIME_TO_LIVE_MILLIS, clock::get);
+  }
+
+  @Test
+  public void testRecord() {
+    pushedSubnetIPLeases.record(buildSubnetIPLease("subnet1", 1L), false);
+    pushedSubnetIPLeases.record(buildSubnetIPLease("subnet1", 2L), true);
+
+    PushedSubnetIPLeases.Record record = pushedSubnetIPLeases.get("subnet1");
+    assertThat(record.version, is(2L));
+    assertThat(record.deltaCount, is(1));
+    assertThat(record.ipToMACAddressMap, is(ImmutableMap.of("192.168.0.2", "08:00:27:d8:7d:8e")));
+    assertThat(pushedSubnetIPLeases.get("subnet2"), is(nullValue()));
+  }
+
+  @Test
+  public void testRecordKeepsLaterVersion() {
+    pushedSubnetIPLeases.record(buildSubnetIPLease("subnet1", 2L), false);
+    pushedSubnetIPLeases.record(buildSubnetIPLease("subnet1", 1L), true);
+
+    PushedSubnetIPLeases.Record record = pushedSubnetIPLeases.get("subnet1");
+    assertThat(record.version, is(2L));
+    assertThat(record.deltaCount, is(0));
+  }
+
+  @Test
+  public void testRemove() {
+    pushedSubnetIPLeases.record(buildSubnetIPLease("subnet1", 1L), false);
+    pushedSubnetIPLeases.remove("subnet1");
+
+    assertThat(pushedSubnetIPLeases.get("subnet1"), is(nullValue()));
+    assertThat(pushedSubnetIPLeases.size(), is(0));
+  }
+
+  @Test
+  public void testExpiredRecordsAreDropped() {
+    pushedSubnetIPLeases.record(buildSubnetIPLease("subnet1", 1L), false);
+    pushedSubnetIPLeases.record(buildSubnetIPLease("subnet2", 1L), false);
+
+    clock.addAndGet(TIME_TO_LIVE_MILLIS);
+    assertThat(pushedSubnetIPLeases.get("subnet1"), is(nullValue()));
+    assertThat(pushedSubnetIPLeases.size(), is(1));
+
+    // The records of the subnets which are not synced anymore are dropped with the next record
+    pushedSubnetIPLeases.record(buildSubnetIPLease("subnet3", 1L), false);
+    assertThat(pushedSubnetIPLeases.size(), is(1));
+    assertThat(pushedSubnetIPLeases.get("subnet3").version, is(1L));
+  }
+
+  private SubnetIPLease buildSubnetIPLease(String subnetId, Long version) {
+    SubnetIPLease subnetIPLease = new SubnetIPLease();
+    subnetIPLease.subnetId = subnetId;
+    subnetIPLease.version = version;
+    subnetIPLease.ipToMACAddressMap = new HashMap<>();
+    subnetIPLease.ipToMACAddressMap.put("192.168.0.2", "08:00:27:d8:7d:8e");
+    return subnetIPLease;
+  }
+}
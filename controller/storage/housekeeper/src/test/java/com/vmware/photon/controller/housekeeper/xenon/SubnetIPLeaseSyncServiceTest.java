@@ -22,6 +22,8 @@ import com.vmware.photon.controller.common.xenon.CloudStoreHelper;
 import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
 import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.photon.controller.common.xenon.exceptions.BadRequestException;
+import com.vmware.photon.controller.dhcpagent.xenon.service.SubnetIPLeaseTask;
+import com.vmware.photon.controller.dhcpagent.xenon.service.SubnetIPLeaseTask.SubnetIPLease;
 import com.vmware.photon.controller.housekeeper.helpers.xenon.TestEnvironment;
 import com.vmware.photon.controller.housekeeper.helpers.xenon.services.TestServiceWithStage;
 import com.vmware.xenon.common.FactoryService;
@@ -52,6 +54,7 @@ import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
@@ -74,6 +77,39 @@ public class SubnetIPLeaseSyncServiceTest {
   private void dummy() {
   }
 
+  /**
+   * Tests for building the delta of the IP leases of a subnet.
+   */
+  public class BuildDeltaTest {
+
+    @Test
+    public void testBuildDelta() {
+      SubnetIPLease subnetIPLease = new SubnetIPLease();
+      subnetIPLease.subnetId = SUBNET_ID;
+      subnetIPLease.subnetOperation = SubnetIPLeaseTask.SubnetOperation.UPDATE;
+      subnetIPLease.version = 3L;
+      subnetIPLease.ipToMACAddressMap = new HashMap<>();
+      subnetIPLease.ipToMACAddressMap.put("192.168.0.2", "08:00:27:d8:7d:8e");
+      subnetIPLease.ipToMACAddressMap.put("192.168.0.3", "08:00:27:00:00:01");
+      subnetIPLease.ipToMACAddressMap.put("192.168.0.5", "08:00:27:00:00:02");
+
+      Map<String, String> baseIPToMACAddressMap = new HashMap<>();
+      baseIPToMACAddressMap.put("192.168.0.2", "08:00:27:d8:7d:8e");
+      baseIPToMACAddressMap.put("192.168.0.3", "08:00:27:d2:b6:66");
+      baseIPToMACAddressMap.put("192.168.0.4", "08:00:27:5c:9a:7b");
+
+      SubnetIPLease delta = SubnetIPLeaseSyncService.buildDelta(subnetIPLease, 2L, baseIPToMACAddressMap);
+
+      assertThat(delta.subnetId, Matchers.is(SUBNET_ID));
+      assertThat(delta.version, Matchers.is(3L));
+      assertThat(delta.baseVersion, Matchers.is(2L));
+      assertThat(delta.ipToMACAddressMap, Matchers.is(ImmutableMap.of(
+          "192.168.0.3", "08:00:27:00:00:01",
+          "192.168.0.5", "08:00:27:00:00:02")));
+      assertThat(delta.removedIPAddresses, Matchers.contains("192.168.0.4"));
+    }
+  }
+
   /**
    * Tests for the constructors.
    */